@@ -0,0 +1,215 @@
+/*****************************************************************************************
+ * @file  Compare.java
+ *
+ * @author   John Miller
+ */
+
+package dbbench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The Compare class diffs two JMH result files written with "-rf json", matching
+ * benchmarks by name and parameters.  A benchmark regresses when its score gets worse
+ * by more than the threshold (default 10%) and by more than the combined error bars.
+ * The exit status is 1 when any benchmark regressed, so a build can fail on it.
+ *
+ * #usage java -cp benchmarks.jar dbbench.Compare old.json new.json [threshold%]
+ */
+public final class Compare
+{
+    /*************************************************************************************
+     * This class is not instantiable.
+     */
+    private Compare () {}
+
+    /*************************************************************************************
+     * Compare the baseline results with the new results.
+     * @param args  the baseline file, the new file and an optional threshold in percent
+     */
+    public static void main (String [] args)
+        throws IOException
+    {
+        if (args.length < 2) {
+            System.err.println ("usage: Compare old.json new.json [threshold%]");
+            System.exit (2);
+        } // if
+        double threshold = args.length > 2 ? Double.parseDouble (args [2]) / 100.0 : 0.10;
+
+        Map <String, Map <?, ?>> before = results (args [0]);
+        Map <String, Map <?, ?>> after  = results (args [1]);
+        int regressions = 0;
+
+        out.printf ("%-50s %14s %14s %9s%n", "benchmark", "old", "new", "change");
+        for (Map.Entry <String, Map <?, ?>> e : after.entrySet ()) {
+            Map <?, ?> now = e.getValue ();
+            Map <?, ?> was = before.get (e.getKey ());
+            if (was == null) {
+                out.printf ("%-50s %14s %14.3f %9s%n", e.getKey (), "-", score (now), "new");
+                continue;
+            } // if
+            double s0 = score (was), s1 = score (now);
+            double change = (s1 - s0) / s0;
+            boolean lowerIsBetter = ! "thrpt".equals (was.get ("mode"));
+            double worse = lowerIsBetter ? change : - change;
+            boolean regressed = worse > threshold && Math.abs (s1 - s0) > error (was) + error (now);
+            if (regressed) regressions++;
+            out.printf ("%-50s %14.3f %14.3f %+8.1f%%%s%n", e.getKey (), s0, s1, 100.0 * change,
+                        regressed ? "  REGRESSION" : "");
+        } // for
+        for (String name : before.keySet ()) {
+            if (! after.containsKey (name)) out.printf ("%-50s %14.3f %14s %9s%n", name,
+                                                        score (before.get (name)), "-", "removed");
+        } // for
+
+        out.println (regressions + " regression(s)");
+        if (regressions > 0) System.exit (1);
+    } // main
+
+    /*************************************************************************************
+     * Read a JMH JSON result file into a map from "benchmark{params}" to its result.
+     * @param file  the result file
+     * @return  the results in file order
+     */
+    private static Map <String, Map <?, ?>> results (String file)
+        throws IOException
+    {
+        String text = new String (Files.readAllBytes (Paths.get (file)), StandardCharsets.UTF_8);
+        Map <String, Map <?, ?>> results = new LinkedHashMap <> ();
+        for (Object o : (List <?>) new Json (text).value ()) {
+            Map <?, ?> r = (Map <?, ?>) o;
+            String name = (String) r.get ("benchmark");
+            name = name.substring (name.lastIndexOf ('.', name.lastIndexOf ('.') - 1) + 1);
+            Object params = r.get ("params");
+            results.put (params == null ? name : name + params, r);
+        } // for
+        return results;
+    } // results
+
+    /*************************************************************************************
+     * Return the primary score of a result.
+     * @param r  the result
+     */
+    private static double score (Map <?, ?> r)
+    {
+        return ((Number) ((Map <?, ?>) r.get ("primaryMetric")).get ("score")).doubleValue ();
+    } // score
+
+    /*************************************************************************************
+     * Return the error (half the confidence interval) of a result, 0 if not reported.
+     * @param r  the result
+     */
+    private static double error (Map <?, ?> r)
+    {
+        Object e = ((Map <?, ?>) r.get ("primaryMetric")).get ("scoreError");
+        return e instanceof Number && ! Double.isNaN (((Number) e).doubleValue ())
+               ? ((Number) e).doubleValue () : 0.0;
+    } // error
+
+    /*************************************************************************************
+     * The Json class is a minimal recursive-descent JSON reader, just enough for JMH
+     * result files, so the benchmarks need no JSON library.  Objects become
+     * LinkedHashMaps, arrays ArrayLists and numbers Doubles.
+     */
+    private static final class Json
+    {
+        private final String s;
+        private int pos;
+
+        Json (String _s) { s = _s; }
+
+        /*********************************************************************************
+         * Parse the next value.
+         */
+        Object value ()
+        {
+            skip ();
+            char c = s.charAt (pos);
+            switch (c) {
+            case '{': return object ();
+            case '[': return array ();
+            case '"': return string ();
+            case 't': pos += 4; return Boolean.TRUE;
+            case 'f': pos += 5; return Boolean.FALSE;
+            case 'n': pos += 4; return null;
+            default:  return number ();
+            } // switch
+        } // value
+
+        private Map <String, Object> object ()
+        {
+            Map <String, Object> map = new LinkedHashMap <> ();
+            pos++;                                               // skip '{'
+            skip ();
+            if (s.charAt (pos) == '}') { pos++; return map; }
+            while (true) {
+                skip ();
+                String k = string ();
+                skip ();
+                pos++;                                           // skip ':'
+                map.put (k, value ());
+                skip ();
+                if (s.charAt (pos++) == '}') return map;         // else ','
+            } // while
+        } // object
+
+        private List <Object> array ()
+        {
+            List <Object> list = new ArrayList <> ();
+            pos++;                                               // skip '['
+            skip ();
+            if (s.charAt (pos) == ']') { pos++; return list; }
+            while (true) {
+                list.add (value ());
+                skip ();
+                if (s.charAt (pos++) == ']') return list;        // else ','
+            } // while
+        } // array
+
+        private String string ()
+        {
+            StringBuilder sb = new StringBuilder ();
+            pos++;                                               // skip '"'
+            for (char c; (c = s.charAt (pos++)) != '"'; ) {
+                if (c == '\\') {
+                    c = s.charAt (pos++);
+                    switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u': c = (char) Integer.parseInt (s.substring (pos, pos + 4), 16); pos += 4; break;
+                    default:  break;                             // '"', '\\', '/'
+                    } // switch
+                } // if
+                sb.append (c);
+            } // for
+            return sb.toString ();
+        } // string
+
+        private Double number ()
+        {
+            int start = pos;
+            while (pos < s.length () && "+-0123456789.eE".indexOf (s.charAt (pos)) >= 0) pos++;
+            return Double.valueOf (s.substring (start, pos));
+        } // number
+
+        private void skip ()
+        {
+            while (pos < s.length () && Character.isWhitespace (s.charAt (pos))) pos++;
+        } // skip
+
+    } // Json class
+
+} // Compare class
+
@@ -0,0 +1,280 @@
+/*****************************************************************************************
+ * @file  Db.java
+ *
+ * @author   John Miller
+ */
+
+package dbbench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.function.Predicate;
+
+/*****************************************************************************************
+ * The Db class gives the benchmarks typed access to the Table and KeyType classes.
+ * Those classes live in the unnamed package, which cannot be imported from a named
+ * package, and JMH refuses to generate benchmarks in the unnamed package.  Each method
+ * is bound once to a MethodHandle, so the per-call cost is a direct invocation and is
+ * negligible next to an operator that touches thousands of rows.
+ */
+final class Db
+{
+    private static final MethodHandle NEW_TABLE;
+    private static final MethodHandle NEW_KEY;
+    private static final MethodHandle INSERT;
+    private static final MethodHandle INSERT_ALL;
+    private static final MethodHandle PROJECT;
+    private static final MethodHandle SELECT;
+    private static final MethodHandle SELECT_KEY;
+    private static final MethodHandle UNION;
+    private static final MethodHandle MINUS;
+    private static final MethodHandle JOIN;
+    private static final MethodHandle SAVE;
+    private static final MethodHandle LOAD;
+    private static final MethodHandle TUPLES;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup ();
+            Class <?> table = Class.forName ("Table");
+            Class <?> key   = Class.forName ("KeyType");
+
+            NEW_TABLE  = lookup.findConstructor (table, MethodType.methodType (void.class,
+                                String.class, String.class, String.class, String.class));
+            NEW_KEY    = lookup.findConstructor (key, MethodType.methodType (void.class, Comparable [].class));
+            INSERT     = lookup.findVirtual (table, "insert", MethodType.methodType (boolean.class, Comparable [].class));
+            INSERT_ALL = lookup.findVirtual (table, "insertAll", MethodType.methodType (int.class, Iterable.class));
+            PROJECT    = lookup.findVirtual (table, "project", MethodType.methodType (table, String.class));
+            SELECT     = lookup.findVirtual (table, "select", MethodType.methodType (table, Predicate.class));
+            SELECT_KEY = lookup.findVirtual (table, "select", MethodType.methodType (table, key));
+            UNION      = lookup.findVirtual (table, "union", MethodType.methodType (table, table));
+            MINUS      = lookup.findVirtual (table, "minus", MethodType.methodType (table, table));
+            JOIN       = lookup.findVirtual (table, "join", MethodType.methodType (table,
+                                String.class, String.class, table));
+            SAVE       = lookup.findVirtual (table, "save", MethodType.methodType (void.class));
+            LOAD       = lookup.findStatic (table, "load", MethodType.methodType (table, String.class));
+
+            java.lang.reflect.Field tuples = table.getDeclaredField ("tuples");   // not public
+            tuples.setAccessible (true);
+            TUPLES     = MethodHandles.lookup ().unreflectGetter (tuples);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError (ex);
+        } // try
+    } // static
+
+    /*************************************************************************************
+     * This class is not instantiable.
+     */
+    private Db () {}
+
+    /*************************************************************************************
+     * Create an empty table (see Table (String, String, String, String)).
+     * @param name        the name of the relation
+     * @param attributes  the attributes, separated by spaces
+     * @param domains     the domains, separated by spaces
+     * @param key         the primary key attributes, separated by spaces
+     * @return  the new table
+     */
+    static Object table (String name, String attributes, String domains, String key)
+    {
+        try {
+            return NEW_TABLE.invoke (name, attributes, domains, key);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // table
+
+    /*************************************************************************************
+     * Create a key from its values.
+     * @param values  the key's attribute values
+     * @return  the new KeyType
+     */
+    static Object key (Comparable ... values)
+    {
+        try {
+            return NEW_KEY.invoke (values);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // key
+
+    /*************************************************************************************
+     * Insert one tuple into the table.
+     * @param table  the target table
+     * @param tup    the tuple to insert
+     * @return  whether insertion was successful
+     */
+    static boolean insert (Object table, Comparable [] tup)
+    {
+        try {
+            return (boolean) INSERT.invoke (table, tup);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // insert
+
+    /*************************************************************************************
+     * Bulk-load tuples into the table.
+     * @param table  the target table
+     * @param tups   the tuples to insert
+     * @return  the number of tuples inserted
+     */
+    static int insertAll (Object table, List <Comparable []> tups)
+    {
+        try {
+            return (int) INSERT_ALL.invoke (table, (Iterable <Comparable []>) tups);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // insertAll
+
+    /*************************************************************************************
+     * Project the table onto the given attributes.
+     * @param table       the source table
+     * @param attributes  the attributes to project onto
+     * @return  the resulting table
+     */
+    static Object project (Object table, String attributes)
+    {
+        try {
+            return PROJECT.invoke (table, attributes);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // project
+
+    /*************************************************************************************
+     * Select the tuples satisfying the predicate.
+     * @param table      the source table
+     * @param predicate  the condition tuples must satisfy
+     * @return  the resulting table
+     */
+    static Object select (Object table, Predicate <Comparable []> predicate)
+    {
+        try {
+            return SELECT.invoke (table, predicate);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // select
+
+    /*************************************************************************************
+     * Select the tuple with the given primary key value.
+     * @param table   the source table
+     * @param keyVal  a KeyType made by key (Comparable ...)
+     * @return  the resulting table
+     */
+    static Object select (Object table, Object keyVal)
+    {
+        try {
+            return SELECT_KEY.invoke (table, keyVal);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // select
+
+    /*************************************************************************************
+     * Union two compatible tables.
+     * @param table   the left table
+     * @param table2  the right table
+     * @return  the resulting table
+     */
+    static Object union (Object table, Object table2)
+    {
+        try {
+            return UNION.invoke (table, table2);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // union
+
+    /*************************************************************************************
+     * Take the difference of two compatible tables.
+     * @param table   the left table
+     * @param table2  the right table
+     * @return  the resulting table
+     */
+    static Object minus (Object table, Object table2)
+    {
+        try {
+            return MINUS.invoke (table, table2);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // minus
+
+    /*************************************************************************************
+     * Equi-join two tables.
+     * @param table        the left table
+     * @param attributes1  the join attributes of the left table
+     * @param attributes2  the join attributes of the right table
+     * @param table2       the right table
+     * @return  the resulting table
+     */
+    static Object join (Object table, String attributes1, String attributes2, Object table2)
+    {
+        try {
+            return JOIN.invoke (table, attributes1, attributes2, table2);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // join
+
+    /*************************************************************************************
+     * Save the table to its file in the store directory.
+     * @param table  the table to save
+     */
+    static void save (Object table)
+    {
+        try {
+            SAVE.invoke (table);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // save
+
+    /*************************************************************************************
+     * Load a table from the store directory.
+     * @param name  the name of the table
+     * @return  the loaded table
+     */
+    static Object load (String name)
+    {
+        try {
+            return LOAD.invoke (name);
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // load
+
+    /*************************************************************************************
+     * Return the number of tuples in the table, so the benchmarks can sanity check
+     * their inputs.
+     * @param table  the table
+     * @return  the number of tuples
+     */
+    static int size (Object table)
+    {
+        try {
+            return ((List <?>) TUPLES.invoke (table)).size ();
+        } catch (Throwable ex) {
+            throw rethrow (ex);
+        } // try
+    } // size
+
+    /*************************************************************************************
+     * Unwrap a throwable raised through a MethodHandle.
+     * @param ex  the throwable
+     * @return  never returns normally
+     */
+    private static RuntimeException rethrow (Throwable ex)
+    {
+        if (ex instanceof RuntimeException) throw (RuntimeException) ex;
+        if (ex instanceof Error) throw (Error) ex;
+        throw new IllegalStateException (ex);
+    } // rethrow
+
+} // Db class
+
@@ -0,0 +1,241 @@
+/*****************************************************************************************
+ * @file  MovieData.java
+ *
+ * @author   John Miller
+ */
+
+package dbbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*****************************************************************************************
+ * The MovieData class generates synthetic tuples for the six MovieDB schemas.  Generation
+ * is seeded so that every run (and every release being compared) benchmarks the same
+ * data.  Foreign keys line up: starsIn references movie and movieStar, movie references
+ * studio and movieExec, and cinema shares half of its tuples with movie.
+ */
+final class MovieData
+{
+    /** The schemas, as (name, attributes, domains, key), matching MovieDB
+     */
+    static final String [] MOVIE      = { "movie", "title year length genre studioName producerNo",
+                                          "String Integer Integer String String Integer", "title year" };
+    static final String [] CINEMA     = { "cinema", "title year length genre studioName producerNo",
+                                          "String Integer Integer String String Integer", "title year" };
+    static final String [] MOVIE_STAR = { "movieStar", "name address gender birthdate",
+                                          "String String Character String", "name" };
+    static final String [] STARS_IN   = { "starsIn", "movieTitle movieYear starName",
+                                          "String Integer String", "movieTitle movieYear starName" };
+    static final String [] MOVIE_EXEC = { "movieExec", "certNo name address fee",
+                                          "Integer String String Double", "certNo" };
+    static final String [] STUDIO     = { "studio", "name address presNo",
+                                          "String String Integer", "name" };
+
+    private static final String [] GENRES = { "action", "comedy", "drama", "horror",
+                                              "romance", "sciFi", "thriller", "western" };
+
+    private static final String [] CITIES = { "Hollywood", "Brentwood", "Beverly_Hills",
+                                              "Burbank", "Malibu", "Culver_City" };
+
+    /** The number of movies; the other relations are sized relative to it
+     */
+    private final int movies;
+
+    /** The seeded random number generator
+     */
+    private final Random rand;
+
+    /*************************************************************************************
+     * Construct a generator for the given number of movies.
+     * @param _movies  the number of movie tuples
+     */
+    MovieData (int _movies)
+    {
+        movies = _movies;
+        rand   = new Random (4370L + _movies);
+    } // constructor
+
+    /*************************************************************************************
+     * Return the number of studios (one per 100 movies, at least one).
+     */
+    int studios ()
+    {
+        return Math.max (1, movies / 100);
+    } // studios
+
+    /*************************************************************************************
+     * Return the number of stars (one per 10 movies, at least one).
+     */
+    int stars ()
+    {
+        return Math.max (1, movies / 10);
+    } // stars
+
+    /*************************************************************************************
+     * Return the number of executives (one per 100 movies, at least one).
+     */
+    int execs ()
+    {
+        return Math.max (1, movies / 100);
+    } // execs
+
+    /*************************************************************************************
+     * Generate the movie tuples.
+     */
+    List <Comparable []> movie ()
+    {
+        List <Comparable []> rows = new ArrayList <> (movies);
+        for (int i = 0; i < movies; i++) rows.add (movie (i));
+        return rows;
+    } // movie
+
+    /*************************************************************************************
+     * Generate the cinema tuples: every other movie plus as many movies not in the movie
+     * table, so union, minus and intersect each see a 50% overlap.
+     */
+    List <Comparable []> cinema ()
+    {
+        List <Comparable []> rows = new ArrayList <> (movies);
+        for (int i = 0; i < movies; i += 2) rows.add (movie (i));
+        for (int i = movies; rows.size () < movies; i++) rows.add (movie (i));
+        return rows;
+    } // cinema
+
+    /*************************************************************************************
+     * Generate the movieStar tuples.
+     */
+    List <Comparable []> movieStar ()
+    {
+        int n = stars ();
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            rows.add (new Comparable [] { star (i), pick (CITIES), rand.nextBoolean () ? 'F' : 'M',
+                                          (1 + rand.nextInt (12)) + "/" + (1 + rand.nextInt (28)) + "/"
+                                          + (40 + rand.nextInt (60)) });
+        } // for
+        return rows;
+    } // movieStar
+
+    /*************************************************************************************
+     * Generate the starsIn tuples: one per movie, each naming a star of the movieStar
+     * table.
+     */
+    List <Comparable []> starsIn ()
+    {
+        int n = stars ();
+        List <Comparable []> rows = new ArrayList <> (movies);
+        for (int i = 0; i < movies; i++) {
+            rows.add (new Comparable [] { title (i), year (i), star (rand.nextInt (n)) });
+        } // for
+        return rows;
+    } // starsIn
+
+    /*************************************************************************************
+     * Generate the movieExec tuples.
+     */
+    List <Comparable []> movieExec ()
+    {
+        int n = execs ();
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            rows.add (new Comparable [] { i, "exec_" + i, pick (CITIES), 1000.0 * (1 + rand.nextInt (10000)) });
+        } // for
+        return rows;
+    } // movieExec
+
+    /*************************************************************************************
+     * Generate the studio tuples.
+     */
+    List <Comparable []> studio ()
+    {
+        int n = studios ();
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            rows.add (new Comparable [] { studio (i), pick (CITIES), rand.nextInt (execs ()) });
+        } // for
+        return rows;
+    } // studio
+
+    /*************************************************************************************
+     * Build the i-th movie tuple.  Everything but the genre and length is a function of
+     * i, so the same movie generated for cinema equals the one generated for movie.
+     * @param i  the movie number
+     */
+    Comparable [] movie (int i)
+    {
+        return new Comparable [] { title (i), year (i), 60 + (i * 7) % 120, GENRES [i % GENRES.length],
+                                   studio (i % studios ()), i % execs () };
+    } // movie
+
+    /*************************************************************************************
+     * Return the title of the i-th movie.
+     * @param i  the movie number
+     */
+    static String title (int i)
+    {
+        return "title_" + i;
+    } // title
+
+    /*************************************************************************************
+     * Return the year of the i-th movie.
+     * @param i  the movie number
+     */
+    static Integer year (int i)
+    {
+        return 1900 + i % 120;
+    } // year
+
+    /*************************************************************************************
+     * Return the name of the i-th star.
+     * @param i  the star number
+     */
+    private static String star (int i)
+    {
+        return "star_" + i;
+    } // star
+
+    /*************************************************************************************
+     * Return the name of the i-th studio.
+     * @param i  the studio number
+     */
+    private static String studio (int i)
+    {
+        return "studio_" + i;
+    } // studio
+
+    /*************************************************************************************
+     * Pick a random element of the array.
+     * @param values  the values to choose from
+     */
+    private String pick (String [] values)
+    {
+        return values [rand.nextInt (values.length)];
+    } // pick
+
+    /*************************************************************************************
+     * Create an empty table for the schema.
+     * @param schema  one of the schema constants above
+     * @return  the new table
+     */
+    static Object table (String [] schema)
+    {
+        return Db.table (schema [0], schema [1], schema [2], schema [3]);
+    } // table
+
+    /*************************************************************************************
+     * Create a table for the schema and bulk-load the rows into it.
+     * @param schema  one of the schema constants above
+     * @param rows    the tuples to load
+     * @return  the populated table
+     */
+    static Object table (String [] schema, List <Comparable []> rows)
+    {
+        Object t = table (schema);
+        Db.insertAll (t, rows);
+        return t;
+    } // table
+
+} // MovieData class
+
@@ -0,0 +1,211 @@
+/*****************************************************************************************
+ * @file  TableBench.java
+ *
+ * @author   John Miller
+ */
+
+package dbbench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*****************************************************************************************
+ * The TableBench class benchmarks the relational algebra operators of Table on synthetic
+ * MovieDB data.  Each benchmark runs one whole operator over tables of 'rows' movies
+ * and reports the average time per operation.  Run the suite from the bench module with
+ *
+ *     java -jar target/benchmarks.jar -rf json -rff results.json
+ *
+ * and compare two result files with Compare (see README).  Use -p rows=10000 for a
+ * quick run; the 10M row setting needs a large heap (see jvmArgsAppend below).
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3, time = 2)
+@Measurement (iterations = 5, time = 2)
+@Fork (value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx12g" })
+public class TableBench
+{
+    /** The number of movies (cinema and starsIn have as many tuples)
+     */
+    @Param ({ "10000", "100000", "1000000", "10000000" })
+    public int rows;
+
+    private List <Comparable []> movieRows;
+
+    private Object movie;
+    private Object cinema;
+    private Object movieStar;
+    private Object starsIn;
+    private Object movieExec;
+    private Object studio;
+
+    /** A key present in the movie table
+     */
+    private Object movieKey;
+
+    /*************************************************************************************
+     * Generate and load the six tables, and save movie so load has a file to read.
+     */
+    @Setup (Level.Trial)
+    public void setup ()
+        throws IOException
+    {
+        Files.createDirectories (Paths.get ("store"));
+        MovieData data = new MovieData (rows);
+
+        movieRows = data.movie ();
+        movie     = MovieData.table (MovieData.MOVIE, movieRows);
+        cinema    = MovieData.table (MovieData.CINEMA, data.cinema ());
+        movieStar = MovieData.table (MovieData.MOVIE_STAR, data.movieStar ());
+        starsIn   = MovieData.table (MovieData.STARS_IN, data.starsIn ());
+        movieExec = MovieData.table (MovieData.MOVIE_EXEC, data.movieExec ());
+        studio    = MovieData.table (MovieData.STUDIO, data.studio ());
+
+        int mid  = rows / 2;
+        movieKey = Db.key (MovieData.title (mid), MovieData.year (mid));
+
+        if (Db.size (movie) != rows || Db.size (cinema) != rows) {
+            throw new IllegalStateException ("generated tables have the wrong size");
+        } // if
+        Db.save (movie);
+    } // setup
+
+    /*************************************************************************************
+     * Insert every movie tuple, one at a time, into a new table.
+     */
+    @Benchmark
+    public Object insert ()
+    {
+        Object t = MovieData.table (MovieData.MOVIE);
+        for (Comparable [] tup : movieRows) Db.insert (t, tup);
+        return t;
+    } // insert
+
+    /*************************************************************************************
+     * Bulk-load every movie tuple into a new table.
+     */
+    @Benchmark
+    public Object insertAll ()
+    {
+        return MovieData.table (MovieData.MOVIE, movieRows);
+    } // insertAll
+
+    /*************************************************************************************
+     * Project movie onto two non-key attributes.
+     */
+    @Benchmark
+    public Object project ()
+    {
+        return Db.project (movie, "genre studioName");
+    } // project
+
+    /*************************************************************************************
+     * Select by predicate: a full scan keeping about a quarter of the tuples.
+     */
+    @Benchmark
+    public Object selectPredicate ()
+    {
+        return Db.select (movie, t -> (Integer) t [1] >= 1990);
+    } // selectPredicate
+
+    /*************************************************************************************
+     * Select by primary key: an index lookup.
+     */
+    @Benchmark
+    public Object selectKey ()
+    {
+        return Db.select (movie, movieKey);
+    } // selectKey
+
+    /*************************************************************************************
+     * Union movie and cinema (50% overlap).
+     */
+    @Benchmark
+    public Object union ()
+    {
+        return Db.union (movie, cinema);
+    } // union
+
+    /*************************************************************************************
+     * Subtract cinema from movie (50% overlap).
+     */
+    @Benchmark
+    public Object minus ()
+    {
+        return Db.minus (movie, cinema);
+    } // minus
+
+    /*************************************************************************************
+     * Join movie with studio on the studio name (many-to-one).
+     */
+    @Benchmark
+    public Object joinStudio ()
+    {
+        return Db.join (movie, "studioName", "name", studio);
+    } // joinStudio
+
+    /*************************************************************************************
+     * Join starsIn with movie on its composite key (one-to-one, both sides large).
+     */
+    @Benchmark
+    public Object joinMovie ()
+    {
+        return Db.join (starsIn, "movieTitle movieYear", "title year", movie);
+    } // joinMovie
+
+    /*************************************************************************************
+     * Join starsIn with movieStar on the star name.
+     */
+    @Benchmark
+    public Object joinStar ()
+    {
+        return Db.join (starsIn, "starName", "name", movieStar);
+    } // joinStar
+
+    /*************************************************************************************
+     * Join movie with movieExec on the producer's certificate number.
+     */
+    @Benchmark
+    public Object joinExec ()
+    {
+        return Db.join (movie, "producerNo", "certNo", movieExec);
+    } // joinExec
+
+    /*************************************************************************************
+     * Save movie to the store directory.
+     */
+    @Benchmark
+    public void save ()
+    {
+        Db.save (movie);
+    } // save
+
+    /*************************************************************************************
+     * Load movie from the store directory.
+     */
+    @Benchmark
+    public Object load ()
+    {
+        return Db.load ("movie");
+    } // load
+
+} // TableBench class
+
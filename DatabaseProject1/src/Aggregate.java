@@ -0,0 +1,140 @@
+/****************************************************************************************
+ * @file  Aggregate.java
+ *
+ * @author   John Miller
+ */
+
+/****************************************************************************************
+ * The Aggregate class describes an aggregate function computed per group by
+ * Table.groupBy: count, sum, avg, min or max of an attribute.  Each aggregate becomes an
+ * attribute of the result, named after the function and its attribute (e.g., avg_length)
+ * unless renamed with as.  The result domains are Long for count, Long for the sum of an
+ * integral domain (Double otherwise), Double for avg, and the attribute's own domain for
+ * min and max.
+ *
+ * #usage movie.groupBy ("studioName", Aggregate.count (), Aggregate.avg ("length").as ("avgLength"))
+ */
+public final class Aggregate
+{
+    /** The aggregate functions
+     */
+    enum Kind { COUNT, SUM, AVG, MIN, MAX }
+
+    /** The function computed
+     */
+    final Kind kind;
+
+    /** The attribute aggregated (null for count)
+     */
+    final String attr;
+
+    /** The name of the result attribute
+     */
+    final String name;
+
+    /************************************************************************************
+     * Construct an aggregate.
+     *
+     * @param _kind  the function
+     * @param _attr  the attribute aggregated
+     * @param _name  the name of the result attribute
+     */
+    private Aggregate (Kind _kind, String _attr, String _name)
+    {
+        kind = _kind;
+        attr = _attr;
+        name = _name;
+    } // constructor
+
+    /************************************************************************************
+     * Return the aggregate counting the tuples of each group.
+     *
+     * @return  the aggregate (named count)
+     */
+    public static Aggregate count ()
+    {
+        return new Aggregate (Kind.COUNT, null, "count");
+    } // count
+
+    /************************************************************************************
+     * Return the aggregate summing a numeric attribute over each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate (named sum_attr)
+     */
+    public static Aggregate sum (String attr)
+    {
+        return new Aggregate (Kind.SUM, attr, "sum_" + attr);
+    } // sum
+
+    /************************************************************************************
+     * Return the aggregate averaging a numeric attribute over each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate (named avg_attr)
+     */
+    public static Aggregate avg (String attr)
+    {
+        return new Aggregate (Kind.AVG, attr, "avg_" + attr);
+    } // avg
+
+    /************************************************************************************
+     * Return the aggregate giving the smallest value of an attribute in each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate (named min_attr)
+     */
+    public static Aggregate min (String attr)
+    {
+        return new Aggregate (Kind.MIN, attr, "min_" + attr);
+    } // min
+
+    /************************************************************************************
+     * Return the aggregate giving the largest value of an attribute in each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate (named max_attr)
+     */
+    public static Aggregate max (String attr)
+    {
+        return new Aggregate (Kind.MAX, attr, "max_" + attr);
+    } // max
+
+    /************************************************************************************
+     * Return this aggregate with its result attribute renamed.
+     *
+     * @param _name  the name of the result attribute
+     * @return  the renamed aggregate
+     */
+    public Aggregate as (String _name)
+    {
+        return new Aggregate (kind, attr, _name);
+    } // as
+
+    /************************************************************************************
+     * Return the domain of the result attribute.
+     *
+     * @param dom  the domain of the attribute aggregated (ignored for count)
+     * @return  the result domain
+     * @throws IllegalArgumentException  if sum or avg is applied to a non-numeric domain
+     */
+    Class resultDomain (Class dom)
+    {
+        switch (kind) {
+        case COUNT: return Long.class;
+        case MIN:
+        case MAX:   return dom;
+        default:
+            if (! Number.class.isAssignableFrom (dom)) {
+                throw new IllegalArgumentException ("Aggregate: " + this + " needs a numeric attribute");
+            } // if
+            return (kind == Kind.AVG || dom == Double.class || dom == Float.class) ? Double.class : Long.class;
+        } // switch
+    } // resultDomain
+
+    public String toString ()
+    {
+        return kind.name ().toLowerCase () + " (" + ((attr == null) ? "*" : attr) + ")";
+    } // toString
+
+} // Aggregate class
@@ -0,0 +1,266 @@
+/****************************************************************************************
+ * @file  BloomFilter.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The BloomFilter class records the key values (on some columns) of a table's tuples, so
+ * that join, minus, semiJoin and antiJoin can discard most tuples of the other input that
+ * have no match without looking them up in a hash table.  It may answer "maybe" for a key
+ * it does not hold (under 1% of the time when full), but never "no" for one it holds.
+ *
+ * The filter is blocked: the BITS bits of a key all lie in one 64-bit word chosen by its
+ * hash, so a lookup reads one word.  A key is hashed from the hash codes of its values,
+ * which Java specifies for the domains of a table, so a filter saved with its table
+ * (see Table.save) is valid in a later session.  A filter covers a prefix of the table's
+ * tuples (tables are append-only) and is extended to cover later tuples as needed.
+ * Saved filters are only a cache: a damaged file is discarded and its filters rebuilt.
+ */
+class BloomFilter
+{
+    /** Filename extension for the Bloom filters saved with a table
+     */
+    static final String EXT = ".blm";
+
+    /** Tables with fewer tuples than this are not filtered (their hash tables are small)
+     */
+    static final int MIN_ROWS = 1 << 12;
+
+    /** The number of bits per key the filter is sized for
+     */
+    private static final int BITS_PER_KEY = 10;
+
+    /** The number of bits set per key
+     */
+    private static final int BITS = 5;
+
+    /** The bit words (a power of two of them)
+     */
+    private final long [] words;
+
+    /** The number of keys the filter is sized for
+     */
+    private final int capacity;
+
+    /** The number of the table's tuples covered (guarded by the filter's lock)
+     */
+    private int rows;
+
+    /************************************************************************************
+     * Construct an empty filter sized for the given number of keys.
+     *
+     * @param _capacity  the expected number of keys
+     */
+    BloomFilter (int _capacity)
+    {
+        capacity = Math.max (_capacity, MIN_ROWS);
+        words    = new long [words (capacity)];
+    } // constructor
+
+    /************************************************************************************
+     * Construct a filter from saved words.
+     */
+    private BloomFilter (long [] _words, int _capacity, int _rows)
+    {
+        words    = _words;
+        capacity = _capacity;
+        rows     = _rows;
+    } // constructor
+
+    /************************************************************************************
+     * Extend the filter with the keys of the tuples it does not yet cover.
+     *
+     * @param tups  the table's tuples (a prefix of them)
+     * @param cols  the key columns
+     * @return  this filter, now covering at least the given tuples
+     */
+    synchronized BloomFilter cover (List <Comparable []> tups, int [] cols)
+    {
+        for (int n = tups.size (); rows < n; rows++) put (hash (tups.get (rows), cols));
+        return this;
+    } // cover
+
+    /************************************************************************************
+     * Determine whether a tuple's key may be in the filter.
+     *
+     * @param tup   the tuple
+     * @param cols  the key columns
+     * @return  false if the key is certainly not in the filter
+     */
+    boolean mightContain (Comparable [] tup, int [] cols)
+    {
+        long x    = mix (hash (tup, cols));
+        long mask = mask (x);
+        return (words [(int) (x >>> 32) & (words.length - 1)] & mask) == mask;
+    } // mightContain
+
+    /************************************************************************************
+     * Return the number of keys the filter is sized for.
+     */
+    int capacity ()
+    {
+        return capacity;
+    } // capacity
+
+    /************************************************************************************
+     * Return the number of the table's tuples covered.
+     */
+    synchronized int rows ()
+    {
+        return rows;
+    } // rows
+
+    /************************************************************************************
+     * Write the filter, recording that it covers at most the given number of tuples.
+     *
+     * @param o    the output
+     * @param max  the number of tuples being saved with the filter
+     */
+    private synchronized void write (DataOutputStream o, int max)
+            throws IOException
+    {
+        o.writeInt (capacity);
+        o.writeInt (Math.min (rows, max));
+        o.writeInt (words.length);
+        for (long w : words) o.writeLong (w);
+    } // write
+
+    /************************************************************************************
+     * Read a filter written by write, checking its sizes before allocating its words.
+     *
+     * @param in     the input
+     * @param bytes  the number of bytes left in the file
+     * @return  the filter
+     * @throws IOException  if the filter cannot be read or is damaged
+     */
+    private static BloomFilter read (DataInputStream in, long bytes)
+            throws IOException
+    {
+        int capacity = in.readInt (), rows = in.readInt (), n = in.readInt ();
+        if (capacity < MIN_ROWS || rows < 0 || n != words (capacity) || 8L * n > bytes) {
+            throw new IOException ("BloomFilter: damaged filter (capacity " + capacity + ", " + n + " words)");
+        } // if
+        long [] words = new long [n];
+        for (int i = 0; i < words.length; i++) words [i] = in.readLong ();
+        return new BloomFilter (words, capacity, rows);
+    } // read
+
+    /************************************************************************************
+     * Save a table's filters (by the attributes they are on) in the given file, or
+     * delete the file if there are none, so that it never outlives the tuples it covers.
+     * The filters are written to a temporary file that then replaces the old one, so a
+     * crash while saving leaves the previous file intact.
+     *
+     * @param file     the path of the file
+     * @param filters  the filters
+     * @param max      the number of tuples being saved with the filters
+     * @throws IOException  if the file cannot be written
+     */
+    static void save (String file, Map <String, BloomFilter> filters, int max)
+            throws IOException
+    {
+        if (filters.isEmpty ()) {
+            new File (file).delete ();
+            return;
+        } // if
+        Path tmp = Paths.get (file + ".tmp");
+        try (FileOutputStream  f = new FileOutputStream (tmp.toFile ());
+             DataOutputStream  o = new DataOutputStream (new BufferedOutputStream (f))) {
+            Map <String, BloomFilter> copy = new LinkedHashMap <> (filters);
+            o.writeInt (copy.size ());
+            for (Map.Entry <String, BloomFilter> e : copy.entrySet ()) {
+                o.writeUTF (e.getKey ());
+                e.getValue ().write (o, max);
+            } // for
+            o.flush ();
+            f.getFD ().sync ();
+        } // try
+        Files.move (tmp, Paths.get (file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } // save
+
+    /************************************************************************************
+     * Load the filters saved in the given file, keeping those covering no more than the
+     * given number of tuples.
+     *
+     * @param file  the path of the file
+     * @param max   the number of tuples loaded
+     * @return  the filters by the attributes they are on (empty if there is no file)
+     * @throws IOException  if the file cannot be read or is damaged
+     */
+    static Map <String, BloomFilter> load (String file, int max)
+            throws IOException
+    {
+        Map <String, BloomFilter> filters = new HashMap <> ();
+        File f = new File (file);
+        if (! f.exists ()) return filters;
+        long bytes = f.length ();
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (f)))) {
+            for (int n = in.readInt (); n > 0; n--) {
+                String      names  = in.readUTF ();
+                BloomFilter filter = read (in, bytes);
+                if (filter.rows <= max) filters.put (names, filter);
+            } // for
+        } // try
+        return filters;
+    } // load
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the number of words of a filter sized for the given number of keys: a power
+     * of two giving at least BITS_PER_KEY bits per key.
+     */
+    private static int words (int capacity)
+    {
+        long bits = (long) capacity * BITS_PER_KEY;
+        return (int) Math.min (1 << 30, Long.highestOneBit ((bits + 63) / 64 * 2 - 1));
+    } // words
+
+    /************************************************************************************
+     * Add a key (given by its hash) to the filter.
+     */
+    private void put (int h)
+    {
+        long x = mix (h);
+        words [(int) (x >>> 32) & (words.length - 1)] |= mask (x);
+    } // put
+
+    /************************************************************************************
+     * Return the hash of a tuple's key: its values' hash codes combined as by List.
+     */
+    private static int hash (Comparable [] tup, int [] cols)
+    {
+        int h = 1;
+        for (int c : cols) h = 31 * h + tup [c].hashCode ();
+        return h;
+    } // hash
+
+    /************************************************************************************
+     * Spread a hash over 64 bits (the SplitMix64 finalizer).
+     */
+    private static long mix (int h)
+    {
+        long z = h * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    } // mix
+
+    /************************************************************************************
+     * Return the bits of a key within its word, taken from the low bits of its hash.
+     */
+    private static long mask (long x)
+    {
+        long m = 0;
+        for (int i = 0; i < BITS; i++) m |= 1L << (x >>> (6 * i));
+        return m;
+    } // mask
+
+} // BloomFilter class
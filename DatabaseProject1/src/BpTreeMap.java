@@ -0,0 +1,665 @@
+
+/****************************************************************************************
+ * @file  BpTreeMap.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The BpTreeMap class provides B+Tree maps.  B+Trees are used as multi-level index
+ * structures that provide efficient access for both point queries and range queries.
+ * All keys are kept in the leaves, which are linked left to right, so iterating over the
+ * map (or a sub-map) yields the entries in key order.  As with TreeMap, a sub-map is a
+ * view backed by the map: nothing is copied, and puts through either are seen by both.
+ */
+public class BpTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+       implements SortedMap <K, V>, Serializable
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The maximum number of keys in a node (a node splits when it would exceed this)
+     */
+    private static final int MAX = 32;
+
+    /*************************************************************************************
+     * The Node class holds the keys of a node and either the values (leaf) or the
+     * children (internal node).  In an internal node, child i holds the keys k with
+     * key [i-1] <= k < key [i].
+     */
+    private static class Node
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final boolean  isLeaf;
+        int            nKeys;
+        final Object[] key;
+        final Object[] ref;
+        Node           next;                     // right sibling (leaves only)
+
+        Node (boolean _isLeaf)
+        {
+            isLeaf = _isLeaf;
+            key    = new Object [MAX + 1];
+            ref    = new Object [MAX + 2];
+        } // constructor
+    } // Node inner class
+
+    /*************************************************************************************
+     * The Split class carries the separator key and new right node up from a split.
+     */
+    private static class Split
+    {
+        final Object sep;
+        final Node   right;
+
+        Split (Object _sep, Node _right) { sep = _sep; right = _right; }
+    } // Split inner class
+
+    /** The root of the B+Tree
+     */
+    private Node root = new Node (true);
+
+    /** The first (leftmost) leaf
+     */
+    private Node first = root;
+
+    /** The number of keys in the B+Tree
+     */
+    private int keyCount = 0;
+
+    /** The value replaced by the last put (null if the key was new)
+     */
+    private transient V replaced;
+
+    /************************************************************************************
+     * Construct an empty B+Tree map.
+     */
+    public BpTreeMap ()
+    {
+    } // constructor
+
+    /************************************************************************************
+     * Return null to use the natural order based on the key type.  This requires the key
+     * type to implement Comparable.
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /************************************************************************************
+     * Return a set containing all the entries as pairs of keys and values, in key order.
+     *
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return keyCount; }
+
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    Node n = first;
+                    int  i = 0;
+
+                    public boolean hasNext ()
+                    {
+                        while (n != null && i >= n.nKeys) { n = n.next; i = 0; }
+                        return n != null;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) n.key [i], (V) n.ref [i]);
+                        i++;
+                        return e;
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /************************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     *
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        if (key == null) return null;
+        Node n = findLeaf ((K) key);
+        int  i = search (n, (K) key);
+        return (i >= 0) ? (V) n.ref [i] : null;
+    } // get
+
+    /************************************************************************************
+     * Determine whether the B+Tree map contains the given key.
+     *
+     * @param key  the key to look for
+     * @return  whether the key is in the map
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /************************************************************************************
+     * Put the key-value pair in the B+Tree map.
+     *
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the value previously associated with the key or null if none
+     */
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("BpTreeMap.put: null key");
+        replaced = null;
+        Split s = insert (root, key, value);
+        if (s != null) {
+            Node r = new Node (false);
+            r.key [0] = s.sep;
+            r.ref [0] = root;
+            r.ref [1] = s.right;
+            r.nKeys   = 1;
+            root      = r;
+        } // if
+        V old = replaced;
+        replaced = null;
+        return old;
+    } // put
+
+    /************************************************************************************
+     * Put all the entries of the given map in the B+Tree map.  When this map is empty and
+     * m is a naturally ordered SortedMap, the tree is built bottom-up from the sorted
+     * entries (linear time) rather than by inserting one key at a time.
+     *
+     * @param m  the map whose entries are to be added
+     */
+    public void putAll (Map <? extends K, ? extends V> m)
+    {
+        if (keyCount == 0 && ! m.isEmpty () && m instanceof SortedMap &&
+            ((SortedMap <? extends K, ? extends V>) m).comparator () == null) {
+            bulkLoad (m.entrySet ().iterator ());
+        } else {
+            super.putAll (m);
+        } // if
+    } // putAll
+
+    /************************************************************************************
+     * Return the number of keys in the B+Tree map.
+     *
+     * @return  the number of keys
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    /************************************************************************************
+     * Return the first (smallest) key in the B+Tree map.
+     *
+     * @return  the first key
+     */
+    @SuppressWarnings("unchecked")
+    public K firstKey ()
+    {
+        if (keyCount == 0) throw new NoSuchElementException ("BpTreeMap.firstKey: empty map");
+        return (K) first.key [0];
+    } // firstKey
+
+    /************************************************************************************
+     * Return the last (largest) key in the B+Tree map.
+     *
+     * @return  the last key
+     */
+    @SuppressWarnings("unchecked")
+    public K lastKey ()
+    {
+        if (keyCount == 0) throw new NoSuchElementException ("BpTreeMap.lastKey: empty map");
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.nKeys];
+        return (K) n.key [n.nKeys - 1];
+    } // lastKey
+
+    /************************************************************************************
+     * Return the portion of the B+Tree map where key < toKey.
+     *
+     * @param toKey  the upper bound (exclusive)
+     * @return  the submap with keys in the range
+     */
+    public SortedMap <K, V> headMap (K toKey)
+    {
+        return range (null, toKey);
+    } // headMap
+
+    /************************************************************************************
+     * Return the portion of the B+Tree map where fromKey <= key.
+     *
+     * @param fromKey  the lower bound (inclusive)
+     * @return  the submap with keys in the range
+     */
+    public SortedMap <K, V> tailMap (K fromKey)
+    {
+        return range (fromKey, null);
+    } // tailMap
+
+    /************************************************************************************
+     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * i.e., fromKey <= key < toKey.
+     *
+     * @param fromKey  the lower bound (inclusive)
+     * @param toKey    the upper bound (exclusive)
+     * @return  the submap with keys in the range
+     */
+    public SortedMap <K, V> subMap (K fromKey, K toKey)
+    {
+        return range (fromKey, toKey);
+    } // subMap
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Build the tree bottom-up from entries in ascending key order: fill leaves to FILL
+     * keys, then build each internal level over the one below until one node remains.
+     * Nodes are left partly empty so later inserts do not split immediately.
+     *
+     * @param it  the iterator over the sorted entries (keys strictly ascending)
+     */
+    private void bulkLoad (Iterator <? extends Map.Entry <? extends K, ? extends V>> it)
+    {
+        final int FILL = MAX * 3 / 4;
+        List <Node>   level = new ArrayList <> ();
+        List <Object> low   = new ArrayList <> ();               // smallest key under each node
+        Node leaf = null;
+        while (it.hasNext ()) {
+            Map.Entry <? extends K, ? extends V> e = it.next ();
+            if (leaf == null || leaf.nKeys == FILL) {
+                Node nl = new Node (true);
+                if (leaf != null) leaf.next = nl;
+                leaf = nl;
+                level.add (leaf);
+                low.add (e.getKey ());
+            } // if
+            leaf.key [leaf.nKeys] = e.getKey ();
+            leaf.ref [leaf.nKeys] = e.getValue ();
+            leaf.nKeys++;
+            keyCount++;
+        } // while
+        first = level.get (0);
+
+        while (level.size () > 1) {
+            List <Node>   upper    = new ArrayList <> ();
+            List <Object> upperLow = new ArrayList <> ();
+            int i = 0;
+            while (i < level.size ()) {
+                Node n   = new Node (false);
+                int  end = Math.min (level.size (), i + FILL + 1);
+                if (level.size () - end == 1) end--;            // never leave a lone child
+                for (int j = i; j < end; j++) {
+                    n.ref [j - i] = level.get (j);
+                    if (j > i) n.key [j - i - 1] = low.get (j);
+                } // for
+                n.nKeys = end - i - 1;
+                upper.add (n);
+                upperLow.add (low.get (i));
+                i = end;
+            } // while
+            level = upper;
+            low   = upperLow;
+        } // while
+        root = level.get (0);
+    } // bulkLoad
+
+    /************************************************************************************
+     * Return the view of the entries with keys in [from, to).  A null bound is unbounded.
+     *
+     * @param from  the lower bound (inclusive) or null
+     * @param to    the upper bound (exclusive) or null
+     * @return  the submap with keys in the range
+     */
+    private SortedMap <K, V> range (K from, K to)
+    {
+        if (from != null && to != null && from.compareTo (to) > 0) {
+            throw new IllegalArgumentException ("BpTreeMap.subMap: fromKey > toKey");
+        } // if
+        return new SubMap (from, to);
+    } // range
+
+    /************************************************************************************
+     * Return the largest key less than the given key, or null if there is none.  The
+     * descent remembers the subtree just left of the path, where the key is found when
+     * the leaf reached holds no smaller key.
+     *
+     * @param to  the upper bound (exclusive)
+     * @return  the largest key below to
+     */
+    @SuppressWarnings("unchecked")
+    private K lastBefore (K to)
+    {
+        Node n = root, left = null;
+        while (! n.isLeaf) {
+            int c = child (n, to);
+            if (c > 0) left = (Node) n.ref [c - 1];
+            n = (Node) n.ref [c];
+        } // while
+        int i = search (n, to);
+        i = (i < 0) ? -i - 1 : i;
+        if (i > 0) return (K) n.key [i - 1];
+        if (left == null) return null;
+        while (! left.isLeaf) left = (Node) left.ref [left.nKeys];
+        return (left.nKeys == 0) ? null : (K) left.key [left.nKeys - 1];
+    } // lastBefore
+
+    /*************************************************************************************
+     * The SubMap class is the view of the entries with keys in [lo, hi) (a null bound is
+     * unbounded).  Its entries are found by walking the leaf chain from the leaf holding
+     * lo; size counts them.
+     */
+    private final class SubMap
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        private final K lo, hi;
+
+        SubMap (K _lo, K _hi)
+        {
+            lo = _lo;
+            hi = _hi;
+        } // constructor
+
+        /** Return whether the key is within the bounds. */
+        private boolean inRange (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
+
+        /** Return whether the key may bound a view of this one (up to hi itself). */
+        private boolean inBounds (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) <= 0);
+        } // inBounds
+
+        public Comparator <? super K> comparator ()
+        {
+            return null;
+        } // comparator
+
+        @SuppressWarnings("unchecked")
+        public V get (Object key)
+        {
+            return (key != null && inRange ((K) key)) ? BpTreeMap.this.get (key) : null;
+        } // get
+
+        public boolean containsKey (Object key)
+        {
+            return get (key) != null;
+        } // containsKey
+
+        public V put (K key, V value)
+        {
+            if (key == null) throw new NullPointerException ("BpTreeMap.put: null key");
+            if (! inRange (key)) throw new IllegalArgumentException ("BpTreeMap.put: key out of range");
+            return BpTreeMap.this.put (key, value);
+        } // put
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, V>> it = entrySet ().iterator ();
+            if (! it.hasNext ()) throw new NoSuchElementException ("BpTreeMap.firstKey: empty map");
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K k = (hi == null) ? ((keyCount == 0) ? null : BpTreeMap.this.lastKey ()) : lastBefore (hi);
+            if (k == null || lo != null && k.compareTo (lo) < 0) {
+                throw new NoSuchElementException ("BpTreeMap.lastKey: empty map");
+            } // if
+            return k;
+        } // lastKey
+
+        public SortedMap <K, V> headMap (K toKey)
+        {
+            return subMap (lo, toKey);
+        } // headMap
+
+        public SortedMap <K, V> tailMap (K fromKey)
+        {
+            return subMap (fromKey, hi);
+        } // tailMap
+
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            if (fromKey != null && ! inBounds (fromKey) || toKey != null && ! inBounds (toKey)) {
+                throw new IllegalArgumentException ("BpTreeMap.subMap: key out of range");
+            } // if
+            return range (fromKey, toKey);
+        } // subMap
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public int size ()
+                {
+                    int count = 0;
+                    for (Iterator <Map.Entry <K, V>> it = iterator (); it.hasNext (); it.next ()) count++;
+                    return count;
+                } // size
+
+                public Iterator <Map.Entry <K, V>> iterator ()
+                {
+                    return new Iterator <Map.Entry <K, V>> () {
+                        Node n = (lo == null) ? first : findLeaf (lo);
+                        int  i = 0;
+                        {
+                            if (lo != null && (i = search (n, lo)) < 0) i = -i - 1;
+                        } // initializer
+
+                        @SuppressWarnings("unchecked")
+                        public boolean hasNext ()
+                        {
+                            while (n != null && i >= n.nKeys) { n = n.next; i = 0; }
+                            if (n != null && hi != null && ((K) n.key [i]).compareTo (hi) >= 0) n = null;
+                            return n != null;
+                        } // hasNext
+
+                        @SuppressWarnings("unchecked")
+                        public Map.Entry <K, V> next ()
+                        {
+                            if (! hasNext ()) throw new NoSuchElementException ();
+                            Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) n.key [i], (V) n.ref [i]);
+                            i++;
+                            return e;
+                        } // next
+                    }; // Iterator
+                } // iterator
+            }; // AbstractSet
+        } // entrySet
+    } // SubMap inner class
+
+    /************************************************************************************
+     * Find the leaf node where the given key is or would be located.
+     *
+     * @param key  the key to locate
+     * @return  the leaf node for the key
+     */
+    private Node findLeaf (K key)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [child (n, key)];
+        return n;
+    } // findLeaf
+
+    /************************************************************************************
+     * Return the index of the child of internal node n to follow for the given key.
+     *
+     * @param n    the internal node
+     * @param key  the key to locate
+     * @return  the index of the first separator greater than key (the child index)
+     */
+    @SuppressWarnings("unchecked")
+    private int child (Node n, K key)
+    {
+        int lo = 0, hi = n.nKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compareTo ((K) n.key [mid]) < 0) hi = mid; else lo = mid + 1;
+        } // while
+        return lo;
+    } // child
+
+    /************************************************************************************
+     * Binary search leaf n for the given key.
+     *
+     * @param n    the leaf node
+     * @param key  the key to find
+     * @return  the key's index if found, else -(insertion point) - 1
+     */
+    @SuppressWarnings("unchecked")
+    private int search (Node n, K key)
+    {
+        int lo = 0, hi = n.nKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo ((K) n.key [mid]);
+            if (cmp < 0)      hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else              return mid;
+        } // while
+        return -(lo + 1);
+    } // search
+
+    /************************************************************************************
+     * Recursively insert the key-value pair into the subtree rooted at node n.
+     *
+     * @param n      the root of the subtree
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the split to propagate upward or null if node n did not split
+     */
+    @SuppressWarnings("unchecked")
+    private Split insert (Node n, K key, V value)
+    {
+        if (n.isLeaf) {
+            int i = search (n, key);
+            if (i >= 0) {
+                replaced  = (V) n.ref [i];
+                n.ref [i] = value;
+                return null;
+            } // if
+            i = -i - 1;
+            System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+            System.arraycopy (n.ref, i, n.ref, i + 1, n.nKeys - i);
+            n.key [i] = key;
+            n.ref [i] = value;
+            n.nKeys++;
+            keyCount++;
+            return (n.nKeys > MAX) ? splitLeaf (n) : null;
+        } // if
+
+        int  i = child (n, key);
+        Split s = insert ((Node) n.ref [i], key, value);
+        if (s == null) return null;
+        System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+        System.arraycopy (n.ref, i + 1, n.ref, i + 2, n.nKeys - i);
+        n.key [i]     = s.sep;
+        n.ref [i + 1] = s.right;
+        n.nKeys++;
+        return (n.nKeys > MAX) ? splitInternal (n) : null;
+    } // insert
+
+    /************************************************************************************
+     * Split an overfull leaf, moving its upper half to a new right sibling.
+     *
+     * @param n  the leaf to split
+     * @return  the split (separator is the first key of the right leaf)
+     */
+    private Split splitLeaf (Node n)
+    {
+        Node r   = new Node (true);
+        int  mid = n.nKeys / 2;
+        r.nKeys  = n.nKeys - mid;
+        System.arraycopy (n.key, mid, r.key, 0, r.nKeys);
+        System.arraycopy (n.ref, mid, r.ref, 0, r.nKeys);
+        Arrays.fill (n.key, mid, n.nKeys, null);
+        Arrays.fill (n.ref, mid, n.nKeys, null);
+        n.nKeys  = mid;
+        r.next   = n.next;
+        n.next   = r;
+        return new Split (r.key [0], r);
+    } // splitLeaf
+
+    /************************************************************************************
+     * Split an overfull internal node, moving the middle key up.
+     *
+     * @param n  the internal node to split
+     * @return  the split (separator is the middle key)
+     */
+    private Split splitInternal (Node n)
+    {
+        Node   r   = new Node (false);
+        int    mid = n.nKeys / 2;
+        Object sep = n.key [mid];
+        r.nKeys    = n.nKeys - mid - 1;
+        System.arraycopy (n.key, mid + 1, r.key, 0, r.nKeys);
+        System.arraycopy (n.ref, mid + 1, r.ref, 0, r.nKeys + 1);
+        Arrays.fill (n.key, mid, n.nKeys, null);
+        Arrays.fill (n.ref, mid + 1, n.nKeys + 1, null);
+        n.nKeys    = mid;
+        return new Split (sep, r);
+    } // splitInternal
+
+    /************************************************************************************
+     * The main method used for testing.
+     *
+     * @param args  the command-line arguments (args [0] gives the number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = (args.length == 1) ? Integer.valueOf (args [0]) : 10000;
+        BpTreeMap <Integer, Integer> bpt = new BpTreeMap <> ();
+        TreeMap <Integer, Integer>   tm  = new TreeMap <> ();
+        Random rng = new Random (0);
+        for (int i = 0; i < totalKeys; i++) {
+            int k = rng.nextInt (2 * totalKeys);
+            bpt.put (k, i);
+            tm.put (k, i);
+        } // for
+
+        out.println ("size agrees:     " + (bpt.size () == tm.size ()));
+        out.println ("entries agree:   " + new ArrayList <> (bpt.entrySet ()).equals (new ArrayList <> (tm.entrySet ())));
+        out.println ("range agrees:    " + bpt.subMap (100, 500).equals (tm.subMap (100, 500)));
+        out.println ("view agrees:     " + (bpt.headMap (700).lastKey ().equals (tm.headMap (700).lastKey ())
+                                            && bpt.tailMap (300).headMap (400).equals (tm.tailMap (300).headMap (400))));
+        out.println ("first/last keys: " + bpt.firstKey () + " " + bpt.lastKey ());
+
+        BpTreeMap <Integer, Integer> bulk = new BpTreeMap <> ();
+        bulk.putAll (tm);
+        for (int i = 0; i < totalKeys; i++) bulk.put (2 * totalKeys + i, i);
+        for (int i = 0; i < totalKeys; i++) tm.put (2 * totalKeys + i, i);
+        out.println ("bulk agrees:     " + new ArrayList <> (bulk.entrySet ()).equals (new ArrayList <> (tm.entrySet ())));
+        for (int i = 0; i < 3 * totalKeys; i++) {
+            if (! Objects.equals (bulk.get (i), tm.get (i))) out.println ("bulk get mismatch for key " + i);
+        } // for
+        for (int i = 0; i < 2 * totalKeys; i++) {
+            if (! Objects.equals (bpt.get (i), tm.get (i))) out.println ("get mismatch for key " + i);
+        } // for
+    } // main
+
+} // BpTreeMap class
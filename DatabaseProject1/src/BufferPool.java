@@ -0,0 +1,530 @@
+/****************************************************************************************
+ * @file  BufferPool.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/****************************************************************************************
+ * The BufferPool class caches file pages in a fixed number of frames shared by all paged
+ * tables (see PagedStore).  A page is pinned while in use and cannot be evicted until
+ * every pin is released.  When a page is needed and not resident, the CLOCK algorithm
+ * picks the victim: the hand sweeps the frames, skipping pinned ones and clearing the
+ * reference bit of recently used ones, and takes the first unreferenced frame, writing
+ * it back first if it is dirty.  The frames are allocated off the Java heap.
+ *
+ * Page I/O runs outside the pool's monitor: a frame being read in or written back is
+ * marked busy, and threads that want its page (or want to evict it) wait until the I/O
+ * is done.  Pinned pages are never written back, so a writer's changes are not torn.
+ *
+ * #usage BufferPool.setCapacity (16384);   // 128 MB of 8 KB pages
+ */
+public class BufferPool
+{
+    /** The size of a page (and frame) in bytes
+     */
+    static final int PAGE_SIZE = PageFile.PAGE_SIZE;
+
+    /** The default number of frames (64 MB)
+     */
+    private static final int DEFAULT_FRAMES = 8192;
+
+    /** The pool shared by all paged tables
+     */
+    private static volatile BufferPool shared;
+
+    /** Counter for identifying the files whose pages are cached
+     */
+    private static final AtomicInteger files = new AtomicInteger ();
+
+    /*************************************************************************************
+     * The Frame class holds one page of a file while it is resident.
+     */
+    static final class Frame
+    {
+        final BufferPool pool;                // the pool owning the frame
+        final ByteBuffer buf;                 // the page contents
+        long        key     = -1;             // (file id, page number) or -1 if free
+        FileChannel ch;                       // the channel of the page's file
+        int         pins    = 0;              // the number of users of the page
+        boolean     ref     = false;          // referenced since the hand last passed
+        boolean     dirty   = false;          // modified since read or written back
+        boolean     loading = false;          // being read in (others wait)
+        boolean     writing = false;          // being written back (others wait)
+
+        Frame (BufferPool _pool, ByteBuffer _buf)
+        {
+            pool = _pool;
+            buf  = _buf;
+        } // constructor
+
+        /** Return whether the page is being read in or written back. */
+        boolean busy ()
+        {
+            return loading || writing;
+        } // busy
+
+        /** Return the page contents (absolute gets and puts only). */
+        ByteBuffer buf ()
+        {
+            return buf;
+        } // buf
+    } // Frame inner class
+
+    /** The frames
+     */
+    private final Frame [] frames;
+
+    /** The resident pages, keyed by (file id, page number)
+     */
+    private final Map <Long, Frame> resident;
+
+    /** The position of the clock hand
+     */
+    private int hand = 0;
+
+    /** Whether the pool is being replaced (pins wait for the successor)
+     */
+    private boolean retired = false;
+
+    /** The pool that replaced this one, to which later pins are passed
+     */
+    private BufferPool successor;
+
+    /** The number of threads waiting for pins to be released
+     */
+    private int drains = 0;
+
+    /** Counters: pins served from memory, pins that read the page, evicted pages, and
+     *  pages written back
+     */
+    private long hits, misses, evictions, writeBacks;
+
+    /************************************************************************************
+     * Construct a buffer pool with the given number of frames.
+     *
+     * @param capacity  the number of frames
+     */
+    private BufferPool (int capacity)
+    {
+        frames   = new Frame [capacity];
+        resident = new HashMap <> (2 * capacity);
+        ByteBuffer all = ByteBuffer.allocateDirect (capacity * PAGE_SIZE);
+        for (int i = 0; i < capacity; i++) {
+            all.limit ((i + 1) * PAGE_SIZE).position (i * PAGE_SIZE);
+            frames [i] = new Frame (this, all.slice ());
+        } // for
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Public Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Replace the shared pool by one with the given number of frames.  The current pool
+     * is quiesced first: new pins wait, the pins held are released by their users, and
+     * the dirty pages are written back.  Pins that were waiting then go to the new pool.
+     * The calling thread must not hold a pin.
+     *
+     * @param capacity  the number of frames (at least 16)
+     */
+    public static synchronized void setCapacity (int capacity)
+    {
+        if (capacity < 16) throw new IllegalArgumentException ("BufferPool: capacity must be at least 16 frames");
+        BufferPool old  = shared;
+        BufferPool next = new BufferPool (capacity);
+        if (old != null) {
+            try {
+                old.quiesce ();
+                old.flushAll ();
+            } catch (IOException ex) {
+                old.resume (null);
+                throw new UncheckedIOException ("BufferPool: unable to write back pages", ex);
+            } // try
+            old.resume (next);
+        } // if
+        shared = next;
+    } // setCapacity
+
+    /************************************************************************************
+     * Return the number of pins served by a resident page.
+     */
+    public static long hits ()
+    {
+        BufferPool p = pool ();
+        synchronized (p) { return p.hits; }
+    } // hits
+
+    /************************************************************************************
+     * Return the number of pins that had to read the page from its file.
+     */
+    public static long misses ()
+    {
+        BufferPool p = pool ();
+        synchronized (p) { return p.misses; }
+    } // misses
+
+    /************************************************************************************
+     * Return the number of pages evicted to make room for others.
+     */
+    public static long evictions ()
+    {
+        BufferPool p = pool ();
+        synchronized (p) { return p.evictions; }
+    } // evictions
+
+    /************************************************************************************
+     * Return the number of dirty pages written back to their files.
+     */
+    public static long writeBacks ()
+    {
+        BufferPool p = pool ();
+        synchronized (p) { return p.writeBacks; }
+    } // writeBacks
+
+    /************************************************************************************
+     * Reset the counters to zero.
+     */
+    public static void resetStats ()
+    {
+        BufferPool p = pool ();
+        synchronized (p) { p.hits = p.misses = p.evictions = p.writeBacks = 0; }
+    } // resetStats
+
+    /************************************************************************************
+     * Return a one-line summary of the counters.
+     */
+    public static String report ()
+    {
+        BufferPool p = pool ();
+        synchronized (p) {
+            long pins = p.hits + p.misses;
+            return String.format ("buffer pool  frames %d  hits %d  misses %d  hit ratio %.3f  evictions %d  write-backs %d",
+                                  p.frames.length, p.hits, p.misses, (pins == 0) ? 0.0 : (double) p.hits / pins,
+                                  p.evictions, p.writeBacks);
+        } // synchronized
+    } // report
+
+    //----------------------------------------------------------------------------------
+    // Package Methods (used by PagedStore)
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the shared pool, creating it with the default capacity on first use.
+     */
+    static BufferPool pool ()
+    {
+        BufferPool p = shared;
+        if (p == null) {
+            synchronized (BufferPool.class) {
+                if (shared == null) shared = new BufferPool (DEFAULT_FRAMES);
+                p = shared;
+            } // synchronized
+        } // if
+        return p;
+    } // pool
+
+    /************************************************************************************
+     * Return a new identifier for a file whose pages are to be cached.
+     */
+    static int register ()
+    {
+        return files.incrementAndGet ();
+    } // register
+
+    /************************************************************************************
+     * Pin the page of the file, reading it in if it is not resident.  A fresh page is a
+     * new page at the end of the file: it is not read, and starts with a zero row count.
+     *
+     * @param file   the file's identifier (see register)
+     * @param ch     the channel of the file
+     * @param page   the page number within the file
+     * @param fresh  whether the page is new
+     * @return  the frame holding the page (release it with unpin)
+     * @throws IOException  if the page or a victim's write-back fails
+     */
+    Frame pin (int file, FileChannel ch, int page, boolean fresh)
+          throws IOException
+    {
+        long  key     = ((long) file << 32) | page;
+        Frame f       = null;
+        Frame cleaned = null;                                   // the victim just written back
+        for ( ; ; ) {
+            BufferPool next;
+            synchronized (this) {
+                while (retired && successor == null) await ();
+                next = successor;
+                if (next == null) {
+                    while ((f = resident.get (key)) != null && f.busy ()) await ();
+                    if (f != null) {
+                        f.pins++;
+                        f.ref = true;
+                        hits++;
+                        return f;
+                    } // if
+
+                    boolean reuse = cleaned != null && cleaned.pins == 0 && ! cleaned.busy () && ! cleaned.dirty;
+                    f = reuse ? cleaned : victim ();
+                    if (! f.dirty) {
+                        misses++;
+                        if (f.key != -1) {
+                            resident.remove (f.key);
+                            evictions++;
+                        } // if
+                        f.key     = key;
+                        f.ch      = ch;
+                        f.pins    = 1;
+                        f.ref     = true;
+                        f.dirty   = fresh;
+                        f.loading = ! fresh;
+                        if (fresh) f.buf.putInt (0, 0);
+                        resident.put (key, f);
+                        break;
+                    } // if
+                    f.writing = true;                           // write back outside the monitor
+                } // if
+            } // synchronized
+            if (next != null) return next.pin (file, ch, page, fresh);
+            writeBack (List.of (f));
+            cleaned = f;
+        } // for
+        if (fresh) return f;
+
+        boolean ok = false;
+        try {
+            ByteBuffer b = f.buf.duplicate ();
+            b.clear ();
+            long pos = (long) page * PAGE_SIZE;
+            while (b.hasRemaining ()) {
+                int n = ch.read (b, pos + b.position ());
+                if (n < 0) break;
+            } // while
+            while (b.hasRemaining ()) b.put ((byte) 0);         // past the end of the file
+            ok = true;
+        } finally {
+            synchronized (this) {
+                f.loading = false;
+                if (! ok) {
+                    resident.remove (key);
+                    f.key  = -1;
+                    f.pins = 0;
+                } // if
+                notifyAll ();
+            } // synchronized
+        } // try
+        return f;
+    } // pin
+
+    /************************************************************************************
+     * Release a pin on a page.
+     *
+     * @param f      the frame returned by pin
+     * @param dirty  whether the page was modified
+     */
+    void unpin (Frame f, boolean dirty)
+    {
+        BufferPool p = f.pool;                                  // pin may have gone to a successor
+        synchronized (p) {
+            f.pins--;
+            if (dirty) f.dirty = true;
+            if (f.pins == 0 && p.drains > 0) p.notifyAll ();
+        } // synchronized
+    } // unpin
+
+    /************************************************************************************
+     * Write back the dirty pages of the file.  A page that is pinned is written once its
+     * pins are released.
+     *
+     * @param file  the file's identifier
+     * @throws IOException  if a page cannot be written
+     */
+    void flush (int file)
+         throws IOException
+    {
+        for ( ; ; ) {
+            List <Frame> batch = new ArrayList <> ();
+            synchronized (this) {
+                boolean held = false;
+                for (Frame f : frames) {
+                    if (f.key == -1 || (f.key >>> 32) != file || ! f.dirty) continue;
+                    if (f.pins > 0 || f.busy ()) {
+                        held = true;
+                    } else {
+                        f.writing = true;
+                        batch.add (f);
+                    } // if
+                } // for
+                if (batch.isEmpty ()) {
+                    if (! held) return;
+                    drains++;
+                    try {
+                        await ();
+                    } finally {
+                        drains--;
+                    } // try
+                    continue;
+                } // if
+            } // synchronized
+            writeBack (batch);
+        } // for
+    } // flush
+
+    /************************************************************************************
+     * Drop the unpinned pages of the file without writing them back (the file is being
+     * deleted or abandoned).  A page being written back is waited for, since the file's
+     * channel is closed next.
+     *
+     * @param file  the file's identifier
+     */
+    synchronized void discard (int file)
+    {
+        for (Frame f : frames) {
+            try {
+                while (f.key != -1 && (f.key >>> 32) == file && f.busy ()) await ();
+            } catch (InterruptedIOException ex) {
+                return;                                         // the write-back will fail
+            } // try
+            if (f.key != -1 && (f.key >>> 32) == file && f.pins == 0) {
+                resident.remove (f.key);
+                f.key   = -1;
+                f.ch    = null;
+                f.dirty = false;
+                f.ref   = false;
+            } // if
+        } // for
+    } // discard
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Choose a frame to hold a new page using the CLOCK algorithm.  The caller writes
+     * the victim back if it is dirty.
+     *
+     * @return  an unpinned frame
+     */
+    private Frame victim ()
+    {
+        for (int step = 0; step < 2 * frames.length + 1; step++) {
+            Frame f = frames [hand];
+            hand = (hand + 1) % frames.length;
+            if (f.pins > 0 || f.busy ()) continue;
+            if (f.ref) {
+                f.ref = false;
+                continue;
+            } // if
+            return f;
+        } // for
+        throw new IllegalStateException ("BufferPool: all " + frames.length + " frames are pinned");
+    } // victim
+
+    /************************************************************************************
+     * Write dirty pages back to their files outside the monitor.  The frames must have
+     * been marked as being written (so they are neither pinned nor evicted meanwhile);
+     * the mark is cleared, and the waiting threads woken, even if a write fails.
+     *
+     * @param batch  the frames holding the pages
+     * @throws IOException  if a page cannot be written (it stays dirty)
+     */
+    private void writeBack (List <Frame> batch)
+            throws IOException
+    {
+        int done = 0;
+        try {
+            for (Frame f : batch) {
+                ByteBuffer b = f.buf.duplicate ();
+                b.clear ();
+                long pos = (f.key & 0xFFFFFFFFL) * PAGE_SIZE;
+                while (b.hasRemaining ()) f.ch.write (b, pos + b.position ());
+                done++;
+            } // for
+        } finally {
+            synchronized (this) {
+                for (int i = 0; i < batch.size (); i++) {
+                    Frame f = batch.get (i);
+                    f.writing = false;
+                    if (i < done) f.dirty = false;
+                } // for
+                writeBacks += done;
+                notifyAll ();
+            } // synchronized
+        } // try
+    } // writeBack
+
+    /************************************************************************************
+     * Write back every dirty page of a quiesced pool.  Pages of files that have been
+     * closed (their stores released) are dropped.
+     */
+    private void flushAll ()
+            throws IOException
+    {
+        List <Frame> batch = new ArrayList <> ();
+        synchronized (this) {
+            for (Frame f : frames) {
+                if (f.key != -1 && f.dirty && f.ch.isOpen ()) {
+                    f.writing = true;
+                    batch.add (f);
+                } // if
+            } // for
+        } // synchronized
+        writeBack (batch);
+    } // flushAll
+
+    /************************************************************************************
+     * Stop the pool from granting pins and wait until every pin is released and no page
+     * is being read in or written back.
+     *
+     * @throws InterruptedIOException  if interrupted while waiting (the pool resumes)
+     */
+    private synchronized void quiesce ()
+            throws InterruptedIOException
+    {
+        retired = true;
+        drains++;
+        try {
+            for (Frame f : frames) {
+                while (f.pins > 0 || f.busy ()) await ();
+            } // for
+        } catch (InterruptedIOException ex) {
+            retired = false;
+            notifyAll ();
+            throw ex;
+        } finally {
+            drains--;
+        } // try
+    } // quiesce
+
+    /************************************************************************************
+     * Let the pins waiting on a quiesced pool proceed: in this pool if next is null,
+     * otherwise in the pool that replaces it.
+     *
+     * @param next  the successor pool, or null to put this pool back in service
+     */
+    private synchronized void resume (BufferPool next)
+    {
+        successor = next;
+        retired   = next != null;
+        notifyAll ();
+    } // resume
+
+    /************************************************************************************
+     * Wait for a page being read in or written back, or for pins to be released.
+     */
+    private void await ()
+            throws InterruptedIOException
+    {
+        try {
+            wait ();
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new InterruptedIOException ("BufferPool: interrupted waiting for a page");
+        } // try
+    } // await
+
+} // BufferPool class
@@ -0,0 +1,541 @@
+/****************************************************************************************
+ * @file  BulkImport.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/****************************************************************************************
+ * The BulkImport class streams a delimited text file (CSV or TSV) into a table.  A reader
+ * thread reads the file in chunks of whole records, which are parsed in parallel on a
+ * ForkJoinPool; the caller inserts the parsed chunks in file order (see Table.insertAll).
+ * The reader blocks while WINDOW chunks are waiting to be inserted, so memory use stays
+ * bounded however fast the file is read (backpressure).
+ *
+ * Each field is converted by a parser chosen once per column from the table's domain
+ * (numbers are parsed from the bytes directly).  A row with the wrong number of fields
+ * or a value that does not convert, or a record longer than MAX_RECORD bytes, is skipped
+ * and reported (see ImportReport) instead of aborting the import.  With a delimiter
+ * other than tab, fields may be quoted ("a, ""b""") and then hold delimiters, quotes and
+ * newlines; TSV fields are taken literally.  Blank lines are skipped.
+ */
+class BulkImport
+{
+    /** The size of a chunk of the file in bytes (grown for longer records)
+     */
+    static final int CHUNK_SIZE = 4 << 20;
+
+    /** The maximum length of a record in bytes: a longer one (e.g., after a quote that
+     *  is never closed) is reported as a bad row and the import resumes at the next line
+     */
+    static final int MAX_RECORD = 16 << 20;
+
+    /** The number of parsed chunks per pool thread that may wait to be inserted
+     */
+    static final int WINDOW = 2;
+
+    /************************************************************************************
+     * The Parser interface converts the bytes of a field to a value of a domain.
+     */
+    private interface Parser
+    {
+        Comparable parse (byte [] b, int from, int to);
+    } // Parser interface
+
+    /************************************************************************************
+     * The Chunk class holds whole records read from the file.
+     */
+    private static class Chunk
+    {
+        final byte [] bytes;                 // the records (owned by the parse task)
+        final int     length;                // the number of bytes used
+        final long    line;                  // the line number of the first record
+
+        Chunk (byte [] _bytes, int _length, long _line)
+        {
+            bytes  = _bytes;
+            length = _length;
+            line   = _line;
+        } // constructor
+    } // Chunk inner class
+
+    /************************************************************************************
+     * The Parsed class holds the rows parsed from a chunk and the rows rejected.
+     */
+    private static class Parsed
+    {
+        final List <Comparable []>         rows = new ArrayList <> ();
+        final List <ImportReport.BadRow>   bad  = new ArrayList <> ();
+        int                                read;
+    } // Parsed inner class
+
+    /** The end of the chunks (queued after the last one)
+     */
+    private static final Future <Parsed> END = CompletableFuture.completedFuture (null);
+
+    private final String [] attribute;      // the table's attributes
+    private final Parser [] parser;         // the parser of each of the table's columns
+    private final byte      delim;          // the field delimiter
+    private final boolean   quoted;         // whether fields may be quoted
+    private int []          pos;            // the field holding each of the table's columns
+    private int             fields;         // the number of fields per record
+
+    /************************************************************************************
+     * Construct an importer for a table with the given attributes and domains.
+     */
+    private BulkImport (String [] _attribute, Class [] domain, char _delim)
+    {
+        if (_delim > 127 || _delim == '"' || _delim == '\n' || _delim == '\r') {
+            throw new IllegalArgumentException ("importFile: unsupported delimiter '" + _delim + "'");
+        } // if
+        attribute = _attribute;
+        delim     = (byte) _delim;
+        quoted    = _delim != '\t';
+        parser    = new Parser [domain.length];
+        for (int j = 0; j < domain.length; j++) parser [j] = parser (domain [j]);
+        fields    = attribute.length;
+        pos       = new int [fields];
+        for (int j = 0; j < fields; j++) pos [j] = j;
+    } // constructor
+
+    /************************************************************************************
+     * Import the records of a delimited file into the table.  If the file has a header,
+     * its field names are matched to the table's attributes (the order may differ and
+     * extra fields are ignored); otherwise the fields are the attributes in order.
+     *
+     * @param table      the table to insert into
+     * @param attribute  the table's attributes
+     * @param domain     the table's domains
+     * @param file       the path of the file
+     * @param delimiter  the field delimiter (e.g., ',' or '\t')
+     * @param header     whether the first record names the fields
+     * @param pool       the pool parsing the chunks
+     * @return  the report of the rows inserted and rejected
+     * @throws IOException  if the file cannot be read or its header names no attribute
+     */
+    static ImportReport run (Table table, String [] attribute, Class [] domain, String file, char delimiter,
+                             boolean header, ForkJoinPool pool)
+           throws IOException
+    {
+        long         start  = System.nanoTime ();
+        BulkImport   imp    = new BulkImport (attribute, domain, delimiter);
+        ImportReport report = new ImportReport (file);
+        BlockingQueue <Future <Parsed>> queue = new ArrayBlockingQueue <> (WINDOW * pool.getParallelism ());
+
+        InputStream in = new FileInputStream (file);
+        Thread reader = new Thread (() -> imp.read (in, header, pool, queue), "import " + file);
+        reader.setDaemon (true);
+        reader.start ();
+        try {
+            for (Future <Parsed> f = queue.take (); f != END; f = queue.take ()) {
+                Parsed p = f.get ();
+                report.record (p.read, (p.rows.isEmpty ()) ? 0 : table.insertAll (p.rows), p.bad);
+            } // for
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new InterruptedIOException ("importFile: interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause ();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException ("importFile: " + cause, cause);
+        } finally {
+            reader.interrupt ();
+            in.close ();
+        } // try
+        report.finish (System.nanoTime () - start);
+        return report;
+    } // run
+
+    //----------------------------------------------------------------------------------
+    // Reading
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Read the file in chunks of whole records, submitting each to the pool and queueing
+     * its result (blocking while the queue is full).  The chunks are followed by END, or
+     * by a failed result if reading fails; the reader stops if it is interrupted.
+     *
+     * @param in      the file
+     * @param header  whether the first record names the fields
+     * @param pool    the pool parsing the chunks
+     * @param queue   the results of the chunks, in file order
+     */
+    private void read (InputStream in, boolean header, ForkJoinPool pool, BlockingQueue <Future <Parsed>> queue)
+    {
+        Future <Parsed> last = END;
+        try {
+            byte [] buf  = new byte [CHUNK_SIZE];
+            int     len  = 0;
+            long    line = 1;
+            boolean eof  = false;
+            boolean first = header;
+            boolean drop  = false;                                         // dropping a too long record
+            while (! eof || len > 0) {
+                while (! eof && len < buf.length) {
+                    int r = in.read (buf, len, buf.length - len);
+                    if (r < 0) eof = true;
+                    else len += r;
+                } // while
+
+                if (drop) {                                                // resume after its first newline
+                    int k = 0;
+                    while (k < len && buf [k] != '\n') k++;
+                    if (k < len) {
+                        System.arraycopy (buf, k + 1, buf, 0, len - k - 1);
+                        len  -= k + 1;
+                        line += 1;
+                        drop  = false;
+                    } else {
+                        len = 0;
+                    } // if
+                    continue;
+                } // if
+
+                int [] lines = new int [1];
+                int end = eof ? len : wholeRecords (buf, len, lines);
+                if (end < 0) {                                             // a record longer than the buffer
+                    if (buf.length < MAX_RECORD) {
+                        buf = Arrays.copyOf (buf, Math.min (2 * buf.length, MAX_RECORD));
+                    } else {
+                        Parsed p = new Parsed ();
+                        p.read = 1;
+                        p.bad.add (new ImportReport.BadRow (line, "record longer than " + MAX_RECORD + " bytes",
+                                                            text (buf, 0, len)));
+                        queue.put (CompletableFuture.completedFuture (p));
+                        drop = true;
+                    } // if
+                    continue;
+                } // if
+                if (eof) lines [0] = count (buf, 0, len);
+
+                if (first) {
+                    first = false;
+                    int skip = header (buf, end);
+                    line += count (buf, 0, skip);
+                    if (skip > 0) {
+                        System.arraycopy (buf, skip, buf, 0, len - skip);
+                        len -= skip;
+                        continue;
+                    } // if
+                } // if
+
+                byte [] next = new byte [Math.max (CHUNK_SIZE, len - end)];
+                System.arraycopy (buf, end, next, 0, len - end);
+                Chunk chunk = new Chunk (buf, end, line);
+                queue.put (pool.submit (() -> parse (chunk)));
+                line += lines [0];
+                buf   = next;
+                len  -= end;
+                if (eof) break;
+            } // while
+        } catch (InterruptedException ex) {
+            return;
+        } catch (IOException | RuntimeException ex) {
+            last = CompletableFuture.failedFuture (ex);
+        } // try
+        try {
+            queue.put (last);
+        } catch (InterruptedException ex) {
+            // the caller has stopped taking results
+        } // try
+    } // read
+
+    /************************************************************************************
+     * Return the length of the longest prefix of the buffer made of whole records (ending
+     * just after the last newline outside quotes), or -1 if there is no such newline.
+     * Quotes are recognized as by record: only a quote starting a field opens a quoted
+     * field, which a quote closes unless it is doubled, so a stray quote inside an
+     * unquoted field does not hide the record boundaries that follow.
+     *
+     * @param b      the buffer (starting at a record)
+     * @param len    the number of bytes in the buffer
+     * @param lines  receives the number of newlines in the prefix
+     * @return  the length of the prefix
+     */
+    private int wholeRecords (byte [] b, int len, int [] lines)
+    {
+        boolean inQuote = false, start = true;
+        int end = -1, n = 0, nl = 0;
+        for (int i = 0; i < len; i++) {
+            byte c = b [i];
+            if (inQuote) {
+                if (c == '\n') {
+                    nl++;
+                } else if (c == '"') {
+                    if (i + 1 == len) break;                               // "" or the closing quote
+                    if (b [i + 1] == '"') i++;
+                    else inQuote = false;
+                } // if
+            } else if (c == '\n') {
+                nl++;
+                end   = i + 1;
+                n     = nl;
+                start = true;
+            } else if (c == delim) {
+                start = true;
+            } else {
+                inQuote = start && c == '"' && quoted;
+                start   = false;
+            } // if
+        } // for
+        lines [0] = n;
+        return end;
+    } // wholeRecords
+
+    /************************************************************************************
+     * Return the number of newlines in b [from, to).
+     */
+    private static int count (byte [] b, int from, int to)
+    {
+        int n = 0;
+        for (int i = from; i < to; i++) if (b [i] == '\n') n++;
+        return n;
+    } // count
+
+    /************************************************************************************
+     * Parse the header record at the start of the buffer, matching its field names to
+     * the table's attributes.
+     *
+     * @param b    the buffer
+     * @param len  the number of bytes of whole records in the buffer
+     * @return  the length of the header record
+     * @throws IOException  if some attribute is not named by the header
+     */
+    private int header (byte [] b, int len)
+            throws IOException
+    {
+        if (len == 0) return 0;
+        int    cap  = 1;
+        for (int i = 0; i < len; i++) if (b [i] == delim) cap++;
+        int [] from = new int [cap], to = new int [cap];
+        int [] rec  = new int [3];
+        if (! record (b, 0, len, from, to, rec)) throw new IOException ("importFile: malformed header");
+        int nf = rec [0];
+
+        Map <String, Integer> names = new HashMap <> ();
+        for (int k = 0; k < nf; k++) names.put (new String (b, from [k], to [k] - from [k], StandardCharsets.UTF_8).trim (), k);
+        for (int j = 0; j < attribute.length; j++) {
+            Integer k = names.get (attribute [j]);
+            if (k == null) throw new IOException ("importFile: the header has no field " + attribute [j]);
+            pos [j] = k;
+        } // for
+        fields = nf;
+        return rec [1];
+    } // header
+
+    //----------------------------------------------------------------------------------
+    // Parsing
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Parse the records of a chunk into tuples, collecting the bad rows.
+     *
+     * @param chunk  the chunk
+     * @return  the tuples and bad rows
+     */
+    private Parsed parse (Chunk chunk)
+    {
+        Parsed  p    = new Parsed ();
+        byte [] b    = chunk.bytes;
+        int []  from = new int [fields + 1], to = new int [fields + 1];
+        int []  rec  = new int [3];
+        long    line = chunk.line;
+        for (int i = 0; i < chunk.length; ) {
+            boolean ok = record (b, i, chunk.length, from, to, rec);
+            int     nf = rec [0], end = rec [1];
+            if (nf == 1 && to [0] == from [0] && ok) {                        // blank line
+                line += rec [2];
+                i = end;
+                continue;
+            } // if
+            p.read++;
+            String reason = null;
+            Comparable [] tup = null;
+            if (! ok) {
+                reason = "unterminated or malformed quoted field";
+            } else if (nf != fields) {
+                reason = "expected " + fields + " fields, found " + nf;
+            } else {
+                tup = new Comparable [parser.length];
+                for (int j = 0; j < parser.length; j++) {
+                    int k = pos [j];
+                    try {
+                        tup [j] = parser [j].parse (b, from [k], to [k]);
+                    } catch (IllegalArgumentException ex) {
+                        reason = attribute [j] + ": bad value '" + text (b, from [k], to [k]) + "'";
+                        tup    = null;
+                        break;
+                    } // try
+                } // for
+            } // if
+            if (tup != null) p.rows.add (tup);
+            else p.bad.add (new ImportReport.BadRow (line, reason, text (b, i, end)));
+            line += rec [2];
+            i = end;
+        } // for
+        return p;
+    } // parse
+
+    /************************************************************************************
+     * Split the record starting at position i into fields, unquoting quoted fields in
+     * place.  Fields beyond the capacity of the bound arrays are counted but not kept.
+     * A quoted field that is never closed is malformed, and ends the record at the first
+     * newline after its opening quote.
+     *
+     * @param b     the buffer
+     * @param i     the start of the record
+     * @param len   the end of the buffer's records
+     * @param from  receives the start of each field
+     * @param to    receives the end of each field
+     * @param rec   receives the number of fields, the end of the record (after its
+     *              newline) and the number of newlines in it
+     * @return  whether the quoting is well formed
+     */
+    private boolean record (byte [] b, int i, int len, int [] from, int [] to, int [] rec)
+    {
+        boolean ok = true;
+        int nf = 0, nl = 0;
+        while (true) {
+            int f = i, e;
+            if (quoted && i < len && b [i] == '"' && ! closed (b, i + 1, len)) {
+                ok = false;
+                while (i < len && b [i] != '\n') i++;
+                e = i;
+            } else if (quoted && i < len && b [i] == '"') {
+                int w = i;
+                boolean closed = false;
+                for (i++; i < len; ) {
+                    byte c = b [i++];
+                    if (c == '"') {
+                        if (i < len && b [i] == '"') {
+                            b [w++] = '"';
+                            i++;
+                        } else {
+                            closed = true;
+                            break;
+                        } // if
+                    } else {
+                        if (c == '\n') nl++;
+                        b [w++] = c;
+                    } // if
+                } // for
+                e = w;
+                ok &= closed;
+                for ( ; i < len && b [i] != delim && b [i] != '\n'; i++) ok &= b [i] == '\r';
+            } else {
+                while (i < len && b [i] != delim && b [i] != '\n') i++;
+                e = (i > f && b [i - 1] == '\r' && (i == len || b [i] == '\n')) ? i - 1 : i;
+            } // if
+            if (nf < from.length) {
+                from [nf] = f;
+                to [nf]   = e;
+            } // if
+            nf++;
+            if (i >= len || b [i] == '\n') {
+                if (i < len) nl++;
+                rec [0] = nf;
+                rec [1] = Math.min (i + 1, len);
+                rec [2] = nl;
+                return ok;
+            } // if
+            i++;                                                           // skip the delimiter
+        } // while
+    } // record
+
+    /************************************************************************************
+     * Determine whether the quoted field whose contents start at position i is closed
+     * (by a quote that is not doubled) before the end of the buffer's records.
+     */
+    private static boolean closed (byte [] b, int i, int len)
+    {
+        while (i < len) {
+            if (b [i++] != '"') continue;
+            if (i == len || b [i] != '"') return true;
+            i++;
+        } // while
+        return false;
+    } // closed
+
+    /************************************************************************************
+     * Return the bytes b [from, to) as a string (for reports).  At most 2 * MAX_TEXT bytes
+     * are decoded, cut before a UTF-8 continuation byte so no character is split.
+     */
+    private static String text (byte [] b, int from, int to)
+    {
+        int end = to;
+        while (end > from && (b [end - 1] == '\n' || b [end - 1] == '\r')) end--;
+        int n = Math.min (end - from, 2 * ImportReport.MAX_TEXT);
+        while (n > 0 && n < end - from && (b [from + n] & 0xC0) == 0x80) n--;
+        return new String (b, from, n, StandardCharsets.UTF_8);
+    } // text
+
+    //----------------------------------------------------------------------------------
+    // Field parsers
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the parser for the given domain.
+     *
+     * @param dom  the domain
+     * @return  the parser converting fields to values of the domain
+     */
+    private static Parser parser (Class dom)
+    {
+        if (dom == Integer.class)   return (b, f, t) -> (int) parseLong (b, f, t, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (dom == Long.class)      return (b, f, t) -> parseLong (b, f, t, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (dom == Short.class)     return (b, f, t) -> (short) parseLong (b, f, t, Short.MIN_VALUE, Short.MAX_VALUE);
+        if (dom == Byte.class)      return (b, f, t) -> (byte) parseLong (b, f, t, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        if (dom == Double.class)    return (b, f, t) -> Double.parseDouble (string (b, f, t).trim ());
+        if (dom == Float.class)     return (b, f, t) -> Float.parseFloat (string (b, f, t).trim ());
+        if (dom == String.class)    return BulkImport::string;
+        if (dom == Character.class) return (b, f, t) -> {
+            String s = string (b, f, t);
+            if (s.length () != 1) throw new IllegalArgumentException ("not a single character");
+            return s.charAt (0);
+        };
+        throw new IllegalArgumentException ("importFile: unsupported domain " + dom.getName ());
+    } // parser
+
+    /************************************************************************************
+     * Return the bytes b [from, to) decoded from UTF-8.
+     */
+    private static String string (byte [] b, int from, int to)
+    {
+        return new String (b, from, to - from, StandardCharsets.UTF_8);
+    } // string
+
+    /************************************************************************************
+     * Parse a decimal integer (surrounding spaces allowed) from b [from, to).
+     *
+     * @param min  the smallest value allowed
+     * @param max  the largest value allowed
+     * @throws NumberFormatException  if the field is not an integer in the range
+     */
+    private static long parseLong (byte [] b, int from, int to, long min, long max)
+    {
+        while (from < to && b [from] == ' ') from++;
+        while (to > from && b [to - 1] == ' ') to--;
+        boolean neg = from < to && b [from] == '-';
+        if (neg || (from < to && b [from] == '+')) from++;
+        if (from >= to) throw new NumberFormatException ("empty");
+        long v = 0;                                                        // accumulated negatively
+        for (int i = from; i < to; i++) {
+            int d = b [i] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException ("not a digit");
+            if (v < (Long.MIN_VALUE + d) / 10) throw new NumberFormatException ("overflow");
+            v = v * 10 - d;
+        } // for
+        if (! neg) {
+            if (v == Long.MIN_VALUE) throw new NumberFormatException ("overflow");
+            v = -v;
+        } // if
+        if (v < min || v > max) throw new NumberFormatException ("out of range");
+        return v;
+    } // parseLong
+
+} // BulkImport class
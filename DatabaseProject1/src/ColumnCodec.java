@@ -0,0 +1,498 @@
+/****************************************************************************************
+ * @file  ColumnCodec.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The ColumnCodec class compresses the values of one column of a group of rows for the
+ * columnar page file format (see PageFile).  Each column of each group is encoded with
+ * whichever of the codecs that apply to its domain gives the fewest bytes:
+ *
+ *   DELTA    integral domains (Long, Integer, Short, Byte, Character): the first value,
+ *            then the differences between neighbours, zigzag encoded and bit-packed
+ *            (sorted or clustered columns need few bits per value)
+ *   FOR      integral domains: the minimum, then the offset of each value from it,
+ *            bit-packed (columns with a small range)
+ *   RLE      any domain, when the values form long runs: the run lengths (bit-packed)
+ *            and the value of each run (itself encoded by the best codec)
+ *   DICT     non-integral domains with few distinct values: the distinct values (encoded
+ *            by the best codec), then the code of each value, bit-packed
+ *   DEFLATE  non-integral domains: the PLAIN encoding compressed by Deflater (fastest level)
+ *   PLAIN    the binary encoding of each value, as in row pages
+ *
+ * Every encoding starts with the codec's tag, so encodings nest (the run values of RLE
+ * and the dictionary of DICT are encoded recursively).  Decoding shares one boxed value
+ * among the repetitions of a run or dictionary entry.
+ */
+class ColumnCodec
+{
+    /** The codec tags
+     */
+    static final byte PLAIN = 0, DEFLATE = 1, DELTA = 2, FOR = 3, RLE = 4, DICT = 5;
+
+    /************************************************************************************
+     * Encode the first n values of a column with the codec giving the fewest bytes.
+     *
+     * @param dom   the domain of the column
+     * @param vals  the values
+     * @param n     the number of values
+     * @return  the encoding (the codec's tag followed by its data)
+     */
+    static byte [] encode (Class dom, Comparable [] vals, int n)
+    {
+        try {
+            List <byte []> cands = new ArrayList <> ();
+            if (integral (dom)) {
+                long [] v = new long [n];
+                for (int i = 0; i < n; i++) v [i] = toLong (vals [i]);
+                cands.add (delta (v, n));
+                cands.add (frame (v, n));
+            } else {
+                Map <Comparable, Integer> codes = (n > 0) ? distinct (vals, n, n / 2) : null;
+                if (codes != null) cands.add (dict (dom, vals, n, codes));
+                byte [] plain = plain (dom, vals, n);
+                cands.add (plain);
+                byte [] z = deflate (plain);
+                if (z.length < plain.length) cands.add (z);
+            } // if
+            int runs = runs (vals, n);
+            if (n > 0 && runs <= n / 4) cands.add (rle (dom, vals, n, runs));
+
+            byte [] best = cands.get (0);
+            for (byte [] c : cands) if (c.length < best.length) best = c;
+            return best;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("ColumnCodec: unable to encode", ex);
+        } // try
+    } // encode
+
+    /************************************************************************************
+     * Decode n values of a column, reading its encoding from the buffer's position.
+     *
+     * @param buf   the buffer (its position is advanced past the encoding)
+     * @param dom   the domain of the column
+     * @param vals  the array receiving the values
+     * @param n     the number of values
+     */
+    static void decode (ByteBuffer buf, Class dom, Comparable [] vals, int n)
+    {
+        byte codec = buf.get ();
+        switch (codec) {
+        case PLAIN:
+            for (int i = 0; i < n; i++) vals [i] = getPlain (buf, dom);
+            break;
+        case DEFLATE:
+            int len = buf.getInt (), zlen = buf.getInt ();
+            byte [] raw = new byte [len];
+            Inflater inf = new Inflater ();
+            try {
+                inf.setInput (buf.array (), buf.arrayOffset () + buf.position (), zlen);
+                inf.inflate (raw);
+            } catch (DataFormatException ex) {
+                throw new IllegalStateException ("ColumnCodec: corrupt column data", ex);
+            } finally {
+                inf.end ();
+            } // try
+            buf.position (buf.position () + zlen);
+            ByteBuffer rb = ByteBuffer.wrap (raw, 1, len - 1);               // skip the PLAIN tag
+            for (int i = 0; i < n; i++) vals [i] = getPlain (rb, dom);
+            break;
+        case DELTA: {
+            long    cur = buf.getLong ();
+            long [] d   = unpack (buf, buf.get (), n - 1);
+            if (n > 0) vals [0] = box (dom, cur);
+            for (int i = 1; i < n; i++) {
+                long z = d [i - 1];
+                cur += (z >>> 1) ^ -(z & 1);
+                vals [i] = box (dom, cur);
+            } // for
+            break;
+        } // case
+        case FOR: {
+            long    min = buf.getLong ();
+            long [] d   = unpack (buf, buf.get (), n);
+            for (int i = 0; i < n; i++) vals [i] = box (dom, min + d [i]);
+            break;
+        } // case
+        case RLE: {
+            int     r   = buf.getInt ();
+            long    min = buf.getLong ();
+            long [] lens = unpack (buf, buf.get (), r);
+            Comparable [] rv = new Comparable [r];
+            decode (buf, dom, rv, r);
+            int i = 0;
+            for (int k = 0; k < r; k++) {
+                int end = i + (int) (min + lens [k]);
+                Arrays.fill (vals, i, end, rv [k]);
+                i = end;
+            } // for
+            break;
+        } // case
+        case DICT: {
+            int d = buf.getInt ();
+            Comparable [] dict = new Comparable [d];
+            decode (buf, dom, dict, d);
+            long [] c = unpack (buf, buf.get (), n);
+            for (int i = 0; i < n; i++) vals [i] = dict [(int) c [i]];
+            break;
+        } // case
+        default:
+            throw new IllegalStateException ("ColumnCodec: unknown codec " + codec);
+        } // switch
+    } // decode
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Determine whether the domain's values are encoded as integers (longs).
+     */
+    private static boolean integral (Class dom)
+    {
+        return dom == Integer.class || dom == Long.class || dom == Short.class || dom == Byte.class
+            || dom == Character.class;
+    } // integral
+
+    /************************************************************************************
+     * Return the value of an integral domain as a long.
+     */
+    private static long toLong (Comparable v)
+    {
+        return (v instanceof Character) ? (Character) v : ((Number) v).longValue ();
+    } // toLong
+
+    /************************************************************************************
+     * Return the long as a value of the integral domain.
+     */
+    private static Comparable box (Class dom, long x)
+    {
+        if (dom == Integer.class) return (int) x;
+        if (dom == Long.class)    return x;
+        if (dom == Short.class)   return (short) x;
+        if (dom == Byte.class)    return (byte) x;
+        return (char) x;
+    } // box
+
+    /************************************************************************************
+     * Return the number of runs of equal neighbouring values.
+     */
+    private static int runs (Comparable [] vals, int n)
+    {
+        int r = (n > 0) ? 1 : 0;
+        for (int i = 1; i < n; i++) if (! vals [i].equals (vals [i - 1])) r++;
+        return r;
+    } // runs
+
+    /************************************************************************************
+     * Return the code of each distinct value in order of first occurrence, or null if
+     * there are more than max of them.
+     */
+    private static Map <Comparable, Integer> distinct (Comparable [] vals, int n, int max)
+    {
+        Map <Comparable, Integer> codes = new HashMap <> ();
+        for (int i = 0; i < n; i++) {
+            if (codes.putIfAbsent (vals [i], codes.size ()) == null && codes.size () > max) return null;
+        } // for
+        return codes;
+    } // distinct
+
+    /************************************************************************************
+     * Encode the values with DELTA.
+     */
+    private static byte [] delta (long [] v, int n)
+            throws IOException
+    {
+        long [] z = new long [Math.max (0, n - 1)];
+        for (int i = 1; i < n; i++) {
+            long d = v [i] - v [i - 1];
+            z [i - 1] = (d << 1) ^ (d >> 63);
+        } // for
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeByte (DELTA);
+        o.writeLong ((n > 0) ? v [0] : 0);
+        pack (o, z, z.length);
+        return bytes.toByteArray ();
+    } // delta
+
+    /************************************************************************************
+     * Encode the values with FOR.
+     */
+    private static byte [] frame (long [] v, int n)
+            throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeByte (FOR);
+        frame (o, v, n);
+        return bytes.toByteArray ();
+    } // frame
+
+    /************************************************************************************
+     * Write the minimum of the values followed by their offsets from it, bit-packed.
+     */
+    private static void frame (DataOutputStream o, long [] v, int n)
+            throws IOException
+    {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < n; i++) min = Math.min (min, v [i]);
+        if (n == 0) min = 0;
+        long [] d = new long [n];
+        for (int i = 0; i < n; i++) d [i] = v [i] - min;
+        o.writeLong (min);
+        pack (o, d, n);
+    } // frame
+
+    /************************************************************************************
+     * Encode the values with RLE.
+     */
+    private static byte [] rle (Class dom, Comparable [] vals, int n, int r)
+            throws IOException
+    {
+        Comparable [] rv   = new Comparable [r];
+        long []       lens = new long [r];
+        int k = -1;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || ! vals [i].equals (vals [i - 1])) rv [++k] = vals [i];
+            lens [k]++;
+        } // for
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeByte (RLE);
+        o.writeInt (r);
+        frame (o, lens, r);
+        o.write (encode (dom, rv, r));
+        return bytes.toByteArray ();
+    } // rle
+
+    /************************************************************************************
+     * Encode the values with DICT, given the code of each distinct value.
+     */
+    private static byte [] dict (Class dom, Comparable [] vals, int n, Map <Comparable, Integer> codes)
+            throws IOException
+    {
+        Comparable [] dict = new Comparable [codes.size ()];
+        for (Map.Entry <Comparable, Integer> e : codes.entrySet ()) dict [e.getValue ()] = e.getKey ();
+        long [] c = new long [n];
+        for (int i = 0; i < n; i++) c [i] = codes.get (vals [i]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeByte (DICT);
+        o.writeInt (dict.length);
+        o.write (encode (dom, dict, dict.length));
+        pack (o, c, n);
+        return bytes.toByteArray ();
+    } // dict
+
+    /************************************************************************************
+     * Encode the values with PLAIN.
+     */
+    private static byte [] plain (Class dom, Comparable [] vals, int n)
+            throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeByte (PLAIN);
+        for (int i = 0; i < n; i++) {
+            Comparable v = vals [i];
+            if (dom == String.class) {
+                byte [] b = ((String) v).getBytes (StandardCharsets.UTF_8);
+                o.writeInt (b.length);
+                o.write (b);
+            }
+            else if (dom == Double.class)    o.writeDouble ((Double) v);
+            else if (dom == Float.class)     o.writeFloat ((Float) v);
+            else if (dom == Integer.class)   o.writeInt ((Integer) v);
+            else if (dom == Long.class)      o.writeLong ((Long) v);
+            else if (dom == Character.class) o.writeChar ((Character) v);
+            else if (dom == Short.class)     o.writeShort ((Short) v);
+            else if (dom == Byte.class)      o.writeByte ((Byte) v);
+            else throw new IllegalArgumentException ("ColumnCodec: unsupported domain " + dom.getName ());
+        } // for
+        return bytes.toByteArray ();
+    } // plain
+
+    /************************************************************************************
+     * Read one value in the PLAIN encoding.
+     */
+    private static Comparable getPlain (ByteBuffer buf, Class dom)
+    {
+        if (dom == String.class) {
+            int len = buf.getInt ();
+            String s = new String (buf.array (), buf.arrayOffset () + buf.position (), len, StandardCharsets.UTF_8);
+            buf.position (buf.position () + len);
+            return s;
+        } // if
+        if (dom == Double.class)    return buf.getDouble ();
+        if (dom == Float.class)     return buf.getFloat ();
+        if (dom == Integer.class)   return buf.getInt ();
+        if (dom == Long.class)      return buf.getLong ();
+        if (dom == Character.class) return buf.getChar ();
+        if (dom == Short.class)     return buf.getShort ();
+        return buf.get ();
+    } // getPlain
+
+    /************************************************************************************
+     * Compress a PLAIN encoding with DEFLATE.
+     */
+    private static byte [] deflate (byte [] plain)
+            throws IOException
+    {
+        Deflater def = new Deflater (Deflater.BEST_SPEED);
+        ByteArrayOutputStream z = new ByteArrayOutputStream ();
+        try {
+            def.setInput (plain);
+            def.finish ();
+            byte [] chunk = new byte [1 << 14];
+            while (! def.finished ()) z.write (chunk, 0, def.deflate (chunk));
+        } finally {
+            def.end ();
+        } // try
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeByte (DEFLATE);
+        o.writeInt (plain.length);
+        o.writeInt (z.size ());
+        z.writeTo (o);
+        return bytes.toByteArray ();
+    } // deflate
+
+    /************************************************************************************
+     * Write the bit width needed by the (unsigned) values, then the values packed into
+     * longs, lowest bits first.
+     *
+     * @param o  the output
+     * @param v  the values
+     * @param n  the number of values
+     */
+    private static void pack (DataOutputStream o, long [] v, int n)
+            throws IOException
+    {
+        long all = 0;
+        for (int i = 0; i < n; i++) all |= v [i];
+        int w = 64 - Long.numberOfLeadingZeros (all);
+        o.writeByte (w);
+        if (w == 0) return;
+
+        long buf = 0;
+        int  used = 0;                                                     // bits of buf in use
+        for (int i = 0; i < n; i++) {
+            long x = v [i];
+            buf |= x << used;
+            if (used + w >= 64) {
+                o.writeLong (buf);
+                int spill = used + w - 64;                                 // bits of x left over
+                buf  = (spill == 0) ? 0 : x >>> (w - spill);
+                used = spill;
+            } else {
+                used += w;
+            } // if
+        } // for
+        if (used > 0) o.writeLong (buf);
+    } // pack
+
+    /************************************************************************************
+     * Read n values of width w packed by pack (whose width has already been read).
+     *
+     * @param buf  the buffer
+     * @param w    the bit width
+     * @param n    the number of values
+     * @return  the values
+     */
+    private static long [] unpack (ByteBuffer buf, int w, int n)
+    {
+        long [] v = new long [Math.max (0, n)];
+        if (w == 0) return v;
+        long mask = (w == 64) ? -1L : (1L << w) - 1;
+        long cur  = 0;
+        int  left = 0;                                                     // unread bits of cur
+        for (int i = 0; i < n; i++) {
+            if (left >= w) {
+                v [i] = cur & mask;
+                cur   = (w == 64) ? 0 : cur >>> w;
+                left -= w;
+            } else {
+                long next = buf.getLong ();
+                v [i] = (cur | (next << left)) & mask;
+                int need = w - left;                                       // bits taken from next
+                cur  = (need == 64) ? 0 : next >>> need;
+                left = 64 - need;
+            } // if
+        } // for
+        return v;
+    } // unpack
+
+    /************************************************************************************
+     * The main method used for testing: round-trip every codec at its edges (empty
+     * groups, bit widths 0, 63 and 64, deltas overflowing a long, and NaN and -0.0 in
+     * runs and dictionaries).
+     *
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+           throws IOException
+    {
+        long [] widths = { 0L, Long.MAX_VALUE, -1L, Long.MIN_VALUE, 1L };
+        for (int n : new int [] { 0, 1, 63, 64, 65, 129 }) {
+            for (long top : widths) {
+                long [] v = new long [n];
+                for (int i = 0; i < n; i++) v [i] = (i % 3 == 0) ? top : i & top;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+                pack (new DataOutputStream (bytes), v, n);
+                ByteBuffer buf = ByteBuffer.wrap (bytes.toByteArray ());
+                long [] u = unpack (buf, buf.get (), n);
+                if (! Arrays.equals (u, v) || buf.hasRemaining ()) {
+                    out.println ("pack mismatch for n = " + n + ", width " + (64 - Long.numberOfLeadingZeros (top)));
+                } // if
+            } // for
+        } // for
+        out.println ("pack agrees at widths 0, 63 and 64");
+
+        Comparable [] longs   = { Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 0L, Long.MAX_VALUE, -1L, 1L };
+        Comparable [] ints    = { Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, Integer.MIN_VALUE };
+        Comparable [] doubles = { Double.NaN, Double.NaN, -0.0, -0.0, 0.0, 0.0, Double.NaN, -0.0 };
+        Comparable [] floats  = { Float.NaN, -0.0f, -0.0f, 0.0f, Float.NaN, Float.NaN };
+        Comparable [] strings = { "", "", "a", "\u00e9\u4e2d", "", "a" };
+        Object [][] cols = { { Long.class, longs }, { Integer.class, ints }, { Double.class, doubles },
+                             { Float.class, floats }, { String.class, strings } };
+
+        for (Object [] col : cols) {
+            Class         dom  = (Class) col [0];
+            Comparable [] vals = (Comparable []) col [1];
+            for (int n : new int [] { 0, vals.length }) {
+                List <byte []> encs = new ArrayList <> ();
+                encs.add (encode (dom, vals, n));
+                encs.add (plain (dom, vals, n));
+                encs.add (deflate (plain (dom, vals, n)));
+                encs.add (rle (dom, vals, n, runs (vals, n)));
+                encs.add (dict (dom, vals, n, distinct (vals, n, n)));
+                if (integral (dom)) {
+                    long [] v = new long [n];
+                    for (int i = 0; i < n; i++) v [i] = toLong (vals [i]);
+                    encs.add (delta (v, n));
+                    encs.add (frame (v, n));
+                } // if
+                for (byte [] enc : encs) {
+                    Comparable [] back = new Comparable [n];
+                    ByteBuffer    buf  = ByteBuffer.wrap (enc);
+                    decode (buf, dom, back, n);
+                    if (! Arrays.equals (back, Arrays.copyOf (vals, n)) || buf.hasRemaining ()) {
+                        out.println ("codec " + enc [0] + " mismatch for " + dom.getSimpleName () + ", n = " + n);
+                    } // if
+                } // for
+            } // for
+            out.println (dom.getSimpleName () + " codecs agree");
+        } // for
+    } // main
+
+} // ColumnCodec class
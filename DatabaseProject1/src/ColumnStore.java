@@ -0,0 +1,629 @@
+
+/****************************************************************************************
+ * @file  ColumnStore.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.*;
+
+/****************************************************************************************
+ * The ColumnStore class provides columnar, primitive-specialized storage for the tuples
+ * of a table.  The layout of each column is derived from its domain: int [] for Integer,
+ * long [] for Long, double [] for Double, char [] for Character and an offset-encoded
+ * character array for String (other domains fall back to an array of values).  It is a
+ * List of tuples, so a Table can use it in place of an ArrayList; get materializes a
+ * tuple, while the scan methods test numeric columns without boxing.
+ *
+ * A String column with few distinct values is dictionary encoded: each tuple holds the
+ * int code of its value in the column's dictionary, so equality tests compare codes (see
+ * scanIn and HashJoin.joinCodes) and each distinct string is stored once.  A column is
+ * encoded when its first AUTO_ROWS values have at most AUTO_DISTINCT distinct values, or
+ * on request (see encode); it reverts to plain strings if its dictionary outgrows
+ * MAX_CODES.  Like TupleLog, it may be read while being appended to by one writer:
+ * column arrays are replaced rather than modified when they grow, and the size is
+ * published after the values are written.
+ */
+public class ColumnStore
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The initial capacity (in tuples)
+     */
+    private static final int INIT_CAP = 16;
+
+    /** The number of values after which a String column's cardinality is checked
+     */
+    static final int AUTO_ROWS = 1024;
+
+    /** The maximum number of distinct values among the first AUTO_ROWS for a String
+     *  column to be dictionary encoded automatically
+     */
+    static final int AUTO_DISTINCT = 64;
+
+    /** The maximum size of a dictionary (larger columns revert to plain strings)
+     */
+    static final int MAX_CODES = 1 << 16;
+
+    /** The domains of the columns
+     */
+    private final Class [] domain;
+
+    /** The column arrays: int [], long [], double [], char [], StringColumn, DictColumn
+     *  or Comparable [] (replaced as a whole whenever one of them is reallocated)
+     */
+    private volatile Object [] column;
+
+    /** The number of tuples visible to readers
+     */
+    private volatile int size = 0;
+
+    /** The capacity (in tuples) of the column arrays
+     */
+    private int cap = INIT_CAP;
+
+    /*************************************************************************************
+     * The StringColumn class stores the strings of a column back to back in one char
+     * array, with start [i] giving the offset of string i (start [size] is the end).
+     * Its arrays are never reallocated in place: add returns a larger copy instead.
+     */
+    private static class StringColumn
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final char [] chars;
+        final int []  start;
+        int           end;
+
+        StringColumn (char [] _chars, int [] _start, int _end)
+        {
+            chars = _chars;
+            start = _start;
+            end   = _end;
+        } // constructor
+
+        String get (int i)
+        {
+            return new String (chars, start [i], start [i + 1] - start [i]);
+        } // get
+
+        StringColumn add (int i, String s)
+        {
+            int len = s.length ();
+            StringColumn c = this;
+            if (end + len > chars.length || i + 2 > start.length) {
+                c = new StringColumn (Arrays.copyOf (chars, Math.max (2 * chars.length, end + len)),
+                                      Arrays.copyOf (start, Math.max (start.length, 2 * (i + 1))), end);
+            } // if
+            s.getChars (0, len, c.chars, c.end);
+            c.end += len;
+            c.start [i + 1] = c.end;
+            return c;
+        } // add
+
+        boolean equalsAt (int i, String s)
+        {
+            int b = start [i], len = start [i + 1] - b;
+            if (len != s.length ()) return false;
+            for (int k = 0; k < len; k++) if (chars [b + k] != s.charAt (k)) return false;
+            return true;
+        } // equalsAt
+    } // StringColumn inner class
+
+    /*************************************************************************************
+     * The DictColumn class stores the values of a String column as int codes into a
+     * dictionary of its distinct strings (dict [c] is the string with code c, null past
+     * the last code).  Its arrays are never reallocated in place: add and grow return a
+     * copy instead.  The map from strings to codes is only used by the writer.
+     */
+    static final class DictColumn
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int []                    code;
+        final String []                 dict;
+        final HashMap <String, Integer> codes;
+
+        DictColumn (int [] _code, String [] _dict, HashMap <String, Integer> _codes)
+        {
+            code  = _code;
+            dict  = _dict;
+            codes = _codes;
+        } // constructor
+
+        String get (int i)
+        {
+            return dict [code [i]];
+        } // get
+
+        /** Add value s at position i, returning this column, a copy with a larger
+         *  dictionary, or null if the dictionary is full. */
+        DictColumn add (int i, String s)
+        {
+            Integer c = codes.get (s);
+            DictColumn d = this;
+            if (c == null) {
+                c = codes.size ();
+                if (c == MAX_CODES) return null;
+                if (c == dict.length) d = new DictColumn (code, Arrays.copyOf (dict, 2 * c), codes);
+                d.dict [c] = s;
+                codes.put (s, c);
+            } // if
+            d.code [i] = c;
+            return d;
+        } // add
+
+        DictColumn grow (int cap)
+        {
+            return new DictColumn (Arrays.copyOf (code, cap), dict, codes);
+        } // grow
+
+        /** Return which codes are those of the given strings (by scanning the dictionary,
+         *  since readers may not use the map). */
+        boolean [] lookup (Collection <String> vals)
+        {
+            boolean [] hit = new boolean [dict.length];
+            for (int c = 0; c < dict.length; c++) hit [c] = dict [c] != null && vals.contains (dict [c]);
+            return hit;
+        } // lookup
+    } // DictColumn inner class
+
+    /************************************************************************************
+     * Construct an empty column store for tuples with the given domains.
+     *
+     * @param _domain  the domains of the columns
+     */
+    public ColumnStore (Class [] _domain)
+    {
+        domain = _domain;
+        Object [] cols = new Object [domain.length];
+        for (int j = 0; j < domain.length; j++) cols [j] = makeColumn (domain [j], cap);
+        column = cols;
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of tuples stored.
+     *
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Materialize the i-th tuple.
+     *
+     * @param i  the tuple number
+     * @return  the tuple as an array of (boxed) values
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("ColumnStore.get: " + i);
+        Object []     cols = column;
+        Comparable [] tup  = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) tup [j] = value (cols [j], i);
+        return tup;
+    } // get
+
+    /************************************************************************************
+     * Append a tuple, splitting its values over the columns, and publish it.
+     *
+     * @param tup  the tuple (its values must match the domains)
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        int n = size;
+        put (n, tup);
+        size = n + 1;
+        return true;
+    } // add
+
+    /************************************************************************************
+     * Append the tuples, publishing them all at once.
+     *
+     * @param tups  the tuples (their values must match the domains)
+     * @return  whether any tuple was added
+     */
+    public boolean addAll (Collection <? extends Comparable []> tups)
+    {
+        int n = size;
+        for (Comparable [] tup : tups) put (n++, tup);
+        boolean changed = n != size;
+        size = n;
+        return changed;
+    } // addAll
+
+    /************************************************************************************
+     * Return the value in column j of tuple i (boxed).
+     *
+     * @param j  the column position
+     * @param i  the tuple number
+     * @return  the value
+     */
+    public Comparable value (int j, int i)
+    {
+        return value (column [j], i);
+    } // value
+
+    /************************************************************************************
+     * Return the value at position i of the column array c (boxed).
+     *
+     * @param c  the column array
+     * @param i  the tuple number
+     * @return  the value
+     */
+    private static Comparable value (Object c, int i)
+    {
+        if (c instanceof int [])            return ((int []) c) [i];
+        if (c instanceof long [])           return ((long []) c) [i];
+        if (c instanceof double [])         return ((double []) c) [i];
+        if (c instanceof char [])           return ((char []) c) [i];
+        if (c instanceof StringColumn)      return ((StringColumn) c).get (i);
+        if (c instanceof DictColumn)        return ((DictColumn) c).get (i);
+        return ((Comparable []) c) [i];
+    } // value
+
+    /************************************************************************************
+     * Determine whether column j is stored as a primitive array of the given type.
+     *
+     * @param j     the column position
+     * @param type  the primitive array type (e.g., int [].class)
+     * @return  whether the column has that representation
+     */
+    public boolean isStored (int j, Class type)
+    {
+        return type.isInstance (column [j]);
+    } // isStored
+
+    /************************************************************************************
+     * Scan an Integer column, testing the unboxed values.
+     *
+     * @param j  the column position (must hold Integer)
+     * @param p  the predicate on int values
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples satisfying the predicate, in order
+     */
+    public int [] scanInt (int j, IntPredicate p, int n)
+    {
+        int [] c = (int []) column [j];
+        int [] ids = new int [16];
+        int    m   = 0;
+        for (int i = 0; i < n; i++) {
+            if (p.test (c [i])) {
+                if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                ids [m++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, m);
+    } // scanInt
+
+    /************************************************************************************
+     * Scan a Long column, testing the unboxed values.
+     *
+     * @param j  the column position (must hold Long)
+     * @param p  the predicate on long values
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples satisfying the predicate, in order
+     */
+    public int [] scanLong (int j, LongPredicate p, int n)
+    {
+        long [] c = (long []) column [j];
+        int []  ids = new int [16];
+        int     m   = 0;
+        for (int i = 0; i < n; i++) {
+            if (p.test (c [i])) {
+                if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                ids [m++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, m);
+    } // scanLong
+
+    /************************************************************************************
+     * Scan a Double column, testing the unboxed values.
+     *
+     * @param j  the column position (must hold Double)
+     * @param p  the predicate on double values
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples satisfying the predicate, in order
+     */
+    public int [] scanDouble (int j, DoublePredicate p, int n)
+    {
+        double [] c = (double []) column [j];
+        int []    ids = new int [16];
+        int       m   = 0;
+        for (int i = 0; i < n; i++) {
+            if (p.test (c [i])) {
+                if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                ids [m++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, m);
+    } // scanDouble
+
+    /************************************************************************************
+     * Scan a String column for values equal to s, comparing characters in place (no
+     * String is created per tuple), or codes if the column is dictionary encoded.
+     *
+     * @param j  the column position (must hold String)
+     * @param s  the string to look for
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples whose value equals s, in order
+     */
+    public int [] scanEquals (int j, String s, int n)
+    {
+        Object col = column [j];
+        if (col instanceof DictColumn) return scan ((DictColumn) col, Collections.singleton (s), n);
+        StringColumn c = (StringColumn) col;
+        int [] ids = new int [16];
+        int    m   = 0;
+        for (int i = 0; i < n; i++) {
+            if (c.equalsAt (i, s)) {
+                if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                ids [m++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, m);
+    } // scanEquals
+
+    /************************************************************************************
+     * Scan a dictionary encoded String column for the given values, comparing codes.
+     *
+     * @param j     the column position
+     * @param vals  the strings to look for
+     * @param n     the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples whose value is one of vals, in order, or null if
+     *          the column is not dictionary encoded
+     */
+    public int [] scanIn (int j, Collection <String> vals, int n)
+    {
+        Object col = column [j];
+        return (col instanceof DictColumn) ? scan ((DictColumn) col, vals, n) : null;
+    } // scanIn
+
+    /************************************************************************************
+     * Scan the codes of an encoded column for those of the given strings.
+     */
+    private static int [] scan (DictColumn c, Collection <String> vals, int n)
+    {
+        boolean [] hit = c.lookup (vals);
+        int []     ids = new int [16];
+        int        m   = 0;
+        for (int i = 0; i < n; i++) {
+            if (hit [c.code [i]]) {
+                if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                ids [m++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (ids, m);
+    } // scan
+
+    //----------------------------------------------------------------------------------
+    // Dictionary Encoding
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Dictionary encode a String column, converting the values already stored.  Only the
+     * (single) writer may call this.
+     *
+     * @param j  the column position
+     * @return  whether the column is now encoded (false if it is not a String column or
+     *          has more than MAX_CODES distinct values)
+     */
+    public boolean encode (int j)
+    {
+        Object c = column [j];
+        if (c instanceof DictColumn) return true;
+        if (! (c instanceof StringColumn)) return false;
+        DictColumn d = toDict ((StringColumn) c, size);
+        if (d == null) return false;
+        replace (j, d);
+        return true;
+    } // encode
+
+    /************************************************************************************
+     * Determine whether column j is dictionary encoded.
+     *
+     * @param j  the column position
+     * @return  whether its tuples hold codes
+     */
+    public boolean isEncoded (int j)
+    {
+        return column [j] instanceof DictColumn;
+    } // isEncoded
+
+    /************************************************************************************
+     * Return the dictionaries of the columns (e.g., to save them with the table).
+     *
+     * @return  for each column, its dictionary (code order) or null if not encoded
+     */
+    public String [] [] dictionaries ()
+    {
+        Object []     cols = column;
+        String [] []  dict = new String [cols.length] [];
+        for (int j = 0; j < cols.length; j++) {
+            if (! (cols [j] instanceof DictColumn)) continue;
+            String [] d = ((DictColumn) cols [j]).dict;
+            int n = 0;
+            while (n < d.length && d [n] != null) n++;
+            dict [j] = Arrays.copyOf (d, n);
+        } // for
+        return dict;
+    } // dictionaries
+
+    /************************************************************************************
+     * Return the encoded column j (a snapshot whose codes below size () are valid).
+     *
+     * @param j  the column position
+     * @return  the encoded column, or null if it is not dictionary encoded
+     */
+    DictColumn encoded (int j)
+    {
+        Object c = column [j];
+        return (c instanceof DictColumn) ? (DictColumn) c : null;
+    } // encoded
+
+    /************************************************************************************
+     * Encode an empty String column with the given initial dictionary (e.g., read from a
+     * file), so that its strings get the same codes.
+     *
+     * @param j     the column position
+     * @param dict  the strings, in code order
+     */
+    void setDictionary (int j, String [] dict)
+    {
+        if (size > 0 || ! (column [j] instanceof StringColumn) || dict.length > MAX_CODES) return;
+        HashMap <String, Integer> codes = new HashMap <> ();
+        for (int c = 0; c < dict.length; c++) codes.put (dict [c], c);
+        replace (j, new DictColumn (new int [cap], Arrays.copyOf (dict, Math.max (INIT_CAP, dict.length)), codes));
+    } // setDictionary
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Make an empty column array for the given domain.
+     *
+     * @param dom  the domain of the column
+     * @param n    the capacity
+     * @return  the column array
+     */
+    private static Object makeColumn (Class dom, int n)
+    {
+        if (dom == Integer.class)   return new int [n];
+        if (dom == Long.class)      return new long [n];
+        if (dom == Double.class)    return new double [n];
+        if (dom == Character.class) return new char [n];
+        if (dom == String.class)    return new StringColumn (new char [8 * INIT_CAP], new int [INIT_CAP + 1], 0);
+        return new Comparable [n];
+    } // makeColumn
+
+    /************************************************************************************
+     * Build the dictionary encoding of the first n values of a String column.
+     *
+     * @param c  the column
+     * @param n  the number of values
+     * @return  the encoded column, or null if it has more than MAX_CODES distinct values
+     */
+    private DictColumn toDict (StringColumn c, int n)
+    {
+        DictColumn d = new DictColumn (new int [cap], new String [INIT_CAP], new HashMap <> ());
+        for (int i = 0; i < n && d != null; i++) d = d.add (i, c.get (i));
+        return d;
+    } // toDict
+
+    /************************************************************************************
+     * Convert an encoded column back to plain strings.
+     *
+     * @param d  the encoded column
+     * @param n  the number of values
+     * @return  the plain column
+     */
+    private static StringColumn toPlain (DictColumn d, int n)
+    {
+        StringColumn c = new StringColumn (new char [8 * INIT_CAP], new int [INIT_CAP + 1], 0);
+        for (int i = 0; i < n; i++) c = c.add (i, d.get (i));
+        return c;
+    } // toPlain
+
+    /************************************************************************************
+     * Publish a copy of the column array with column j replaced.
+     */
+    private void replace (int j, Object c)
+    {
+        Object [] cols = column.clone ();
+        cols [j] = c;
+        column = cols;
+    } // replace
+
+    /************************************************************************************
+     * Store the tuple's values at position i (not yet published).  Columns that must be
+     * reallocated are copied into a new column array, the values are written, and then
+     * the new array is published (before the caller publishes the size).  Since the
+     * copies hold every tuple below the size, a reader sees them whichever array it reads.
+     *
+     * @param i    the position (the current end of the store)
+     * @param tup  the tuple
+     */
+    private void put (int i, Comparable [] tup)
+    {
+        Object [] cols = (i == cap) ? grow (column) : column;
+        for (int j = 0; j < cols.length; j++) {
+            Object c = cols [j];
+            if (c instanceof int [])         ((int []) c) [i]    = (Integer) tup [j];
+            else if (c instanceof long [])   ((long []) c) [i]   = (Long) tup [j];
+            else if (c instanceof double []) ((double []) c) [i] = (Double) tup [j];
+            else if (c instanceof char [])   ((char []) c) [i]   = (Character) tup [j];
+            else if (c instanceof StringColumn) {
+                Object sc = ((StringColumn) c).add (i, (String) tup [j]);
+                if (i + 1 == AUTO_ROWS) sc = autoEncode ((StringColumn) sc);
+                if (sc != c) {
+                    if (cols == column) cols = cols.clone ();
+                    cols [j] = sc;
+                } // if
+            } else if (c instanceof DictColumn) {
+                Object dc = ((DictColumn) c).add (i, (String) tup [j]);
+                if (dc == null) {                                            // too many values: revert
+                    StringColumn sc = toPlain ((DictColumn) c, i);
+                    dc = sc.add (i, (String) tup [j]);
+                } // if
+                if (dc != c) {
+                    if (cols == column) cols = cols.clone ();
+                    cols [j] = dc;
+                } // if
+            } else                           ((Comparable []) c) [i] = tup [j];
+        } // for
+        if (cols != column) column = cols;
+    } // put
+
+    /************************************************************************************
+     * Dictionary encode a column of AUTO_ROWS values if it has at most AUTO_DISTINCT
+     * distinct values.
+     *
+     * @param c  the plain column
+     * @return  the encoded column, or c
+     */
+    private Object autoEncode (StringColumn c)
+    {
+        Set <String> seen = new HashSet <> ();
+        for (int i = 0; i < AUTO_ROWS; i++) {
+            if (seen.add (c.get (i)) && seen.size () > AUTO_DISTINCT) return c;
+        } // for
+        DictColumn d = toDict (c, AUTO_ROWS);
+        return (d == null) ? c : d;
+    } // autoEncode
+
+    /************************************************************************************
+     * Double the capacity of the fixed-width columns, returning a new column array.
+     *
+     * @param cols  the current column array
+     * @return  the column array with the fixed-width columns copied
+     */
+    private Object [] grow (Object [] cols)
+    {
+        cap *= 2;
+        Object [] next = cols.clone ();
+        for (int j = 0; j < next.length; j++) {
+            Object c = next [j];
+            if (c instanceof int [])            next [j] = Arrays.copyOf ((int []) c, cap);
+            else if (c instanceof long [])      next [j] = Arrays.copyOf ((long []) c, cap);
+            else if (c instanceof double [])    next [j] = Arrays.copyOf ((double []) c, cap);
+            else if (c instanceof char [])      next [j] = Arrays.copyOf ((char []) c, cap);
+            else if (c instanceof Comparable []) next [j] = Arrays.copyOf ((Comparable []) c, cap);
+            else if (c instanceof DictColumn)   next [j] = ((DictColumn) c).grow (cap);
+        } // for
+        return next;
+    } // grow
+
+} // ColumnStore class
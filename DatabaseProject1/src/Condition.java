@@ -0,0 +1,548 @@
+/****************************************************************************************
+ * @file  Condition.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+/****************************************************************************************
+ * The Condition class provides selection predicates built from named attributes, so that
+ * unlike a lambda they can be inspected: Table.select (Condition) answers eq, in and range
+ * conditions from secondary indexes on their attributes (see Table.createIndex), and
+ * combines the answers for and/or, scanning the table only when no index applies.  Eq
+ * and in conditions on dictionary encoded columns (see ColumnStore) scan the codes.
+ * Conditions are equal when they have the same structure (see ResultCache); a named
+ * condition wraps a predicate on given attributes, and is identified by its name.
+ *
+ * #usage movie.select (Condition.and (Condition.eq ("studioName", "Universal"),
+ *                                     Condition.range ("year", 1970, 1989)))
+ */
+public abstract class Condition
+{
+    //----------------------------------------------------------------------------------
+    // Factory Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the condition attr = value.
+     *
+     * @param attr   the attribute
+     * @param value  the value (of the attribute's domain)
+     * @return  the condition
+     */
+    public static Condition eq (String attr, Comparable value)
+    {
+        return new In (attr, new Comparable [] { value });
+    } // eq
+
+    /************************************************************************************
+     * Return the condition attr in (values).
+     *
+     * @param attr    the attribute
+     * @param values  the values (of the attribute's domain)
+     * @return  the condition
+     */
+    public static Condition in (String attr, Comparable... values)
+    {
+        return new In (attr, values.clone ());
+    } // in
+
+    /************************************************************************************
+     * Return the condition low <= attr <= high.
+     *
+     * @param attr  the attribute
+     * @param low   the lower bound (inclusive, null for none)
+     * @param high  the upper bound (inclusive, null for none)
+     * @return  the condition
+     */
+    public static Condition range (String attr, Comparable low, Comparable high)
+    {
+        return new Range (attr, low, high);
+    } // range
+
+    /************************************************************************************
+     * Return the conjunction of the conditions.
+     *
+     * @param parts  the conditions that must all hold
+     * @return  the condition
+     */
+    public static Condition and (Condition... parts)
+    {
+        return new And (parts.clone ());
+    } // and
+
+    /************************************************************************************
+     * Return the disjunction of the conditions.
+     *
+     * @param parts  the conditions of which at least one must hold
+     * @return  the condition
+     */
+    public static Condition or (Condition... parts)
+    {
+        return new Or (parts.clone ());
+    } // or
+
+    /************************************************************************************
+     * Return the condition that the predicate holds for the values of the attributes.
+     * The name identifies the condition (conditions with the same name and attributes
+     * are equal), so it must always be given with the same predicate.
+     *
+     * #usage Condition.named ("long", "length", v -> (Integer) v [0] > 150)
+     *
+     * @param name        the name of the predicate
+     * @param attributes  the attributes whose values the predicate is given, in order
+     * @param predicate   the predicate on the values of the attributes
+     * @return  the condition
+     */
+    public static Condition named (String name, String attributes, Predicate <Comparable []> predicate)
+    {
+        return new Named (name, attributes.split (" "), predicate);
+    } // named
+
+    //----------------------------------------------------------------------------------
+    // Package Methods (used by Table and Optimizer)
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Resolve the attributes against the table, returning the condition as a predicate
+     * on its tuples.
+     *
+     * @param table  the table to be selected from
+     * @return  the predicate
+     * @throws IllegalArgumentException  if an attribute is not in the table
+     */
+    abstract Predicate <Comparable []> bind (Table table);
+
+    /************************************************************************************
+     * Use the secondary indexes to find the tuples that may satisfy the condition.
+     *
+     * @param indexes  the table's secondary indexes, by their attributes
+     * @param n        the number of tuples in the snapshot
+     * @return  a superset of the numbers of the satisfying tuples below n, in increasing
+     *          order, or null if the indexes cannot answer the condition
+     */
+    abstract int [] probe (Map <String, SecondaryIndex> indexes, int n);
+
+    /************************************************************************************
+     * Use the dictionary encoded columns of the table's column store to find the tuples
+     * that may satisfy the condition, comparing codes rather than strings.
+     *
+     * @param table  the table to be selected from
+     * @param store  the table's column store
+     * @param n      the number of tuples in the snapshot
+     * @return  a superset of the numbers of the satisfying tuples below n, in increasing
+     *          order, or null if no encoded column can answer the condition
+     */
+    int [] scan (Table table, ColumnStore store, int n)
+    {
+        return null;
+    } // scan
+
+    /************************************************************************************
+     * Add the attributes the condition refers to.
+     *
+     * @param attrs  the set collecting the attributes
+     */
+    abstract void attributes (Set <String> attrs);
+
+    /************************************************************************************
+     * Estimate the fraction of tuples satisfying the condition (see TableStats), taking
+     * the parts of and/or to be independent.
+     *
+     * @param stats  the statistics of an attribute (null if unknown)
+     * @return  the estimated selectivity
+     */
+    abstract double selectivity (Function <String, TableStats.Column> stats);
+
+    /************************************************************************************
+     * Return the conditions whose conjunction is this condition.
+     *
+     * @return  the parts of an and (recursively), otherwise this condition
+     */
+    List <Condition> conjuncts ()
+    {
+        return Collections.singletonList (this);
+    } // conjuncts
+
+    /************************************************************************************
+     * Return the conjunction of the conditions (the condition itself if there is one).
+     *
+     * @param parts  the conditions (at least one)
+     * @return  the condition
+     */
+    static Condition and (List <Condition> parts)
+    {
+        return (parts.size () == 1) ? parts.get (0) : new And (parts.toArray (new Condition [0]));
+    } // and
+
+    /************************************************************************************
+     * Return the column position of the attribute in the table.
+     */
+    static int column (Table table, String attr)
+    {
+        int j = table.col (attr);
+        if (j < 0) throw new IllegalArgumentException ("Condition: " + attr + " is not an attribute of " + table.getName ());
+        return j;
+    } // column
+
+    //----------------------------------------------------------------------------------
+    // Conditions
+    //----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * The In class is the condition attr in (values); eq is the one-value case.
+     */
+    private static final class In extends Condition
+    {
+        final String        attr;
+        final Comparable [] values;
+
+        In (String _attr, Comparable [] _values)
+        {
+            attr   = _attr;
+            values = _values;
+        } // constructor
+
+        Predicate <Comparable []> bind (Table table)
+        {
+            int j = column (table, attr);
+            if (values.length == 1) {
+                Comparable v = values [0];
+                return tup -> v.equals (tup [j]);
+            } // if
+            Set <Comparable> set = new HashSet <> (Arrays.asList (values));
+            return tup -> set.contains (tup [j]);
+        } // bind
+
+        int [] probe (Map <String, SecondaryIndex> indexes, int n)
+        {
+            SecondaryIndex idx = indexes.get (attr);
+            if (idx == null) return null;
+            int [] ids = new int [0];
+            for (Comparable v : values) ids = SecondaryIndex.union (ids, idx.get (KeyType.of (v), n));
+            return ids;
+        } // probe
+
+        int [] scan (Table table, ColumnStore store, int n)
+        {
+            Set <String> strs = new HashSet <> ();
+            for (Comparable v : values) {
+                if (! (v instanceof String)) return null;
+                strs.add ((String) v);
+            } // for
+            return store.scanIn (column (table, attr), strs, n);
+        } // scan
+
+        void attributes (Set <String> attrs)
+        {
+            attrs.add (attr);
+        } // attributes
+
+        double selectivity (Function <String, TableStats.Column> stats)
+        {
+            TableStats.Column c = stats.apply (attr);
+            if (c == null) return Math.min (1.0, 0.1 * values.length);
+            double sel = 0.0;
+            for (Comparable v : values) sel += c.eq (v);
+            return Math.min (1.0, sel);
+        } // selectivity
+
+        public boolean equals (Object o)
+        {
+            return o instanceof In && attr.equals (((In) o).attr) && Arrays.equals (values, ((In) o).values);
+        } // equals
+
+        public int hashCode ()
+        {
+            return 31 * attr.hashCode () + Arrays.hashCode (values);
+        } // hashCode
+
+        public String toString ()
+        {
+            if (values.length == 1) return attr + " = " + values [0];
+            return attr + " in " + Arrays.toString (values);
+        } // toString
+    } // In inner class
+
+    /*************************************************************************************
+     * The Range class is the condition low <= attr <= high.
+     */
+    private static final class Range extends Condition
+    {
+        final String     attr;
+        final Comparable low, high;
+
+        Range (String _attr, Comparable _low, Comparable _high)
+        {
+            attr = _attr;
+            low  = _low;
+            high = _high;
+        } // constructor
+
+        @SuppressWarnings ("unchecked")
+        Predicate <Comparable []> bind (Table table)
+        {
+            int j = column (table, attr);
+            return tup -> (low == null || low.compareTo (tup [j]) <= 0) && (high == null || high.compareTo (tup [j]) >= 0);
+        } // bind
+
+        int [] probe (Map <String, SecondaryIndex> indexes, int n)
+        {
+            SecondaryIndex idx = indexes.get (attr);
+            if (idx == null) return null;
+            return idx.range ((low == null) ? null : KeyType.of (low), (high == null) ? null : KeyType.of (high), n);
+        } // probe
+
+        void attributes (Set <String> attrs)
+        {
+            attrs.add (attr);
+        } // attributes
+
+        double selectivity (Function <String, TableStats.Column> stats)
+        {
+            TableStats.Column c = stats.apply (attr);
+            return (c == null) ? 0.25 : c.range (low, high);
+        } // selectivity
+
+        public boolean equals (Object o)
+        {
+            if (! (o instanceof Range)) return false;
+            Range r = (Range) o;
+            return attr.equals (r.attr) && Objects.equals (low, r.low) && Objects.equals (high, r.high);
+        } // equals
+
+        public int hashCode ()
+        {
+            return Objects.hash (attr, low, high);
+        } // hashCode
+
+        public String toString ()
+        {
+            return ((low == null) ? "" : low + " <= ") + attr + ((high == null) ? "" : " <= " + high);
+        } // toString
+    } // Range inner class
+
+    /*************************************************************************************
+     * The And class is the conjunction of conditions.  The answers of the parts that
+     * indexes can answer are intersected; a composite index is used when the parts give
+     * one value for each of its attributes.
+     */
+    private static final class And extends Condition
+    {
+        final Condition [] parts;
+
+        And (Condition [] _parts)
+        {
+            parts = _parts;
+        } // constructor
+
+        Predicate <Comparable []> bind (Table table)
+        {
+            Predicate <Comparable []> p = tup -> true;
+            for (Condition c : parts) p = p.and (c.bind (table));
+            return p;
+        } // bind
+
+        int [] probe (Map <String, SecondaryIndex> indexes, int n)
+        {
+            int [] ids = null;
+            for (Condition c : parts) {
+                int [] got = c.probe (indexes, n);
+                if (got != null) ids = (ids == null) ? got : SecondaryIndex.intersect (ids, got);
+            } // for
+
+            Map <String, Comparable> eqs = new HashMap <> ();
+            for (Condition c : parts) {
+                if (c instanceof In && ((In) c).values.length == 1) eqs.put (((In) c).attr, ((In) c).values [0]);
+            } // for
+            for (SecondaryIndex idx : indexes.values ()) {
+                if (idx.attrs.length < 2 || ! eqs.keySet ().containsAll (Arrays.asList (idx.attrs))) continue;
+                Comparable [] keyVal = new Comparable [idx.attrs.length];
+                for (int j = 0; j < keyVal.length; j++) keyVal [j] = eqs.get (idx.attrs [j]);
+                int [] got = idx.get (KeyType.of (keyVal), n);
+                ids = (ids == null) ? got : SecondaryIndex.intersect (ids, got);
+            } // for
+            return ids;
+        } // probe
+
+        int [] scan (Table table, ColumnStore store, int n)
+        {
+            int [] ids = null;
+            for (Condition c : parts) {
+                int [] got = c.scan (table, store, n);
+                if (got != null) ids = (ids == null) ? got : SecondaryIndex.intersect (ids, got);
+            } // for
+            return ids;
+        } // scan
+
+        void attributes (Set <String> attrs)
+        {
+            for (Condition c : parts) c.attributes (attrs);
+        } // attributes
+
+        double selectivity (Function <String, TableStats.Column> stats)
+        {
+            double sel = 1.0;
+            for (Condition c : parts) sel *= c.selectivity (stats);
+            return sel;
+        } // selectivity
+
+        List <Condition> conjuncts ()
+        {
+            List <Condition> all = new ArrayList <> ();
+            for (Condition c : parts) all.addAll (c.conjuncts ());
+            return all;
+        } // conjuncts
+
+        public boolean equals (Object o)
+        {
+            return o instanceof And && Arrays.equals (parts, ((And) o).parts);
+        } // equals
+
+        public int hashCode ()
+        {
+            return Arrays.hashCode (parts);
+        } // hashCode
+
+        public String toString ()
+        {
+            StringJoiner sj = new StringJoiner (" and ", "(", ")");
+            for (Condition c : parts) sj.add (c.toString ());
+            return sj.toString ();
+        } // toString
+    } // And inner class
+
+    /*************************************************************************************
+     * The Or class is the disjunction of conditions.  Indexes can answer it only if they
+     * can answer every part.
+     */
+    private static final class Or extends Condition
+    {
+        final Condition [] parts;
+
+        Or (Condition [] _parts)
+        {
+            parts = _parts;
+        } // constructor
+
+        Predicate <Comparable []> bind (Table table)
+        {
+            Predicate <Comparable []> p = tup -> false;
+            for (Condition c : parts) p = p.or (c.bind (table));
+            return p;
+        } // bind
+
+        int [] probe (Map <String, SecondaryIndex> indexes, int n)
+        {
+            int [] ids = new int [0];
+            for (Condition c : parts) {
+                int [] got = c.probe (indexes, n);
+                if (got == null) return null;
+                ids = SecondaryIndex.union (ids, got);
+            } // for
+            return ids;
+        } // probe
+
+        int [] scan (Table table, ColumnStore store, int n)
+        {
+            int [] ids = new int [0];
+            for (Condition c : parts) {
+                int [] got = c.scan (table, store, n);
+                if (got == null) return null;
+                ids = SecondaryIndex.union (ids, got);
+            } // for
+            return ids;
+        } // scan
+
+        void attributes (Set <String> attrs)
+        {
+            for (Condition c : parts) c.attributes (attrs);
+        } // attributes
+
+        double selectivity (Function <String, TableStats.Column> stats)
+        {
+            double none = 1.0;
+            for (Condition c : parts) none *= 1.0 - c.selectivity (stats);
+            return 1.0 - none;
+        } // selectivity
+
+        public boolean equals (Object o)
+        {
+            return o instanceof Or && Arrays.equals (parts, ((Or) o).parts);
+        } // equals
+
+        public int hashCode ()
+        {
+            return -Arrays.hashCode (parts);
+        } // hashCode
+
+        public String toString ()
+        {
+            StringJoiner sj = new StringJoiner (" or ", "(", ")");
+            for (Condition c : parts) sj.add (c.toString ());
+            return sj.toString ();
+        } // toString
+    } // Or inner class
+
+    /*************************************************************************************
+     * The Named class is a predicate on the values of given attributes, identified by its
+     * name.  Indexes cannot answer it.
+     */
+    private static final class Named extends Condition
+    {
+        final String                    name;
+        final String []                 attribute;
+        final Predicate <Comparable []> predicate;
+
+        Named (String _name, String [] _attribute, Predicate <Comparable []> _predicate)
+        {
+            name      = _name;
+            attribute = _attribute;
+            predicate = _predicate;
+        } // constructor
+
+        Predicate <Comparable []> bind (Table table)
+        {
+            int [] cols = new int [attribute.length];
+            for (int k = 0; k < cols.length; k++) cols [k] = column (table, attribute [k]);
+            return tup -> {
+                Comparable [] vals = new Comparable [cols.length];
+                for (int k = 0; k < cols.length; k++) vals [k] = tup [cols [k]];
+                return predicate.test (vals);
+            };
+        } // bind
+
+        int [] probe (Map <String, SecondaryIndex> indexes, int n)
+        {
+            return null;
+        } // probe
+
+        void attributes (Set <String> attrs)
+        {
+            attrs.addAll (Arrays.asList (attribute));
+        } // attributes
+
+        double selectivity (Function <String, TableStats.Column> stats)
+        {
+            return 0.5;
+        } // selectivity
+
+        public boolean equals (Object o)
+        {
+            return o instanceof Named && name.equals (((Named) o).name) && Arrays.equals (attribute, ((Named) o).attribute);
+        } // equals
+
+        public int hashCode ()
+        {
+            return 31 * name.hashCode () + Arrays.hashCode (attribute);
+        } // hashCode
+
+        public String toString ()
+        {
+            return name + " (" + String.join (", ", attribute) + ")";
+        } // toString
+    } // Named inner class
+
+} // Condition class
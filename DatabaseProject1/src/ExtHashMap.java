@@ -0,0 +1,259 @@
+
+/****************************************************************************************
+ * @file  ExtHashMap.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The ExtHashMap class provides hash maps that use the Extendible Hashing algorithm.
+ * A directory indexed by the low-order bits of the hash code points to buckets; several
+ * directory entries may share a bucket.  A full bucket is split in two and the directory
+ * is doubled only when the bucket's local depth has caught up with the global depth.
+ */
+public class ExtHashMap <K, V>
+       extends AbstractMap <K, V>
+       implements Serializable, Map <K, V>
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of slots (for key-value pairs) per bucket
+     */
+    private static final int SLOTS = 8;
+
+    /** The maximum global depth (beyond this, full buckets overflow instead of splitting)
+     */
+    private static final int MAX_DEPTH = 24;
+
+    /*************************************************************************************
+     * The Bucket class holds the key-value pairs whose hash codes agree on the low
+     * localDepth bits.
+     */
+    private static class Bucket
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int localDepth;
+        int       nKeys;
+        Object[]  key   = new Object [SLOTS];
+        Object[]  value = new Object [SLOTS];
+
+        Bucket (int _localDepth) { localDepth = _localDepth; }
+    } // Bucket inner class
+
+    /** The directory of buckets (has 2 ^ globalDepth entries)
+     */
+    private Bucket [] dir;
+
+    /** The number of hash bits used to index the directory
+     */
+    private int globalDepth = 0;
+
+    /** The number of keys in the map
+     */
+    private int keyCount = 0;
+
+    /************************************************************************************
+     * Construct an empty extendible hash map.
+     */
+    public ExtHashMap ()
+    {
+        dir = new Bucket [] { new Bucket (0) };
+    } // constructor
+
+    /************************************************************************************
+     * Return a set containing all the entries as pairs of keys and values.  Each bucket
+     * is visited once, at the smallest directory position pointing to it.
+     *
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return keyCount; }
+
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    int d = 0;
+                    int i = 0;
+
+                    public boolean hasNext ()
+                    {
+                        while (d < dir.length && (d >= (1 << dir [d].localDepth) || i >= dir [d].nKeys)) {
+                            d++;
+                            i = 0;
+                        } // while
+                        return d < dir.length;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Bucket b = dir [d];
+                        Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) b.key [i], (V) b.value [i]);
+                        i++;
+                        return e;
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /************************************************************************************
+     * Given the key, look up the value in the hash table.
+     *
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        if (key == null) return null;
+        Bucket b = dir [hash (key) & (dir.length - 1)];
+        for (int j = 0; j < b.nKeys; j++) {
+            if (key.equals (b.key [j])) return (V) b.value [j];
+        } // for
+        return null;
+    } // get
+
+    /************************************************************************************
+     * Determine whether the hash table contains the given key.
+     *
+     * @param key  the key to look for
+     * @return  whether the key is in the map
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /************************************************************************************
+     * Put the key-value pair in the hash table, splitting the bucket (and doubling the
+     * directory if needed) when it is full.
+     *
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the value previously associated with the key or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("ExtHashMap.put: null key");
+        int h = hash (key);
+        Bucket b = dir [h & (dir.length - 1)];
+        for (int j = 0; j < b.nKeys; j++) {
+            if (key.equals (b.key [j])) {
+                V old = (V) b.value [j];
+                b.value [j] = value;
+                return old;
+            } // if
+        } // for
+
+        while (b.nKeys == b.key.length && b.localDepth < MAX_DEPTH) {
+            splitBucket (b, h);
+            b = dir [h & (dir.length - 1)];
+        } // while
+        if (b.nKeys == b.key.length) {                       // overflow at maximum depth
+            b.key   = Arrays.copyOf (b.key, 2 * b.key.length);
+            b.value = Arrays.copyOf (b.value, 2 * b.value.length);
+        } // if
+        b.key [b.nKeys]   = key;
+        b.value [b.nKeys] = value;
+        b.nKeys++;
+        keyCount++;
+        return null;
+    } // put
+
+    /************************************************************************************
+     * Return the number of keys in the hash table.
+     *
+     * @return  the number of keys
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Split bucket b into two buckets on the next hash bit, doubling the directory first
+     * if the bucket's local depth equals the global depth.
+     *
+     * @param b  the full bucket to split
+     * @param h  the hash code of a key in the bucket
+     */
+    private void splitBucket (Bucket b, int h)
+    {
+        if (b.localDepth == globalDepth) {
+            Bucket [] bigger = Arrays.copyOf (dir, 2 * dir.length);
+            System.arraycopy (dir, 0, bigger, dir.length, dir.length);
+            dir = bigger;
+            globalDepth++;
+        } // if
+
+        int    bit = 1 << b.localDepth;
+        Bucket b0  = new Bucket (b.localDepth + 1);
+        Bucket b1  = new Bucket (b.localDepth + 1);
+        for (int j = 0; j < b.nKeys; j++) {
+            Bucket t = ((hash (b.key [j]) & bit) == 0) ? b0 : b1;
+            t.key [t.nKeys]   = b.key [j];
+            t.value [t.nKeys] = b.value [j];
+            t.nKeys++;
+        } // for
+        for (int d = h & (bit - 1); d < dir.length; d += bit) {     // the entries sharing b
+            dir [d] = ((d & bit) == 0) ? b0 : b1;
+        } // for
+    } // splitBucket
+
+    /************************************************************************************
+     * Spread the bits of the key's hash code.
+     *
+     * @param key  the key to hash
+     * @return  the spread hash code
+     */
+    private static int hash (Object key)
+    {
+        int h = key.hashCode ();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    } // hash
+
+    /************************************************************************************
+     * The main method used for testing.
+     *
+     * @param args  the command-line arguments (args [0] gives the number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = (args.length == 1) ? Integer.valueOf (args [0]) : 10000;
+        ExtHashMap <Integer, Integer> ht = new ExtHashMap <> ();
+        HashMap <Integer, Integer>    hm = new HashMap <> ();
+        Random rng = new Random (0);
+        for (int i = 0; i < totalKeys; i++) {
+            int k = rng.nextInt (2 * totalKeys);
+            ht.put (k, i);
+            hm.put (k, i);
+        } // for
+
+        out.println ("size agrees:    " + (ht.size () == hm.size ()));
+        out.println ("entries agree:  " + ht.equals (hm));
+        for (int i = 0; i < 2 * totalKeys; i++) {
+            if (! Objects.equals (ht.get (i), hm.get (i))) out.println ("get mismatch for key " + i);
+        } // for
+    } // main
+
+} // ExtHashMap class
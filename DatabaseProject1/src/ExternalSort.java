@@ -0,0 +1,229 @@
+/****************************************************************************************
+ * @file  ExternalSort.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The ExternalSort class implements the sorting used by Table.orderBy and the sort-merge
+ * join.  Inputs within the memory budget are sorted in memory.  Larger inputs are cut
+ * into runs of budget tuples, each sorted and written to a spill file under the storage
+ * directory, and the runs are merged k ways at a time with a priority queue (repeatedly,
+ * if there are more than FAN_IN runs).  The sort is stable: ties are broken by run.
+ */
+class ExternalSort
+{
+    /** Maximum number of runs merged at once (open spill files per merge)
+     */
+    private static final int FAN_IN = 64;
+
+    /************************************************************************************
+     * Return the comparator ordering tuples by the values in the given columns.
+     *
+     * @param cols       the column positions, most significant first
+     * @param ascending  whether smaller values come first
+     * @return  the comparator
+     */
+    @SuppressWarnings ("unchecked")
+    static Comparator <Comparable []> comparator (int [] cols, boolean ascending)
+    {
+        Comparator <Comparable []> cmp = (a, b) -> {
+            for (int c : cols) {
+                int r = a [c].compareTo (b [c]);
+                if (r != 0) return r;
+            } // for
+            return 0;
+        };
+        return ascending ? cmp : cmp.reversed ();
+    } // comparator
+
+    /************************************************************************************
+     * Determine whether the tuples are already in order.
+     *
+     * @param tups  the tuples
+     * @param cmp   the order
+     * @return  whether no tuple is greater than the next one
+     */
+    static boolean isSorted (List <Comparable []> tups, Comparator <Comparable []> cmp)
+    {
+        Comparable [] prev = null;
+        for (Comparable [] tup : tups) {
+            if (prev != null && cmp.compare (prev, tup) > 0) return false;
+            prev = tup;
+        } // for
+        return true;
+    } // isSorted
+
+    /************************************************************************************
+     * Sort the tuples, spilling sorted runs to disk if there are more than budget.  The
+     * input is not modified.  Spill files are deleted once the result is fully read.
+     *
+     * @param tups    the tuples to sort
+     * @param cmp     the order
+     * @param budget  the maximum number of tuples to sort in memory
+     * @return  an iterator over the tuples in order
+     */
+    static Iterator <Comparable []> sort (List <Comparable []> tups, Comparator <Comparable []> cmp, int budget)
+    {
+        if (tups.size () <= budget) {
+            List <Comparable []> rows = new ArrayList <> (tups);
+            rows.sort (cmp);
+            return rows.iterator ();
+        } // if
+
+        List <SpillFile> runs = new ArrayList <> ();
+        List <SpillFile> all  = new ArrayList <> ();                      // deleted if sorting fails
+        try {
+            List <Comparable []> run = new ArrayList <> (budget);
+            for (Comparable [] tup : tups) {
+                run.add (tup);
+                if (run.size () == budget) {
+                    runs.add (spill (run, cmp, all));
+                    run.clear ();
+                } // if
+            } // for
+            if (! run.isEmpty ()) runs.add (spill (run, cmp, all));
+            run = null;
+            if (Monitor.tracing ()) Monitor.trace ("SORT> " + tups.size () + " tuples in " + runs.size () + " runs");
+
+            while (runs.size () > FAN_IN) {                                // intermediate merge passes
+                List <SpillFile> next = new ArrayList <> ();
+                for (int i = 0; i < runs.size (); i += FAN_IN) {
+                    List <SpillFile> group = runs.subList (i, Math.min (i + FAN_IN, runs.size ()));
+                    SpillFile out = new SpillFile ("run");
+                    all.add (out);
+                    for (Iterator <Comparable []> it = merge (new ArrayList <> (group), cmp); it.hasNext (); ) out.write (it.next ());
+                    out.close ();
+                    next.add (out);
+                } // for
+                runs = next;
+            } // while
+            return merge (runs, cmp);
+        } catch (RuntimeException | Error ex) {
+            for (SpillFile f : all) f.delete ();
+            throw ex;
+        } // try
+    } // sort
+
+    /************************************************************************************
+     * Equijoin two inputs sorted on their join columns by merging them: the lcols of a
+     * left tuple must equal the rcols of a right tuple.  Each group of right tuples with
+     * the same key is held in memory while the left tuples with that key pass by.
+     *
+     * @param left   the left tuples, in ascending order of lcols
+     * @param lcols  the join column positions in the left tuples
+     * @param right  the right tuples, in ascending order of rcols
+     * @param rcols  the join column positions in the right tuples
+     * @return  the list of joined tuples (each a left tuple followed by a right tuple)
+     */
+    @SuppressWarnings ("unchecked")
+    static List <Comparable []> mergeJoin (Iterator <Comparable []> left, int [] lcols,
+                                          Iterator <Comparable []> right, int [] rcols)
+    {
+        List <Comparable []> rows  = new ArrayList <> ();
+        List <Comparable []> group = new ArrayList <> ();
+        Comparable [] a = left.hasNext ()  ? left.next ()  : null;
+        Comparable [] b = right.hasNext () ? right.next () : null;
+        while (a != null && b != null) {
+            int c = compare (a, lcols, b, rcols);
+            if (c < 0)      a = left.hasNext ()  ? left.next ()  : null;
+            else if (c > 0) b = right.hasNext () ? right.next () : null;
+            else {
+                group.clear ();
+                Comparable [] first = b;
+                while (b != null && compare (first, rcols, b, rcols) == 0) {
+                    group.add (b);
+                    b = right.hasNext () ? right.next () : null;
+                } // while
+                while (a != null && compare (a, lcols, first, rcols) == 0) {
+                    for (Comparable [] g : group) rows.add (ArrayUtil.concat (a, g));
+                    a = left.hasNext () ? left.next () : null;
+                } // while
+            } // if
+        } // while
+        while (left.hasNext ()) left.next ();                             // finish reading (deletes spill files)
+        while (right.hasNext ()) right.next ();
+        return rows;
+    } // mergeJoin
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Compare the values in columns acols of tuple a with those in columns bcols of b.
+     */
+    @SuppressWarnings ("unchecked")
+    private static int compare (Comparable [] a, int [] acols, Comparable [] b, int [] bcols)
+    {
+        for (int k = 0; k < acols.length; k++) {
+            int r = a [acols [k]].compareTo (b [bcols [k]]);
+            if (r != 0) return r;
+        } // for
+        return 0;
+    } // compare
+
+    /************************************************************************************
+     * Sort a run in memory and write it to a spill file, recorded in files.
+     */
+    private static SpillFile spill (List <Comparable []> run, Comparator <Comparable []> cmp, List <SpillFile> files)
+    {
+        run.sort (cmp);
+        SpillFile file = new SpillFile ("run");
+        files.add (file);
+        for (Comparable [] tup : run) file.write (tup);
+        file.close ();
+        return file;
+    } // spill
+
+    /************************************************************************************
+     * Merge sorted runs, deleting each run once it has been read.
+     *
+     * @param runs  the runs
+     * @param cmp   the order of the runs
+     * @return  an iterator over the tuples of all the runs in order
+     */
+    private static Iterator <Comparable []> merge (List <SpillFile> runs, Comparator <Comparable []> cmp)
+    {
+        List <Iterator <Comparable []>> its  = new ArrayList <> ();
+        for (SpillFile f : runs) its.add (f.iterator ());
+        Comparable [] [] head = new Comparable [runs.size ()] [];
+        PriorityQueue <Integer> pq = new PriorityQueue <> (Math.max (1, runs.size ()), (i, j) -> {
+            int r = cmp.compare (head [i], head [j]);
+            return (r != 0) ? r : Integer.compare (i, j);                  // stable: earlier run first
+        });
+        for (int i = 0; i < runs.size (); i++) {
+            if (its.get (i).hasNext ()) {
+                head [i] = its.get (i).next ();
+                pq.add (i);
+            } else {
+                runs.get (i).delete ();
+            } // if
+        } // for
+
+        return new Iterator <Comparable []> () {
+            public boolean hasNext ()
+            {
+                return ! pq.isEmpty ();
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (pq.isEmpty ()) throw new NoSuchElementException ();
+                int i = pq.poll ();
+                Comparable [] tup = head [i];
+                if (its.get (i).hasNext ()) {
+                    head [i] = its.get (i).next ();
+                    pq.add (i);
+                } else {
+                    head [i] = null;
+                    runs.get (i).delete ();
+                } // if
+                return tup;
+            } // next
+        }; // Iterator
+    } // merge
+
+} // ExternalSort class
@@ -0,0 +1,303 @@
+/****************************************************************************************
+ * @file  HashAggregate.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/****************************************************************************************
+ * The HashAggregate class implements the hash aggregation used by Table.groupBy.  Each
+ * chunk of the input (see ParallelExec) is pre-aggregated into its own hash table of
+ * partial states, which is flushed as partial rows whenever it reaches its share of the
+ * memory budget.  The partial rows are then merged into one hash table holding at most
+ * budget groups; partial rows of groups that do not fit are hash partitioned into spill
+ * files, each of which is merged in turn (repartitioning any that is still too large).
+ *
+ * A partial row holds the group values followed by the state of each aggregate: the
+ * count, the sum, the sum and count (for avg), or the smallest or largest value.
+ */
+class HashAggregate
+{
+    /** Maximum partitioning depth (beyond this, the remaining groups are merged in memory)
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /** Maximum number of partitions (open spill files) per partitioning pass
+     */
+    private static final int MAX_PARTS = 256;
+
+    /** The group column positions in the input tuples
+     */
+    private final int [] gcols;
+
+    /** The group column positions in a partial row (0 .. gcols.length - 1)
+     */
+    private final int [] pcols;
+
+    /** The aggregates and the column positions of their attributes (-1 for count)
+     */
+    private final Aggregate [] aggs;
+    private final int []       acols;
+
+    /** Whether each sum is over a floating point domain (so kept as a double)
+     */
+    private final boolean []   real;
+
+    /** The maximum number of groups held in memory
+     */
+    private final int budget;
+
+    /*************************************************************************************
+     * The Acc class holds the running state of one aggregate for one group.
+     */
+    private static final class Acc
+    {
+        long       n;          // count (count, avg)
+        long       l;          // integral sum
+        double     d;          // floating point sum (sum, avg)
+        Comparable v;          // smallest or largest value
+    } // Acc inner class
+
+    /*************************************************************************************
+     * The Chunk class holds the pre-aggregation of one chunk: the partial rows flushed
+     * and the groups still in its hash table.
+     */
+    private static final class Chunk
+    {
+        final List <Comparable []> flushed = new ArrayList <> ();
+        final Map <Object, Acc []> map     = new LinkedHashMap <> ();
+    } // Chunk inner class
+
+    /************************************************************************************
+     * Construct a hash aggregation.
+     *
+     * @param _gcols   the group column positions
+     * @param _aggs    the aggregates
+     * @param _acols   the column positions of the aggregated attributes (-1 for count)
+     * @param _real    whether each sum is over a floating point domain
+     * @param _budget  the maximum number of groups to hold in memory
+     */
+    HashAggregate (int [] _gcols, Aggregate [] _aggs, int [] _acols, boolean [] _real, int _budget)
+    {
+        gcols  = _gcols;
+        aggs   = _aggs;
+        acols  = _acols;
+        real   = _real;
+        budget = _budget;
+        pcols  = new int [gcols.length];
+        for (int j = 0; j < pcols.length; j++) pcols [j] = j;
+    } // constructor
+
+    /************************************************************************************
+     * Aggregate the tuples, producing one row per group: its group values followed by
+     * the value of each aggregate.
+     *
+     * @param rows  the input tuples
+     * @param pool  the pool for pre-aggregating chunks in parallel (null => sequential)
+     * @return  the list of result rows (groups in no particular order)
+     */
+    List <Comparable []> aggregate (List <Comparable []> rows, ForkJoinPool pool)
+    {
+        int cap = Math.max (1, budget / ParallelExec.chunks (pool, rows.size ()));
+        List <Chunk> chunks = ParallelExec.mapChunks (pool, rows, tups -> {
+            Chunk c = new Chunk ();
+            Map <Object, Acc []> map = c.map;
+            for (Comparable [] tup : tups) {
+                Object key = HashJoin.keyOf (tup, gcols);
+                Acc [] acc = map.get (key);
+                if (acc == null) {
+                    if (map.size () >= cap) {                              // flush the partial states
+                        for (Map.Entry <Object, Acc []> e : map.entrySet ()) c.flushed.add (partial (e.getKey (), e.getValue ()));
+                        map.clear ();
+                    } // if
+                    map.put (key, acc = newAcc ());
+                } // if
+                add (acc, tup);
+            } // for
+            return c;
+        });
+
+        List <Comparable []> result = new ArrayList <> ();
+        if (chunks.size () == 1 && chunks.get (0).flushed.isEmpty ()) {  // one chunk, all groups in memory
+            for (Map.Entry <Object, Acc []> e : chunks.get (0).map.entrySet ()) result.add (finish (e.getKey (), e.getValue ()));
+            return result;
+        } // if
+
+        List <Comparable []> parts = new ArrayList <> ();
+        for (Chunk c : chunks) {
+            parts.addAll (c.flushed);
+            for (Map.Entry <Object, Acc []> e : c.map.entrySet ()) parts.add (partial (e.getKey (), e.getValue ()));
+        } // for
+        chunks.clear ();
+        merge (parts, parts.size (), 0, result);
+        return result;
+    } // aggregate
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Merge partial rows into at most budget groups in memory, spilling the partial rows
+     * of other groups into hash partitions that are merged afterwards.
+     *
+     * @param parts   the partial rows
+     * @param size    the number of partial rows
+     * @param depth   the partitioning depth (varies the hash function between passes)
+     * @param result  the list collecting the result rows
+     */
+    private void merge (Iterable <Comparable []> parts, int size, int depth, List <Comparable []> result)
+    {
+        Map <Object, Acc []> map = new LinkedHashMap <> ();
+        SpillFile [] files = null;
+        for (Comparable [] p : parts) {
+            Object key = HashJoin.keyOf (p, pcols);
+            Acc [] acc = map.get (key);
+            if (acc == null) {
+                if (map.size () >= budget && depth < MAX_DEPTH) {
+                    if (files == null) {
+                        files = new SpillFile [(int) Math.min (MAX_PARTS, 2L * size / budget + 1)];
+                        for (int i = 0; i < files.length; i++) files [i] = new SpillFile ("group");
+                    } // if
+                    files [Math.floorMod (HashJoin.mix (key.hashCode (), depth), files.length)].write (p);
+                    continue;
+                } // if
+                map.put (key, acc = newAcc ());
+            } // if
+            merge (acc, p);
+        } // for
+        for (Map.Entry <Object, Acc []> e : map.entrySet ()) result.add (finish (e.getKey (), e.getValue ()));
+        map.clear ();
+        if (files == null) return;
+
+        if (Monitor.tracing ()) Monitor.trace ("GROUP> spilled into " + files.length + " partitions at depth " + depth);
+        try {
+            for (SpillFile f : files) {
+                merge (f, f.size (), depth + 1, result);
+                f.delete ();
+            } // for
+        } finally {
+            for (SpillFile f : files) f.delete ();
+        } // try
+    } // merge
+
+    /************************************************************************************
+     * Return a new (empty) state for each aggregate.
+     */
+    private Acc [] newAcc ()
+    {
+        Acc [] acc = new Acc [aggs.length];
+        for (int i = 0; i < acc.length; i++) acc [i] = new Acc ();
+        return acc;
+    } // newAcc
+
+    /************************************************************************************
+     * Add an input tuple to the states of its group.
+     */
+    @SuppressWarnings ("unchecked")
+    private void add (Acc [] acc, Comparable [] tup)
+    {
+        for (int i = 0; i < aggs.length; i++) {
+            Acc a = acc [i];
+            switch (aggs [i].kind) {
+            case COUNT: a.n++;
+                        break;
+            case SUM:   if (real [i]) a.d += ((Number) tup [acols [i]]).doubleValue ();
+                        else          a.l += ((Number) tup [acols [i]]).longValue ();
+                        break;
+            case AVG:   a.d += ((Number) tup [acols [i]]).doubleValue ();
+                        a.n++;
+                        break;
+            case MIN:   if (a.v == null || tup [acols [i]].compareTo (a.v) < 0) a.v = tup [acols [i]];
+                        break;
+            case MAX:   if (a.v == null || tup [acols [i]].compareTo (a.v) > 0) a.v = tup [acols [i]];
+                        break;
+            } // switch
+        } // for
+    } // add
+
+    /************************************************************************************
+     * Merge a partial row into the states of its group.
+     */
+    @SuppressWarnings ("unchecked")
+    private void merge (Acc [] acc, Comparable [] p)
+    {
+        int j = pcols.length;
+        for (int i = 0; i < aggs.length; i++) {
+            Acc a = acc [i];
+            switch (aggs [i].kind) {
+            case COUNT: a.n += (Long) p [j++];
+                        break;
+            case SUM:   if (real [i]) a.d += (Double) p [j++];
+                        else          a.l += (Long) p [j++];
+                        break;
+            case AVG:   a.d += (Double) p [j++];
+                        a.n += (Long) p [j++];
+                        break;
+            case MIN:   if (a.v == null || p [j].compareTo (a.v) < 0) a.v = p [j];
+                        j++;
+                        break;
+            case MAX:   if (a.v == null || p [j].compareTo (a.v) > 0) a.v = p [j];
+                        j++;
+                        break;
+            } // switch
+        } // for
+    } // merge
+
+    /************************************************************************************
+     * Return the partial row of a group: its group values followed by its states.
+     */
+    private Comparable [] partial (Object key, Acc [] acc)
+    {
+        List <Comparable> p = new ArrayList <> (pcols.length + 2 * aggs.length);
+        addGroup (key, p);
+        for (int i = 0; i < aggs.length; i++) {
+            Acc a = acc [i];
+            switch (aggs [i].kind) {
+            case COUNT: p.add (a.n);
+                        break;
+            case SUM:   p.add (real [i] ? (Comparable) a.d : (Comparable) a.l);
+                        break;
+            case AVG:   p.add (a.d);
+                        p.add (a.n);
+                        break;
+            default:    p.add (a.v);
+            } // switch
+        } // for
+        return p.toArray (new Comparable [0]);
+    } // partial
+
+    /************************************************************************************
+     * Return the result row of a group: its group values followed by the aggregates.
+     */
+    private Comparable [] finish (Object key, Acc [] acc)
+    {
+        List <Comparable> r = new ArrayList <> (pcols.length + aggs.length);
+        addGroup (key, r);
+        for (int i = 0; i < aggs.length; i++) {
+            Acc a = acc [i];
+            switch (aggs [i].kind) {
+            case COUNT: r.add (a.n);
+                        break;
+            case SUM:   r.add (real [i] ? (Comparable) a.d : (Comparable) a.l);
+                        break;
+            case AVG:   r.add (a.d / a.n);
+                        break;
+            default:    r.add (a.v);
+            } // switch
+        } // for
+        return r.toArray (new Comparable [0]);
+    } // finish
+
+    /************************************************************************************
+     * Add the group values of a key (see HashJoin.keyOf) to the row.
+     */
+    private void addGroup (Object key, List <Comparable> row)
+    {
+        if (pcols.length == 1) row.add ((Comparable) key);
+        else for (Object v : (List <?>) key) row.add ((Comparable) v);
+    } // addGroup
+
+} // HashAggregate class
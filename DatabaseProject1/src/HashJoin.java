@@ -0,0 +1,255 @@
+
+/****************************************************************************************
+ * @file  HashJoin.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/****************************************************************************************
+ * The HashJoin class implements the hash equijoin used by Table.join.  A hash table is
+ * built on the join columns of the smaller input and probed with the tuples of the larger
+ * one, which are first checked against a Bloom filter over the smaller input's keys
+ * when there is one (so most tuples without a match skip the probe).  When the build side
+ * exceeds the memory budget, both inputs are hash partitioned into spill files (Grace
+ * hash join), the larger input's tuples failing the filter are dropped rather than
+ * spilled, and the partitions are joined pair by pair, repartitioning any pair that is
+ * still too large.  Joins on one dictionary encoded column of each input (see
+ * ColumnStore) compare codes instead (see joinCodes).
+ */
+class HashJoin
+{
+    /** Maximum partitioning depth (beyond this, skewed partitions are joined in memory)
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /** Maximum number of partitions (open spill files) per partitioning pass
+     */
+    private static final int MAX_PARTS = 256;
+
+    /************************************************************************************
+     * Join the left and right tuples requiring the lcols of a left tuple to equal the
+     * rcols of a right tuple.  Each result tuple is a left tuple followed by a right tuple.
+     *
+     * @param left    the left (this) tuples
+     * @param lcols   the join column positions in the left tuples
+     * @param right   the right (table2) tuples
+     * @param rcols   the join column positions in the right tuples
+     * @param budget  the maximum number of build tuples to hold in memory
+     * @param pool    the pool for probing in parallel (null => sequential)
+     * @param bloom   the Bloom filter over the keys of the smaller input (the left one if
+     *                the sizes are equal), null for none
+     * @return  the list of joined tuples
+     */
+    static List <Comparable []> join (List <Comparable []> left, int [] lcols,
+                                      List <Comparable []> right, int [] rcols, int budget,
+                                      ForkJoinPool pool, BloomFilter bloom)
+    {
+        if (pool != null && Math.min (left.size (), right.size ()) <= budget) {
+            boolean probeLeft = left.size () > right.size ();
+            Map <Object, List <Comparable []>> table = probeLeft ? build (right, rcols) : build (left, lcols);
+            int [] cols = probeLeft ? lcols : rcols;
+            return ParallelExec.flatMap (pool, probeLeft ? left : right, (tup, res) -> {
+                if (bloom == null || bloom.mightContain (tup, cols)) probe (table, tup, cols, probeLeft, res);
+            });
+        } // if
+
+        List <Comparable []> result = new ArrayList <> ();
+        join (left, left.size (), lcols, right, right.size (), rcols, budget, 0, bloom, result);
+        return result;
+    } // join
+
+    /************************************************************************************
+     * Join two inputs on dictionary encoded columns by their codes.  The probe side's
+     * codes are translated once into the build side's codes (-1 if its dictionary lacks
+     * the string), and the build tuples are chained by code, so each probe is an array
+     * lookup and no string is compared or hashed per tuple.  The smaller input is the
+     * build side.
+     *
+     * @param left   the left (this) tuples
+     * @param lc     the encoded join column of the left input (a snapshot covering left)
+     * @param right  the right (table2) tuples
+     * @param rc     the encoded join column of the right input (a snapshot covering right)
+     * @return  the list of joined tuples (each a left tuple followed by a right tuple)
+     */
+    static List <Comparable []> joinCodes (List <Comparable []> left, ColumnStore.DictColumn lc,
+                                           List <Comparable []> right, ColumnStore.DictColumn rc)
+    {
+        boolean buildLeft = left.size () <= right.size ();
+        List <Comparable []>   build = buildLeft ? left : right, probe = buildLeft ? right : left;
+        ColumnStore.DictColumn bc    = buildLeft ? lc : rc,      pc    = buildLeft ? rc : lc;
+
+        Map <String, Integer> codes = new HashMap <> ();
+        for (int c = 0; c < bc.dict.length && bc.dict [c] != null; c++) codes.put (bc.dict [c], c);
+        int [] trans = new int [pc.dict.length];
+        for (int c = 0; c < trans.length; c++) trans [c] = (pc.dict [c] == null) ? -1 : codes.getOrDefault (pc.dict [c], -1);
+
+        int    bn   = build.size ();
+        int [] head = new int [bc.dict.length], next = new int [bn];
+        Arrays.fill (head, -1);
+        for (int i = bn - 1; i >= 0; i--) {                                 // chains in tuple order
+            next [i] = head [bc.code [i]];
+            head [bc.code [i]] = i;
+        } // for
+
+        List <Comparable []> result = new ArrayList <> ();
+        Comparable [] []     tups   = new Comparable [bn] [];                // build tuples, as needed
+        for (int i = 0, pn = probe.size (); i < pn; i++) {
+            int c = trans [pc.code [i]];
+            if (c < 0 || head [c] < 0) continue;
+            Comparable [] tup = probe.get (i);
+            for (int k = head [c]; k >= 0; k = next [k]) {
+                if (tups [k] == null) tups [k] = build.get (k);
+                result.add (buildLeft ? ArrayUtil.concat (tups [k], tup) : ArrayUtil.concat (tup, tups [k]));
+            } // for
+        } // for
+        return result;
+    } // joinCodes
+
+    /************************************************************************************
+     * Join in memory if the smaller input fits the budget, otherwise partition both inputs.
+     * The Bloom filter (over the smaller input's keys, or null) is checked by the larger.
+     */
+    private static void join (Iterable <Comparable []> left, int lsize, int [] lcols,
+                              Iterable <Comparable []> right, int rsize, int [] rcols,
+                              int budget, int depth, BloomFilter bloom, List <Comparable []> result)
+    {
+        if (lsize == 0 || rsize == 0) return;
+
+        if (Math.min (lsize, rsize) <= budget || depth >= MAX_DEPTH) {
+            if (lsize <= rsize) {
+                probe (build (left, lcols), right, rcols, false, bloom, result);
+            } else {
+                probe (build (right, rcols), left, lcols, true, bloom, result);
+            } // if
+            return;
+        } // if
+
+        int parts = (int) Math.min (MAX_PARTS, 2L * Math.min (lsize, rsize) / budget + 1);
+        SpillFile [] lparts = partition (left, lcols, parts, depth, (lsize <= rsize) ? null : bloom);
+        SpillFile [] rparts = partition (right, rcols, parts, depth, (lsize <= rsize) ? bloom : null);
+        try {
+            for (int i = 0; i < parts; i++) {
+                join (lparts [i], lparts [i].size (), lcols, rparts [i], rparts [i].size (), rcols,
+                      budget, depth + 1, null, result);
+                lparts [i].delete ();
+                rparts [i].delete ();
+            } // for
+        } finally {
+            for (int i = 0; i < parts; i++) { lparts [i].delete (); rparts [i].delete (); }
+        } // try
+    } // join
+
+    /************************************************************************************
+     * Build a hash table mapping join key values to the tuples having them.
+     *
+     * @param rows  the build side tuples
+     * @param cols  the join column positions
+     * @return  the hash table
+     */
+    private static Map <Object, List <Comparable []>> build (Iterable <Comparable []> rows, int [] cols)
+    {
+        Map <Object, List <Comparable []>> table = new HashMap <> ();
+        for (Comparable [] tup : rows) {
+            table.computeIfAbsent (keyOf (tup, cols), k -> new ArrayList <> (1)).add (tup);
+        } // for
+        return table;
+    } // build
+
+    /************************************************************************************
+     * Probe the hash table with each tuple that passes the Bloom filter, adding the joined
+     * tuples to the result.
+     *
+     * @param table      the hash table built on the other input
+     * @param rows       the probe side tuples
+     * @param cols       the join column positions in the probe tuples
+     * @param probeLeft  whether the probe side is the left input
+     * @param bloom      the Bloom filter over the other input's keys (null for none)
+     * @param result     the list collecting joined tuples
+     */
+    private static void probe (Map <Object, List <Comparable []>> table, Iterable <Comparable []> rows,
+                               int [] cols, boolean probeLeft, BloomFilter bloom, List <Comparable []> result)
+    {
+        for (Comparable [] tup : rows) {
+            if (bloom == null || bloom.mightContain (tup, cols)) probe (table, tup, cols, probeLeft, result);
+        } // for
+    } // probe
+
+    /************************************************************************************
+     * Probe the hash table with one tuple, adding the joined tuples to the result.
+     *
+     * @param table      the hash table built on the other input
+     * @param tup        the probe tuple
+     * @param cols       the join column positions in the probe tuple
+     * @param probeLeft  whether the probe side is the left input
+     * @param result     the list collecting joined tuples
+     */
+    private static void probe (Map <Object, List <Comparable []>> table, Comparable [] tup,
+                               int [] cols, boolean probeLeft, List <Comparable []> result)
+    {
+        List <Comparable []> matches = table.get (keyOf (tup, cols));
+        if (matches == null) return;
+        for (Comparable [] m : matches) {
+            result.add (probeLeft ? ArrayUtil.concat (tup, m) : ArrayUtil.concat (m, tup));
+        } // for
+    } // probe
+
+    /************************************************************************************
+     * Hash partition the tuples into spill files on their join key values, dropping
+     * those that fail the Bloom filter.
+     *
+     * @param rows   the tuples to partition
+     * @param cols   the join column positions
+     * @param parts  the number of partitions
+     * @param depth  the partitioning depth (varies the hash function between passes)
+     * @param bloom  the Bloom filter over the other input's keys (null for none)
+     * @return  the array of spill files, one per partition
+     */
+    private static SpillFile [] partition (Iterable <Comparable []> rows, int [] cols, int parts, int depth,
+                                           BloomFilter bloom)
+    {
+        SpillFile [] files = new SpillFile [parts];
+        for (int i = 0; i < parts; i++) files [i] = new SpillFile ("join");
+        for (Comparable [] tup : rows) {
+            if (bloom != null && ! bloom.mightContain (tup, cols)) continue;
+            files [Math.floorMod (mix (keyOf (tup, cols).hashCode (), depth), parts)].write (tup);
+        } // for
+        for (SpillFile f : files) f.close ();
+        return files;
+    } // partition
+
+    /************************************************************************************
+     * Scramble a hash code, salted by the partitioning depth.
+     *
+     * @param h      the hash code
+     * @param depth  the partitioning depth
+     * @return  the scrambled hash code
+     */
+    static int mix (int h, int depth)
+    {
+        h ^= depth * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    } // mix
+
+    /************************************************************************************
+     * Extract the join key value(s) of a tuple as a hashable object with content equality.
+     *
+     * @param tup   the tuple
+     * @param cols  the join column positions
+     * @return  the single key value or a list of key values
+     */
+    static Object keyOf (Comparable [] tup, int [] cols)
+    {
+        if (cols.length == 1) return tup [cols [0]];
+        Comparable [] vals = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) vals [j] = tup [cols [j]];
+        return Arrays.asList (vals);
+    } // keyOf
+
+} // HashJoin class
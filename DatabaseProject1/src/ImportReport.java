@@ -0,0 +1,221 @@
+/****************************************************************************************
+ * @file  ImportReport.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The ImportReport class reports the outcome of a bulk import (see Table.importFile): the
+ * number of rows read and inserted, and the rows that were rejected (bad rows) with their
+ * line numbers and reasons.  Only the first MAX_BAD bad rows are kept; all are counted.
+ */
+public class ImportReport
+{
+    /** The maximum number of bad rows kept in the report
+     */
+    static final int MAX_BAD = 1000;
+
+    /** The maximum number of characters of a bad row's text kept in the report
+     */
+    static final int MAX_TEXT = 200;
+
+    /************************************************************************************
+     * The BadRow class describes a rejected row.
+     */
+    public static class BadRow
+    {
+        private final long   line;
+        private final String reason;
+        private final String text;
+
+        BadRow (long _line, String _reason, String _text)
+        {
+            line   = _line;
+            reason = _reason;
+            text   = (_text.length () > MAX_TEXT) ? cut (_text) + "..." : _text;
+        } // constructor
+
+        /********************************************************************************
+         * Return the line number at which the row starts.
+         *
+         * @return  the line number
+         */
+        public long getLine ()
+        {
+            return line;
+        } // getLine
+
+        /********************************************************************************
+         * Return the reason the row was rejected.
+         *
+         * @return  the reason
+         */
+        public String getReason ()
+        {
+            return reason;
+        } // getReason
+
+        /********************************************************************************
+         * Return the text of the row (cut to MAX_TEXT characters).
+         *
+         * @return  the row's text
+         */
+        public String getText ()
+        {
+            return text;
+        } // getText
+
+        /********************************************************************************
+         * Convert the bad row to a one-line description.
+         *
+         * @return  the string representation of the bad row
+         */
+        public String toString ()
+        {
+            return "line " + line + ": " + reason + "  [" + text + "]";
+        } // toString
+
+        /********************************************************************************
+         * Return the first MAX_TEXT characters of the text, one fewer if that would split
+         * a surrogate pair.
+         *
+         * @param s  the text (longer than MAX_TEXT)
+         * @return  the prefix kept
+         */
+        private static String cut (String s)
+        {
+            int n = MAX_TEXT;
+            if (Character.isHighSurrogate (s.charAt (n - 1))) n--;
+            return s.substring (0, n);
+        } // cut
+
+    } // BadRow inner class
+
+    private final String        file;
+    private long                rowsRead;
+    private long                rowsInserted;
+    private long                badRows;
+    private long                nanos;
+    private final List <BadRow> bad = new ArrayList <> ();
+
+    /************************************************************************************
+     * Construct an empty report for the import of the given file.
+     *
+     * @param _file  the path of the imported file
+     */
+    ImportReport (String _file)
+    {
+        file = _file;
+    } // constructor
+
+    /************************************************************************************
+     * Record the outcome of one chunk of the file.
+     *
+     * @param read      the number of rows read
+     * @param inserted  the number of rows inserted
+     * @param rejected  the bad rows of the chunk
+     */
+    void record (long read, long inserted, List <BadRow> rejected)
+    {
+        rowsRead     += read;
+        rowsInserted += inserted;
+        badRows      += rejected.size ();
+        for (BadRow b : rejected) if (bad.size () < MAX_BAD) bad.add (b);
+    } // record
+
+    /************************************************************************************
+     * Record the elapsed time of the import.
+     *
+     * @param ns  the elapsed time in nanoseconds
+     */
+    void finish (long ns)
+    {
+        nanos = ns;
+    } // finish
+
+    /************************************************************************************
+     * Return the path of the imported file.
+     *
+     * @return  the file's path
+     */
+    public String getFile ()
+    {
+        return file;
+    } // getFile
+
+    /************************************************************************************
+     * Return the number of rows read from the file.
+     *
+     * @return  the number of rows read
+     */
+    public long getRowsRead ()
+    {
+        return rowsRead;
+    } // getRowsRead
+
+    /************************************************************************************
+     * Return the number of rows inserted into the table.
+     *
+     * @return  the number of rows inserted
+     */
+    public long getRowsInserted ()
+    {
+        return rowsInserted;
+    } // getRowsInserted
+
+    /************************************************************************************
+     * Return the number of rows rejected (all are counted, see getBad).
+     *
+     * @return  the number of bad rows
+     */
+    public long getBadRows ()
+    {
+        return badRows;
+    } // getBadRows
+
+    /************************************************************************************
+     * Return the elapsed time of the import.
+     *
+     * @return  the elapsed time in nanoseconds
+     */
+    public long getNanos ()
+    {
+        return nanos;
+    } // getNanos
+
+    /************************************************************************************
+     * Return the bad rows kept (at most MAX_BAD).
+     *
+     * @return  the bad rows
+     */
+    public List <BadRow> getBad ()
+    {
+        return Collections.unmodifiableList (bad);
+    } // getBad
+
+    /************************************************************************************
+     * Print the report, listing the bad rows kept.
+     */
+    public void print ()
+    {
+        out.println (this);
+        for (BadRow b : bad) out.println ("  " + b);
+        if (badRows > bad.size ()) out.println ("  ... " + (badRows - bad.size ()) + " more bad rows");
+    } // print
+
+    /************************************************************************************
+     * Convert the report to a one-line summary.
+     *
+     * @return  the string representation of the report
+     */
+    public String toString ()
+    {
+        return String.format ("import %s: rows read %d  inserted %d  bad %d  ms %.1f",
+                              file, rowsRead, rowsInserted, badRows, nanos / 1E6);
+    } // toString
+
+} // ImportReport class
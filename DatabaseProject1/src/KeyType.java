@@ -7,6 +7,10 @@
  */
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 import static java.lang.System.out;
@@ -14,14 +18,39 @@ import static java.lang.System.out;
 /*****************************************************************************************
  * The KeyType class provides a key type for handling both non-composite and composite keys.
  * A key is a minimal set of attributes that can be used to uniquely identify a tuple.
+ *
+ * Keys of the table domains (numbers, characters and strings) are compared through an
+ * order-preserving byte encoding: each value is written as a type tag followed by bytes
+ * whose unsigned lexicographic order is the order of the values, so comparing two
+ * composite keys such as (title, year) is a single unsigned byte array comparison.  The
+ * encoding (see toBytes) is computed when first needed and kept, as is the hash code, so
+ * a key's values must not be modified once it is in use.  Keys of one value are compared
+ * directly, with no encoding, since that is as fast as comparing bytes; keys of one
+ * Integer or Long value (see of) are also held unboxed.
  */
 public class KeyType
        implements Comparable <KeyType>, Serializable
 {
-    /** Array holding the attribute values for a particular key
+    /** Serialization version (kept so that files in the original format can be converted).
+     */
+    private static final long serialVersionUID = 1138509191442768642L;
+
+    /** Type tags of the encoded values (their order orders values of different types)
+     */
+    private static final byte BYTE = 1, SHORT = 2, INT = 3, LONG = 4, FLOAT = 5, DOUBLE = 6, CHAR = 7, STRING = 8;
+
+    /** Array holding the attribute values for a particular key (null for IntKey and LongKey)
      */
     private final Comparable [] key;
 
+    /** The cached hash code (0 until computed)
+     */
+    private transient int hash;
+
+    /** The cached byte encoding (null until computed, empty if a value cannot be encoded)
+     */
+    private transient volatile byte [] bytes;
+
     /*************************************************************************************
      * Construct an instance of KeyType from a Comparable array.  
      * @param _key  the primary key
@@ -42,42 +71,140 @@ public class KeyType
          for (int i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Construct a key holding its value unboxed (for IntKey and LongKey).
+     */
+    private KeyType ()
+    {
+         key = null;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the key for a single value, unboxed if it is an Integer or a Long.
+     * @param val  the key value
+     * @return  the key
+     */
+    public static KeyType of (Comparable val)
+    {
+        if (val instanceof Integer) return new IntKey ((Integer) val);
+        if (val instanceof Long)    return new LongKey ((Long) val);
+        return new KeyType (new Comparable [] { val });
+    } // of
+
+    /*************************************************************************************
+     * Return the key for the given values, unboxed if it is a single Integer or Long.
+     * @param vals  the key values
+     * @return  the key
+     */
+    public static KeyType of (Comparable [] vals)
+    {
+        return (vals.length == 1) ? of (vals [0]) : new KeyType (vals);
+    } // of
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
+     * Values of different types are ordered by type.
      * @param k  the other key (to compare with this)
      * @return  resultant integer that's negative, zero or positive
      */
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (int i = 0; i < key.length; i++) {
-            if (key [i].compareTo (k.key [i]) < 0) return -1;
-            if (key [i].compareTo (k.key [i]) > 0) return 1;
+        if (key != null && k.key != null && key.length == 1 && k.key.length == 1
+                        && key [0].getClass () == k.key [0].getClass ()) {
+            return key [0].compareTo (k.key [0]);                          // same order as the bytes
+        } // if
+
+        byte [] a = encoded (), b = k.encoded ();
+        if (a.length > 0 && b.length > 0) return Arrays.compareUnsigned (a, b);
+
+        Comparable [] vals = values (), other = k.values ();               // values without an encoding
+        for (int i = 0; i < vals.length; i++) {
+            int c = vals [i].compareTo (other [i]);
+            if (c != 0) return c;
         } // for
         return 0;
     } // compareTo
 
     /*************************************************************************************
-     * Determine whether two keys are equal (equals must agree with compareTo).
-     * @param k  the other key (to compare with this)
+     * Determine whether two keys are equal (equals must agree with compareTo).  This
+     * overrides Object.equals so that hash based maps find equal keys.
+     * @param obj  the other key (to compare with this)
      * @return  true if equal, false otherwise
      */
-    public boolean equals (KeyType k)
+    public boolean equals (Object obj)
     {
-        return compareTo (k) == 0;
+        if (this == obj) return true;
+        if (! (obj instanceof KeyType)) return false;
+        KeyType k = (KeyType) obj;
+        if (hashCode () != k.hashCode () || size () != k.size ()) return false;
+        if (key == null || k.key == null) return compareTo (k) == 0;
+        for (int i = 0; i < key.length; i++) {
+            if (! key [i].equals (k.key [i])) return false;
+        } // for
+        return true;
     } // equals
 
     /*************************************************************************************
      * Compute a hash code for this object (equal objects should produce the same hash code).
+     * The hash code is computed once.
      * @return  an integer hash code value
      */
     public int hashCode ()
     {
-        int sum = 0;
-        for (int i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+        int sum = hash;
+        if (sum == 0) {
+            for (int i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+            hash = sum;
+        } // if
         return sum;
     } // hashCode
 
+    /*************************************************************************************
+     * Return the order-preserving byte encoding of the key: for keys j and k,
+     * Arrays.compareUnsigned (j.toBytes (), k.toBytes ()) has the sign of j.compareTo (k).
+     * Each value is a type tag followed by its bytes: integers big-endian with the sign
+     * bit flipped, floating point numbers with the sign bit flipped (all bits if
+     * negative), characters big-endian, and strings one to three bytes per char ending
+     * with 0 0 (see putString).
+     * @return  a copy of the encoding
+     * @throws IllegalArgumentException  if a value is not of a table domain
+     */
+    public byte [] toBytes ()
+    {
+        byte [] b = encoded ();
+        if (b.length == 0) throw new IllegalArgumentException ("KeyType.toBytes: cannot encode " + this);
+        return b.clone ();
+    } // toBytes
+
+    /*************************************************************************************
+     * Decode a key from its byte encoding (see toBytes).
+     * @param b  the encoding
+     * @return  the key
+     * @throws IllegalArgumentException  if the bytes are not a key encoding
+     */
+    public static KeyType fromBytes (byte [] b)
+    {
+        ByteBuffer buf = ByteBuffer.wrap (b);
+        List <Comparable> vals = new ArrayList <> ();
+        while (buf.hasRemaining ()) {
+            switch (buf.get ()) {
+            case BYTE:   vals.add ((byte) (buf.get () ^ 0x80));                  break;
+            case SHORT:  vals.add ((short) (buf.getShort () ^ 0x8000));          break;
+            case INT:    vals.add (buf.getInt () ^ Integer.MIN_VALUE);           break;
+            case LONG:   vals.add (buf.getLong () ^ Long.MIN_VALUE);             break;
+            case FLOAT:  int f = buf.getInt ();
+                         vals.add (Float.intBitsToFloat ((f < 0) ? f ^ Integer.MIN_VALUE : ~f));  break;
+            case DOUBLE: long d = buf.getLong ();
+                         vals.add (Double.longBitsToDouble ((d < 0) ? d ^ Long.MIN_VALUE : ~d));  break;
+            case CHAR:   vals.add (buf.getChar ());                              break;
+            case STRING: vals.add (getString (buf));                             break;
+            default:     throw new IllegalArgumentException ("KeyType.fromBytes: bad type tag");
+            } // switch
+        } // while
+        return of (vals.toArray (new Comparable [0]));
+    } // fromBytes
+
     /*************************************************************************************
      * Convert the key to a string.
      * @return  the string representation of the key
@@ -85,10 +212,218 @@ public class KeyType
     public String toString ()
     {
         String s = "Key (";
-        for (int i = 0; i < key.length; i++) s += " " + key [i];
+        for (Comparable v : values ()) s += " " + v;
         return s + (" )");
     } // toString
 
+    /*************************************************************************************
+     * Return the number of values in the key.
+     */
+    int size ()
+    {
+        return key.length;
+    } // size
+
+    /*************************************************************************************
+     * Return the values of the key.
+     */
+    Comparable [] values ()
+    {
+        return key;
+    } // values
+
+    /*************************************************************************************
+     * Return the cached encoding, computing it on first use.
+     * @return  the encoding, or an empty array if a value cannot be encoded
+     */
+    byte [] encoded ()
+    {
+        byte [] b = bytes;
+        if (b == null) bytes = b = encode ();
+        return b;
+    } // encoded
+
+    /*************************************************************************************
+     * Compute the encoding of the key's values.
+     */
+    byte [] encode ()
+    {
+        int n = 0;
+        for (Comparable v : key) {
+            int w = width (v);
+            if (w < 0) return new byte [0];
+            n += 1 + w;
+        } // for
+        byte [] b = new byte [n];
+        int i = 0;
+        for (Comparable v : key) i = put (b, i, v);
+        return b;
+    } // encode
+
+    /*************************************************************************************
+     * Return the number of bytes encoding the value (after its tag), or -1 if it is not
+     * of a table domain.
+     */
+    static int width (Comparable v)
+    {
+        if (v instanceof Integer || v instanceof Float)  return 4;
+        if (v instanceof Long || v instanceof Double)    return 8;
+        if (v instanceof Character || v instanceof Short) return 2;
+        if (v instanceof Byte)                           return 1;
+        if (! (v instanceof String)) return -1;
+        String s = (String) v;
+        int w = 2;
+        for (int i = 0; i < s.length (); i++) {
+            char c = s.charAt (i);
+            w += (c == 0 || c >= 0x80 && c < 0x4000) ? 2 : (c < 0x80) ? 1 : 3;
+        } // for
+        return w;
+    } // width
+
+    /*************************************************************************************
+     * Write the tag and bytes of the value at position i of b.
+     * @return  the position after the value
+     */
+    static int put (byte [] b, int i, Comparable v)
+    {
+        if (v instanceof Integer)        { b [i] = INT;    return putLong (b, i + 1, ((Integer) v) ^ Integer.MIN_VALUE, 4); }
+        if (v instanceof String)         { b [i] = STRING; return putString (b, i + 1, (String) v); }
+        if (v instanceof Long)           { b [i] = LONG;   return putLong (b, i + 1, ((Long) v) ^ Long.MIN_VALUE, 8); }
+        if (v instanceof Double)         { b [i] = DOUBLE; long d = Double.doubleToLongBits ((Double) v);
+                                           return putLong (b, i + 1, (d < 0) ? ~d : d ^ Long.MIN_VALUE, 8); }
+        if (v instanceof Float)          { b [i] = FLOAT;  int f = Float.floatToIntBits ((Float) v);
+                                           return putLong (b, i + 1, (f < 0) ? ~f : f ^ Integer.MIN_VALUE, 4); }
+        if (v instanceof Character)      { b [i] = CHAR;   return putLong (b, i + 1, (Character) v, 2); }
+        if (v instanceof Short)          { b [i] = SHORT;  return putLong (b, i + 1, ((Short) v) ^ 0x8000, 2); }
+        b [i] = BYTE;
+        return putLong (b, i + 1, ((Byte) v) ^ 0x80, 1);
+    } // put
+
+    /*************************************************************************************
+     * Write the low n bytes of v, most significant first, at position i of b.
+     * @return  the position after them
+     */
+    static int putLong (byte [] b, int i, long v, int n)
+    {
+        for (int j = n - 1; j >= 0; j--) b [i++] = (byte) (v >>> (8 * j));
+        return i;
+    } // putLong
+
+    /*************************************************************************************
+     * Write a string so that the unsigned byte order is String.compareTo order (by UTF-16
+     * code unit): each char c is one byte if 1 <= c < 0x80, two bytes 0x80 + (c >> 8),
+     * c & 0xff if c < 0x4000, otherwise 0xc0 followed by its two bytes; the char 0 is
+     * 0 1 and the end of the string is 0 0.
+     * @return  the position after the string
+     */
+    private static int putString (byte [] b, int i, String s)
+    {
+        for (int k = 0; k < s.length (); k++) {
+            char c = s.charAt (k);
+            if (c == 0)           { b [i++] = 0; b [i++] = 1; }
+            else if (c < 0x80)    b [i++] = (byte) c;
+            else if (c < 0x4000)  { b [i++] = (byte) (0x80 + (c >> 8)); b [i++] = (byte) c; }
+            else                  { b [i++] = (byte) 0xc0; b [i++] = (byte) (c >> 8); b [i++] = (byte) c; }
+        } // for
+        b [i++] = 0; b [i++] = 0;
+        return i;
+    } // putString
+
+    /*************************************************************************************
+     * Read a string written by putString.
+     */
+    private static String getString (ByteBuffer buf)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for ( ; ; ) {
+            int b = buf.get () & 0xff;
+            if (b == 0) {
+                if (buf.get () == 0) return sb.toString ();
+                sb.append ((char) 0);
+            } else if (b < 0x80) {
+                sb.append ((char) b);
+            } else if (b < 0xc0) {
+                sb.append ((char) (((b - 0x80) << 8) | (buf.get () & 0xff)));
+            } else {
+                sb.append (buf.getChar ());
+            } // if
+        } // for
+    } // getString
+
+    /*************************************************************************************
+     * The IntKey class is a key of one Integer value, held unboxed.
+     */
+    static final class IntKey
+           extends KeyType
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int v;
+
+        IntKey (int _v) { v = _v; }
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof IntKey) ? Integer.compare (v, ((IntKey) k).v) : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object obj)
+        {
+            return (obj instanceof IntKey) ? v == ((IntKey) obj).v : super.equals (obj);
+        } // equals
+
+        public int hashCode ()         { return Integer.hashCode (v); }
+        int size ()                    { return 1; }
+        Comparable [] values ()        { return new Comparable [] { v }; }
+
+        byte [] encode ()
+        {
+            byte [] b = new byte [5];
+            b [0] = INT;
+            putLong (b, 1, v ^ Integer.MIN_VALUE, 4);
+            return b;
+        } // encode
+
+        private Object writeReplace ()  { return new KeyType (values ()); }
+    } // IntKey inner class
+
+    /*************************************************************************************
+     * The LongKey class is a key of one Long value, held unboxed.
+     */
+    static final class LongKey
+           extends KeyType
+    {
+        private static final long serialVersionUID = 1L;
+
+        final long v;
+
+        LongKey (long _v) { v = _v; }
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof LongKey) ? Long.compare (v, ((LongKey) k).v) : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object obj)
+        {
+            return (obj instanceof LongKey) ? v == ((LongKey) obj).v : super.equals (obj);
+        } // equals
+
+        public int hashCode ()         { return Long.hashCode (v); }
+        int size ()                    { return 1; }
+        Comparable [] values ()        { return new Comparable [] { v }; }
+
+        byte [] encode ()
+        {
+            byte [] b = new byte [9];
+            b [0] = LONG;
+            putLong (b, 1, v ^ Long.MIN_VALUE, 8);
+            return b;
+        } // encode
+
+        private Object writeReplace ()  { return new KeyType (values ()); }
+    } // LongKey inner class
+
     /*************************************************************************************
      * The main method is used for testing purposes only.
      * @param args  the command-line arguments
@@ -122,6 +457,9 @@ public class KeyType
         out.println ("key1.equals (key3): " + key1.equals (key3));
         out.println ("key1.hashCode () == key2.hashCode (): " + (key1.hashCode () == key2.hashCode ()));
         out.println ("key1.hashCode () == key3.hashCode (): " + (key1.hashCode () == key3.hashCode ()));
+        out.println ();
+        out.println ("bytes (key1) < bytes (key2): " + (Arrays.compareUnsigned (key1.toBytes (), key2.toBytes ()) < 0));
+        out.println ("fromBytes (bytes (key1)) = " + fromBytes (key1.toBytes ()));
     } // main
 
 } // KeyType class
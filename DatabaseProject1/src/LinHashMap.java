@@ -0,0 +1,286 @@
+
+/****************************************************************************************
+ * @file  LinHashMap.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The LinHashMap class provides hash maps that use the Linear Hashing algorithm.
+ * A hash table is created that is an array of buckets, each holding a few slots and a
+ * chain of overflow buckets.  Buckets are split one at a time, in order, whenever the
+ * load factor is exceeded, so the table grows smoothly without global rehashing.
+ */
+public class LinHashMap <K, V>
+       extends AbstractMap <K, V>
+       implements Serializable, Map <K, V>
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of slots (for key-value pairs) per bucket
+     */
+    private static final int SLOTS = 4;
+
+    /** The load factor (keys per slot) that triggers a split
+     */
+    private static final double LOAD = 0.75;
+
+    /*************************************************************************************
+     * The Bucket class holds a few key-value pairs and a link to an overflow bucket.
+     */
+    private static class Bucket
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        int      nKeys;
+        Object[] key   = new Object [SLOTS];
+        Object[] value = new Object [SLOTS];
+        Bucket   next;
+    } // Bucket inner class
+
+    /** The list of buckets making up the hash table
+     */
+    private final List <Bucket> hTable;
+
+    /** The modulus for the current round of splitting (doubles each round)
+     */
+    private int mod1;
+
+    /** The index of the next bucket to split
+     */
+    private int split = 0;
+
+    /** The number of keys in the map
+     */
+    private int keyCount = 0;
+
+    /************************************************************************************
+     * Construct an empty linear hash map.
+     */
+    public LinHashMap ()
+    {
+        this (4);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty linear hash map with the given initial number of buckets.
+     *
+     * @param initSize  the initial number of buckets
+     */
+    public LinHashMap (int initSize)
+    {
+        mod1   = Math.max (1, initSize);
+        hTable = new ArrayList <> ();
+        for (int i = 0; i < mod1; i++) hTable.add (new Bucket ());
+    } // constructor
+
+    /************************************************************************************
+     * Return a set containing all the entries as pairs of keys and values.
+     *
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return keyCount; }
+
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    int    b = 0;
+                    Bucket n = hTable.get (0);
+                    int    i = 0;
+
+                    public boolean hasNext ()
+                    {
+                        while (n != null && i >= n.nKeys) {
+                            n = n.next;
+                            i = 0;
+                            if (n == null && ++b < hTable.size ()) n = hTable.get (b);
+                        } // while
+                        return n != null;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) n.key [i], (V) n.value [i]);
+                        i++;
+                        return e;
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /************************************************************************************
+     * Given the key, look up the value in the hash table.
+     *
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        if (key == null) return null;
+        for (Bucket b = hTable.get (h (key)); b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) return (V) b.value [j];
+            } // for
+        } // for
+        return null;
+    } // get
+
+    /************************************************************************************
+     * Determine whether the hash table contains the given key.
+     *
+     * @param key  the key to look for
+     * @return  whether the key is in the map
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /************************************************************************************
+     * Put the key-value pair in the hash table, splitting a bucket if the load factor
+     * is exceeded.
+     *
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the value previously associated with the key or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("LinHashMap.put: null key");
+        Bucket home = hTable.get (h (key));
+        for (Bucket b = home; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) {
+                    V old = (V) b.value [j];
+                    b.value [j] = value;
+                    return old;
+                } // if
+            } // for
+        } // for
+
+        add (home, key, value);
+        keyCount++;
+        if (keyCount > LOAD * SLOTS * hTable.size ()) splitBucket ();
+        return null;
+    } // put
+
+    /************************************************************************************
+     * Return the number of keys in the hash table.
+     *
+     * @return  the number of keys
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Add the key-value pair to the first bucket in the chain with a free slot.
+     *
+     * @param b      the home bucket of the chain
+     * @param key    the key to add
+     * @param value  the value to add
+     */
+    private void add (Bucket b, Object key, Object value)
+    {
+        while (b.nKeys == SLOTS) {
+            if (b.next == null) b.next = new Bucket ();
+            b = b.next;
+        } // while
+        b.key [b.nKeys]   = key;
+        b.value [b.nKeys] = value;
+        b.nKeys++;
+    } // add
+
+    /************************************************************************************
+     * Split the bucket at the split pointer, rehashing its chain over the old bucket and
+     * a new bucket at the end of the table.
+     */
+    private void splitBucket ()
+    {
+        Bucket old = hTable.get (split);
+        Bucket lo  = new Bucket ();
+        Bucket hi  = new Bucket ();
+        hTable.set (split, lo);
+        hTable.add (hi);
+        for (Bucket b = old; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                add ((Math.floorMod (hash (b.key [j]), 2 * mod1) == split) ? lo : hi, b.key [j], b.value [j]);
+            } // for
+        } // for
+        if (++split == mod1) {
+            mod1 *= 2;
+            split = 0;
+        } // if
+    } // splitBucket
+
+    /************************************************************************************
+     * Spread the bits of the key's hash code.
+     *
+     * @param key  the key to hash
+     * @return  the spread hash code
+     */
+    private static int hash (Object key)
+    {
+        int h = key.hashCode ();
+        return h ^ (h >>> 16);
+    } // hash
+
+    /************************************************************************************
+     * Hash the key to locate its home bucket, using the doubled modulus for buckets
+     * that have already been split this round.
+     *
+     * @param key  the key to hash
+     * @return  the location of the bucket chain containing the key
+     */
+    private int h (Object key)
+    {
+        int i = Math.floorMod (hash (key), mod1);
+        return (i < split) ? Math.floorMod (hash (key), 2 * mod1) : i;
+    } // h
+
+    /************************************************************************************
+     * The main method used for testing.
+     *
+     * @param args  the command-line arguments (args [0] gives the number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = (args.length == 1) ? Integer.valueOf (args [0]) : 10000;
+        LinHashMap <Integer, Integer> ht = new LinHashMap <> ();
+        HashMap <Integer, Integer>    hm = new HashMap <> ();
+        Random rng = new Random (0);
+        for (int i = 0; i < totalKeys; i++) {
+            int k = rng.nextInt (2 * totalKeys);
+            ht.put (k, i);
+            hm.put (k, i);
+        } // for
+
+        out.println ("size agrees:    " + (ht.size () == hm.size ()));
+        out.println ("entries agree:  " + ht.equals (hm));
+        for (int i = 0; i < 2 * totalKeys; i++) {
+            if (! Objects.equals (ht.get (i), hm.get (i))) out.println ("get mismatch for key " + i);
+        } // for
+    } // main
+
+} // LinHashMap class
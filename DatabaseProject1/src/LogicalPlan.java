@@ -0,0 +1,358 @@
+/****************************************************************************************
+ * @file  LogicalPlan.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The LogicalPlan class describes a query as a tree of relational operators over tables
+ * (scan, select, project and join) without fixing the order or the algorithms used to
+ * evaluate it.  The Optimizer rewrites a plan into an equivalent, cheaper one: selections
+ * and projections are pushed below joins, the join order is chosen from the estimated
+ * cardinalities (see TableStats), and each join is given an algorithm.  Executing a plan
+ * runs the optimized tree with the Table operators; explain shows it with the estimated
+ * and actual number of tuples produced by each operator.
+ *
+ * Selections use Conditions rather than lambdas, since the optimizer must know which
+ * attributes a selection refers to.
+ *
+ * #usage LogicalPlan p = LogicalPlan.scan (movie).join ("title year", "movieTitle movieYear", starsIn)
+ *                                   .join ("starName", "name", movieStar)
+ *                                   .select (Condition.eq ("gender", "F")).project ("title name");
+ *        out.println (p.explain ());
+ */
+public abstract class LogicalPlan
+{
+    /** The join algorithms: nested loop (for tiny inputs), merge join (for inputs in
+     *  order on the join attributes, see Table.orderBy) or hash join (see HashJoin)
+     */
+    public enum JoinMethod { NESTED_LOOP, MERGE, HASH }
+
+    /** The estimated number of tuples produced (negative until estimated)
+     */
+    double estimate = -1;
+
+    /** The number of tuples produced by the last execution (negative until executed)
+     */
+    long actual = -1;
+
+    //----------------------------------------------------------------------------------
+    // Building Plans
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the plan reading all the tuples of the table.
+     *
+     * @param table  the table
+     * @return  the plan
+     */
+    public static LogicalPlan scan (Table table)
+    {
+        return new Scan (table);
+    } // scan
+
+    /************************************************************************************
+     * Return the plan selecting the tuples of this plan satisfying the condition.
+     *
+     * @param condition  the condition on named attributes
+     * @return  the plan
+     */
+    public LogicalPlan select (Condition condition)
+    {
+        return new Select (this, condition);
+    } // select
+
+    /************************************************************************************
+     * Return the plan projecting the tuples of this plan onto the given attributes.
+     *
+     * @param attributes  the attributes to project onto
+     * @return  the plan
+     */
+    public LogicalPlan project (String attributes)
+    {
+        return new Project (this, attributes.split (" "));
+    } // project
+
+    /************************************************************************************
+     * Return the plan equijoining this plan's tuples with those of plan2 (see Table.join).
+     *
+     * @param attributes1  the attributes of this plan to be compared
+     * @param attributes2  the attributes of plan2 to be compared
+     * @param plan2        the rhs plan
+     * @return  the plan
+     */
+    public LogicalPlan join (String attributes1, String attributes2, LogicalPlan plan2)
+    {
+        return new Join (this, plan2, attributes1.split (" "), attributes2.split (" "), null);
+    } // join
+
+    /************************************************************************************
+     * Return the plan equijoining this plan's tuples with those of table2.
+     *
+     * @param attributes1  the attributes of this plan to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table
+     * @return  the plan
+     */
+    public LogicalPlan join (String attributes1, String attributes2, Table table2)
+    {
+        return join (attributes1, attributes2, scan (table2));
+    } // join
+
+    //----------------------------------------------------------------------------------
+    // Running Plans
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Optimize and execute the plan.
+     *
+     * @return  the result table
+     */
+    public Table execute ()
+    {
+        return Optimizer.optimize (this).run ();
+    } // execute
+
+    /************************************************************************************
+     * Optimize and execute the plan, and describe the optimized plan: one operator per
+     * line, each with its estimated and actual number of tuples.
+     *
+     * @return  the description
+     */
+    public String explain ()
+    {
+        LogicalPlan plan = Optimizer.optimize (this);
+        plan.run ();
+        StringBuilder sb = new StringBuilder ();
+        plan.describe (sb, 0);
+        return sb.toString ();
+    } // explain
+
+    /************************************************************************************
+     * Return the plan as text, one operator per line (with the estimates, if optimized).
+     */
+    public String toString ()
+    {
+        StringBuilder sb = new StringBuilder ();
+        describe (sb, 0);
+        return sb.toString ();
+    } // toString
+
+    //----------------------------------------------------------------------------------
+    // Package Methods (used by Optimizer)
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the attributes of the tuples produced, in order.
+     */
+    abstract String [] attributes ();
+
+    /************************************************************************************
+     * Return the inputs of the operator.
+     */
+    abstract List <LogicalPlan> children ();
+
+    /************************************************************************************
+     * Execute the operator (and its inputs), recording the number of tuples produced.
+     *
+     * @return  the result table
+     */
+    abstract Table run ();
+
+    /************************************************************************************
+     * Return a one-line description of the operator.
+     */
+    abstract String label ();
+
+    /************************************************************************************
+     * Return the statistics of the table the attribute comes from.
+     *
+     * @param attr  the attribute
+     * @return  its statistics, or null if unknown
+     */
+    TableStats.Column stats (String attr)
+    {
+        for (LogicalPlan c : children ()) {
+            if (Arrays.asList (c.attributes ()).contains (attr)) return c.stats (attr);
+        } // for
+        return null;
+    } // stats
+
+    /************************************************************************************
+     * Return whether the tuples produced are known to be in ascending order of the
+     * attributes (see Table.inOrder).  Only scans of sorted tables and projections of
+     * them are.
+     *
+     * @param attrs  the attributes
+     * @return  whether the result is in order
+     */
+    boolean inOrder (String [] attrs)
+    {
+        return false;
+    } // inOrder
+
+    /************************************************************************************
+     * Record and return the number of tuples produced.
+     */
+    Table done (Table t)
+    {
+        actual = t.size ();
+        return t;
+    } // done
+
+    /************************************************************************************
+     * Close an intermediate result once the operator consuming it is done, releasing
+     * its off-heap memory (see Table.close); the tables read by scans are kept.
+     *
+     * @param child  the operator that produced the input
+     * @param in     the input
+     * @param t      the result computed from it
+     * @return  the result t
+     */
+    static Table release (LogicalPlan child, Table in, Table t)
+    {
+        if (! (child instanceof Scan)) in.close ();
+        return t;
+    } // release
+
+    /************************************************************************************
+     * Append the description of the plan, indented by depth.
+     */
+    private void describe (StringBuilder sb, int depth)
+    {
+        String op = "  ".repeat (depth) + label ();
+        sb.append (String.format ("%-64s", op));
+        if (estimate >= 0) sb.append (String.format ("  est %10.0f", estimate));
+        if (actual >= 0)   sb.append (String.format ("  actual %10d", actual));
+        sb.append ('\n');
+        for (LogicalPlan c : children ()) c.describe (sb, depth + 1);
+    } // describe
+
+    //----------------------------------------------------------------------------------
+    // Operators
+    //----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * The Scan class reads a table.
+     */
+    static final class Scan extends LogicalPlan
+    {
+        final Table table;
+
+        Scan (Table _table)
+        {
+            table = _table;
+        } // constructor
+
+        String [] attributes ()              { return table.attributes (); }
+        List <LogicalPlan> children ()       { return Collections.emptyList (); }
+        Table run ()                         { return done (table); }
+        String label ()                      { return "scan " + table.getName (); }
+
+        TableStats.Column stats (String attr)
+        {
+            return table.stats ().column (attr);
+        } // stats
+
+        boolean inOrder (String [] attrs)
+        {
+            return table.inOrder (attrs);
+        } // inOrder
+    } // Scan inner class
+
+    /*************************************************************************************
+     * The Select class keeps the tuples satisfying a condition.
+     */
+    static final class Select extends LogicalPlan
+    {
+        final LogicalPlan child;
+        final Condition   condition;
+
+        Select (LogicalPlan _child, Condition _condition)
+        {
+            child     = _child;
+            condition = _condition;
+        } // constructor
+
+        String [] attributes ()              { return child.attributes (); }
+        List <LogicalPlan> children ()       { return Collections.singletonList (child); }
+        Table run ()
+        {
+            Table in = child.run ();
+            return done (release (child, in, in.select (condition)));
+        } // run
+
+        String label ()                      { return "select " + condition; }
+    } // Select inner class
+
+    /*************************************************************************************
+     * The Project class keeps the given attributes of each tuple.
+     */
+    static final class Project extends LogicalPlan
+    {
+        final LogicalPlan child;
+        final String []   attrs;
+
+        Project (LogicalPlan _child, String [] _attrs)
+        {
+            child = _child;
+            attrs = _attrs;
+        } // constructor
+
+        String [] attributes ()              { return attrs; }
+        List <LogicalPlan> children ()       { return Collections.singletonList (child); }
+        Table run ()
+        {
+            Table in = child.run ();
+            return done (release (child, in, in.project (String.join (" ", attrs))));
+        } // run
+
+        String label ()                      { return "project (" + String.join (" ", attrs) + ")"; }
+
+        boolean inOrder (String [] a)
+        {
+            return Arrays.asList (attrs).containsAll (Arrays.asList (a)) && child.inOrder (a);
+        } // inOrder
+    } // Project inner class
+
+    /*************************************************************************************
+     * The Join class equijoins two inputs using the given method (null: chosen when it
+     * runs, as Table.join does).
+     */
+    static final class Join extends LogicalPlan
+    {
+        final LogicalPlan left, right;
+        final String []   attrs1, attrs2;
+        final JoinMethod  method;
+
+        Join (LogicalPlan _left, LogicalPlan _right, String [] _attrs1, String [] _attrs2, JoinMethod _method)
+        {
+            left   = _left;
+            right  = _right;
+            attrs1 = _attrs1;
+            attrs2 = _attrs2;
+            method = _method;
+        } // constructor
+
+        String [] attributes ()              { return ArrayUtil.concat (left.attributes (), right.attributes ()); }
+        List <LogicalPlan> children ()       { return Arrays.asList (left, right); }
+
+        Table run ()
+        {
+            Table l = left.run (), r = right.run ();
+            String a1 = String.join (" ", attrs1), a2 = String.join (" ", attrs2);
+            Table t = l.join (a1, a2, r, method);
+            return done (release (left, l, release (right, r, t)));
+        } // run
+
+        String label ()
+        {
+            String how = (method == null) ? "join" : (method == JoinMethod.HASH) ? "hash join"
+                       : (method == JoinMethod.MERGE) ? "merge join" : "nested loop join";
+            return how + " (" + String.join (" ", attrs1) + " = " + String.join (" ", attrs2) + ")";
+        } // label
+    } // Join inner class
+
+} // LogicalPlan class
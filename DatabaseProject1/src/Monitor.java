@@ -0,0 +1,227 @@
+
+/****************************************************************************************
+ * @file  Monitor.java
+ *
+ * @author   John Miller
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import jdk.jfr.EventType;
+
+/****************************************************************************************
+ * The Monitor class provides the tracing and metrics layer for the relational operators.
+ * By default execution is silent and unmeasured: tracing() is false and start returns
+ * null, so an operator pays one volatile read.  A tracer (e.g., out::println) receives
+ * the DDL/DML/RA trace lines; enabling metrics records rows in/out, elapsed nanos, bytes
+ * allocated and index hits per operator call, and an OperatorEvent is committed to the
+ * JDK Flight Recorder whenever a recording has that event enabled.
+ *
+ * Bytes allocated are those of the thread calling the operator only.  Work an operator
+ * hands to a ForkJoinPool (parallel select, project and join probe in ParallelExec, and
+ * the parsing of BulkImport) allocates on the pool's threads and is not counted, so for
+ * parallel operators and imports the figure is a lower bound (elapsed time covers it).
+ *
+ * #usage Monitor.Probe probe = Monitor.start (name, "select", tuples.size ());
+ *        ...
+ *        Monitor.end (probe, rows.size ());
+ */
+public class Monitor
+{
+    /** The destination for trace lines (null => no tracing)
+     */
+    private static volatile Consumer <String> tracer = null;
+
+    /** Whether per-operator metrics are being collected
+     */
+    private static volatile boolean metrics = false;
+
+    /** The accumulated statistics, keyed by operator name
+     */
+    private static final Map <String, OpStats> stats = new ConcurrentHashMap <> ();
+
+    /** The JFR event type for operator events
+     */
+    private static final EventType eventType = EventType.getEventType (OperatorEvent.class);
+
+    /** The thread bean used for measuring allocations (null if unsupported)
+     */
+    private static final com.sun.management.ThreadMXBean threadBean;
+
+    static {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean ();
+        threadBean = (bean instanceof com.sun.management.ThreadMXBean &&
+                      ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported ())
+                   ? (com.sun.management.ThreadMXBean) bean : null;
+    } // static
+
+    /*************************************************************************************
+     * The Probe class measures a single operator call, from start to end.
+     */
+    public static final class Probe
+    {
+        private final String        table;
+        private final String        op;
+        private final long          rowsIn;
+        private final long          start;
+        private final long          alloc0;
+        private final OperatorEvent event;
+        private long                indexHits;
+
+        private Probe (String _table, String _op, long _rowsIn, OperatorEvent _event)
+        {
+            table  = _table;
+            op     = _op;
+            rowsIn = _rowsIn;
+            event  = _event;
+            alloc0 = allocated ();
+            start  = System.nanoTime ();
+            if (event != null) event.begin ();
+        } // constructor
+
+        /********************************************************************************
+         * Record hits (tuples found) in an index during this operator call.
+         *
+         * @param hits  the number of index hits
+         */
+        public void indexHit (long hits)
+        {
+            indexHits += hits;
+        } // indexHit
+
+    } // Probe inner class
+
+    /************************************************************************************
+     * Set the destination for trace lines (null turns tracing off).
+     *
+     * #usage Monitor.setTracer (System.out::println)
+     *
+     * @param _tracer  the consumer of trace lines
+     */
+    public static void setTracer (Consumer <String> _tracer)
+    {
+        tracer = _tracer;
+    } // setTracer
+
+    /************************************************************************************
+     * Determine whether tracing is on.  Callers check this before building a trace line,
+     * so disabled tracing costs no string concatenation.
+     *
+     * @return  whether there is a tracer
+     */
+    public static boolean tracing ()
+    {
+        return tracer != null;
+    } // tracing
+
+    /************************************************************************************
+     * Send a line to the tracer, if any.
+     *
+     * @param line  the trace line
+     */
+    public static void trace (String line)
+    {
+        Consumer <String> t = tracer;
+        if (t != null) t.accept (line);
+    } // trace
+
+    /************************************************************************************
+     * Turn the collection of per-operator metrics on or off.
+     *
+     * @param on  whether to collect metrics
+     */
+    public static void setMetrics (boolean on)
+    {
+        metrics = on;
+    } // setMetrics
+
+    /************************************************************************************
+     * Start measuring an operator call.
+     *
+     * @param table   the name of the table the operator is applied to
+     * @param op      the name of the operator
+     * @param rowsIn  the number of input rows
+     * @return  a probe to pass to end, or null if neither metrics nor JFR events are on
+     */
+    public static Probe start (String table, String op, long rowsIn)
+    {
+        boolean jfr = eventType.isEnabled ();
+        if (! metrics && ! jfr) return null;
+        return new Probe (table, op, rowsIn, jfr ? new OperatorEvent () : null);
+    } // start
+
+    /************************************************************************************
+     * Finish measuring an operator call, recording its metrics and JFR event.
+     *
+     * @param probe    the probe returned by start (may be null)
+     * @param rowsOut  the number of output rows
+     */
+    public static void end (Probe probe, long rowsOut)
+    {
+        if (probe == null) return;
+        long ns    = System.nanoTime () - probe.start;
+        long bytes = (probe.alloc0 < 0) ? -1 : allocated () - probe.alloc0;
+        if (metrics) {
+            stats.computeIfAbsent (probe.op, OpStats::new).record (probe.rowsIn, rowsOut, ns, bytes, probe.indexHits);
+        } // if
+        OperatorEvent e = probe.event;
+        if (e != null) {
+            e.end ();
+            if (e.shouldCommit ()) {
+                e.table          = probe.table;
+                e.operator       = probe.op;
+                e.rowsIn         = probe.rowsIn;
+                e.rowsOut        = rowsOut;
+                e.indexHits      = probe.indexHits;
+                e.allocatedBytes = bytes;
+                e.commit ();
+            } // if
+        } // if
+    } // end
+
+    /************************************************************************************
+     * Return a snapshot of the statistics collected so far, keyed by operator name.
+     *
+     * @return  the map of operator statistics
+     */
+    public static Map <String, OpStats> stats ()
+    {
+        return new TreeMap <> (stats);
+    } // stats
+
+    /************************************************************************************
+     * Clear the statistics collected so far.
+     */
+    public static void reset ()
+    {
+        stats.clear ();
+    } // reset
+
+    /************************************************************************************
+     * Return a report of the statistics collected so far, one operator per line.
+     *
+     * @return  the statistics report
+     */
+    public static String report ()
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (OpStats s : stats ().values ()) sb.append (s).append ('\n');
+        return sb.toString ();
+    } // report
+
+    /************************************************************************************
+     * Return the number of bytes allocated so far by the current thread (not counting
+     * other threads working for it).
+     *
+     * @return  the allocated bytes or -1 if unsupported
+     */
+    private static long allocated ()
+    {
+        return (threadBean == null) ? -1 : threadBean.getCurrentThreadAllocatedBytes ();
+    } // allocated
+
+} // Monitor class
@@ -19,16 +19,20 @@ class MovieDB
      */
     public static void main (String [] args)
     {
+        Monitor.setTracer (out::println);
+        Monitor.setMetrics (true);
         out.println ();
 
         Table movie = new Table ("movie", "title year length genre studioName producerNo",
                                           "String Integer Integer String String Integer", "title year");
 
         Table cinema = new Table ("cinema", "title year length genre studioName producerNo",
-                                            "String Integer Integer String String Integer", "title year");
+                                            "String Integer Integer String String Integer", "title year",
+                                            Table.MapType.TREE_MAP, Table.StorageType.COLUMN);
 
         Table movieStar = new Table ("movieStar", "name address gender birthdate",
-                                                  "String String Character String", "name");
+                                                  "String String Character String", "name",
+                                                  Table.MapType.BPTREE_MAP);
 
         Table starsIn = new Table ("starsIn", "movieTitle movieYear starName",
                                               "String Integer String", "movieTitle movieYear starName");
@@ -37,7 +41,8 @@ class MovieDB
                                                   "Integer String String Double", "certNo");
 
         Table studio = new Table ("studio", "name address presNo",
-                                            "String String Integer", "name");
+                                            "String String Integer", "name",
+                                            Table.MapType.LINHASH_MAP);
 
         Comparable [] film0 = { "Star_Wars", 1977, 124, "sciFi", "Fox", 12345 };
         Comparable [] film1 = { "Star_Wars_2", 1980, 124, "sciFi", "Fox", 12345 };
@@ -109,12 +114,32 @@ class MovieDB
                                             t[movie.col("year")].equals (1977));
         t_select.print ();
 
+        //--------------------- primitive select (no boxing on column storage)
+
+        out.println ();
+        Table t_pselect = cinema.selectInt ("year", y -> y >= 1980);
+        t_pselect.print ();
+
         //--------------------- indexed select
 
         out.println ();
         Table t_iselect = movieStar.select (new KeyType ("Harrison_Ford"));
         t_iselect.print ();
 
+        //--------------------- secondary index select
+
+        out.println ();
+        movie.createIndex ("studioName");
+        Table t_sselect = movie.select (Condition.and (Condition.eq ("studioName", "Universal"),
+                                                       Condition.range ("year", 1970, 1989)));
+        t_sselect.print ();
+
+        //--------------------- range select
+
+        out.println ();
+        Table t_rselect = movie.select (new KeyType ("Rambo", 1900), new KeyType ("Star_Wars", 1977));
+        t_rselect.print ();
+
         //--------------------- union
 
         out.println ();
@@ -127,6 +152,12 @@ class MovieDB
         Table t_minus = movie.minus (cinema);
         t_minus.print ();
 
+        //--------------------- intersect
+
+        out.println ();
+        Table t_intersect = movie.intersect (cinema);
+        t_intersect.print ();
+
         //--------------------- join
 
         out.println ();
@@ -137,6 +168,34 @@ class MovieDB
         Table t_join2 = movie.join ("title year", "title year", cinema);
         t_join2.print ();
 
+        //--------------------- pipelined join, select and project (no intermediate tables)
+
+        out.println ();
+        Query q = movie.query ().join ("studioName", "name", studio);
+        Table t_pipe = q.select (t -> t [q.col ("presNo")].equals (8888))
+                        .project ("title year name")
+                        .toTable ();
+        t_pipe.print ();
+
+        //--------------------- optimized multi-way join (estimated vs actual cardinalities)
+
+        out.println ();
+        LogicalPlan plan = LogicalPlan.scan (movie).join ("title year", "movieTitle movieYear", starsIn)
+                                      .join ("starName", "name", movieStar)
+                                      .select (Condition.eq ("gender", 'F')).project ("title name");
+        out.println (plan.explain ());
+
+        //--------------------- group by with aggregates
+
+        out.println ();
+        Table t_group = movie.groupBy ("studioName", Aggregate.count (), Aggregate.avg ("length"),
+                                                     Aggregate.min ("year"));
+        t_group.print ();
+
+        out.println ();
+        out.println ("Operator statistics");
+        out.print (Monitor.report ());
+
        
     } // main
 
@@ -0,0 +1,554 @@
+/****************************************************************************************
+ * @file  OffHeapStore.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.*;
+
+/****************************************************************************************
+ * The OffHeapStore class keeps the tuples of a table outside the Java heap, in direct
+ * byte buffers, so a large table adds no objects for the garbage collector to trace.
+ * Each tuple is a fixed-width row whose layout is derived from the domains: 1 byte for
+ * Byte, 2 for Short and Character, 4 for Integer and Float, 8 for Long and Double, and
+ * for String 8 (the block and offset of its characters, stored with their count in a
+ * separate variable-length area).  Rows are packed into blocks of BLOCK_SIZE bytes that
+ * never move, so get and the scan methods read fields in place; get materializes a tuple.
+ *
+ * The memory is released deterministically by close (see Table.close), or by the
+ * garbage collector once an unclosed store is unreachable.  Like TupleLog, a store may be
+ * read while being appended to by one writer.  Each read (get, value or a scan) and each
+ * append counts itself as a user of the blocks while it touches them, and close waits
+ * (blocked, until the last user signals) for them to finish before freeing the blocks;
+ * reads and appends starting after close fail with IllegalStateException.
+ */
+public class OffHeapStore
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The size in bytes of a block of rows and of a block of the variable-length area
+     */
+    static final int BLOCK_SIZE = 1 << 20;
+
+    /** The number of bytes reserved by all stores not yet closed or collected
+     */
+    private static final AtomicLong reserved = new AtomicLong ();
+
+    /** Uncounts the bytes of unreachable stores (whose buffers the collector frees)
+     */
+    private static final Cleaner cleaner = Cleaner.create ();
+
+    /** The Unsafe instance and its invokeCleaner method, used to free a direct buffer
+     *  immediately (null if not available, leaving it to the garbage collector)
+     */
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static {
+        Object u = null;
+        Method m = null;
+        try {
+            Class <?> c = Class.forName ("sun.misc.Unsafe");
+            Field f = c.getDeclaredField ("theUnsafe");
+            f.setAccessible (true);
+            u = f.get (null);
+            m = c.getMethod ("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            u = null;
+            m = null;
+        } // try
+        unsafe        = u;
+        invokeCleaner = m;
+    } // static
+
+    /** The domains of the columns
+     */
+    private final transient Class [] domain;
+
+    /** The offset of each column within a row
+     */
+    private final transient int [] offset;
+
+    /** The width of a row in bytes
+     */
+    private final transient int width;
+
+    /** The number of rows per block
+     */
+    private final transient int perBlock;
+
+    /** The blocks of rows (the array is replaced when it grows; null once freed)
+     */
+    private transient volatile ByteBuffer [] rows = new ByteBuffer [16];
+
+    /** The blocks of the variable-length area (replaced when it grows)
+     */
+    private transient volatile ByteBuffer [] heap = new ByteBuffer [16];
+
+    /** The number of blocks of rows and of the variable-length area in use
+     */
+    private transient int rowBlocks = 0, heapBlocks = 0;
+
+    /** The first free byte of the last block of the variable-length area
+     */
+    private transient int heapEnd = 0;
+
+    /** The number of bytes reserved by this store
+     */
+    private final transient AtomicLong bytes = new AtomicLong ();
+
+    /** The number of tuples visible to readers
+     */
+    private transient volatile int size = 0;
+
+    /** The number of reads and appends in progress (close waits for them before freeing
+     *  the blocks)
+     */
+    private final transient AtomicInteger readers = new AtomicInteger ();
+
+    /** Whether the store has been closed (its blocks are freed once the readers finish)
+     */
+    private transient volatile boolean closed = false;
+
+    /************************************************************************************
+     * Construct an empty off-heap store for tuples with the given domains.
+     *
+     * @param _domain  the domains of the columns
+     * @throws IllegalArgumentException  if a domain has no fixed-width layout
+     */
+    public OffHeapStore (Class [] _domain)
+    {
+        domain = _domain;
+        offset = new int [domain.length];
+        int w = 0;
+        for (int j = 0; j < domain.length; j++) {
+            offset [j] = w;
+            w += width (domain [j]);
+        } // for
+        width    = Math.max (1, w);
+        perBlock = Math.max (1, BLOCK_SIZE / width);
+        AtomicLong held = bytes;
+        cleaner.register (this, () -> reserved.addAndGet (- held.getAndSet (0)));
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of bytes of off-heap memory reserved by the stores that have not
+     * been closed (or garbage collected).
+     *
+     * @return  the number of bytes
+     */
+    public static long reserved ()
+    {
+        return reserved.get ();
+    } // reserved
+
+    /************************************************************************************
+     * Return the number of tuples stored.
+     *
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Materialize the i-th tuple.
+     *
+     * @param i  the tuple number
+     * @return  the tuple as an array of (boxed) values
+     */
+    public Comparable [] get (int i)
+    {
+        ByteBuffer [] bs = enter ();
+        try {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("OffHeapStore.get: " + i);
+            ByteBuffer    b   = bs [i / perBlock];
+            int           at  = (i % perBlock) * width;
+            Comparable [] tup = new Comparable [domain.length];
+            for (int j = 0; j < tup.length; j++) tup [j] = read (b, at + offset [j], domain [j]);
+            return tup;
+        } finally {
+            exit ();
+        } // try
+    } // get
+
+    /************************************************************************************
+     * Materialize the given columns of the i-th tuple (the other fields are not read).
+     *
+     * @param i     the tuple number
+     * @param cols  the column positions
+     * @return  the values of the columns
+     */
+    public Comparable [] get (int i, int [] cols)
+    {
+        ByteBuffer [] bs = enter ();
+        try {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("OffHeapStore.get: " + i);
+            ByteBuffer    b   = bs [i / perBlock];
+            int           at  = (i % perBlock) * width;
+            Comparable [] tup = new Comparable [cols.length];
+            for (int k = 0; k < cols.length; k++) tup [k] = read (b, at + offset [cols [k]], domain [cols [k]]);
+            return tup;
+        } finally {
+            exit ();
+        } // try
+    } // get
+
+    /************************************************************************************
+     * Return the value in column j of tuple i (boxed).
+     *
+     * @param j  the column position
+     * @param i  the tuple number
+     * @return  the value
+     */
+    public Comparable value (int j, int i)
+    {
+        ByteBuffer [] bs = enter ();
+        try {
+            if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("OffHeapStore.value: " + i);
+            return read (bs [i / perBlock], (i % perBlock) * width + offset [j], domain [j]);
+        } finally {
+            exit ();
+        } // try
+    } // value
+
+    /************************************************************************************
+     * Append a tuple, writing its values into the next row, and publish it.
+     *
+     * @param tup  the tuple (its values must match the domains)
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        enter ();
+        try {
+            int n = size;
+            put (n, tup);
+            size = n + 1;
+        } finally {
+            exit ();
+        } // try
+        return true;
+    } // add
+
+    /************************************************************************************
+     * Append the tuples, publishing them all at once.
+     *
+     * @param tups  the tuples (their values must match the domains)
+     * @return  whether any tuple was added
+     */
+    public boolean addAll (Collection <? extends Comparable []> tups)
+    {
+        enter ();
+        try {
+            int n = size;
+            for (Comparable [] tup : tups) put (n++, tup);
+            boolean changed = n != size;
+            size = n;
+            return changed;
+        } finally {
+            exit ();
+        } // try
+    } // addAll
+
+    /************************************************************************************
+     * Determine whether column j is stored as a raw value of the given primitive type.
+     *
+     * @param j     the column position
+     * @param type  the primitive type (e.g., int.class)
+     * @return  whether the column holds values of that type
+     */
+    public boolean isStored (int j, Class type)
+    {
+        return (type == int.class    && domain [j] == Integer.class)
+            || (type == long.class   && domain [j] == Long.class)
+            || (type == double.class && domain [j] == Double.class);
+    } // isStored
+
+    /************************************************************************************
+     * Scan an Integer column, testing the values in place.
+     *
+     * @param j  the column position (must hold Integer)
+     * @param p  the predicate on int values
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples satisfying the predicate, in order
+     */
+    public int [] scanInt (int j, IntPredicate p, int n)
+    {
+        ByteBuffer [] bs  = enter ();
+        int []        ids = new int [16];
+        int           m   = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                if (p.test (bs [i / perBlock].getInt ((i % perBlock) * width + offset [j]))) {
+                    if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                    ids [m++] = i;
+                } // if
+            } // for
+        } finally {
+            exit ();
+        } // try
+        return Arrays.copyOf (ids, m);
+    } // scanInt
+
+    /************************************************************************************
+     * Scan a Long column, testing the values in place.
+     *
+     * @param j  the column position (must hold Long)
+     * @param p  the predicate on long values
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples satisfying the predicate, in order
+     */
+    public int [] scanLong (int j, LongPredicate p, int n)
+    {
+        ByteBuffer [] bs  = enter ();
+        int []        ids = new int [16];
+        int           m   = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                if (p.test (bs [i / perBlock].getLong ((i % perBlock) * width + offset [j]))) {
+                    if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                    ids [m++] = i;
+                } // if
+            } // for
+        } finally {
+            exit ();
+        } // try
+        return Arrays.copyOf (ids, m);
+    } // scanLong
+
+    /************************************************************************************
+     * Scan a Double column, testing the values in place.
+     *
+     * @param j  the column position (must hold Double)
+     * @param p  the predicate on double values
+     * @param n  the number of tuples to scan (a snapshot of size ())
+     * @return  the numbers of the tuples satisfying the predicate, in order
+     */
+    public int [] scanDouble (int j, DoublePredicate p, int n)
+    {
+        ByteBuffer [] bs  = enter ();
+        int []        ids = new int [16];
+        int           m   = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                if (p.test (bs [i / perBlock].getDouble ((i % perBlock) * width + offset [j]))) {
+                    if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                    ids [m++] = i;
+                } // if
+            } // for
+        } finally {
+            exit ();
+        } // try
+        return Arrays.copyOf (ids, m);
+    } // scanDouble
+
+    /************************************************************************************
+     * Release the store's memory, once the reads in progress have finished.  The store
+     * may no longer be read (reads fail with IllegalStateException) or appended to;
+     * closing it again does nothing.
+     */
+    public synchronized void close ()
+    {
+        if (closed) return;
+        closed = true;                                                     // later reads fail
+        boolean interrupted = false;
+        while (readers.get () > 0) {                                       // notified by the last
+            try {
+                wait ();
+            } catch (InterruptedException ex) {
+                interrupted = true;                                        // the memory must still be freed
+            } // try
+        } // while
+        if (interrupted) Thread.currentThread ().interrupt ();
+        ByteBuffer [] rs = rows, hs = heap;
+        rows = null;
+        heap = null;
+        for (int k = 0; k < rowBlocks; k++)  free (rs [k]);
+        for (int k = 0; k < heapBlocks; k++) free (hs [k]);
+        reserved.addAndGet (- bytes.getAndSet (0));
+    } // close
+
+    /************************************************************************************
+     * Determine whether the store has been closed.
+     *
+     * @return  whether its memory has been released
+     */
+    public boolean isClosed ()
+    {
+        return closed;
+    } // isClosed
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the width in bytes of a field of the given domain.
+     *
+     * @param dom  the domain
+     * @return  the width of its fixed part
+     * @throws IllegalArgumentException  if the domain is not supported
+     */
+    private static int width (Class dom)
+    {
+        if (dom == Byte.class)                            return 1;
+        if (dom == Short.class || dom == Character.class) return 2;
+        if (dom == Integer.class || dom == Float.class)   return 4;
+        if (dom == Long.class || dom == Double.class)     return 8;
+        if (dom == String.class)                          return 8;
+        throw new IllegalArgumentException ("OffHeapStore: unsupported domain " + dom.getName ());
+    } // width
+
+    /************************************************************************************
+     * Start a read or append: count it as a reader and return the blocks of rows,
+     * checking that the store is open.  The count is raised before the check, so close
+     * either sees the reader and waits for it or has already marked the store closed.
+     */
+    private ByteBuffer [] enter ()
+    {
+        readers.incrementAndGet ();
+        if (closed) {
+            exit ();
+            throw new IllegalStateException ("OffHeapStore: the store is closed");
+        } // if
+        return rows;
+    } // enter
+
+    /************************************************************************************
+     * Finish a read or append started by enter, waking close if it waits for this one.
+     */
+    private void exit ()
+    {
+        if (readers.decrementAndGet () == 0 && closed) {
+            synchronized (this) { notifyAll (); }
+        } // if
+    } // exit
+
+    /************************************************************************************
+     * Read the field at the given position of a block of rows.
+     *
+     * @param b    the block
+     * @param at   the position of the field
+     * @param dom  the domain of the field
+     * @return  the value (boxed)
+     */
+    private Comparable read (ByteBuffer b, int at, Class dom)
+    {
+        if (dom == Integer.class)   return b.getInt (at);
+        if (dom == String.class) {
+            ByteBuffer [] hs = heap;
+            if (hs == null) throw new IllegalStateException ("OffHeapStore: the store is closed");
+            ByteBuffer    h   = hs [b.getInt (at)];
+            int           pos = b.getInt (at + 4);
+            char []       cs  = new char [h.getInt (pos)];
+            pos += 4;
+            for (int k = 0; k < cs.length; k++, pos += 2) cs [k] = h.getChar (pos);
+            return new String (cs);
+        } // if
+        if (dom == Double.class)    return b.getDouble (at);
+        if (dom == Long.class)      return b.getLong (at);
+        if (dom == Character.class) return b.getChar (at);
+        if (dom == Float.class)     return b.getFloat (at);
+        if (dom == Short.class)     return b.getShort (at);
+        return b.get (at);
+    } // read
+
+    /************************************************************************************
+     * Store the tuple's values as row i (not yet published), allocating a new block
+     * when the last one is full.
+     *
+     * @param i    the position (the current end of the store)
+     * @param tup  the tuple
+     */
+    private void put (int i, Comparable [] tup)
+    {
+        ByteBuffer [] bs = rows;
+        if (i / perBlock == rowBlocks) {
+            if (rowBlocks == bs.length) rows = bs = Arrays.copyOf (bs, 2 * rowBlocks);
+            bs [rowBlocks++] = allocate (perBlock * width);
+        } // if
+        ByteBuffer b  = bs [i / perBlock];
+        int        at = (i % perBlock) * width;
+        for (int j = 0; j < domain.length; j++) {
+            Class c = domain [j];
+            int   p = at + offset [j];
+            if (c == Integer.class)        b.putInt (p, (Integer) tup [j]);
+            else if (c == String.class)    putString (b, p, (String) tup [j]);
+            else if (c == Double.class)    b.putDouble (p, (Double) tup [j]);
+            else if (c == Long.class)      b.putLong (p, (Long) tup [j]);
+            else if (c == Character.class) b.putChar (p, (Character) tup [j]);
+            else if (c == Float.class)     b.putFloat (p, (Float) tup [j]);
+            else if (c == Short.class)     b.putShort (p, (Short) tup [j]);
+            else                           b.put (p, (Byte) tup [j]);
+        } // for
+    } // put
+
+    /************************************************************************************
+     * Append the characters of s (preceded by their count) to the variable-length area
+     * and store their block and offset in the field at position p of block b.
+     */
+    private void putString (ByteBuffer b, int p, String s)
+    {
+        int len = 4 + 2 * s.length ();
+        if (heapBlocks == 0 || heapEnd + len > heap [heapBlocks - 1].capacity ()) {
+            ByteBuffer [] hs = heap;
+            if (heapBlocks == hs.length) heap = hs = Arrays.copyOf (hs, 2 * heapBlocks);
+            hs [heapBlocks++] = allocate (Math.max (BLOCK_SIZE, len));
+            heapEnd = 0;
+        } // if
+        ByteBuffer h = heap [heapBlocks - 1];
+        h.putInt (heapEnd, s.length ());
+        for (int k = 0; k < s.length (); k++) h.putChar (heapEnd + 4 + 2 * k, s.charAt (k));
+        b.putInt (p, heapBlocks - 1);
+        b.putInt (p + 4, heapEnd);
+        heapEnd += len;
+    } // putString
+
+    /************************************************************************************
+     * Allocate a direct buffer in native byte order, counting its bytes as reserved.
+     */
+    private ByteBuffer allocate (int n)
+    {
+        ByteBuffer b = ByteBuffer.allocateDirect (n).order (ByteOrder.nativeOrder ());
+        bytes.addAndGet (n);
+        reserved.addAndGet (n);
+        return b;
+    } // allocate
+
+    /************************************************************************************
+     * Free a direct buffer now if possible (otherwise when it is garbage collected).
+     */
+    private static void free (ByteBuffer b)
+    {
+        if (invokeCleaner == null || b == null) return;
+        try {
+            invokeCleaner.invoke (unsafe, b);
+        } catch (ReflectiveOperationException ex) {
+            // left to the garbage collector
+        } // try
+    } // free
+
+    /************************************************************************************
+     * Serialize a copy of the tuples (the off-heap memory belongs to this process).
+     *
+     * @return  a row store holding the tuples
+     */
+    private Object writeReplace ()
+    {
+        return new TupleLog (this);
+    } // writeReplace
+
+} // OffHeapStore class
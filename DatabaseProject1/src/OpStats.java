@@ -0,0 +1,77 @@
+
+/****************************************************************************************
+ * @file  OpStats.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/****************************************************************************************
+ * The OpStats class accumulates the metrics recorded for one relational operator
+ * (e.g., "select") over all its calls: number of calls, rows in and out, elapsed time,
+ * bytes allocated and index hits.  Counters may be updated from several threads.
+ */
+public class OpStats
+{
+    /** The name of the operator
+     */
+    private final String op;
+
+    private final LongAdder calls     = new LongAdder ();
+    private final LongAdder rowsIn    = new LongAdder ();
+    private final LongAdder rowsOut   = new LongAdder ();
+    private final LongAdder nanos     = new LongAdder ();
+    private final LongAdder allocated = new LongAdder ();
+    private final LongAdder indexHits = new LongAdder ();
+
+    /************************************************************************************
+     * Construct empty statistics for the given operator.
+     *
+     * @param _op  the name of the operator
+     */
+    OpStats (String _op)
+    {
+        op = _op;
+    } // constructor
+
+    /************************************************************************************
+     * Record one call of the operator.
+     *
+     * @param in     the number of input rows
+     * @param out    the number of output rows
+     * @param ns     the elapsed time in nanoseconds
+     * @param bytes  the number of bytes allocated (negative if unavailable)
+     * @param hits   the number of index hits
+     */
+    void record (long in, long out, long ns, long bytes, long hits)
+    {
+        calls.increment ();
+        rowsIn.add (in);
+        rowsOut.add (out);
+        nanos.add (ns);
+        if (bytes > 0) allocated.add (bytes);
+        indexHits.add (hits);
+    } // record
+
+    public String getOperator ()      { return op; }
+    public long   getCalls ()         { return calls.sum (); }
+    public long   getRowsIn ()        { return rowsIn.sum (); }
+    public long   getRowsOut ()       { return rowsOut.sum (); }
+    public long   getNanos ()         { return nanos.sum (); }
+    public long   getAllocatedBytes () { return allocated.sum (); }
+    public long   getIndexHits ()     { return indexHits.sum (); }
+
+    /************************************************************************************
+     * Convert the statistics to a string.
+     *
+     * @return  the string representation of the statistics
+     */
+    public String toString ()
+    {
+        return String.format ("%-10s calls %8d  rows in %10d  rows out %10d  ms %10.3f  bytes %12d  index hits %8d",
+                              op, getCalls (), getRowsIn (), getRowsOut (), getNanos () / 1E6,
+                              getAllocatedBytes (), getIndexHits ());
+    } // toString
+
+} // OpStats class
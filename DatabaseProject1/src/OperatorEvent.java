@@ -0,0 +1,44 @@
+
+/****************************************************************************************
+ * @file  OperatorEvent.java
+ *
+ * @author   John Miller
+ */
+
+import jdk.jfr.*;
+
+/****************************************************************************************
+ * The OperatorEvent class is a JDK Flight Recorder event emitted for each relational
+ * operator call (project, select, union, minus, intersect, join, and insert for each
+ * insert or insertAll call).  Recording it is controlled by JFR settings (e.g.,
+ * -XX:StartFlightRecording), so operators can be profiled without recompiling.
+ */
+@Name ("DatabaseProject.Operator")
+@Label ("Relational Operator")
+@Category ({ "Database", "Operators" })
+@Description ("A call to a relational operator on a Table")
+@StackTrace (false)
+class OperatorEvent
+      extends Event
+{
+    @Label ("Table")
+    String table;
+
+    @Label ("Operator")
+    String operator;
+
+    @Label ("Rows In")
+    long rowsIn;
+
+    @Label ("Rows Out")
+    long rowsOut;
+
+    @Label ("Index Hits")
+    long indexHits;
+
+    @Label ("Allocated Bytes")
+    @Description ("Bytes allocated by the calling thread (excluding ForkJoinPool workers)")
+    @DataAmount
+    long allocatedBytes;
+
+} // OperatorEvent class
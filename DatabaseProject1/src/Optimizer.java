@@ -0,0 +1,281 @@
+/****************************************************************************************
+ * @file  Optimizer.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The Optimizer class rewrites a LogicalPlan into an equivalent plan that is cheaper to
+ * run, using the statistics of its tables (see TableStats).  A tree of joins and
+ * selections (a join block) is flattened into its inputs, its join predicates and the
+ * conjuncts of its selections.  Each conjunct over a single input is applied to that
+ * input, each input is projected onto the attributes needed above it, and the join order
+ * is chosen by dynamic programming over the subsets of inputs, minimizing the sum of the
+ * estimated intermediate result sizes and of the tuples hashed by hash joins (only
+ * joining subsets connected by a predicate).  Join cardinalities are estimated as
+ * |R| |S| / max (V (R, a), V (S, b)) (V the number of distinct values, see joinRows).
+ * Each join is given the nested loop algorithm when its inputs are tiny, the merge join
+ * when both are known to be in order on the join attributes (see LogicalPlan.inOrder),
+ * which hashes nothing, and the hash join otherwise, which hashes its smaller input.
+ *
+ * Blocks whose inputs share attribute names, or with more than MAX_DP inputs, keep the
+ * given join order (only their inputs are optimized).
+ *
+ * #usage LogicalPlan best = Optimizer.optimize (plan);
+ */
+public class Optimizer
+{
+    /** The largest number of join inputs ordered by dynamic programming
+     */
+    private static final int MAX_DP = 12;
+
+    /** Joins whose estimated inputs have at most this many tuple pairs use the nested loop
+     */
+    private static final double NESTED_LOOP_MAX = 1024;
+
+    /************************************************************************************
+     * Return an optimized plan equivalent to the given plan, with the estimated number of
+     * tuples produced by each operator.
+     *
+     * @param plan  the plan
+     * @return  the optimized plan
+     */
+    public static LogicalPlan optimize (LogicalPlan plan)
+    {
+        return optimize (plan, null);
+    } // optimize
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Optimize the plan, knowing which of its attributes are used above it.
+     *
+     * @param plan      the plan
+     * @param required  the attributes used above (null if all are, in order)
+     * @return  the optimized plan
+     */
+    private static LogicalPlan optimize (LogicalPlan plan, Set <String> required)
+    {
+        if (plan instanceof LogicalPlan.Scan) {
+            LogicalPlan.Scan s = new LogicalPlan.Scan (((LogicalPlan.Scan) plan).table);
+            s.estimate = s.table.size ();
+            return s;
+        } // if
+
+        if (plan instanceof LogicalPlan.Project) {
+            LogicalPlan.Project p = (LogicalPlan.Project) plan;
+            LogicalPlan child = optimize (p.child, new HashSet <> (Arrays.asList (p.attrs)));
+            return estimated (new LogicalPlan.Project (child, p.attrs), child.estimate);
+        } // if
+
+        List <LogicalPlan> inputs = new ArrayList <> ();
+        List <String []>   pairs  = new ArrayList <> ();
+        List <Condition>   conds  = new ArrayList <> ();
+        flatten (plan, inputs, pairs, conds);
+        for (int i = 0; i < inputs.size (); i++) inputs.set (i, optimize (inputs.get (i), null));
+
+        LogicalPlan best = (inputs.size () <= MAX_DP && distinct (inputs))
+                         ? block (inputs, pairs, conds, required, plan.attributes ()) : null;
+        return (best != null) ? best : keepOrder (plan);
+    } // optimize
+
+    /************************************************************************************
+     * Collect the inputs, join predicates (attribute pairs) and selection conjuncts of
+     * the join block rooted at the plan.
+     */
+    private static void flatten (LogicalPlan plan, List <LogicalPlan> inputs, List <String []> pairs,
+                                 List <Condition> conds)
+    {
+        if (plan instanceof LogicalPlan.Select) {
+            conds.addAll (((LogicalPlan.Select) plan).condition.conjuncts ());
+            flatten (((LogicalPlan.Select) plan).child, inputs, pairs, conds);
+        } else if (plan instanceof LogicalPlan.Join) {
+            LogicalPlan.Join j = (LogicalPlan.Join) plan;
+            for (int k = 0; k < j.attrs1.length; k++) pairs.add (new String [] { j.attrs1 [k], j.attrs2 [k] });
+            flatten (j.left, inputs, pairs, conds);
+            flatten (j.right, inputs, pairs, conds);
+        } else {
+            inputs.add (plan);
+        } // if
+    } // flatten
+
+    /************************************************************************************
+     * Determine whether no attribute name occurs in two inputs (so that every attribute
+     * of the block belongs to one input).
+     */
+    private static boolean distinct (List <LogicalPlan> inputs)
+    {
+        Set <String> seen = new HashSet <> ();
+        for (LogicalPlan p : inputs) {
+            for (String a : p.attributes ()) if (! seen.add (a)) return false;
+        } // for
+        return true;
+    } // distinct
+
+    /************************************************************************************
+     * Optimize a join block: push the selections and projections to its inputs and
+     * choose the join order.
+     *
+     * @param inputs    the (optimized) inputs
+     * @param pairs     the join predicates
+     * @param conds     the selection conjuncts
+     * @param required  the attributes used above the block (null if all are, in order)
+     * @param output    the attributes of the block, in order
+     * @return  the optimized block, or null if its inputs are not connected by joins on
+     *          their attributes
+     */
+    private static LogicalPlan block (List <LogicalPlan> inputs, List <String []> pairs, List <Condition> conds,
+                                      Set <String> required, String [] output)
+    {
+        int n = inputs.size ();
+        Map <String, Integer> owner = new HashMap <> ();
+        for (int i = 0; i < n; i++) for (String a : inputs.get (i).attributes ()) owner.put (a, i);
+
+        List <List <Condition>> local = new ArrayList <> ();
+        for (int i = 0; i < n; i++) local.add (new ArrayList <> ());
+        List <Condition> above = new ArrayList <> ();
+        Set <String>     needed = new HashSet <> ((required == null) ? Arrays.asList (output) : required);
+        for (Condition c : conds) {
+            Set <String> attrs = new HashSet <> ();
+            c.attributes (attrs);
+            Set <Integer> from = new HashSet <> ();
+            for (String a : attrs) from.add (owner.get (a));
+            if (from.size () == 1 && ! from.contains (null)) local.get (from.iterator ().next ()).add (c);
+            else {
+                above.add (c);
+                needed.addAll (attrs);
+            } // if
+        } // for
+        for (String [] p : pairs) {
+            if (! owner.containsKey (p [0]) || ! owner.containsKey (p [1])
+                                            || owner.get (p [0]).equals (owner.get (p [1]))) return null;
+            needed.addAll (Arrays.asList (p));
+        } // for
+
+        // push the selections and projections into the inputs
+
+        LogicalPlan [] best = new LogicalPlan [1 << n];
+        double []      cost = new double [1 << n];
+        for (int i = 0; i < n; i++) {
+            LogicalPlan in = inputs.get (i);
+            if (! local.get (i).isEmpty ()) {
+                Condition   c  = Condition.and (local.get (i));
+                LogicalPlan s  = in;
+                in = estimated (new LogicalPlan.Select (in, c), in.estimate * c.selectivity (s::stats));
+            } // if
+            List <String> keep = new ArrayList <> ();
+            for (String a : in.attributes ()) if (needed.contains (a)) keep.add (a);
+            if (! keep.isEmpty () && keep.size () < in.attributes ().length) {
+                in = estimated (new LogicalPlan.Project (in, keep.toArray (new String [0])), in.estimate);
+            } // if
+            best [1 << i] = in;
+        } // for
+
+        // choose the join order (subsets in increasing order, so their parts come first)
+
+        for (int set = 1; set < (1 << n); set++) {
+            if (Integer.bitCount (set) < 2) continue;
+            for (int s1 = (set - 1) & set; s1 > 0; s1 = (s1 - 1) & set) {
+                int s2 = set ^ s1;
+                if (s1 < s2 || best [s1] == null || best [s2] == null) continue;     // each split once
+                List <String> a1 = new ArrayList <> (), a2 = new ArrayList <> ();
+                for (String [] p : pairs) {
+                    int o1 = 1 << owner.get (p [0]), o2 = 1 << owner.get (p [1]);
+                    if ((s1 & o1) != 0 && (s2 & o2) != 0)      { a1.add (p [0]); a2.add (p [1]); }
+                    else if ((s1 & o2) != 0 && (s2 & o1) != 0) { a1.add (p [1]); a2.add (p [0]); }
+                } // for
+                if (a1.isEmpty ()) continue;                                     // no cross products
+
+                LogicalPlan l = best [s1], r = best [s2];
+                if (l.estimate < r.estimate) {                                    // probe the larger input
+                    LogicalPlan t = l; l = r; r = t;
+                    List <String> u = a1; a1 = a2; a2 = u;
+                } // if
+                String [] at1 = a1.toArray (new String [0]), at2 = a2.toArray (new String [0]);
+                LogicalPlan.JoinMethod m = (l.estimate * r.estimate <= NESTED_LOOP_MAX) ? LogicalPlan.JoinMethod.NESTED_LOOP
+                                         : (l.inOrder (at1) && r.inOrder (at2)) ? LogicalPlan.JoinMethod.MERGE
+                                         : LogicalPlan.JoinMethod.HASH;
+                double rows = joinRows (l, at1, r, at2);
+                double c = cost [s1] + cost [s2] + rows + ((m == LogicalPlan.JoinMethod.HASH) ? r.estimate : 0);
+                if (best [set] == null || c < cost [set]) {
+                    best [set] = estimated (new LogicalPlan.Join (l, r, at1, at2, m), rows);
+                    cost [set] = c;
+                } // if
+            } // for
+        } // for
+
+        LogicalPlan plan = best [(1 << n) - 1];
+        if (plan == null) return null;
+        if (! above.isEmpty ()) {
+            Condition c = Condition.and (above);
+            LogicalPlan s = plan;
+            plan = estimated (new LogicalPlan.Select (plan, c), plan.estimate * c.selectivity (s::stats));
+        } // if
+        if (required == null && ! Arrays.equals (plan.attributes (), output)) {
+            plan = estimated (new LogicalPlan.Project (plan, output), plan.estimate);
+        } // if
+        return plan;
+    } // block
+
+    /************************************************************************************
+     * Rebuild the joins and selections of a block in the given order, optimizing the
+     * inputs and estimating the cardinalities.
+     *
+     * @param plan  the block
+     * @return  the plan with estimates
+     */
+    private static LogicalPlan keepOrder (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Select) {
+            LogicalPlan.Select s = (LogicalPlan.Select) plan;
+            LogicalPlan child = keepOrder (s.child);
+            return estimated (new LogicalPlan.Select (child, s.condition), child.estimate * s.condition.selectivity (child::stats));
+        } // if
+        if (plan instanceof LogicalPlan.Join) {
+            LogicalPlan.Join j = (LogicalPlan.Join) plan;
+            LogicalPlan l = keepOrder (j.left), r = keepOrder (j.right);
+            return estimated (new LogicalPlan.Join (l, r, j.attrs1, j.attrs2, null), joinRows (l, j.attrs1, r, j.attrs2));
+        } // if
+        return optimize (plan, null);
+    } // keepOrder
+
+    /************************************************************************************
+     * Estimate the number of tuples produced by joining l and r on the attributes, as
+     * |l| |r| / max (V (l, a), V (r, b)).  With several attribute pairs, only the most
+     * selective is counted, since the attributes of a composite key are usually
+     * correlated (e.g., title and year).
+     */
+    private static double joinRows (LogicalPlan l, String [] attrs1, LogicalPlan r, String [] attrs2)
+    {
+        double d = 1.0;
+        for (int k = 0; k < attrs1.length; k++) {
+            d = Math.max (d, Math.max (distinctValues (l, attrs1 [k]), distinctValues (r, attrs2 [k])));
+        } // for
+        return l.estimate * r.estimate / d;
+    } // joinRows
+
+    /************************************************************************************
+     * Estimate the number of distinct values of the attribute in the plan's result (at
+     * most its number of tuples).
+     */
+    private static double distinctValues (LogicalPlan plan, String attr)
+    {
+        TableStats.Column c = plan.stats (attr);
+        double d = (c == null) ? plan.estimate / 10.0 : c.distinct ();
+        return Math.min (d, plan.estimate);
+    } // distinctValues
+
+    /************************************************************************************
+     * Set the estimated number of tuples produced by the plan.
+     */
+    private static LogicalPlan estimated (LogicalPlan plan, double rows)
+    {
+        plan.estimate = rows;
+        return plan;
+    } // estimated
+
+} // Optimizer class
@@ -0,0 +1,699 @@
+
+/****************************************************************************************
+ * @file  PageFile.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The PageFile class reads and writes tables in the paged binary ".dbf" format, which
+ * replaces Java serialization.  A file is a sequence of fixed-size pages:
+ *
+ *   header pages:  magic, version, page size, counts and the schema built from the
+ *                  table's name, attributes, domains, key, map type and storage type
+ *   data pages:    a slotted page holding whole rows -- int row count, then one unsigned
+ *                  short offset per row, then the rows in type-aware binary encoding
+ *                  (Integer 4 bytes, Long 8, Double 8, Float 4, Short 2, Byte 1,
+ *                  Character 2, String as an int length followed by UTF-8 bytes)
+ *
+ * Version 2 files also hold the dictionary of each dictionary encoded column (see
+ * ColumnStore) after the schema, and store those columns' values as int codes.  Files
+ * without encoded columns are still written as version 1.
+ *
+ * Version 3 files are compressed: the data pages hold row groups instead of slotted
+ * pages, each an int byte count and an int row count followed by every column of the
+ * group's rows (an int length, then the values encoded by the ColumnCodec best suited to
+ * them).  The row groups are padded to whole pages.  Tables with PAGED storage are never
+ * compressed, since they are opened in place and read a row page at a time.
+ *
+ * Row pages are read back through a memory-mapped FileChannel.  Files written by Java
+ * serialization (the original format) are recognized by their stream header, and main
+ * converts them to the paged format in place.
+ */
+class PageFile
+{
+    /** Magic number identifying a paged database file ("DBFP")
+     */
+    static final int MAGIC = 0x44424650;
+
+    /** The current version of the file format (the newest that can be read)
+     */
+    static final short VERSION = 3;
+
+    /** The version of uncompressed files with dictionaries
+     */
+    private static final short VERSION_DICT = 2;
+
+    /** The version of uncompressed files without dictionaries
+     */
+    private static final short VERSION_PLAIN = 1;
+
+    /** The size of a page in bytes
+     */
+    static final int PAGE_SIZE = 8192;
+
+    /** The size of the fixed part of a data page (the row count)
+     */
+    private static final int PAGE_HEADER = 4;
+
+    /** The maximum number of pages mapped at once
+     */
+    private static final int MAP_PAGES = 1 << 16;
+
+    /** The number of rows in a row group of a compressed file
+     */
+    private static final int GROUP_ROWS = 1 << 16;
+
+    /************************************************************************************
+     * Write the table to the file in the paged format, compressed column by column
+     * (version 3) unless compress is false or the table has PAGED storage.
+     *
+     * @param file    the path of the file to (over)write
+     * @param name    the name of the table
+     * @param attr    the attribute names
+     * @param dom     the attribute domains
+     * @param key     the primary key attributes
+     * @param mType   the map type of the table's index
+     * @param sType   the storage type of the table's tuples
+     * @param tuples  the tuples to write
+     * @param dict    the dictionary of each encoded column, null for the others (null if
+     *                no column is encoded)
+     * @param compress  whether to write compressed row groups
+     * @throws IOException  if the file cannot be written or a row does not fit in a page
+     */
+    @SuppressWarnings ("unchecked")
+    static void write (String file, String name, String [] attr, Class [] dom, String [] key,
+                       Table.MapType mType, Table.StorageType sType, List <Comparable []> tuples,
+                       String [] [] dict, boolean compress)
+           throws IOException
+    {
+        compress &= sType != Table.StorageType.PAGED;
+        if (dict != null && Arrays.stream (dict).allMatch (Objects::isNull)) dict = null;
+        Map <String, Integer> [] codes = null;
+        if (dict != null) {
+            codes = new Map [dict.length];
+            for (int j = 0; j < dict.length; j++) {
+                if (dict [j] == null) continue;
+                codes [j] = new HashMap <> ();
+                for (int c = 0; c < dict [j].length; c++) codes [j].put (dict [j] [c], c);
+            } // for
+        } // if
+
+        Path tmp = Paths.get (file + ".tmp");
+        try (FileChannel ch = FileChannel.open (tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            short   version = compress ? VERSION : (dict == null) ? VERSION_PLAIN : VERSION_DICT;
+            byte [] schema  = schema (name, attr, dom, key, mType, sType,
+                                      (compress && dict == null) ? new String [dom.length] [] : dict);
+            int headerPages = (schema.length + 32 + PAGE_SIZE - 1) / PAGE_SIZE;
+            ch.position ((long) headerPages * PAGE_SIZE);
+
+            int dataPages = compress ? writeGroups (ch, tuples, dom, codes) : writeRows (ch, tuples, dom, codes);
+            writeHeader (ch, version, schema, headerPages, dataPages, tuples.size ());
+            ch.force (true);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists (tmp);                                    // the old file stays
+            throw ex;
+        } // try
+        Files.move (tmp, Paths.get (file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } // write
+
+    /************************************************************************************
+     * Read a table in the paged format, mapping its row pages into memory or decoding
+     * its compressed row groups.  A table with PAGED storage is not read: its file is
+     * opened in place (see PagedStore).
+     *
+     * @param file  the path of the file to read
+     * @return  the table with its tuples loaded and index built
+     * @throws IOException  if the file cannot be read or is not in the paged format
+     */
+    static Table read (String file)
+           throws IOException
+    {
+        try (FileChannel ch = FileChannel.open (Paths.get (file), StandardOpenOption.READ)) {
+            Header h = readHeader (ch, file);
+            if (h.sType == Table.StorageType.PAGED) {
+                return new Table (h.name, h.attribute, h.domain, h.key, PagedStore.open (file, h), h.mType);
+            } // if
+            List <Comparable []> rows = new ArrayList <> ((int) Math.min (h.rowCount, Integer.MAX_VALUE));
+            if (h.version >= 3) {
+                readGroups (ch, h, rows);
+            } else {
+                for (int p = 0; p < h.dataPages; p += MAP_PAGES) {
+                    int n = Math.min (MAP_PAGES, h.dataPages - p);
+                    ByteBuffer buf = ch.map (FileChannel.MapMode.READ_ONLY,
+                                             (long) (h.headerPages + p) * h.pageSize, (long) n * h.pageSize);
+                    for (int q = 0; q < n; q++) readPage (buf, q * h.pageSize, h.domain, h.dict, rows);
+                } // for
+            } // if
+
+            List <Comparable []> store = new TupleLog ();
+            if (h.sType == Table.StorageType.COLUMN) {
+                ColumnStore cs = new ColumnStore (h.domain);
+                for (int j = 0; h.dict != null && j < h.dict.length; j++) {
+                    if (h.dict [j] != null) cs.setDictionary (j, h.dict [j]);
+                } // for
+                store = cs;
+            } else if (h.sType == Table.StorageType.OFF_HEAP) {
+                store = new OffHeapStore (h.domain);
+            } // if
+            Table tab = new Table (h.name, h.attribute, h.domain, h.key, store, h.mType);
+            tab.fill (rows);
+            return tab;
+        } // try
+    } // read
+
+    /************************************************************************************
+     * Determine whether the file was written by Java serialization (the original format).
+     *
+     * @param file  the path of the file
+     * @return  whether the file starts with a Java serialization stream header
+     * @throws IOException  if the file cannot be read
+     */
+    static boolean isLegacy (String file)
+           throws IOException
+    {
+        try (DataInputStream in = new DataInputStream (new FileInputStream (file))) {
+            return in.readShort () == (short) 0xACED;
+        } catch (EOFException ex) {
+            return false;
+        } // try
+    } // isLegacy
+
+    /************************************************************************************
+     * Convert a table file from Java serialization to the paged format (in place).
+     *
+     * @param name  the name of the table
+     * @return  whether the file was converted (false if already paged)
+     * @throws IOException  if the file cannot be read or written
+     */
+    static boolean convert (String name)
+           throws IOException
+    {
+        String file = Table.DIR + name + Table.EXT;
+        if (! isLegacy (file)) return false;
+        Table tab = Table.load (name);
+        if (tab == null) throw new IOException ("PageFile.convert: unable to read " + file);
+        tab.save ();
+        return true;
+    } // convert
+
+    //----------------------------------------------------------------------------------
+    // Row encoding
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Encode a tuple into the buffer using the binary encoding of each domain.
+     *
+     * @param buf  the buffer to write to
+     * @param tup  the tuple
+     * @param dom  the domains of the tuple's values
+     * @throws BufferOverflowException  if the buffer is too small
+     */
+    static void encodeRow (ByteBuffer buf, Comparable [] tup, Class [] dom)
+    {
+        encodeRow (buf, tup, dom, null);
+    } // encodeRow
+
+    /************************************************************************************
+     * Encode a tuple into the buffer, writing the values of dictionary encoded columns
+     * as their codes.
+     *
+     * @param buf    the buffer to write to
+     * @param tup    the tuple
+     * @param dom    the domains of the tuple's values
+     * @param codes  the codes of the strings of each encoded column, null for the others
+     *               (null if no column is encoded)
+     * @throws BufferOverflowException  if the buffer is too small
+     */
+    static void encodeRow (ByteBuffer buf, Comparable [] tup, Class [] dom, Map <String, Integer> [] codes)
+    {
+        for (int j = 0; j < dom.length; j++) {
+            Class c = dom [j];
+            if (codes != null && codes [j] != null) {
+                Integer code = codes [j].get (tup [j]);
+                if (code == null) throw new IllegalArgumentException ("PageFile: " + tup [j] + " is not in the dictionary");
+                buf.putInt (code);
+            }
+            else if (c == Integer.class)   buf.putInt ((Integer) tup [j]);
+            else if (c == String.class) {
+                byte [] b = ((String) tup [j]).getBytes (StandardCharsets.UTF_8);
+                buf.putInt (b.length).put (b);
+            }
+            else if (c == Double.class)    buf.putDouble ((Double) tup [j]);
+            else if (c == Long.class)      buf.putLong ((Long) tup [j]);
+            else if (c == Character.class) buf.putChar ((Character) tup [j]);
+            else if (c == Float.class)     buf.putFloat ((Float) tup [j]);
+            else if (c == Short.class)     buf.putShort ((Short) tup [j]);
+            else if (c == Byte.class)      buf.put ((Byte) tup [j]);
+            else throw new IllegalArgumentException ("PageFile: unsupported domain " + c.getName ());
+        } // for
+    } // encodeRow
+
+    /************************************************************************************
+     * Decode a tuple from the buffer, starting at its current position.
+     *
+     * @param buf  the buffer to read from (its position is advanced past the tuple)
+     * @param dom  the domains of the tuple's values
+     * @return  the decoded tuple
+     */
+    static Comparable [] decodeRow (ByteBuffer buf, Class [] dom)
+    {
+        return decodeRow (buf, dom, null);
+    } // decodeRow
+
+    /************************************************************************************
+     * Decode a tuple from the buffer, looking up the codes of dictionary encoded columns.
+     *
+     * @param buf   the buffer to read from (its position is advanced past the tuple)
+     * @param dom   the domains of the tuple's values
+     * @param dict  the dictionary of each encoded column, null for the others (null if
+     *              no column is encoded)
+     * @return  the decoded tuple
+     */
+    static Comparable [] decodeRow (ByteBuffer buf, Class [] dom, String [] [] dict)
+    {
+        Comparable [] tup = new Comparable [dom.length];
+        for (int j = 0; j < dom.length; j++) {
+            Class c = dom [j];
+            if (dict != null && dict [j] != null) tup [j] = dict [j] [buf.getInt ()];
+            else if (c == Integer.class)   tup [j] = buf.getInt ();
+            else if (c == String.class) {
+                byte [] b = new byte [buf.getInt ()];
+                buf.get (b);
+                tup [j] = new String (b, StandardCharsets.UTF_8);
+            }
+            else if (c == Double.class)    tup [j] = buf.getDouble ();
+            else if (c == Long.class)      tup [j] = buf.getLong ();
+            else if (c == Character.class) tup [j] = buf.getChar ();
+            else if (c == Float.class)     tup [j] = buf.getFloat ();
+            else if (c == Short.class)     tup [j] = buf.getShort ();
+            else if (c == Byte.class)      tup [j] = buf.get ();
+            else throw new IllegalArgumentException ("PageFile: unsupported domain " + c.getName ());
+        } // for
+        return tup;
+    } // decodeRow
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /*************************************************************************************
+     * The Header class holds the decoded header of a paged file.
+     */
+    static class Header
+    {
+        short               version;
+        int                 pageSize;
+        int                 headerPages;
+        int                 dataPages;
+        long                rowCount;
+        String              name;
+        String []           attribute;
+        Class []            domain;
+        String []           key;
+        Table.MapType       mType;
+        Table.StorageType   sType;
+        String [] []        dict;          // dictionaries of encoded columns (null if none)
+    } // Header inner class
+
+    /************************************************************************************
+     * Read and check the header of a paged file.
+     *
+     * @param ch    the channel open on the file
+     * @param file  the path of the file (for error messages)
+     * @return  the decoded header
+     * @throws IOException  if the file is not in a supported paged format
+     */
+    static Header readHeader (FileChannel ch, String file)
+           throws IOException
+    {
+        ByteBuffer fixed = ByteBuffer.allocate (26);
+        ch.read (fixed, 0);
+        fixed.flip ();
+        if (fixed.remaining () < 26 || fixed.getInt () != MAGIC) {
+            throw new IOException ("PageFile: " + file + " is not a paged database file");
+        } // if
+        short version = fixed.getShort ();
+        if (version > VERSION) throw new IOException ("PageFile: " + file + " has unsupported version " + version);
+
+        Header h      = new Header ();
+        h.version     = version;
+        h.pageSize    = fixed.getInt ();
+        h.headerPages = fixed.getInt ();
+        h.dataPages   = fixed.getInt ();
+        h.rowCount    = fixed.getLong ();
+        ByteBuffer schema = ByteBuffer.allocate (h.headerPages * h.pageSize - 26);
+        ch.read (schema, 26);
+        schema.flip ();
+        byte [] bytes = new byte [schema.getInt ()];
+        schema.get (bytes);
+
+        DataInputStream in = new DataInputStream (new ByteArrayInputStream (bytes));
+        h.name      = in.readUTF ();
+        h.attribute = new String [in.readShort ()];
+        h.domain    = new Class [h.attribute.length];
+        for (int j = 0; j < h.attribute.length; j++) {
+            h.attribute [j] = in.readUTF ();
+            String dn = in.readUTF ();
+            try {
+                h.domain [j] = Class.forName ("java.lang." + dn);
+            } catch (ClassNotFoundException ex) {
+                throw new IOException ("PageFile: unknown domain " + dn + " in " + file);
+            } // try
+        } // for
+        h.key = new String [in.readShort ()];
+        for (int j = 0; j < h.key.length; j++) h.key [j] = in.readUTF ();
+        h.mType = Table.MapType.valueOf (in.readUTF ());
+        h.sType = Table.StorageType.valueOf (in.readUTF ());
+        if (version >= 2) {
+            h.dict = new String [h.attribute.length] [];
+            for (int j = 0; j < h.dict.length; j++) {
+                int n = in.readInt ();
+                if (n < 0) continue;
+                h.dict [j] = new String [n];
+                for (int c = 0; c < n; c++) h.dict [j] [c] = in.readUTF ();
+            } // for
+            if (Arrays.stream (h.dict).allMatch (Objects::isNull)) h.dict = null;
+        } // if
+        return h;
+    } // readHeader
+
+    /************************************************************************************
+     * Rewrite the header of a file opened in place to cover the given data pages and
+     * rows (the schema is unchanged, so the header takes the same pages).
+     *
+     * @param ch         the channel open on the file
+     * @param h          the file's header
+     * @param dataPages  the number of data pages
+     * @param rows       the number of rows
+     * @throws IOException  if the header cannot be written
+     */
+    static void writeHeader (FileChannel ch, Header h, int dataPages, long rows)
+           throws IOException
+    {
+        byte [] schema = schema (h.name, h.attribute, h.domain, h.key, h.mType, h.sType, h.dict);
+        writeHeader (ch, (h.dict == null) ? VERSION_PLAIN : VERSION_DICT, schema, h.headerPages, dataPages, rows);
+    } // writeHeader
+
+    /************************************************************************************
+     * Write the header pages at the start of the file.
+     *
+     * @param ch           the channel open on the file
+     * @param version      the file format version
+     * @param schema       the encoded schema
+     * @param headerPages  the number of header pages
+     * @param dataPages    the number of data pages
+     * @param rows         the number of rows
+     */
+    private static void writeHeader (FileChannel ch, short version, byte [] schema, int headerPages,
+                                     int dataPages, long rows)
+            throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate (headerPages * PAGE_SIZE);
+        header.putInt (MAGIC).putShort (version).putInt (PAGE_SIZE).putInt (headerPages)
+              .putInt (dataPages).putLong (rows).putInt (schema.length).put (schema);
+        header.clear ();
+        while (header.hasRemaining ()) ch.write (header, header.position ());
+    } // writeHeader
+
+    /************************************************************************************
+     * Encode the schema of a table, followed by the dictionaries of its encoded columns
+     * (a count, -1 for a column that is not encoded, then the strings in code order).
+     *
+     * @return  the encoded schema
+     */
+    private static byte [] schema (String name, String [] attr, Class [] dom, String [] key,
+                                   Table.MapType mType, Table.StorageType sType, String [] [] dict)
+           throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      o     = new DataOutputStream (bytes);
+        o.writeUTF (name);
+        o.writeShort (attr.length);
+        for (int j = 0; j < attr.length; j++) {
+            o.writeUTF (attr [j]);
+            o.writeUTF (dom [j].getSimpleName ());
+        } // for
+        o.writeShort (key.length);
+        for (String k : key) o.writeUTF (k);
+        o.writeUTF ((mType == null) ? Table.MapType.TREE_MAP.name () : mType.name ());
+        o.writeUTF ((sType == null) ? Table.StorageType.ROW.name () : sType.name ());
+        for (int j = 0; dict != null && j < dict.length; j++) {
+            o.writeInt ((dict [j] == null) ? -1 : dict [j].length);
+            if (dict [j] != null) for (String v : dict [j]) o.writeUTF (v);
+        } // for
+        o.flush ();
+        return bytes.toByteArray ();
+    } // schema
+
+    /************************************************************************************
+     * Return a tuple's values for an error message, each cut to 20 characters.
+     */
+    private static String brief (Comparable [] tup)
+    {
+        StringJoiner sj = new StringJoiner (", ", "(", ")");
+        for (Comparable v : tup) {
+            String x = String.valueOf (v);
+            sj.add ((x.length () <= 20) ? x : x.substring (0, 20) + "...");
+        } // for
+        return sj.toString ();
+    } // brief
+
+    /************************************************************************************
+     * Write the rows in slotted pages at the channel's position.
+     *
+     * @param ch      the channel to write to
+     * @param tuples  the tuples to write
+     * @param dom     the attribute domains
+     * @param codes   the codes of the strings of each encoded column (null if none)
+     * @return  the number of data pages written
+     * @throws IOException  if the pages cannot be written or a row does not fit in a page
+     */
+    private static int writeRows (FileChannel ch, List <Comparable []> tuples, Class [] dom,
+                                  Map <String, Integer> [] codes)
+            throws IOException
+    {
+        ByteBuffer page    = ByteBuffer.allocate (PAGE_SIZE);
+        ByteBuffer row     = ByteBuffer.allocate (PAGE_SIZE);
+        List <byte []> pageRows = new ArrayList <> ();
+        int used      = PAGE_HEADER;
+        int dataPages = 0;
+        int r         = 0;                                                 // the row's number
+        for (Comparable [] tup : tuples) {
+            row.clear ();
+            try {
+                encodeRow (row, tup, dom, codes);
+            } catch (BufferOverflowException ex) {
+                throw new IOException ("PageFile.write: row " + r + " " + brief (tup) + " exceeds the page size");
+            } // try
+            row.flip ();
+            byte [] bytes = new byte [row.remaining ()];
+            row.get (bytes);
+            if (PAGE_HEADER + 2 + bytes.length > PAGE_SIZE) {
+                throw new IOException ("PageFile.write: row " + r + " " + brief (tup) + " of " + bytes.length
+                                     + " bytes exceeds the page size");
+            } // if
+            r++;
+            if (used + 2 + bytes.length > PAGE_SIZE) {
+                writePage (ch, page, pageRows);
+                dataPages++;
+                pageRows.clear ();
+                used = PAGE_HEADER;
+            } // if
+            pageRows.add (bytes);
+            used += 2 + bytes.length;
+        } // for
+        if (! pageRows.isEmpty ()) {
+            writePage (ch, page, pageRows);
+            dataPages++;
+        } // if
+        return dataPages;
+    } // writeRows
+
+    /************************************************************************************
+     * Write the rows in compressed row groups at the channel's position, padded to whole
+     * pages.  Each column of a group is encoded by ColumnCodec; the values of dictionary
+     * encoded columns are encoded as their (Integer) codes.
+     *
+     * @param ch      the channel to write to
+     * @param tuples  the tuples to write
+     * @param dom     the attribute domains
+     * @param codes   the codes of the strings of each encoded column (null if none)
+     * @return  the number of data pages written
+     * @throws IOException  if the pages cannot be written
+     */
+    private static int writeGroups (FileChannel ch, List <Comparable []> tuples, Class [] dom,
+                                    Map <String, Integer> [] codes)
+            throws IOException
+    {
+        long start = ch.position ();
+        Comparable [] [] cols = new Comparable [dom.length] [Math.min (GROUP_ROWS, tuples.size ())];
+        Iterator <Comparable []> it = tuples.iterator ();
+        for (int g = 0; g < tuples.size (); g += GROUP_ROWS) {
+            int m = Math.min (GROUP_ROWS, tuples.size () - g);
+            for (int i = 0; i < m; i++) {
+                Comparable [] tup = it.next ();
+                for (int j = 0; j < dom.length; j++) cols [j] [i] = tup [j];
+            } // for
+
+            byte [] [] enc = new byte [dom.length] [];
+            int bytes = 0;
+            for (int j = 0; j < dom.length; j++) {
+                if (codes != null && codes [j] != null) {
+                    Comparable [] c = new Comparable [m];
+                    for (int i = 0; i < m; i++) {
+                        c [i] = codes [j].get (cols [j] [i]);
+                        if (c [i] == null) throw new IllegalArgumentException ("PageFile: " + cols [j] [i] + " is not in the dictionary");
+                    } // for
+                    enc [j] = ColumnCodec.encode (Integer.class, c, m);
+                } else {
+                    enc [j] = ColumnCodec.encode (dom [j], cols [j], m);
+                } // if
+                bytes += 4 + enc [j].length;
+            } // for
+
+            ByteBuffer buf = ByteBuffer.allocate (8 + bytes);
+            buf.putInt (bytes).putInt (m);
+            for (byte [] e : enc) buf.putInt (e.length).put (e);
+            buf.flip ();
+            while (buf.hasRemaining ()) ch.write (buf);
+        } // for
+
+        long size  = ch.position () - start;
+        int  pages = (int) ((size + PAGE_SIZE - 1) / PAGE_SIZE);
+        ByteBuffer pad = ByteBuffer.allocate ((int) ((long) pages * PAGE_SIZE - size));
+        while (pad.hasRemaining ()) ch.write (pad);
+        return pages;
+    } // writeGroups
+
+    /************************************************************************************
+     * Read and decode the compressed row groups of a version 3 file.
+     *
+     * @param ch    the channel open on the file
+     * @param h     the file's header
+     * @param rows  the list collecting the rows
+     * @throws IOException  if the groups cannot be read
+     */
+    private static void readGroups (FileChannel ch, Header h, List <Comparable []> rows)
+            throws IOException
+    {
+        int cols = h.domain.length;
+        Class [] cdom = h.domain.clone ();
+        for (int j = 0; h.dict != null && j < cols; j++) if (h.dict [j] != null) cdom [j] = Integer.class;
+
+        long pos = (long) h.headerPages * h.pageSize;
+        ByteBuffer fixed = ByteBuffer.allocate (8);
+        Comparable [] [] vals = new Comparable [cols] [];
+        for (long done = 0; done < h.rowCount; ) {
+            fixed.clear ();
+            readFully (ch, fixed, pos);
+            int bytes = fixed.getInt (0), m = fixed.getInt (4);
+            ByteBuffer buf = ByteBuffer.allocate (bytes);
+            readFully (ch, buf, pos + 8);
+            buf.flip ();
+            for (int j = 0; j < cols; j++) {
+                int len = buf.getInt ();
+                int end = buf.position () + len;
+                if (vals [j] == null || vals [j].length < m) vals [j] = new Comparable [m];
+                ColumnCodec.decode (buf, cdom [j], vals [j], m);
+                buf.position (end);
+            } // for
+
+            for (int i = 0; i < m; i++) {
+                Comparable [] tup = new Comparable [cols];
+                for (int j = 0; j < cols; j++) {
+                    tup [j] = (cdom [j] == h.domain [j]) ? vals [j] [i] : h.dict [j] [(Integer) vals [j] [i]];
+                } // for
+                rows.add (tup);
+            } // for
+            pos  += 8 + bytes;
+            done += m;
+        } // for
+    } // readGroups
+
+    /************************************************************************************
+     * Fill the buffer from the channel starting at the given file position.
+     */
+    private static void readFully (FileChannel ch, ByteBuffer buf, long pos)
+            throws IOException
+    {
+        while (buf.hasRemaining ()) {
+            if (ch.read (buf, pos + buf.position ()) < 0) throw new EOFException ("PageFile: truncated row group");
+        } // while
+    } // readFully
+
+    /************************************************************************************
+     * Lay out the rows in a slotted page and write it at the channel's position.
+     *
+     * @param ch    the channel to write to
+     * @param page  the page buffer (reused)
+     * @param rows  the encoded rows of the page
+     */
+    private static void writePage (FileChannel ch, ByteBuffer page, List <byte []> rows)
+            throws IOException
+    {
+        page.clear ();
+        page.putInt (rows.size ());
+        int offset = PAGE_HEADER + 2 * rows.size ();
+        for (byte [] r : rows) {
+            page.putChar ((char) offset);
+            offset += r.length;
+        } // for
+        for (byte [] r : rows) page.put (r);
+        page.clear ();
+        while (page.hasRemaining ()) ch.write (page);
+    } // writePage
+
+    /************************************************************************************
+     * Decode the rows of the data page starting at the given buffer offset.  Each row is
+     * read at its own offset, since pages appended by PagedStore store their rows from
+     * the end of the page downward.
+     *
+     * @param buf   the mapped buffer
+     * @param base  the offset of the page in the buffer
+     * @param dom   the domains of the rows
+     * @param dict  the dictionaries of encoded columns (null if none)
+     * @param rows  the list collecting the rows
+     */
+    static void readPage (ByteBuffer buf, int base, Class [] dom, String [] [] dict, List <Comparable []> rows)
+    {
+        int n = buf.getInt (base);
+        ByteBuffer b = buf.duplicate ();
+        for (int i = 0; i < n; i++) {
+            b.position (base + buf.getChar (base + PAGE_HEADER + 2 * i));
+            rows.add (decodeRow (b, dom, dict));
+        } // for
+    } // readPage
+
+    /************************************************************************************
+     * Convert the given tables (or every table in the storage directory) from Java
+     * serialization to the paged format.
+     *
+     * @param args  the names of the tables to convert (none => all)
+     */
+    public static void main (String [] args)
+           throws IOException
+    {
+        List <String> names = new ArrayList <> (Arrays.asList (args));
+        if (names.isEmpty ()) {
+            File [] files = new File (Table.DIR).listFiles ((d, f) -> f.endsWith (Table.EXT));
+            if (files != null) {
+                for (File f : files) names.add (f.getName ().substring (0, f.getName ().length () - Table.EXT.length ()));
+            } // if
+        } // if
+        for (String name : names) {
+            out.println (name + (convert (name) ? ": converted" : ": already in paged format"));
+        } // for
+    } // main
+
+} // PageFile class
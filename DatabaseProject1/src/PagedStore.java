@@ -0,0 +1,428 @@
+/****************************************************************************************
+ * @file  PagedStore.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.lang.ref.Cleaner;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The PagedStore class keeps the tuples of a table in the data pages of a file and reads
+ * them through the shared BufferPool, so a table may be larger than the heap: only the
+ * pages being read are resident, and operators scanning the table pin one page at a time.
+ * Pages use the slotted layout of PageFile (int row count, then one unsigned short offset
+ * per row); appended pages store their rows downward from the end of the page, so a page
+ * can take rows until its slots meet its data.  The decoded rows of recently read pages
+ * are kept, so a sequential scan decodes each page once.
+ *
+ * A store is either a temporary file in the storage directory (deleted when the store is
+ * no longer reachable) or a table file opened in place (see PageFile.read), to which new
+ * tuples are appended after its saved pages and made permanent by sync.  Like TupleLog,
+ * it may be read while being appended to by one writer.
+ */
+public class PagedStore
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The size of a page in bytes
+     */
+    private static final int PAGE_SIZE = PageFile.PAGE_SIZE;
+
+    /** The size of the fixed part of a data page (the row count)
+     */
+    private static final int PAGE_HEADER = 4;
+
+    /** The number of decoded pages kept (a power of 2)
+     */
+    private static final int CACHED = 16;
+
+    /** The maximum number of pages mapped at once while opening a file
+     */
+    private static final int MAP_PAGES = 1 << 16;
+
+    /** Releases the pages, channel and (temporary) file of unreachable stores
+     */
+    private static final Cleaner cleaner = Cleaner.create ();
+
+    /** The domains of the columns
+     */
+    private final transient Class [] domain;
+
+    /** The file's identifier in the buffer pool
+     */
+    private final transient int fileId;
+
+    /** The channel open on the file
+     */
+    private final transient FileChannel ch;
+
+    /** The path of the file
+     */
+    private final transient Path path;
+
+    /** The header of a table file opened in place (null for a temporary file)
+     */
+    private final transient PageFile.Header header;
+
+    /** The page number (in the file) of the first data page
+     */
+    private final transient int base;
+
+    /** The number of the first tuple on each data page (replaced when it grows)
+     */
+    private transient volatile int [] start = new int [64];
+
+    /** The number of data pages
+     */
+    private transient volatile int pages = 0;
+
+    /** The number of tuples visible to readers
+     */
+    private transient volatile int size = 0;
+
+    /** The number of pages that were read from the file (appends start after them)
+     */
+    private final transient int appendFrom;
+
+    /** The lowest offset used by row data on the last page (0 when the last page cannot
+     *  take rows)
+     */
+    private transient int low = 0;
+
+    /** The encoding buffer of the writer
+     */
+    private final transient ByteBuffer row = ByteBuffer.allocate (PAGE_SIZE);
+
+    /** The decoded rows of recently read pages, by page number modulo CACHED
+     */
+    private final transient Decoded [] cache = new Decoded [CACHED];
+
+    /*************************************************************************************
+     * The Decoded class holds the rows decoded from one page.
+     */
+    private static final class Decoded
+    {
+        final int            page;
+        final Comparable [] [] rows;
+
+        Decoded (int _page, Comparable [] [] _rows)
+        {
+            page = _page;
+            rows = _rows;
+        } // constructor
+    } // Decoded inner class
+
+    /*************************************************************************************
+     * The Release class discards a store's pages and closes (and for a temporary file,
+     * deletes) its file.  It must not refer to the store itself.
+     */
+    private static final class Release
+            implements Runnable
+    {
+        private final int         fileId;
+        private final FileChannel ch;
+        private final Path        temp;
+
+        Release (int _fileId, FileChannel _ch, Path _temp)
+        {
+            fileId = _fileId;
+            ch     = _ch;
+            temp   = _temp;
+        } // constructor
+
+        public void run ()
+        {
+            BufferPool.pool ().discard (fileId);
+            try {
+                ch.close ();
+                if (temp != null) Files.deleteIfExists (temp);
+            } catch (IOException ex) {
+                // nothing more can be done for an unreachable store
+            } // try
+        } // run
+    } // Release inner class
+
+    /************************************************************************************
+     * Construct a store over the file.
+     */
+    private PagedStore (Class [] _domain, FileChannel _ch, Path _path, PageFile.Header _header, int _base,
+                        int [] _start, int _pages, int _size)
+    {
+        domain     = _domain;
+        fileId     = BufferPool.register ();
+        ch         = _ch;
+        path       = _path;
+        header     = _header;
+        base       = _base;
+        start      = _start;
+        pages      = _pages;
+        size       = _size;
+        appendFrom = _pages;
+        cleaner.register (this, new Release (fileId, ch, (header == null) ? path : null));
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty store for tuples with the given domains, kept in a temporary
+     * file in this process's temporary directory (see SpillFile.tempDir).
+     *
+     * @param dom  the domains of the columns
+     * @return  the new store
+     */
+    public static PagedStore create (Class [] dom)
+    {
+        try {
+            Path tmp = Files.createTempFile (SpillFile.tempDir ().toPath (), "paged", ".tmp");  // deleted by Release
+            FileChannel ch = FileChannel.open (tmp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new PagedStore (dom, ch, tmp, null, 0, new int [64], 0, 0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("PagedStore: unable to create a page file", ex);
+        } // try
+    } // create
+
+    /************************************************************************************
+     * Open a table file in the paged format in place.  Only the row counts of its data
+     * pages are read; the rows are read through the buffer pool when accessed.
+     *
+     * @param file  the path of the file
+     * @param h     the file's header
+     * @return  the store holding the file's tuples
+     * @throws IOException  if the file cannot be opened
+     */
+    static PagedStore open (String file, PageFile.Header h)
+           throws IOException
+    {
+        Path        p   = Paths.get (file);
+        FileChannel ch  = FileChannel.open (p, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int []      st  = new int [Math.max (64, h.dataPages + 1)];
+        int         n   = 0;
+        int         pgs = 0;
+        try {
+            for (int q = 0; q < h.dataPages && n < h.rowCount; q += MAP_PAGES) {
+                int m = Math.min (MAP_PAGES, h.dataPages - q);
+                ByteBuffer buf = ch.map (FileChannel.MapMode.READ_ONLY,
+                                         (long) (h.headerPages + q) * h.pageSize, (long) m * h.pageSize);
+                for (int k = 0; k < m && n < h.rowCount; k++) {
+                    st [pgs++] = n;
+                    n += (int) Math.min (buf.getInt (k * h.pageSize), h.rowCount - n);
+                } // for
+            } // for
+        } catch (IOException ex) {
+            ch.close ();
+            throw ex;
+        } // try
+        return new PagedStore (h.domain, ch, p, h, h.headerPages, st, pgs, n);
+    } // open
+
+    /************************************************************************************
+     * Return the number of tuples stored.
+     *
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Return the i-th tuple, decoding its page if it is not among the recently decoded.
+     *
+     * @param i  the tuple number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("PagedStore.get: " + i);
+        int [] st = start;
+        int    p  = pageOf (st, i);
+        Decoded d = cache [p & (CACHED - 1)];
+        if (d == null || d.page != p || i - st [p] >= d.rows.length) {
+            d = decode (st, p);
+            cache [p & (CACHED - 1)] = d;
+        } // if
+        return d.rows [i - st [p]];
+    } // get
+
+    /************************************************************************************
+     * Append a tuple and publish it.
+     *
+     * @param tup  the tuple (its values must match the domains)
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        int n = size;
+        put (n, tup);
+        size = n + 1;
+        return true;
+    } // add
+
+    /************************************************************************************
+     * Append the tuples, publishing them all at once.
+     *
+     * @param tups  the tuples (their values must match the domains)
+     * @return  whether any tuple was added
+     */
+    public boolean addAll (Collection <? extends Comparable []> tups)
+    {
+        int n = size;
+        for (Comparable [] tup : tups) put (n++, tup);
+        boolean changed = n != size;
+        size = n;
+        return changed;
+    } // addAll
+
+    /************************************************************************************
+     * Determine whether this store is the given table file opened in place.
+     *
+     * @param file  the path of the table file
+     * @return  whether the store's pages are the file's data pages
+     */
+    boolean backs (String file)
+    {
+        return header != null && path.equals (Paths.get (file));
+    } // backs
+
+    /************************************************************************************
+     * Make the first n tuples permanent in the table file the store was opened from:
+     * write back its dirty pages, then rewrite the header to cover them.
+     *
+     * @param n  the number of tuples to keep (at most size ())
+     * @throws IOException  if the file cannot be written
+     */
+    void sync (int n)
+         throws IOException
+    {
+        BufferPool.pool ().flush (fileId);
+        ch.force (false);
+        int dataPages = (n == 0) ? 0 : pageOf (start, n - 1) + 1;
+        PageFile.writeHeader (ch, header, dataPages, n);
+        ch.force (true);
+    } // sync
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the data page holding tuple i.
+     *
+     * @param st  the first tuple numbers of the pages
+     * @param i   the tuple number (below size)
+     * @return  the page number
+     */
+    private int pageOf (int [] st, int i)
+    {
+        int lo = 0, hi = pages - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (st [mid] <= i) lo = mid;
+            else hi = mid - 1;
+        } // while
+        return lo;
+    } // pageOf
+
+    /************************************************************************************
+     * Decode the visible rows of data page p, pinning it while it is read.
+     *
+     * @param st  the first tuple numbers of the pages
+     * @param p   the page number
+     * @return  the decoded rows
+     */
+    private Decoded decode (int [] st, int p)
+    {
+        int end = (p + 1 < pages) ? st [p + 1] : size;
+        Comparable [] [] rows = new Comparable [end - st [p]] [];
+        BufferPool pool = BufferPool.pool ();
+        try {
+            BufferPool.Frame f = pool.pin (fileId, ch, base + p, false);
+            try {
+                ByteBuffer b = f.buf ().duplicate ();
+                for (int k = 0; k < rows.length; k++) {
+                    b.position (b.getChar (PAGE_HEADER + 2 * k));
+                    rows [k] = PageFile.decodeRow (b, domain);
+                } // for
+            } finally {
+                pool.unpin (f, false);
+            } // try
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("PagedStore: unable to read page " + p + " of " + path, ex);
+        } // try
+        return new Decoded (p, rows);
+    } // decode
+
+    /************************************************************************************
+     * Store the tuple as tuple i (not yet published), starting a new page when the last
+     * one is full.
+     *
+     * @param i    the position (the current end of the store)
+     * @param tup  the tuple
+     */
+    private void put (int i, Comparable [] tup)
+    {
+        row.clear ();
+        try {
+            PageFile.encodeRow (row, tup, domain);
+        } catch (BufferOverflowException ex) {
+            throw new IllegalArgumentException ("PagedStore: row exceeds the page size");
+        } // try
+        int len = row.position ();
+        if (PAGE_HEADER + 2 + len > PAGE_SIZE) {
+            throw new IllegalArgumentException ("PagedStore: row of " + len + " bytes exceeds the page size");
+        } // if
+
+        int     p     = pages - 1;
+        int     k     = (p < 0) ? 0 : i - start [p];
+        boolean fresh = low == 0 || p < appendFrom || PAGE_HEADER + 2 * (k + 1) > low - len;
+        if (fresh) {
+            p = pages;
+            k = 0;
+            low = PAGE_SIZE;
+        } // if
+
+        BufferPool pool = BufferPool.pool ();
+        try {
+            BufferPool.Frame f = pool.pin (fileId, ch, base + p, fresh);
+            try {
+                ByteBuffer b = f.buf ();
+                low -= len;
+                for (int j = 0; j < len; j++) b.put (low + j, row.get (j));
+                b.putChar (PAGE_HEADER + 2 * k, (char) low);
+                b.putInt (0, k + 1);
+            } finally {
+                pool.unpin (f, true);
+            } // try
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("PagedStore: unable to write page " + p + " of " + path, ex);
+        } // try
+
+        if (fresh) {
+            int [] st = start;
+            if (p == st.length) {
+                st = Arrays.copyOf (st, 2 * p);
+                start = st;
+            } // if
+            st [p] = i;
+            pages  = p + 1;
+        } // if
+    } // put
+
+    /************************************************************************************
+     * Serialize a copy of the tuples (the pages belong to this process).
+     *
+     * @return  a row store holding the tuples
+     */
+    private Object writeReplace ()
+    {
+        return new TupleLog (this);
+    } // writeReplace
+
+} // PagedStore class
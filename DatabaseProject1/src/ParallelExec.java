@@ -0,0 +1,168 @@
+
+/****************************************************************************************
+ * @file  ParallelExec.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/****************************************************************************************
+ * The ParallelExec class runs a per-tuple (or per-chunk) operator body over a list of
+ * tuples on a ForkJoinPool.  The list is split into contiguous chunks, each chunk
+ * collects its output in its own list, and the chunk outputs are concatenated in chunk
+ * order, so the result is the same (and in the same order) as a sequential loop.  The
+ * lists must support fast random access and the body must be safe to run from several
+ * threads.
+ */
+class ParallelExec
+{
+    /** The minimum number of tuples per chunk (smaller inputs run sequentially)
+     */
+    static final int MIN_CHUNK = 4096;
+
+    /************************************************************************************
+     * Apply the body to every tuple, collecting whatever it emits.
+     *
+     * #usage rows = ParallelExec.flatMap (pool, tuples, (t, out) -> { if (p.test (t)) out.add (t); });
+     *
+     * @param pool  the pool to run on (null => run sequentially)
+     * @param rows  the input tuples
+     * @param body  the operator body: given a tuple and the chunk's output list
+     * @return  the emitted tuples, in input order
+     */
+    static List <Comparable []> flatMap (ForkJoinPool pool, List <Comparable []> rows,
+                                         BiConsumer <Comparable [], List <Comparable []>> body)
+    {
+        List <List <Comparable []>> parts = mapChunks (pool, rows, chunk -> {
+            List <Comparable []> out = new ArrayList <> ();
+            for (int i = 0; i < chunk.size (); i++) body.accept (chunk.get (i), out);
+            return out;
+        });
+        if (parts.size () == 1) return parts.get (0);
+
+        int total = 0;
+        for (List <Comparable []> p : parts) total += p.size ();
+        List <Comparable []> result = new ArrayList <> (total);
+        for (List <Comparable []> p : parts) result.addAll (p);
+        return result;
+    } // flatMap
+
+    /************************************************************************************
+     * Return the positions of the tuples satisfying the predicate (a selection vector).
+     *
+     * #usage ids = ParallelExec.positions (pool, tuples, t -> t [0].equals (1977));
+     *
+     * @param pool       the pool to run on (null => run sequentially)
+     * @param rows       the input tuples
+     * @param predicate  the condition on tuples
+     * @return  the positions of the tuples satisfying it, in order
+     */
+    static int [] positions (ForkJoinPool pool, List <Comparable []> rows, Predicate <Comparable []> predicate)
+    {
+        List <int []> parts = mapChunks (pool, rows, chunk -> {
+            int [] ids = new int [16];
+            int    m   = 0;
+            for (int i = 0; i < chunk.size (); i++) {
+                if (predicate.test (chunk.get (i))) {
+                    if (m == ids.length) ids = Arrays.copyOf (ids, 2 * m);
+                    ids [m++] = i;
+                } // if
+            } // for
+            ids = Arrays.copyOf (ids, m + 1);
+            ids [m] = chunk.size ();                                        // the chunk's length
+            return ids;
+        });
+
+        int total = 0;
+        for (int [] p : parts) total += p.length - 1;
+        int [] result = new int [total];
+        int    m = 0, start = 0;
+        for (int [] p : parts) {
+            for (int k = 0; k < p.length - 1; k++) result [m++] = start + p [k];
+            start += p [p.length - 1];
+        } // for
+        return result;
+    } // positions
+
+    /************************************************************************************
+     * Apply the body to each chunk of the tuples (e.g., to pre-aggregate it).
+     *
+     * #usage parts = ParallelExec.mapChunks (pool, tuples, chunk -> chunk.size ());
+     *
+     * @param pool  the pool to run on (null => run sequentially)
+     * @param rows  the input tuples
+     * @param body  the chunk body: given a sublist of the tuples, returns its result
+     * @return  the results of the chunks, in chunk order
+     */
+    static <R> List <R> mapChunks (ForkJoinPool pool, List <Comparable []> rows,
+                                   Function <List <Comparable []>, R> body)
+    {
+        int chunks = chunks (pool, rows.size ());
+        List <R> result = new ArrayList <> (chunks);
+        if (chunks <= 1) {
+            result.add (body.apply (rows));
+            return result;
+        } // if
+
+        Object [] parts = new Object [chunks];
+        pool.invoke (new Chunks (rows, body, parts, 0, chunks));
+        for (Object p : parts) {
+            @SuppressWarnings("unchecked")
+            R r = (R) p;
+            result.add (r);
+        } // for
+        return result;
+    } // mapChunks
+
+    /************************************************************************************
+     * Return the number of chunks n tuples are split into.
+     *
+     * @param pool  the pool to run on (null => run sequentially)
+     * @param n     the number of tuples
+     * @return  the number of chunks (1 when running sequentially)
+     */
+    static int chunks (ForkJoinPool pool, int n)
+    {
+        if (pool == null) return 1;
+        return (int) Math.max (1, Math.min ((n + MIN_CHUNK - 1) / MIN_CHUNK, 4L * pool.getParallelism ()));
+    } // chunks
+
+    /*************************************************************************************
+     * The Chunks class is a task that processes chunks [lo, hi), splitting the range in
+     * half until a single chunk remains.
+     */
+    @SuppressWarnings("serial")
+    private static class Chunks
+            extends RecursiveAction
+    {
+        private final List <Comparable []>                       rows;
+        private final Function <List <Comparable []>, ?>         body;
+        private final Object []                                  parts;
+        private final int                                        lo, hi;
+
+        Chunks (List <Comparable []> _rows, Function <List <Comparable []>, ?> _body,
+                Object [] _parts, int _lo, int _hi)
+        {
+            rows = _rows; body = _body; parts = _parts; lo = _lo; hi = _hi;
+        } // constructor
+
+        protected void compute ()
+        {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll (new Chunks (rows, body, parts, lo, mid), new Chunks (rows, body, parts, mid, hi));
+                return;
+            } // if
+            int n     = rows.size ();
+            int start = (int) ((long) n * lo / parts.length);
+            int end   = (int) ((long) n * hi / parts.length);
+            parts [lo] = body.apply (rows.subList (start, end));
+        } // compute
+    } // Chunks inner class
+
+} // ParallelExec class
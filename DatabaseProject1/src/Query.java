@@ -0,0 +1,288 @@
+
+/****************************************************************************************
+ * @file  Query.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/****************************************************************************************
+ * The Query class provides lazy, pull-based (pipelined) execution of chains of relational
+ * operators.  A query is a plan: its operators (select, project, join, union, minus)
+ * only describe the result, and nothing is computed until the result is pulled through
+ * stream, iterator or count.  Tuples then flow through the whole chain one at a time,
+ * with no intermediate tables built or indexed; only the build side of a join (or the
+ * rhs of a union/minus) is held in a hash table.  The result becomes a Table only when
+ * toTable is called.  A query may be executed any number of times.
+ *
+ * #usage Query q = movie.query ().join ("studioName", "name", studio);
+ *        Table t = q.select (t -> t [q.col ("presNo")].equals (7777)).project ("title year").toTable ();
+ */
+public class Query
+       implements Iterable <Comparable []>
+{
+    /** The name of the table the query started from (used to name results)
+     */
+    private final String name;
+
+    /** The attribute names of the result
+     */
+    private final String [] attribute;
+
+    /** The attribute domains of the result
+     */
+    private final Class [] domain;
+
+    /** The primary key of the result
+     */
+    private final String [] key;
+
+    /** The map type for indexing a materialized result
+     */
+    private final Table.MapType mType;
+
+    /** Opens a new stream over the result tuples (one per execution)
+     */
+    private final Supplier <Stream <Comparable []>> source;
+
+    /** Returns the number of tuples in the tables the query reads (its rows in)
+     */
+    private final LongSupplier inputs;
+
+    /************************************************************************************
+     * Construct a query over the tuples produced by the source.
+     *
+     * @param _name       the name of the table the query started from
+     * @param _attribute  the attribute names of the result
+     * @param _domain     the attribute domains of the result
+     * @param _key        the primary key of the result
+     * @param _mType      the map type for indexing a materialized result
+     * @param _source     opens a stream over the result tuples
+     * @param _inputs     returns the number of tuples in the tables read
+     */
+    Query (String _name, String [] _attribute, Class [] _domain, String [] _key, Table.MapType _mType,
+           Supplier <Stream <Comparable []>> _source, LongSupplier _inputs)
+    {
+        name      = _name;
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+        mType     = _mType;
+        source    = _source;
+        inputs    = _inputs;
+    } // constructor
+
+    /************************************************************************************
+     * Select the tuples satisfying the given predicate.
+     *
+     * @param predicate  the check condition for tuples
+     * @return  a query producing the selected tuples
+     */
+    public Query select (Predicate <Comparable []> predicate)
+    {
+        return new Query (name, attribute, domain, key, mType, () -> source.get ().filter (predicate), inputs);
+    } // select
+
+    /************************************************************************************
+     * Project the tuples onto the given attributes.  The key is kept if all its attributes
+     * are kept, otherwise all the projected attributes form the key.
+     *
+     * @param attributes  the attributes to project onto
+     * @return  a query producing the projected tuples
+     */
+    public Query project (String attributes)
+    {
+        String [] attrs  = attributes.split (" ");
+        int []    cols   = match (attrs);
+        Class []  dom    = new Class [cols.length];
+        for (int j = 0; j < cols.length; j++) dom [j] = domain [cols [j]];
+        String [] newKey = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
+
+        return new Query (name, attrs, dom, newKey, mType, () -> source.get ().map (t -> {
+            Comparable [] tup = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) tup [j] = t [cols [j]];
+            return tup;
+        }), inputs);
+    } // project
+
+    /************************************************************************************
+     * Equijoin this query's tuples with those of table2 (see Table.join).
+     *
+     * @param attributes1  the attributes of this query to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the join operation
+     * @return  a query producing the joined tuples
+     */
+    public Query join (String attributes1, String attributes2, Table table2)
+    {
+        return join (attributes1, attributes2, table2.query ());
+    } // join
+
+    /************************************************************************************
+     * Equijoin this query's tuples with those of query q2.  When the result is pulled, a
+     * hash table is built on q2's tuples and this query's tuples are streamed past it.
+     *
+     * @param attributes1  the attributes of this query to be compared
+     * @param attributes2  the attributes of q2 to be compared
+     * @param q2           the rhs query (the build side)
+     * @return  a query producing the joined tuples
+     */
+    public Query join (String attributes1, String attributes2, Query q2)
+    {
+        int [] cols1 = match (attributes1.split (" "));
+        int [] cols2 = q2.match (attributes2.split (" "));
+
+        return new Query (name, ArrayUtil.concat (attribute, q2.attribute), ArrayUtil.concat (domain, q2.domain),
+                          key, mType, () -> {
+            Map <Object, List <Comparable []>> build = new HashMap <> ();
+            try (Stream <Comparable []> s2 = q2.stream ()) {
+                s2.forEach (t -> build.computeIfAbsent (HashJoin.keyOf (t, cols2), k -> new ArrayList <> (1)).add (t));
+            } // try
+            return source.get ().flatMap (t -> {
+                List <Comparable []> matches = build.get (HashJoin.keyOf (t, cols1));
+                return (matches == null) ? Stream.empty ()
+                                         : matches.stream ().map (m -> ArrayUtil.concat (t, m));
+            });
+        }, () -> inputs.getAsLong () + q2.inputs.getAsLong ());
+    } // join
+
+    /************************************************************************************
+     * Union this query's tuples with those of q2 (see Table.union).
+     *
+     * @param q2   the rhs query
+     * @param all  whether to keep duplicate tuples
+     * @return  a query producing the union
+     */
+    public Query union (Query q2, boolean all)
+    {
+        compatible (q2);
+        return new Query (name, attribute, domain, key, mType, () -> {
+            Stream <Comparable []> s = Stream.concat (source.get (), q2.stream ());
+            if (all) return s;
+            Set <List <Comparable>> seen = new HashSet <> ();
+            return s.filter (t -> seen.add (SetOps.content (t)));
+        }, () -> inputs.getAsLong () + q2.inputs.getAsLong ());
+    } // union
+
+    /************************************************************************************
+     * Take the difference of this query's tuples and those of q2, removing duplicates
+     * (see Table.minus).
+     *
+     * @param q2  the rhs query (its tuples are hashed)
+     * @return  a query producing the difference
+     */
+    public Query minus (Query q2)
+    {
+        compatible (q2);
+        return new Query (name, attribute, domain, key, mType, () -> {
+            Set <List <Comparable>> other = new HashSet <> ();
+            try (Stream <Comparable []> s2 = q2.stream ()) {
+                s2.forEach (t -> other.add (SetOps.content (t)));
+            } // try
+            Set <List <Comparable>> seen = new HashSet <> ();
+            return source.get ().filter (t -> { List <Comparable> k = SetOps.content (t);
+                                               return ! other.contains (k) && seen.add (k); });
+        }, () -> inputs.getAsLong () + q2.inputs.getAsLong ());
+    } // minus
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return  a column position (-1 if not found)
+     */
+    public int col (String attr)
+    {
+        for (int i = 0; i < attribute.length; i++) {
+            if (attr.equals (attribute [i])) return i;
+        } // for
+        return -1;
+    } // col
+
+    /************************************************************************************
+     * Execute the query, returning a stream over the result tuples.
+     *
+     * @return  a stream of result tuples
+     */
+    public Stream <Comparable []> stream ()
+    {
+        return source.get ();
+    } // stream
+
+    /************************************************************************************
+     * Execute the query, returning an iterator over the result tuples.
+     *
+     * @return  an iterator of result tuples
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        return stream ().iterator ();
+    } // iterator
+
+    /************************************************************************************
+     * Execute the query, counting the result tuples without keeping them.
+     *
+     * @return  the number of result tuples
+     */
+    public long count ()
+    {
+        try (Stream <Comparable []> s = stream ()) {
+            return s.count ();
+        } // try
+    } // count
+
+    /************************************************************************************
+     * Execute the query and materialize the result as a table.
+     *
+     * @return  a table holding the result tuples
+     */
+    public Table toTable ()
+    {
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".query ().toTable ()");
+        Monitor.Probe probe = Monitor.start (name, "pipeline", inputs.getAsLong ());
+        List <Comparable []> rows;
+        try (Stream <Comparable []> s = stream ()) {
+            rows = s.collect (Collectors.toList ());
+        } // try
+        Table t = new Table (Table.tempName (name), attribute, domain, key, new TupleLog (), mType);
+        t.fill (rows);
+        Monitor.end (probe, rows.size ());
+        return t;
+    } // toTable
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Match the attribute names to column positions.
+     *
+     * @param column  the array of attribute names
+     * @return  an array of column positions
+     */
+    private int [] match (String [] column)
+    {
+        int [] colPos = new int [column.length];
+        for (int j = 0; j < column.length; j++) {
+            colPos [j] = col (column [j]);
+            if (colPos [j] < 0) throw new IllegalArgumentException ("Query: attribute not found: " + column [j]);
+        } // for
+        return colPos;
+    } // match
+
+    /************************************************************************************
+     * Check that query q2 has the same domains as this query.
+     *
+     * @param q2  the rhs query
+     */
+    private void compatible (Query q2)
+    {
+        if (! Arrays.equals (domain, q2.domain)) {
+            throw new IllegalArgumentException ("Query: incompatible domains for " + name + " and " + q2.name);
+        } // if
+    } // compatible
+
+} // Query class
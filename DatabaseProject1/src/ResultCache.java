@@ -0,0 +1,228 @@
+/****************************************************************************************
+ * @file  ResultCache.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/****************************************************************************************
+ * The ResultCache class caches the results of select, project and join, so that repeated
+ * calls against tables that have not changed are answered without recomputing them.  An
+ * entry is keyed by the operator, its arguments and its input tables, and records the
+ * version of each input (see Table.getVersion) when it was computed: once an input has
+ * been inserted into, the entry is stale and the next call recomputes it.  Predicates
+ * are given as Conditions, which compare by structure; use Condition.named for a lambda.
+ *
+ * The cache is bounded by the number of entries and by their estimated bytes (rows times
+ * columns of references; a select or project view shares its input's values), evicting
+ * the least recently used entries.  Each call returns a read-only snapshot of the cached
+ * result, so callers cannot change (insert into or close) what others will be given.
+ *
+ * #usage ResultCache cache = new ResultCache (1000, 64L << 20);
+ *        Table fox = cache.select (movie, Condition.eq ("studioName", "Fox"));
+ */
+public class ResultCache
+{
+    /************************************************************************************
+     * The Entry class holds a cached result and the versions of its inputs.
+     */
+    private static class Entry
+    {
+        final Table   result;
+        final long [] versions;
+        final long    bytes;
+
+        Entry (Table _result, long [] _versions, long _bytes)
+        {
+            result   = _result;
+            versions = _versions;
+            bytes    = _bytes;
+        } // constructor
+    } // Entry inner class
+
+    /** The maximum number of entries
+     */
+    private final int maxEntries;
+
+    /** The maximum estimated bytes of the entries
+     */
+    private final long maxBytes;
+
+    /** The entries, least recently used first
+     */
+    private final LinkedHashMap <List <Object>, Entry> entries = new LinkedHashMap <> (16, 0.75f, true);
+
+    /** The estimated bytes of the entries
+     */
+    private long bytes;
+
+    /** Metrics: calls answered from the cache, calls computed, entries evicted to make
+     *  room, and entries found stale
+     */
+    private long hits, misses, evictions, invalidations;
+
+    /************************************************************************************
+     * Construct an empty cache with the given bounds.
+     *
+     * @param _maxEntries  the maximum number of cached results
+     * @param _maxBytes    the maximum estimated bytes of the cached results
+     */
+    public ResultCache (int _maxEntries, long _maxBytes)
+    {
+        if (_maxEntries < 1 || _maxBytes < 1) throw new IllegalArgumentException ("ResultCache: bounds must be positive");
+        maxEntries = _maxEntries;
+        maxBytes   = _maxBytes;
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Cached Operators
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Select the tuples of the table satisfying the condition (see Table.select).
+     *
+     * #usage cache.select (movie, Condition.named ("long", "length", v -> (Integer) v [0] > 150))
+     *
+     * @param table      the table to select from
+     * @param condition  the condition
+     * @return  a snapshot of the (possibly cached) result
+     */
+    public Table select (Table table, Condition condition)
+    {
+        return cached (Arrays.asList ("select", table, condition), new Table [] { table },
+                       () -> table.select (condition));
+    } // select
+
+    /************************************************************************************
+     * Project the table onto the given attributes (see Table.project).
+     *
+     * @param table       the table to project
+     * @param attributes  the attributes to project onto
+     * @return  a snapshot of the (possibly cached) result
+     */
+    public Table project (Table table, String attributes)
+    {
+        return cached (Arrays.asList ("project", table, attributes), new Table [] { table },
+                       () -> table.project (attributes));
+    } // project
+
+    /************************************************************************************
+     * Equijoin two tables (see Table.join).
+     *
+     * @param table1       the lhs table
+     * @param attributes1  the attributes of table1 to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table
+     * @return  a snapshot of the (possibly cached) result
+     */
+    public Table join (Table table1, String attributes1, String attributes2, Table table2)
+    {
+        return cached (Arrays.asList ("join", table1, attributes1, attributes2, table2), new Table [] { table1, table2 },
+                       () -> table1.join (attributes1, attributes2, table2));
+    } // join
+
+    //----------------------------------------------------------------------------------
+    // Metrics
+    //----------------------------------------------------------------------------------
+
+    public synchronized long getHits ()          { return hits; }
+    public synchronized long getMisses ()        { return misses; }
+    public synchronized long getEvictions ()     { return evictions; }
+    public synchronized long getInvalidations () { return invalidations; }
+    public synchronized int  size ()             { return entries.size (); }
+    public synchronized long getBytes ()         { return bytes; }
+
+    /************************************************************************************
+     * Remove every entry (the metrics are kept).
+     */
+    public synchronized void clear ()
+    {
+        entries.clear ();
+        bytes = 0;
+    } // clear
+
+    /************************************************************************************
+     * Convert the metrics to a string.
+     *
+     * @return  the string representation of the cache's metrics
+     */
+    public synchronized String toString ()
+    {
+        return String.format ("cache entries %d  bytes %d  hits %d  misses %d  evictions %d  invalidations %d",
+                              entries.size (), bytes, hits, misses, evictions, invalidations);
+    } // toString
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return a snapshot of the cached result for the key if its inputs have not changed,
+     * otherwise compute, cache and return it.  The versions are read before computing,
+     * so an insert racing with the computation leaves the entry stale, never wrong.
+     *
+     * @param key     the operator, its arguments and inputs
+     * @param inputs  the input tables
+     * @param op      computes the result
+     * @return  a snapshot of the result
+     */
+    private Table cached (List <Object> key, Table [] inputs, Supplier <Table> op)
+    {
+        long [] versions = new long [inputs.length];
+        for (int i = 0; i < inputs.length; i++) versions [i] = inputs [i].getVersion ();
+
+        synchronized (this) {
+            Entry e = entries.get (key);
+            if (e != null && Arrays.equals (e.versions, versions)) {
+                hits++;
+                if (Monitor.tracing ()) Monitor.trace ("CACHE> hit " + key.get (0) + " on " + e.result.getName ());
+                return e.result.snapshot ();
+            } // if
+            if (e != null) {
+                entries.remove (key);
+                bytes -= e.bytes;
+                invalidations++;
+            } // if
+            misses++;
+        } // synchronized
+
+        Table result = op.get ();
+        Entry e = new Entry (result, versions, estimate (result));
+        synchronized (this) {
+            if (e.bytes <= maxBytes) {
+                Entry old = entries.put (key, e);
+                if (old != null) bytes -= old.bytes;
+                bytes += e.bytes;
+                evict ();
+            } // if
+        } // synchronized
+        return result.snapshot ();
+    } // cached
+
+    /************************************************************************************
+     * Evict the least recently used entries until the cache is within its bounds.
+     */
+    private void evict ()
+    {
+        Iterator <Entry> it = entries.values ().iterator ();
+        while (it.hasNext () && (entries.size () > maxEntries || bytes > maxBytes)) {
+            bytes -= it.next ().bytes;
+            it.remove ();
+            evictions++;
+        } // while
+    } // evict
+
+    /************************************************************************************
+     * Estimate the bytes held by a result: an array of references per tuple.
+     *
+     * @param result  the result table
+     * @return  the estimated bytes
+     */
+    private static long estimate (Table result)
+    {
+        return 64 + (long) result.size () * (16 + 8L * result.attributes ().length);
+    } // estimate
+
+} // ResultCache class
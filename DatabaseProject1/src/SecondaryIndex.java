@@ -0,0 +1,166 @@
+/****************************************************************************************
+ * @file  SecondaryIndex.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The SecondaryIndex class indexes a table on attributes other than its primary key (see
+ * Table.createIndex).  Values need not be unique, so each key maps to the numbers of the
+ * tuples holding it.  Since tables are append-only, tuple numbers are added in increasing
+ * order and a snapshot of n tuples sees exactly the numbers below n.  The table's latch
+ * guards the index: tuples are added under the write lock and probes run under the read
+ * lock.
+ */
+class SecondaryIndex
+{
+    /** The indexed attributes
+     */
+    final String [] attrs;
+
+    /** The column positions of the indexed attributes
+     */
+    final int [] cols;
+
+    /** Map from key to the numbers of the tuples with that key
+     */
+    private final TreeMap <KeyType, Postings> map = new TreeMap <> ();
+
+    /*************************************************************************************
+     * The Postings class holds the (increasing) tuple numbers for one key.
+     */
+    private static final class Postings
+    {
+        int [] ids = new int [2];
+        int    n   = 0;
+
+        void add (int id)
+        {
+            if (n == ids.length) ids = Arrays.copyOf (ids, 2 * n);
+            ids [n++] = id;
+        } // add
+
+        int visible (int limit)
+        {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ids [mid] < limit) lo = mid + 1;
+                else hi = mid;
+            } // while
+            return lo;
+        } // visible
+    } // Postings inner class
+
+    /************************************************************************************
+     * Construct an empty index on the given attributes.
+     *
+     * @param _attrs  the indexed attributes
+     * @param _cols   their column positions
+     */
+    SecondaryIndex (String [] _attrs, int [] _cols)
+    {
+        attrs = _attrs;
+        cols  = _cols;
+    } // constructor
+
+    /************************************************************************************
+     * Add tuple number id to the index.
+     *
+     * @param tup  the tuple
+     * @param id   its tuple number (greater than any already added)
+     */
+    void add (Comparable [] tup, int id)
+    {
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) keyVal [j] = tup [cols [j]];
+        map.computeIfAbsent (KeyType.of (keyVal), k -> new Postings ()).add (id);
+    } // add
+
+    /************************************************************************************
+     * Return the numbers of the tuples below n whose key equals the given key.
+     *
+     * @param keyVal  the key
+     * @param n       the number of tuples in the snapshot
+     * @return  the tuple numbers, in increasing order
+     */
+    int [] get (KeyType keyVal, int n)
+    {
+        Postings p = map.get (keyVal);
+        return (p == null) ? new int [0] : Arrays.copyOf (p.ids, p.visible (n));
+    } // get
+
+    /************************************************************************************
+     * Return the numbers of the tuples below n whose key is in the range low to high
+     * (inclusive, with null meaning unbounded).
+     *
+     * @param low   the lower bound on the key
+     * @param high  the upper bound on the key
+     * @param n     the number of tuples in the snapshot
+     * @return  the tuple numbers, in increasing order
+     */
+    int [] range (KeyType low, KeyType high, int n)
+    {
+        NavigableMap <KeyType, Postings> sub = map;
+        if (low != null && high != null && low.compareTo (high) > 0) return new int [0];
+        if (low != null)  sub = sub.tailMap (low, true);
+        if (high != null) sub = sub.headMap (high, true);
+
+        int [] ids = new int [16];
+        int    m   = 0;
+        for (Postings p : sub.values ()) {
+            int k = p.visible (n);
+            if (m + k > ids.length) ids = Arrays.copyOf (ids, Math.max (2 * ids.length, m + k));
+            System.arraycopy (p.ids, 0, ids, m, k);
+            m += k;
+        } // for
+        ids = Arrays.copyOf (ids, m);
+        Arrays.sort (ids);
+        return ids;
+    } // range
+
+    /************************************************************************************
+     * Merge two increasing arrays of tuple numbers, dropping duplicates.
+     *
+     * @param a  the first tuple numbers
+     * @param b  the second tuple numbers
+     * @return  the tuple numbers in a or b, in increasing order
+     */
+    static int [] union (int [] a, int [] b)
+    {
+        int [] c = new int [a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length || j < b.length) {
+            int v = (j == b.length || (i < a.length && a [i] <= b [j])) ? a [i] : b [j];
+            if (i < a.length && a [i] == v) i++;
+            if (j < b.length && b [j] == v) j++;
+            c [k++] = v;
+        } // while
+        return Arrays.copyOf (c, k);
+    } // union
+
+    /************************************************************************************
+     * Intersect two increasing arrays of tuple numbers.
+     *
+     * @param a  the first tuple numbers
+     * @param b  the second tuple numbers
+     * @return  the tuple numbers in both a and b, in increasing order
+     */
+    static int [] intersect (int [] a, int [] b)
+    {
+        int [] c = new int [Math.min (a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a [i] < b [j])      i++;
+            else if (a [i] > b [j]) j++;
+            else {
+                c [k++] = a [i++];
+                j++;
+            } // if
+        } // while
+        return Arrays.copyOf (c, k);
+    } // intersect
+
+} // SecondaryIndex class
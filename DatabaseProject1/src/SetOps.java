@@ -0,0 +1,161 @@
+
+/****************************************************************************************
+ * @file  SetOps.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The SetOps class implements the set operators (union, minus and intersect) used by
+ * Table.  Tuples are compared by content: each tuple is wrapped as a list so that its
+ * hash code and equality come from its attribute values, and each input is hashed once.
+ * The DISTINCT variants return sets (no duplicate tuples), while the ALL variants follow
+ * bag semantics (union adds multiplicities, minus subtracts them and intersect takes the
+ * minimum).  Results keep the order in which tuples first appear in the inputs.  Minus
+ * may be given a Bloom filter over the rhs tuples, so that lhs tuples certainly not in
+ * the rhs skip the hash lookup.
+ */
+class SetOps
+{
+    /************************************************************************************
+     * Union the tuples of r and s.
+     *
+     * @param r    the lhs tuples
+     * @param s    the rhs tuples
+     * @param all  whether to keep duplicates (UNION ALL)
+     * @return  the tuples in r or s
+     */
+    static List <Comparable []> union (List <Comparable []> r, List <Comparable []> s, boolean all)
+    {
+        List <Comparable []> rows = new ArrayList <> (r.size () + s.size ());
+        if (all) {
+            rows.addAll (r);
+            rows.addAll (s);
+            return rows;
+        } // if
+
+        Set <List <Comparable>> seen = new HashSet <> ();
+        for (Comparable [] tup : r) if (seen.add (content (tup))) rows.add (tup);
+        for (Comparable [] tup : s) if (seen.add (content (tup))) rows.add (tup);
+        return rows;
+    } // union
+
+    /************************************************************************************
+     * Take the difference of the tuples of r and s.
+     *
+     * @param r      the lhs tuples
+     * @param s      the rhs tuples
+     * @param all    whether to subtract multiplicities (EXCEPT ALL)
+     * @param bloom  a Bloom filter over all the columns of s (null for none)
+     * @return  the tuples in r but not in s
+     */
+    static List <Comparable []> minus (List <Comparable []> r, List <Comparable []> s, boolean all,
+                                       BloomFilter bloom)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        int [] cols = (bloom == null || r.isEmpty ()) ? null : allColumns (r.get (0).length);
+        if (all) {
+            Map <List <Comparable>, int []> counts = count (s);
+            for (Comparable [] tup : r) {
+                int [] c = (cols != null && ! bloom.mightContain (tup, cols)) ? null : counts.get (content (tup));
+                if (c != null && c [0] > 0) c [0]--;
+                else rows.add (tup);
+            } // for
+            return rows;
+        } // if
+
+        Set <List <Comparable>> other = contents (s);
+        Set <List <Comparable>> seen  = new HashSet <> ();
+        for (Comparable [] tup : r) {
+            List <Comparable> k = content (tup);
+            boolean in = (cols == null || bloom.mightContain (tup, cols)) && other.contains (k);
+            if (! in && seen.add (k)) rows.add (tup);
+        } // for
+        return rows;
+    } // minus
+
+    /************************************************************************************
+     * Intersect the tuples of r and s.
+     *
+     * @param r    the lhs tuples
+     * @param s    the rhs tuples
+     * @param all  whether to keep the minimum multiplicity (INTERSECT ALL)
+     * @return  the tuples in both r and s
+     */
+    static List <Comparable []> intersect (List <Comparable []> r, List <Comparable []> s, boolean all)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        if (all) {
+            Map <List <Comparable>, int []> counts = count (s);
+            for (Comparable [] tup : r) {
+                int [] c = counts.get (content (tup));
+                if (c != null && c [0] > 0) {
+                    c [0]--;
+                    rows.add (tup);
+                } // if
+            } // for
+            return rows;
+        } // if
+
+        Set <List <Comparable>> other = contents (s);
+        Set <List <Comparable>> seen  = new HashSet <> ();
+        for (Comparable [] tup : r) {
+            List <Comparable> k = content (tup);
+            if (other.contains (k) && seen.add (k)) rows.add (tup);
+        } // for
+        return rows;
+    } // intersect
+
+    /************************************************************************************
+     * Wrap a tuple so that hashing and equality use its attribute values.
+     *
+     * @param tup  the tuple
+     * @return  a fixed-size list view of the tuple
+     */
+    static List <Comparable> content (Comparable [] tup)
+    {
+        return Arrays.asList (tup);
+    } // content
+
+    /************************************************************************************
+     * Return the positions of all the columns of a tuple.
+     *
+     * @param n  the number of columns
+     * @return  the column positions 0 .. n-1
+     */
+    private static int [] allColumns (int n)
+    {
+        int [] cols = new int [n];
+        for (int j = 0; j < n; j++) cols [j] = j;
+        return cols;
+    } // allColumns
+
+    /************************************************************************************
+     * Hash the contents of the given tuples into a set.
+     *
+     * @param rows  the tuples
+     * @return  the set of tuple contents
+     */
+    private static Set <List <Comparable>> contents (List <Comparable []> rows)
+    {
+        Set <List <Comparable>> set = new HashSet <> (Math.max (16, 2 * rows.size ()));
+        for (Comparable [] tup : rows) set.add (content (tup));
+        return set;
+    } // contents
+
+    /************************************************************************************
+     * Count the occurrences of each distinct tuple content.
+     *
+     * @param rows  the tuples
+     * @return  a map from tuple content to a (mutable) occurrence count
+     */
+    private static Map <List <Comparable>, int []> count (List <Comparable []> rows)
+    {
+        Map <List <Comparable>, int []> counts = new HashMap <> (Math.max (16, 2 * rows.size ()));
+        for (Comparable [] tup : rows) counts.computeIfAbsent (content (tup), k -> new int [1]) [0]++;
+        return counts;
+    } // count
+
+} // SetOps class
@@ -0,0 +1,144 @@
+
+/****************************************************************************************
+ * @file  SortedRun.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The SortedRun class presents arrays of keys (already sorted, without duplicates) and
+ * their values as a read-only SortedMap.  Passing one to putAll on an empty TreeMap or
+ * BpTreeMap lets the map build itself bottom-up in linear time instead of performing one
+ * tree insertion per key.  Sub-maps (subMap, headMap and tailMap) are runs over a range
+ * of the same arrays, located by binary search.
+ */
+class SortedRun <K extends Comparable <K>, V>
+      extends AbstractMap <K, V>
+      implements SortedMap <K, V>
+{
+    /** The keys in ascending order
+     */
+    private final K [] keys;
+
+    /** The values, parallel to the keys
+     */
+    private final V [] values;
+
+    /** The range of the arrays in the run: positions from (inclusive) to to (exclusive)
+     */
+    private final int from, to;
+
+    /************************************************************************************
+     * Construct a sorted run over the first n keys and values.
+     *
+     * @param _keys    the keys in strictly ascending order
+     * @param _values  the corresponding values
+     * @param _n       the number of entries
+     */
+    SortedRun (K [] _keys, V [] _values, int _n)
+    {
+        this (_keys, _values, 0, _n);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a sorted run over the keys and values at positions [_from, _to).
+     */
+    private SortedRun (K [] _keys, V [] _values, int _from, int _to)
+    {
+        keys   = _keys;
+        values = _values;
+        from   = _from;
+        to     = _to;
+    } // constructor
+
+    public Comparator <? super K> comparator () { return null; }
+
+    public int size () { return to - from; }
+
+    public K firstKey ()
+    {
+        if (from == to) throw new NoSuchElementException ();
+        return keys [from];
+    } // firstKey
+
+    public K lastKey ()
+    {
+        if (from == to) throw new NoSuchElementException ();
+        return keys [to - 1];
+    } // lastKey
+
+    /************************************************************************************
+     * Return the run of the keys from fromKey (inclusive) to toKey (exclusive).
+     *
+     * @param fromKey  the low end of the range
+     * @param toKey    the high end of the range
+     * @return  the sub-map over the range
+     */
+    public SortedMap <K, V> subMap (K fromKey, K toKey)
+    {
+        if (fromKey.compareTo (toKey) > 0) throw new IllegalArgumentException ("subMap: fromKey > toKey");
+        return new SortedRun <> (keys, values, position (fromKey), position (toKey));
+    } // subMap
+
+    public SortedMap <K, V> headMap (K toKey)   { return new SortedRun <> (keys, values, from, position (toKey)); }
+    public SortedMap <K, V> tailMap (K fromKey) { return new SortedRun <> (keys, values, position (fromKey), to); }
+
+    /************************************************************************************
+     * Return the value of the given key, found by binary search.
+     *
+     * @param key  the key to look up
+     * @return  the value or null if the key is not in the run
+     */
+    public V get (Object key)
+    {
+        int i = Arrays.binarySearch (keys, from, to, key);
+        return (i >= 0) ? values [i] : null;
+    } // get
+
+    public boolean containsKey (Object key) { return Arrays.binarySearch (keys, from, to, key) >= 0; }
+
+    /************************************************************************************
+     * Return a set view of the entries in key order.
+     *
+     * @return  the set view of the run
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return to - from; }
+
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    int i = from;
+
+                    public boolean hasNext () { return i < to; }
+
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (i >= to) throw new NoSuchElementException ();
+                        Map.Entry <K, V> e = new SimpleImmutableEntry <> (keys [i], values [i]);
+                        i++;
+                        return e;
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /************************************************************************************
+     * Return the position in the run of the first key not less than the given key,
+     * clamped to the run's range.
+     *
+     * @param key  the key to locate
+     * @return  the position (from .. to)
+     */
+    private int position (K key)
+    {
+        int i = Arrays.binarySearch (keys, from, to, key);
+        return (i >= 0) ? i : -i - 1;
+    } // position
+
+} // SortedRun class
@@ -0,0 +1,225 @@
+
+/****************************************************************************************
+ * @file  SpillFile.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The SpillFile class provides a temporary file under the storage directory for
+ * holding tuples that do not fit in memory (e.g., the partitions of a Grace hash join).
+ * Tuples are appended in one pass, then read back in the same order any number of times.
+ * The file is removed by delete (callers delete in a finally block).
+ *
+ * Temporary files are kept in a directory of their own per process, store/tmp/<pid>,
+ * which the process holds a lock on (store/tmp/<pid>.lock) while it runs.  Directories
+ * whose lock is free belong to processes that have ended, and are removed the first
+ * time a process needs a temporary file (see tempDir).  Other processes sharing the
+ * storage directory and files being written by their owners are never touched.
+ */
+class SpillFile
+       implements Iterable <Comparable []>
+{
+    /** Number of tuples written between stream resets (bounds the stream's handle table)
+     */
+    private static final int RESET = 1024;
+
+    /** The directory of this process's temporary files (null until first needed)
+     */
+    private static File tempDir;
+
+    /** The lock on tempDir, held for the life of the process
+     */
+    private static FileLock tempLock;
+
+    /** The temporary file holding the tuples
+     */
+    private final File file;
+
+    /** The output stream (null once closed for writing)
+     */
+    private ObjectOutputStream oos;
+
+    /** The number of tuples written
+     */
+    private int size = 0;
+
+    /************************************************************************************
+     * Construct a spill file in this process's temporary directory.
+     *
+     * @param prefix  the prefix for the temporary file's name
+     */
+    SpillFile (String prefix)
+    {
+        try {
+            file = File.createTempFile (prefix, ".tmp", tempDir ());
+            oos  = new ObjectOutputStream (new BufferedOutputStream (new FileOutputStream (file)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("SpillFile: unable to create spill file", ex);
+        } // try
+    } // constructor
+
+    /************************************************************************************
+     * Append a tuple to the spill file.
+     *
+     * @param tup  the tuple to append
+     */
+    void write (Comparable [] tup)
+    {
+        try {
+            oos.writeObject (tup);
+            if (++size % RESET == 0) oos.reset ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("SpillFile: write failed for " + file, ex);
+        } // try
+    } // write
+
+    /************************************************************************************
+     * Finish writing, flushing all buffered tuples to the file.
+     */
+    void close ()
+    {
+        if (oos == null) return;
+        try {
+            oos.close ();
+            oos = null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("SpillFile: close failed for " + file, ex);
+        } // try
+    } // close
+
+    /************************************************************************************
+     * Return the number of tuples written to the spill file.
+     *
+     * @return  the number of tuples
+     */
+    int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Read all the tuples in the spill file back into memory.
+     *
+     * @return  the list of tuples in the order written
+     */
+    List <Comparable []> readAll ()
+    {
+        List <Comparable []> rows = new ArrayList <> (size);
+        for (Comparable [] tup : this) rows.add (tup);
+        return rows;
+    } // readAll
+
+    /************************************************************************************
+     * Return an iterator that reads the tuples back in the order written.
+     *
+     * @return  an iterator over the spilled tuples
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        close ();
+        try {
+            ObjectInputStream ois = new ObjectInputStream (new BufferedInputStream (new FileInputStream (file)));
+            return new Iterator <Comparable []> () {
+                int read = 0;
+
+                public boolean hasNext ()
+                {
+                    if (read < size) return true;
+                    try { ois.close (); } catch (IOException ex) { /* finished reading */ }
+                    return false;
+                } // hasNext
+
+                public Comparable [] next ()
+                {
+                    if (read >= size) throw new NoSuchElementException ();
+                    try {
+                        read++;
+                        return (Comparable []) ois.readObject ();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException ("SpillFile: read failed for " + file, ex);
+                    } catch (ClassNotFoundException ex) {
+                        throw new IllegalStateException ("SpillFile: corrupt spill file " + file, ex);
+                    } // try
+                } // next
+            }; // Iterator
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("SpillFile: unable to open " + file, ex);
+        } // try
+    } // iterator
+
+    /************************************************************************************
+     * Delete the spill file.
+     */
+    void delete ()
+    {
+        close ();
+        file.delete ();
+    } // delete
+
+    /************************************************************************************
+     * Return the directory for this process's temporary files (spill files and the files
+     * of temporary PAGED tables).  On first use, the directories of ended processes are
+     * removed, then this process's directory is created and locked.
+     *
+     * @return  the directory, store/tmp/<pid>
+     * @throws IOException  if the directory cannot be created or locked
+     */
+    static synchronized File tempDir ()
+           throws IOException
+    {
+        if (tempDir != null) return tempDir;
+        File   root = new File (Table.DIR, "tmp");
+        String name = String.valueOf (ProcessHandle.current ().pid ());
+        root.mkdirs ();
+        removeStale (root);
+
+        Path lockFile = new File (root, name + ".lock").toPath ();
+        do {                                          // until the locked file is still in place
+            if (tempLock != null) tempLock.channel ().close ();
+            FileChannel ch = FileChannel.open (lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            tempLock = ch.lock ();
+        } while (! Files.exists (lockFile));          // removed by another process's removeStale
+        File dir = new File (root, name);
+        if (! dir.isDirectory () && ! dir.mkdir ()) throw new IOException ("SpillFile: unable to create " + dir);
+        tempDir = dir;
+        return dir;
+    } // tempDir
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Remove the temporary directories of ended processes: those whose lock file is not
+     * locked.  A directory is emptied and removed, and then its lock file, while holding
+     * the lock, so a process starting with the same name waits and then retries.
+     *
+     * @param root  the directory holding the per-process directories
+     */
+    private static void removeStale (File root)
+    {
+        File [] locks = root.listFiles ((dir, name) -> name.endsWith (".lock"));
+        if (locks == null) return;
+        for (File lockFile : locks) {
+            try (FileChannel ch = FileChannel.open (lockFile.toPath (), StandardOpenOption.WRITE)) {
+                FileLock lock = ch.tryLock ();
+                if (lock == null) continue;                                 // its process is running
+                File    dir   = new File (root, lockFile.getName ().replace (".lock", ""));
+                File [] files = dir.listFiles ();
+                if (files != null) for (File f : files) f.delete ();
+                dir.delete ();
+                lockFile.delete ();
+                lock.release ();
+            } catch (IOException | OverlappingFileLockException ex) {
+                // removed meanwhile, or locked by this process: not stale
+            } // try
+        } // for
+    } // removeStale
+
+} // SpillFile class
@@ -8,6 +8,11 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -17,22 +22,81 @@ import static java.lang.System.out;
 /****************************************************************************************
  * This class implements relational database tables (including attribute names, domains
  * and a list of tuples.  Five basic relational algebra operators are provided: project,
- * select, union, minus join.  The insert data manipulation operator is also provided.
+ * select, union, minus join, plus intersect, semiJoin and antiJoin.  The insert data
+ * manipulation operator is also provided.
  * Missing are update and delete data manipulation operators.
+ * Tables are append-only and multi-versioned: every operator reads a snapshot (the
+ * tuples present when it starts), so queries may run while other threads insert.  The
+ * results of select and project on ROW tables are views over the snapshot they read
+ * (see TupleView), copied only when inserted into or materialized.
  */
-public class Table implements Serializable
+public class Table implements Serializable, AutoCloseable
 {
+    /** Serialization version (kept so that files in the original format can be converted).
+     */
+    private static final long serialVersionUID = 2568813427292585268L;
+
     /** Relative path for storage directory
      */
-    private static final String DIR = "store" + File.separator;
+    static final String DIR = "store" + File.separator;
 
     /** Filename extension for database files
      */
-    private static final String EXT = ".dbf";
+    static final String EXT = ".dbf";
+
+    /** The supported map types for the index: none, red-black tree, linear hash,
+     *  extendible hash or B+tree.
+     */
+    public enum MapType { NO_MAP, TREE_MAP, LINHASH_MAP, EXTHASH_MAP, BPTREE_MAP }
+
+    /** The supported storage types for the tuples: row-wise (a list of arrays),
+     *  column-wise (primitive arrays per column, see ColumnStore), in file pages read
+     *  through the buffer pool (see PagedStore), for tables larger than the heap, or in
+     *  fixed-width rows outside the heap (see OffHeapStore), out of the collector's way.
+     */
+    public enum StorageType { ROW, COLUMN, PAGED, OFF_HEAP }
+
+    /** When logged inserts are forced to disk: before insert returns (concurrent inserts
+     *  share a sync), every few milliseconds by a background thread, or when the OS
+     *  decides (see enableLog).
+     */
+    public enum SyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    /** Counter for naming temporary tables (shared by concurrently running operators).
+     */
+    private static final AtomicInteger count = new AtomicInteger ();
+
+    /** The pool for parallel execution of select, project and join probing (null when
+     *  running sequentially).
+     */
+    private static volatile ForkJoinPool pool = null;
+
+    /** Joins whose inputs have at most this many tuple pairs use the nested loop join.
+     */
+    private static final long NESTED_LOOP_MAX = 1024;
+
+    /** Memory budget for hash joins: the maximum number of build tuples held in memory
+     *  before both inputs are partitioned to spill files.
+     */
+    private static int joinMemory = 1 << 20;
 
-    /** Counter for naming temporary tables.
+    /** Memory budget for sorting: the maximum number of tuples sorted in memory before
+     *  sorted runs are spilled to disk and merged.
      */
-    private static int count = 0;
+    private static int sortMemory = 1 << 20;
+
+    /** Memory budget for aggregation: the maximum number of groups held in memory before
+     *  the partial aggregates of other groups are partitioned to spill files.
+     */
+    private static int groupMemory = 1 << 20;
+
+    /** Size (in bytes) at which a table's write-ahead log triggers a checkpoint.
+     */
+    private static volatile long checkpointSize = 64L << 20;
+
+    /** Whether tables are saved compressed column by column (see ColumnCodec).
+     */
+    private static volatile boolean compress = true;
 
     /** Table name.
      */
@@ -49,18 +113,79 @@ public class Table implements Serializable
      */
     private final Class [] domain;
 
-    /** Collection of tuples (data storage).
+    /** Collection of tuples (data storage), append-only: a TupleLog, ColumnStore,
+     *  PagedStore, OffHeapStore, or for a select or project result a TupleView.
      */
     private final List <Comparable []> tuples;
 
+    /** The storage type of the tuples (result tables use the same type).
+     */
+    private final StorageType sType;
+
     /** Primary key. 
      */
     private final String [] key;
 
-    /** Index into tuples (maps key to tuple number).
+    /** The map type used for the index (NO_MAP for PAGED and OFF_HEAP storage, since
+     *  the index would hold every tuple on the heap).
+     */
+    private final MapType mType;
+
+    /** Index into tuples (maps key to tuple number), null for NO_MAP.
      */
     private final Map <KeyType, Comparable []> index;
 
+    /** Whether the index has yet to be built from the tuples of a view (see buildIndex),
+     *  shared with snapshots.
+     */
+    private final transient AtomicBoolean pending;
+
+    /** Secondary indexes on non-key attributes, by their attributes (guarded by the
+     *  latch, like the index).
+     */
+    private final transient Map <String, SecondaryIndex> secondary;
+
+    /** Statistics for the optimizer (recomputed once the table has grown).
+     */
+    private transient volatile TableStats stats;
+
+    /** Column positions of the primary key attributes (resolved on first use).
+     */
+    private transient volatile int [] keyCols;
+
+    /** Latch over the index: shared by index probes, held exclusively by a writer while
+     *  it appends tuples and updates the index (so writers are serialized).
+     */
+    private final transient ReentrantReadWriteLock latch;
+
+    /** The number of tuples visible in a snapshot, or -1 for the live table.
+     */
+    private final transient int limit;
+
+    /** The write-ahead log recording inserts, null when inserts are not logged.
+     */
+    private transient volatile WriteAheadLog wal;
+
+    /** The modification counter, bumped by each insert that adds tuples (written under
+     *  the latch; a snapshot's never changes).
+     */
+    private transient volatile long version;
+
+    /** Bloom filters over the key values of the tuples, by the attributes they are on
+     *  (see bloomFilter), shared with snapshots and saved with the table.
+     */
+    private final transient Map <String, BloomFilter> blooms;
+
+    /** The columns on which the first sortedRows tuples are known to be in ascending
+     *  order (set by orderBy and kept by project, so join merges without checking), or
+     *  null.
+     */
+    private transient volatile int [] sortedOn;
+
+    /** The number of tuples known to be in order on sortedOn (later appends may not be).
+     */
+    private transient volatile int sortedRows;
+
     //----------------------------------------------------------------------------------
     // Constructors
     //----------------------------------------------------------------------------------
@@ -75,12 +200,7 @@ public class Table implements Serializable
      */  
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
     {
-        name      = _name;
-        attribute = _attribute;
-        domain    = _domain;
-        key       = _key;
-        tuples    = new ArrayList <> ();
-        index     = new TreeMap <> ();       // also try BPTreeMap, LinHashMap or ExtHashMap
+        this (_name, _attribute, _domain, _key, new ArrayList <> (), MapType.TREE_MAP);
     } // constructor
 
     /************************************************************************************
@@ -90,17 +210,48 @@ public class Table implements Serializable
      * @param _attribute  the string containing attributes names
      * @param _domain     the string containing attribute domains (data types)
      * @param _key        the primary key
-     * @param _tuples      the list of tuples containing the data
+     * @param _tuples      the list of tuples containing the data (copied unless it is a
+     *                     TupleLog or ColumnStore)
      */  
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
                   List <Comparable []> _tuples)
+    {
+        this (_name, _attribute, _domain, _key, _tuples, MapType.TREE_MAP);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table from the meta-data specifications and data in _tuples list,
+     * using the given type of map for its index.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _tuples     the list of tuples containing the data (copied unless it is a
+     *                    TupleLog, ColumnStore, PagedStore, OffHeapStore or TupleView)
+     * @param _mType      the map type for the index (ignored for a PagedStore or
+     *                    OffHeapStore)
+     */  
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                  List <Comparable []> _tuples, MapType _mType)
     {
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = _tuples;
-        index     = new TreeMap <> ();       // also try BPTreeMap, LinHashMap or ExtHashMap
+        tuples    = (_tuples instanceof TupleLog || _tuples instanceof ColumnStore || _tuples instanceof TupleView
+                     || _tuples instanceof PagedStore || _tuples instanceof OffHeapStore) ? _tuples
+                                                                                         : new TupleLog (_tuples);
+        sType     = (_tuples instanceof ColumnStore)  ? StorageType.COLUMN
+                  : (_tuples instanceof PagedStore)   ? StorageType.PAGED
+                  : (_tuples instanceof OffHeapStore) ? StorageType.OFF_HEAP : StorageType.ROW;
+        mType     = (sType == StorageType.PAGED || sType == StorageType.OFF_HEAP) ? MapType.NO_MAP : _mType;
+        index     = makeMap (mType);
+        pending   = new AtomicBoolean (index != null && _tuples instanceof TupleView && ! _tuples.isEmpty ());
+        secondary = new LinkedHashMap <> ();
+        latch     = new ReentrantReadWriteLock ();
+        limit     = -1;
+        blooms    = new ConcurrentHashMap <> ();
     } // constructor
 
     /************************************************************************************
@@ -112,9 +263,77 @@ public class Table implements Serializable
      */
     public Table (String name, String attributes, String domains, String _key)
     {
-        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "));
+        this (name, attributes, domains, _key, MapType.TREE_MAP);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, using the given type
+     * of map for its index.
+     *
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _mType      the map type for the index
+     */
+    public Table (String name, String attributes, String domains, String _key, MapType _mType)
+    {
+        this (name, attributes, domains, _key, _mType, StorageType.ROW);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, using the given type
+     * of map for its index and the given type of storage for its tuples.
+     *
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _mType      the map type for the index
+     * @param _sType      the storage type for the tuples
+     */
+    public Table (String name, String attributes, String domains, String _key, MapType _mType,
+                  StorageType _sType)
+    {
+        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "),
+              _mType, _sType);
+
+        if (Monitor.tracing ()) Monitor.trace ("DDL> create table " + name + " (" + attributes + ")");
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, with the given types
+     * of index and storage.
+     */
+    private Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                   MapType _mType, StorageType _sType)
+    {
+        this (_name, _attribute, _domain, _key, makeStore (_sType, _domain), _mType);
+    } // constructor
 
-        out.println ("DDL> create table " + name + " (" + attributes + ")");
+    /************************************************************************************
+     * Construct a read-only snapshot of the live table holding its first n tuples.  The
+     * snapshot shares the live table's storage, index and latch.
+     *
+     * @param live  the live table
+     * @param n     the number of tuples visible in the snapshot
+     */
+    private Table (Table live, int n)
+    {
+        name      = live.name;
+        attribute = live.attribute;
+        domain    = live.domain;
+        key       = live.key;
+        tuples    = live.tuples;
+        sType     = live.sType;
+        mType     = live.mType;
+        index     = live.index;
+        pending   = live.pending;
+        secondary = live.secondary;
+        latch     = live.latch;
+        limit     = n;
+        version   = live.version;
+        blooms    = live.blooms;
+        sortedOn   = live.sortedOn;
+        sortedRows = live.sortedRows;
     } // constructor
 
     //----------------------------------------------------------------------------------
@@ -123,7 +342,9 @@ public class Table implements Serializable
 
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
-     * Check whether the original key is included in the projection.
+     * Check whether the original key is included in the projection.  For a ROW table the
+     * result is a view mapping its columns onto this table's tuples; with off-heap
+     * storage only the projected fields are read.
      *
      * #usage movie.project ("title year studioNo")
      *
@@ -132,46 +353,40 @@ public class Table implements Serializable
      */
     public Table project (String attributes)
     {
-        out.println ("RA> " + name + ".project (" + attributes + ")");
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".project (" + attributes + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "project", tups.size ());
         String [] attrs     = attributes.split (" ");//stores attributes into array
         Class []  colDomain = extractDom (match (attrs), domain);//extract the domain(int, string, etc.) from attrs' type
         String [] newKey    = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs; //if the list of attrs contain all keys, then newKey[]=key[]. else newKey[]=attrs[]
         //asList turns the array into a list and containsAll return true or false
 
-        List <Comparable []> rows = new ArrayList<Comparable []>(); //list of future tuples, Comparable are basically objects that can be compared based on their key(a comparable also)
+        int [] cols = match (attrs);
+        if (sType == StorageType.ROW) {                                   // a view: nothing copied
+            Table t = new Table (tempName (name), attrs, colDomain, newKey, TupleView.of (tuples, tups, null, cols), mType);
+            t.keepOrder (this, tups.size (), cols);
+            Monitor.end (probe, t.tuples.size ());
+            return t;
+        } // if
 
-        //  T O   B E   I M P L E M E N T E D 				
-        int [] columnLocation = this.match(attrs);
-        
-        Comparable[] tempt;    //finds the correct column for each row(old tuple) and creates new tuples(rows of the desired information only)    
-        int temptCount=0;       
-        for(int i=0;i<tuples.size();i++){//row
-        	tempt=new Comparable[attrs.length];
-        	for(int i2=0;i2<domain.length;i2++){//col       		
-        		for(int i3=0;i3<columnLocation.length;i3++){//if at right spot(cols), then store element from there into a tuple        			
-        			if(i2==columnLocation[i3]){
-        				Comparable test1=tuples.get(i)[i2];
-        				tempt[temptCount]=test1;
-        				temptCount++;
-        				if(temptCount==attrs.length){
-            				rows.add(tempt);//adds the tuple into the list	            				            				       				
-            				temptCount=0;//resets the counter
-            				
-            				}       					        				
-        			}
-        		}
-        		
-        	}	
-        	
-        }
-  
-        List <Comparable []> rows2 = new ArrayList <> ();
-        Table t = new Table (name + count++, attrs, colDomain, newKey, rows2);
-        for (int i = 0; i<rows.size(); i++){
-        	//t.insert will automatically add that value to the table's index as well
-        	t.insert(rows.get(i));
-        }
-        return t;     
+        List <Comparable []> rows;
+        if (tuples instanceof OffHeapStore) {                             // read only the projected fields
+            OffHeapStore store = (OffHeapStore) tuples;
+            rows = new ArrayList <> (tups.size ());
+            for (int i = 0; i < tups.size (); i++) rows.add (store.get (i, cols));
+        } else {
+            rows = ParallelExec.flatMap (pool, tups, (tup, res) -> {
+                Comparable [] row = new Comparable [cols.length];
+                for (int j = 0; j < cols.length; j++) row [j] = tup [cols [j]];
+                res.add (row);
+            });
+        } // if
+
+        Table t = new Table (tempName (name), attrs, colDomain, newKey, makeStore (colDomain), mType);
+        t.fill (rows);
+        t.keepOrder (this, tups.size (), cols);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
     } // project
 
     /************************************************************************************
@@ -184,27 +399,12 @@ public class Table implements Serializable
      */
     public Table select (Predicate <Comparable []> predicate)
     {
-        out.println ("RA> " + name + ".select (" + predicate + ")");
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".select (" + predicate + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
 
-        //Initialize the new list
-        List <Comparable []> rows = new ArrayList <> ();
-        //Loop through our current list of tuples
-        for (int i = 0; i<tuples.size(); i++){
-        	//If the tuple satisfies the given predicate, we want to add it to the new list of rows
-        	//Otherwise, do nothing
-        	if(predicate.test(tuples.get(i))){
-        		rows.add(tuples.get(i));
-        	}
-        }
-        //return a new table with the selected rows and updated index
-        //Worth noting that if the list of rows is empty, the new table will still be returned, but with no rows
-        List <Comparable []> rows2 = new ArrayList <> ();
-        Table t = new Table (name + count++, attribute, domain, key, rows2);
-        for (int i = 0; i<rows.size(); i++){
-        	//t.insert will automatically add that value to the table's index as well
-        	out.println("here");
-        	t.insert(rows.get(i));
-        }
+        Table t = where (tups, predicate);
+        Monitor.end (probe, t.tuples.size ());
         return t;
     } // select
 
@@ -217,278 +417,1165 @@ public class Table implements Serializable
      */
     public Table select (KeyType keyVal)
     {
-        out.println ("RA> " + name + ".select (" + keyVal + ")");
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".select (" + keyVal + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
 
-      //Initialize the new list
         List <Comparable []> rows = new ArrayList <> ();
+        if (index != null) {
+            rows = indexed (tups, idx -> {
+                Comparable [] tup = idx.get (keyVal);
+                return (tup == null) ? Collections.emptyList () : Collections.singletonList (tup);
+            });
+            if (probe != null) probe.indexHit (rows.size ());
+        } else {
+            for (Comparable [] tup : tups) {
+                if (keyOf (tup).equals (keyVal)) rows.add (tup);
+            } // for
+        } // if
 
-        //Get a set of the index. This is necessary for iteration of a treemap
-        Set set = index.entrySet();
-        // Get an iterator for the set
-        Iterator i = set.iterator();
-        // Loop through the index
-        while(i.hasNext()) { 
-        	 Map.Entry entry = (Map.Entry)i.next();
-        	 KeyType aKey = (KeyType)entry.getKey();
-        	 //If the key of the entry matches the key value we're looking for, add it to the new list of rows
-        	 if(aKey.equals(keyVal)){
-        		 rows.add((Comparable[]) entry.getValue());
-        	 }
-        }
-       
       //return a new table with the selected rows
         //Worth noting that if the list of rows is empty, the new table will still be returned, but with no rows
-        List <Comparable []> rows2 = new ArrayList <> ();
-        Table t = new Table (name + count++, attribute, domain, key, rows2);
-        for (int j = 0; j<rows.size(); j++){
-        	//t.insert will automatically add that value to the table's index as well
-        	t.insert(rows.get(j));
-        }
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
         return t;
     } // select
 
     /************************************************************************************
-     * Union this table and table2.  Check that the two tables are compatible.
+     * Select the tuples satisfying the given condition.  When the secondary indexes can
+     * answer the condition (see Condition.probe), only the tuples they return are
+     * tested; otherwise the tuples are scanned, comparing codes for the conditions on
+     * dictionary encoded columns (see Condition.scan).
      *
-     * #usage movie.union (show)
+     * #usage movie.select (Condition.eq ("studioName", "Universal"))
      *
-     * @param table2  the rhs table in the union operation
-     * @return  a table representing the union
+     * @param condition  the condition on named attributes
+     * @return  a table with the tuples satisfying the condition
      */
-    public Table union (Table table2)
+    public Table select (Condition condition)
     {
-        out.println ("RA> " + name + ".union (" + table2.name + ")");
-        if (! compatible (table2)) return null;
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".select (" + condition + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
+        Predicate <Comparable []> predicate = condition.bind (this);
 
-        List <Comparable []> rows = new ArrayList<Comparable []>();//initializes the list
+        int [] ids = null;
+        latch.readLock ().lock ();
+        try {
+            if (! secondary.isEmpty ()) ids = condition.probe (secondary, tups.size ());
+        } finally {
+            latch.readLock ().unlock ();
+        } // try
+        boolean hit = ids != null;
+        if (! hit && tuples instanceof ColumnStore) ids = condition.scan (this, (ColumnStore) tuples, tups.size ());
 
-        //  T O   B E   I M P L E M E N T E D 
-        
-        if(compatible(table2)){//if compatible then do the operation
-        	       	
-        	for(Comparable[] temp1 : tuples){//adds all tuples from table 1
-            	rows.add(temp1);        	
-            }
-            
-            for(Comparable[] temp1 : table2.tuples){//adds tuple from table 2, also checks for duplicates
-            	boolean unique=true;
-            	for(Comparable[] temp2 : tuples){
-            		if(temp1.equals(temp2)){
-            			unique=false;
-            		}
-            	}
-            	if(unique==true){
-            		rows.add(temp1);
-            	}        	
-            }                               
-        	        	       	
-        }
-                
-        List <Comparable []> rows2 = new ArrayList <> ();
-        Table t = new Table (name + count++, attribute, domain, key, rows2);
-        for (int i = 0; i<rows.size(); i++){
-        	//t.insert will automatically add that value to the table's index as well
-        	t.insert(rows.get(i));
-        }
+        if (sType == StorageType.ROW) {
+            int [] sel;
+            if (ids != null) {
+                int m = 0;
+                sel = new int [ids.length];
+                for (int i : ids) if (predicate.test (tups.get (i))) sel [m++] = i;
+                sel = Arrays.copyOf (sel, m);
+                if (probe != null && hit) probe.indexHit (m);
+            } else {
+                sel = ParallelExec.positions (pool, tups, predicate);
+            } // if
+            Table t = selection (tups, sel);
+            Monitor.end (probe, t.tuples.size ());
+            return t;
+        } // if
+
+        List <Comparable []> rows;
+        if (ids != null) {
+            rows = new ArrayList <> (ids.length);
+            for (int i : ids) {
+                Comparable [] tup = tups.get (i);
+                if (predicate.test (tup)) rows.add (tup);
+            } // for
+            if (probe != null && hit) probe.indexHit (rows.size ());
+        } else {
+            rows = ParallelExec.flatMap (pool, tups, (tup, res) -> {
+                if (predicate.test (tup)) res.add (tup);
+            });
+        } // if
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
         return t;
-    } // union
+    } // select
 
     /************************************************************************************
-     * Take the difference of this table and table2.  Check that the two tables are
-     * compatible.
+     * Select the tuples whose keys are in the given range (low <= key <= high).  Ordered
+     * indexes (TREE_MAP, BPTREE_MAP) are range scanned; hash indexes are filtered entry
+     * by entry, and without an index the tuples are scanned.
      *
-     * #usage movie.minus (show)
+     * #usage movie.select (new KeyType ("A", 1900), new KeyType ("M", 2000))
      *
-     * @param table2  The rhs table in the minus operation
-     * @return  a table representing the difference
-     * 
+     * @param low   the lower bound on the key (inclusive)
+     * @param high  the upper bound on the key (inclusive)
+     * @return  a table with the tuples whose keys are in the range
      */
-    public Table minus (Table table2)
+    public Table select (KeyType low, KeyType high)
     {
-        out.println ("RA> " + name + ".minus (" + table2.name + ")");
-        if (! compatible (table2)) return null;
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".select (" + low + " .. " + high + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
 
-        List <Comparable []> rows = new ArrayList <Comparable []> () ;
-    	
-        for(Comparable [] newrows : tuples){
-        	boolean check = true;
-        	for(Comparable [] row : table2.tuples){
-        		if(newrows.equals(row)){
-        			check = false;
-        			break;
-        		}
-        	}
-        	if(check)
-        	rows.add(newrows);
-        	     	       	
-        }
-
-        // I M P L E M E N T E D 
-
-        List <Comparable []> rows2 = new ArrayList <> ();
-        Table t = new Table (name + count++, attribute, domain, key, rows2);
-        for (int i = 0; i<rows.size(); i++){
-        	//t.insert will automatically add that value to the table's index as well
-        	t.insert(rows.get(i));
-        }
+        List <Comparable []> rows = new ArrayList <> ();
+        if (index instanceof SortedMap) {
+            if (low.compareTo (high) <= 0) {
+                rows = indexed (tups, idx -> {
+                    List <Comparable []> hits = new ArrayList <> (((SortedMap <KeyType, Comparable []>) idx)
+                                                                  .subMap (low, high).values ());
+                    Comparable [] last = idx.get (high);
+                    if (last != null) hits.add (last);
+                    return hits;
+                });
+            } // if
+            if (probe != null) probe.indexHit (rows.size ());
+        } else if (index != null) {
+            rows = indexed (tups, idx -> {
+                List <Comparable []> hits = new ArrayList <> ();
+                for (Map.Entry <KeyType, Comparable []> e : idx.entrySet ()) {
+                    if (low.compareTo (e.getKey ()) <= 0 && e.getKey ().compareTo (high) <= 0) hits.add (e.getValue ());
+                } // for
+                return hits;
+            });
+            if (probe != null) probe.indexHit (rows.size ());
+        } else {
+            for (Comparable [] tup : tups) {
+                KeyType k = keyOf (tup);
+                if (low.compareTo (k) <= 0 && k.compareTo (high) <= 0) rows.add (tup);
+            } // for
+        } // if
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
         return t;
-    } // minus
+    } // select
 
     /************************************************************************************
-     * Join this table and table2 by performing an equijoin.  Tuples from both tables
-     * are compared requiring attributes1 to equal attributes2.  Disambiguate attribute
-     * names by append "2" to the end of any duplicate attribute name.
+     * Select the tuples whose Integer attribute satisfies the given predicate.  With
+     * column storage the predicate is evaluated over the int [] column without boxing,
+     * and with off-heap storage over the values read in place.
      *
-     * #usage movie.join ("studioNo", "name", studio)
-     * #usage movieStar.join ("name == s.name", starsIn)
-     * @param attribute1  the attributes of this table to be compared (Foreign Key)
-     * @param attribute2  the attributes of table2 to be compared (Primary Key)
-     * @param table2      the rhs table in the join operation
-     * @return  a table with tuples satisfying the equality predicate
+     * #usage movie.selectInt ("year", y -> y >= 1980)
+     *
+     * @param attr       the attribute to test
+     * @param predicate  the check condition on int values
+     * @return  a table with tuples satisfying the predicate
      */
-    public Table join (String attributes1, String attributes2, Table table2)
+    public Table selectInt (String attr, IntPredicate predicate)
     {
-        out.println ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
-                                               + table2.name + ")");
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".selectInt (" + attr + ", " + predicate + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
 
-        String [] t_attrs = attributes1.split (" ");
-        String [] u_attrs = attributes2.split (" ");
+        int j = col (attr);
+        List <Comparable []> rows;
+        if (tuples instanceof ColumnStore && ((ColumnStore) tuples).isStored (j, int [].class)) {
+            rows = rowsAt (((ColumnStore) tuples).scanInt (j, predicate, tups.size ()));
+        } else if (tuples instanceof OffHeapStore && ((OffHeapStore) tuples).isStored (j, int.class)) {
+            rows = rowsAt (((OffHeapStore) tuples).scanInt (j, predicate, tups.size ()));
+        } else if (sType == StorageType.ROW) {
+            Table t = selection (tups, ParallelExec.positions (pool, tups, tup -> predicate.test (((Number) tup [j]).intValue ())));
+            Monitor.end (probe, t.tuples.size ());
+            return t;
+        } else {
+            rows = new ArrayList <> ();
+            for (Comparable [] tup : tups) if (predicate.test (((Number) tup [j]).intValue ())) rows.add (tup);
+        } // if
 
-        List <Comparable []> rows = new ArrayList <Comparable []> () ;
-        
-        // I M P L E M E N T E D 
-        int [] newattr1 = this.match(t_attrs);
-        int [] newattr2 = table2.match(u_attrs);
-        for(Comparable [] newrows : tuples){
-        	
-        	for(Comparable [] row : table2.tuples){
-        		boolean check = true;
-        		for(int i=0;i<newattr1.length;i++){
-        			if(!(newrows[newattr1[i]].equals(row[newattr2[i]]))){
-        				check = false;
-        				break;
-        			}
-        		}
-        		if(check)
-                	rows.add(ArrayUtil.concat(newrows, row));
-        	}
-        
-        	     	       	
-        }
-        
-        List <Comparable []> rows2 = new ArrayList <> ();
-        Table t = new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
-                ArrayUtil.concat (domain, table2.domain), key, rows2);
-        for (int i = 0; i<rows.size(); i++){
-        	//t.insert will automatically add that value to the table's index as well
-        	t.insert(rows.get(i));
-        }
-  
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
         return t;
-    }
+    } // selectInt
 
     /************************************************************************************
-     * Return the column position for the given attribute name.
+     * Select the tuples whose Long attribute satisfies the given predicate.  With column
+     * storage the predicate is evaluated over the long [] column without boxing, and
+     * with off-heap storage over the values read in place.
      *
-     * @param attr  the given attribute name
-     * @return  a column position
+     * #usage movieExec.selectLong ("certNo", c -> c < 1000L)
+     *
+     * @param attr       the attribute to test
+     * @param predicate  the check condition on long values
+     * @return  a table with tuples satisfying the predicate
      */
-    public int col (String attr)
+    public Table selectLong (String attr, LongPredicate predicate)
     {
-        for (int i = 0; i < attribute.length; i++) {
-           if (attr.equals (attribute [i])) return i;
-        } // for
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".selectLong (" + attr + ", " + predicate + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
 
-        return -1;  // not found
-    } // col
+        int j = col (attr);
+        List <Comparable []> rows;
+        if (tuples instanceof ColumnStore && ((ColumnStore) tuples).isStored (j, long [].class)) {
+            rows = rowsAt (((ColumnStore) tuples).scanLong (j, predicate, tups.size ()));
+        } else if (tuples instanceof OffHeapStore && ((OffHeapStore) tuples).isStored (j, long.class)) {
+            rows = rowsAt (((OffHeapStore) tuples).scanLong (j, predicate, tups.size ()));
+        } else if (sType == StorageType.ROW) {
+            Table t = selection (tups, ParallelExec.positions (pool, tups, tup -> predicate.test (((Number) tup [j]).longValue ())));
+            Monitor.end (probe, t.tuples.size ());
+            return t;
+        } else {
+            rows = new ArrayList <> ();
+            for (Comparable [] tup : tups) if (predicate.test (((Number) tup [j]).longValue ())) rows.add (tup);
+        } // if
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // selectLong
 
     /************************************************************************************
-     * Insert a tuple to the table.
+     * Select the tuples whose Double attribute satisfies the given predicate.  With
+     * column storage the predicate is evaluated over the double [] column without boxing,
+     * and with off-heap storage over the values read in place.
      *
-     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     * #usage movieExec.selectDouble ("fee", f -> f > 5000.0)
      *
-     * @param tup  the array of attribute values forming the tuple
-     * @return  whether insertion was successful
+     * @param attr       the attribute to test
+     * @param predicate  the check condition on double values
+     * @return  a table with tuples satisfying the predicate
      */
-    public boolean insert (Comparable [] tup)
+    public Table selectDouble (String attr, DoublePredicate predicate)
     {
-        out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".selectDouble (" + attr + ", " + predicate + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "select", tups.size ());
 
-        if (typeCheck (tup)) {
-            tuples.add (tup);
-            Comparable [] keyVal = new Comparable [key.length];
-            int []        cols   = match (key);
-            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            index.put (new KeyType (keyVal), tup);
-            return true;
+        int j = col (attr);
+        List <Comparable []> rows;
+        if (tuples instanceof ColumnStore && ((ColumnStore) tuples).isStored (j, double [].class)) {
+            rows = rowsAt (((ColumnStore) tuples).scanDouble (j, predicate, tups.size ()));
+        } else if (tuples instanceof OffHeapStore && ((OffHeapStore) tuples).isStored (j, double.class)) {
+            rows = rowsAt (((OffHeapStore) tuples).scanDouble (j, predicate, tups.size ()));
+        } else if (sType == StorageType.ROW) {
+            Table t = selection (tups, ParallelExec.positions (pool, tups, tup -> predicate.test (((Number) tup [j]).doubleValue ())));
+            Monitor.end (probe, t.tuples.size ());
+            return t;
         } else {
-            return false;
+            rows = new ArrayList <> ();
+            for (Comparable [] tup : tups) if (predicate.test (((Number) tup [j]).doubleValue ())) rows.add (tup);
         } // if
-    } // insert
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // selectDouble
 
     /************************************************************************************
-     * Get the name of the table.
+     * Union this table and table2, removing duplicate tuples.  Check that the two tables
+     * are compatible.
      *
-     * @return  the table's name
+     * #usage movie.union (show)
+     *
+     * @param table2  the rhs table in the union operation
+     * @return  a table representing the union
      */
-    public String getName ()
+    public Table union (Table table2)
     {
-        return name;
-    } // getName
+        return union (table2, false);
+    } // union
 
     /************************************************************************************
-     * Print this table.
+     * Union this table and table2.  Check that the two tables are compatible.
+     *
+     * #usage movie.union (show, true)
+     *
+     * @param table2  the rhs table in the union operation
+     * @param all     whether to keep duplicate tuples (UNION ALL) or remove them (UNION)
+     * @return  a table representing the union
      */
-    public void print ()
+    public Table union (Table table2, boolean all)
     {
-        out.println ("\n Table " + name);
-        out.print ("|-");
-        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
-        out.println ("-|");
-        out.print ("| ");
-        for (String a : attribute) out.printf ("%15s", a);
-        out.println (" |");
-        out.print ("|-");
-        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
-        out.println ("-|");
-        for (Comparable [] tup : tuples) {
-            out.print ("| ");
-            for (Comparable attr : tup) out.printf ("%15s", attr);
-            out.println (" |");
-        } // for
-        out.print ("|-");
-        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
-        out.println ("-|");
-    } // print
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".union (" + table2.name + (all ? ", all" : "") + ")");
+        if (! compatible (table2)) return null;
+        List <Comparable []> tups = view (), tups2 = table2.view ();
+        Monitor.Probe probe = Monitor.start (name, "union", tups.size () + tups2.size ());
+
+        List <Comparable []> rows = SetOps.union (tups, tups2, all);
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // union
 
     /************************************************************************************
-     * Print this table's index (Map).
+     * Take the difference of this table and table2, removing duplicate tuples.  Check
+     * that the two tables are compatible.
+     *
+     * #usage movie.minus (show)
+     *
+     * @param table2  The rhs table in the minus operation
+     * @return  a table representing the difference
      */
-    public void printIndex ()
+    public Table minus (Table table2)
     {
-        out.println ("\n Index for " + name);
-        out.println ("-------------------");
-        for (Map.Entry <KeyType, Comparable []> e : index.entrySet ()) {
-            out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
-        } // for
-        out.println ("-------------------");
-    } // printIndex
+        return minus (table2, false);
+    } // minus
 
     /************************************************************************************
-     * Load the table with the given name into memory. 
+     * Take the difference of this table and table2.  Check that the two tables are
+     * compatible.
      *
-     * @param name  the name of the table to load
+     * #usage movie.minus (show, true)
+     *
+     * @param table2  The rhs table in the minus operation
+     * @param all     whether each tuple in table2 cancels one occurrence (EXCEPT ALL) or
+     *                all occurrences with duplicates removed (EXCEPT)
+     * @return  a table representing the difference
      */
-    public static Table load (String name)
+    public Table minus (Table table2, boolean all)
     {
-        Table tab = null;
-        try {
-            ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
-            tab = (Table) ois.readObject ();
-            ois.close ();
-        } catch (IOException ex) {
-            out.println ("load: IO Exception");
-            ex.printStackTrace ();
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".minus (" + table2.name + (all ? ", all" : "") + ")");
+        if (! compatible (table2)) return null;
+        List <Comparable []> tups = view (), tups2 = table2.view ();
+        Monitor.Probe probe = Monitor.start (name, "minus", tups.size () + tups2.size ());
+
+        List <Comparable []> rows = SetOps.minus (tups, tups2, all, table2.bloomFilter (table2.match (table2.attribute), tups2));
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // minus
+
+    /************************************************************************************
+     * Intersect this table and table2, removing duplicate tuples.  Check that the two
+     * tables are compatible.
+     *
+     * #usage movie.intersect (cinema)
+     *
+     * @param table2  The rhs table in the intersect operation
+     * @return  a table representing the intersection
+     */
+    public Table intersect (Table table2)
+    {
+        return intersect (table2, false);
+    } // intersect
+
+    /************************************************************************************
+     * Intersect this table and table2.  Check that the two tables are compatible.
+     *
+     * #usage movie.intersect (cinema, true)
+     *
+     * @param table2  The rhs table in the intersect operation
+     * @param all     whether to keep the smaller number of occurrences of each tuple
+     *                (INTERSECT ALL) or remove duplicates (INTERSECT)
+     * @return  a table representing the intersection
+     */
+    public Table intersect (Table table2, boolean all)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".intersect (" + table2.name + (all ? ", all" : "") + ")");
+        if (! compatible (table2)) return null;
+        List <Comparable []> tups = view (), tups2 = table2.view ();
+        Monitor.Probe probe = Monitor.start (name, "intersect", tups.size () + tups2.size ());
+
+        List <Comparable []> rows = SetOps.intersect (tups, tups2, all);
+
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // intersect
+
+    /************************************************************************************
+     * Join this table and table2 by performing an equijoin.  Tuples from both tables
+     * are compared requiring attributes1 to equal attributes2.  Disambiguate attribute
+     * names by append "2" to the end of any duplicate attribute name.  Tiny inputs use a
+     * nested loop join, inputs known to be sorted on the join attributes (see orderBy) a
+     * merge join, and all others a hash join that spills to disk when the build side
+     * exceeds the join memory budget (see setJoinMemory).
+     *
+     * #usage movie.join ("studioNo", "name", studio)
+     * #usage movieStar.join ("name == s.name", starsIn)
+     * @param attribute1  the attributes of this table to be compared (Foreign Key)
+     * @param attribute2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table join (String attributes1, String attributes2, Table table2)
+    {
+        return join (attributes1, attributes2, table2, null);
+    } // join
+
+    /************************************************************************************
+     * Semi-join this table and table2: keep the tuples of this table that match at least
+     * one tuple of table2, requiring attributes1 to equal attributes2.  Each tuple is
+     * kept once, however many tuples of table2 it matches, and the result has this
+     * table's attributes.  The key values of the smaller input are hashed; on large
+     * inputs a Bloom filter over them (see bloomFilter) discards most tuples of the
+     * other input that have no match before the hash table is probed.
+     *
+     * #usage movie.semiJoin ("title year", "movieTitle movieYear", starsIn)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the semi-join operation
+     * @return  a table with the tuples of this table having a match in table2
+     */
+    public Table semiJoin (String attributes1, String attributes2, Table table2)
+    {
+        return semiJoin (attributes1, attributes2, table2, true);
+    } // semiJoin
+
+    /************************************************************************************
+     * Anti-join this table and table2: keep the tuples of this table that match no tuple
+     * of table2, requiring attributes1 to equal attributes2 (see semiJoin).
+     *
+     * #usage movieStar.antiJoin ("name", "starName", starsIn)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the anti-join operation
+     * @return  a table with the tuples of this table having no match in table2
+     */
+    public Table antiJoin (String attributes1, String attributes2, Table table2)
+    {
+        return semiJoin (attributes1, attributes2, table2, false);
+    } // antiJoin
+
+    /************************************************************************************
+     * Join this table and table2 by sorting both on the join attributes and merging
+     * them (see join).  An input already in order is not sorted; one whose join
+     * attributes are its key is read in key order from an ordered index (TREE_MAP or
+     * BPTREE_MAP) when the index holds all its tuples; others are sorted externally
+     * (see orderBy).
+     *
+     * #usage movie.sortMergeJoin ("studioName", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table sortMergeJoin (String attributes1, String attributes2, Table table2)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".sortMergeJoin (" + attributes1 + ", " + attributes2
+                                                                     + ", " + table2.name + ")");
+        List <Comparable []> tups = view (), tups2 = table2.view ();
+        Monitor.Probe probe = Monitor.start (name, "join", tups.size () + tups2.size ());
+
+        int [] cols1 = match (attributes1.split (" "));
+        int [] cols2 = table2.match (attributes2.split (" "));
+        List <Comparable []> rows = ! sameDomains (cols1, table2, cols2) ? new ArrayList <> ()     // nothing is equal
+                                  : ExternalSort.mergeJoin (sorted (tups, cols1), cols1, table2.sorted (tups2, cols2), cols2);
+
+        Class [] newDomain = ArrayUtil.concat (domain, table2.domain);
+        Table t = new Table (tempName (name), ArrayUtil.concat (attribute, table2.attribute),
+                             newDomain, key, makeStore (newDomain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // sortMergeJoin
+
+    /************************************************************************************
+     * Sort the tuples on the given attributes, using external merge sort when there are
+     * more than fit in the sort memory budget (see setSortMemory).  The result keeps
+     * the attributes, key and storage of this table.  An ascending result records the
+     * order, so a join on its leading sort attributes merges it without checking.
+     *
+     * #usage movie.orderBy ("year title", false)
+     *
+     * @param attributes  the attributes to sort on, most significant first
+     * @param ascending   whether to sort in ascending (rather than descending) order
+     * @return  a table with the tuples in order
+     */
+    public Table orderBy (String attributes, boolean ascending)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".orderBy (" + attributes + ", "
+                                                      + (ascending ? "asc" : "desc") + ")");
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "orderBy", tups.size ());
+
+        int [] cols = match (attributes.split (" "));
+        Iterator <Comparable []> it = ExternalSort.sort (tups, ExternalSort.comparator (cols, ascending), sortMemory);
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        List <Comparable []> batch = new ArrayList <> ();
+        while (it.hasNext ()) {
+            batch.add (it.next ());
+            if (batch.size () == sortMemory || ! it.hasNext ()) {
+                t.fill (batch);
+                batch.clear ();
+            } // if
+        } // while
+        if (ascending) {
+            t.sortedOn   = cols;
+            t.sortedRows = t.tuples.size ();
+        } // if
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // orderBy
+
+    /************************************************************************************
+     * Sort the tuples on the given attributes in ascending order.
+     *
+     * #usage movie.orderBy ("year")
+     *
+     * @param attributes  the attributes to sort on, most significant first
+     * @return  a table with the tuples in order
+     */
+    public Table orderBy (String attributes)
+    {
+        return orderBy (attributes, true);
+    } // orderBy
+
+    /************************************************************************************
+     * Set the memory budget for sorting, i.e., the maximum number of tuples sorted in
+     * memory.  Larger inputs are sorted in runs spilled under "store" and merged.
+     *
+     * @param maxTuples  the maximum number of tuples to sort in memory
+     */
+    public static void setSortMemory (int maxTuples)
+    {
+        if (maxTuples < 1) throw new IllegalArgumentException ("setSortMemory: budget must be positive");
+        sortMemory = maxTuples;
+    } // setSortMemory
+
+    /************************************************************************************
+     * Group the tuples on the given attributes and compute the aggregates of each group,
+     * using hash aggregation: chunks of tuples are pre-aggregated in parallel (see
+     * setParallelism) and merged, spilling to disk when there are more groups than fit
+     * in the group memory budget (see setGroupMemory).  The result has the grouping
+     * attributes (its key) followed by one attribute per aggregate, and its groups are
+     * in no particular order.  An empty table has no groups, even with no grouping
+     * attributes.
+     *
+     * #usage movie.groupBy ("studioName", Aggregate.count (), Aggregate.avg ("length"))
+     * #usage movie.groupBy ("", Aggregate.max ("year"))
+     *
+     * @param attributes  the grouping attributes (none: the whole table is one group)
+     * @param aggregates  the aggregates to compute
+     * @return  a table with one tuple per group
+     * @throws IllegalArgumentException  if an attribute is not in the table, sum or avg
+     *                                   is applied to a non-numeric attribute, or two
+     *                                   result attributes have the same name
+     */
+    public Table groupBy (String attributes, Aggregate... aggregates)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".groupBy (" + attributes + ", "
+                                                      + Arrays.toString (aggregates) + ")");
+        String [] gattrs = attributes.trim ().isEmpty () ? new String [0] : attributes.trim ().split (" +");
+        int []    gcols  = new int [gattrs.length];
+        for (int j = 0; j < gattrs.length; j++) gcols [j] = Condition.column (this, gattrs [j]);
+
+        int []     acols = new int [aggregates.length];
+        boolean [] real  = new boolean [aggregates.length];
+        String []  newAttr   = Arrays.copyOf (gattrs, gattrs.length + aggregates.length);
+        Class []   newDomain = Arrays.copyOf (extractDom (gcols, domain), newAttr.length);
+        for (int i = 0; i < aggregates.length; i++) {
+            Aggregate a = aggregates [i];
+            acols [i] = (a.attr == null) ? -1 : Condition.column (this, a.attr);
+            Class dom = (a.attr == null) ? null : domain [acols [i]];
+            newAttr [gattrs.length + i]   = a.name;
+            newDomain [gattrs.length + i] = a.resultDomain (dom);
+            real [i] = newDomain [gattrs.length + i] == Double.class;
+        } // for
+        if (new HashSet <> (Arrays.asList (newAttr)).size () < newAttr.length) {
+            throw new IllegalArgumentException ("groupBy: duplicate result attributes " + Arrays.toString (newAttr));
+        } // if
+
+        List <Comparable []> tups = view ();
+        Monitor.Probe probe = Monitor.start (name, "groupBy", tups.size ());
+        List <Comparable []> rows = new HashAggregate (gcols, aggregates, acols, real, groupMemory).aggregate (tups, pool);
+
+        Table t = new Table (tempName (name), newAttr, newDomain, (gattrs.length > 0) ? gattrs : newAttr,
+                             makeStore (newDomain), mType);
+        t.fill (rows);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // groupBy
+
+    /************************************************************************************
+     * Set the memory budget for aggregation, i.e., the maximum number of groups held in
+     * memory.  The partial aggregates of further groups are spilled under "store".
+     *
+     * @param maxGroups  the maximum number of groups to keep in memory
+     */
+    public static void setGroupMemory (int maxGroups)
+    {
+        if (maxGroups < 1) throw new IllegalArgumentException ("setGroupMemory: budget must be positive");
+        groupMemory = maxGroups;
+    } // setGroupMemory
+
+    /************************************************************************************
+     * Join this table and table2 using the given algorithm (see join).
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @param method       the join algorithm (null: nested loop if there are few tuple
+     *                     pairs, merge if both inputs are known to be in order, else hash);
+     *                     a merge join sorts an input not known to be in order
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    Table join (String attributes1, String attributes2, Table table2, LogicalPlan.JoinMethod method)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
+                                                                     + table2.name + ")");
+        List <Comparable []> tups = view (), tups2 = table2.view ();
+        Monitor.Probe probe = Monitor.start (name, "join", tups.size () + tups2.size ());
+
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+
+        int [] newattr1 = this.match(t_attrs);
+        int [] newattr2 = table2.match(u_attrs);
+
+        if (method == null) {
+            method = ((long) tups.size () * tups2.size () <= NESTED_LOOP_MAX) ? LogicalPlan.JoinMethod.NESTED_LOOP
+                   : (inOrder (tups, newattr1) && table2.inOrder (tups2, newattr2)) ? LogicalPlan.JoinMethod.MERGE
+                   : LogicalPlan.JoinMethod.HASH;
+        } // if
+
+        List <Comparable []> rows;
+        if (method == LogicalPlan.JoinMethod.NESTED_LOOP) {
+            rows = nestedLoopJoin (tups, newattr1, tups2, newattr2);
+        } else if (method == LogicalPlan.JoinMethod.MERGE) {
+            rows = ! sameDomains (newattr1, table2, newattr2) ? new ArrayList <> ()       // nothing is equal
+                 : ExternalSort.mergeJoin (sorted (tups, newattr1), newattr1, table2.sorted (tups2, newattr2), newattr2);
+        } else {
+            rows = joinCodes (tups, newattr1, table2, tups2, newattr2);
+            if (rows == null) rows = HashJoin.join (tups, newattr1, tups2, newattr2, joinMemory, pool,
+                                                    (tups.size () <= tups2.size ()) ? bloomFilter (newattr1, tups)
+                                                                                    : table2.bloomFilter (newattr2, tups2));
+        } // if
+        
+        Class [] newDomain = ArrayUtil.concat (domain, table2.domain);
+        Table t = new Table (tempName (name), ArrayUtil.concat (attribute, table2.attribute),
+                             newDomain, key, makeStore (newDomain), mType);
+        t.fill (rows);
+  
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // join
+
+    /************************************************************************************
+     * Semi-join (match) or anti-join (! match) this table and table2 (see semiJoin).
+     * When table2 is the smaller input, its key values are hashed and this table's
+     * tuples probe them; otherwise this table's key values are hashed, table2's tuples
+     * probe them to find the key values that match, and this table's tuples are checked
+     * against those.
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table
+     * @param match        whether to keep the tuples with a match (or those without)
+     * @return  a table with the tuples of this table kept
+     */
+    private Table semiJoin (String attributes1, String attributes2, Table table2, boolean match)
+    {
+        String op = match ? "semiJoin" : "antiJoin";
+        if (Monitor.tracing ()) Monitor.trace ("RA> " + name + "." + op + " (" + attributes1 + ", " + attributes2 + ", "
+                                                                     + table2.name + ")");
+        List <Comparable []> tups = view (), tups2 = table2.view ();
+        Monitor.Probe probe = Monitor.start (name, op, tups.size () + tups2.size ());
+
+        int [] cols1 = match (attributes1.split (" "));
+        int [] cols2 = table2.match (attributes2.split (" "));
+
+        Set <Object> keys;
+        BloomFilter  bloom;
+        if (tups2.size () <= tups.size ()) {
+            keys  = keySet (tups2, cols2);
+            bloom = table2.bloomFilter (cols2, tups2);
+        } else {
+            Set <Object> mine   = keySet (tups, cols1);
+            BloomFilter  filter = bloomFilter (cols1, tups);
+            keys  = keySet (ParallelExec.flatMap (pool, tups2, (tup, res) -> {
+                if ((filter == null || filter.mightContain (tup, cols2)) && mine.contains (HashJoin.keyOf (tup, cols2))) res.add (tup);
+            }), cols2);
+            bloom = null;
+        } // if
+
+        Table t = where (tups, tup -> ((bloom == null || bloom.mightContain (tup, cols1))
+                                       && keys.contains (HashJoin.keyOf (tup, cols1))) == match);
+        Monitor.end (probe, t.tuples.size ());
+        return t;
+    } // semiJoin
+
+    /************************************************************************************
+     * Set the memory budget for hash joins, i.e., the maximum number of build side tuples
+     * held in memory.  Larger build sides are partitioned into spill files under "store".
+     *
+     * @param maxTuples  the maximum number of build tuples to keep in memory
+     */
+    public static void setJoinMemory (int maxTuples)
+    {
+        if (maxTuples < 1) throw new IllegalArgumentException ("setJoinMemory: budget must be positive");
+        joinMemory = maxTuples;
+    } // setJoinMemory
+
+    /************************************************************************************
+     * Start a pipelined query over this table's tuples.  Operators applied to the query
+     * are evaluated lazily, tuple at a time, when its result is pulled (see Query), over
+     * the snapshot of the table at that time.
+     *
+     * #usage movie.query ().select (t -> t [movie.col ("year")].equals (1977)).project ("title").toTable ()
+     *
+     * @return  a query producing this table's tuples
+     */
+    public Query query ()
+    {
+        return new Query (name, attribute, domain, key, mType, () -> view ().stream (), this::size);
+    } // query
+
+    /************************************************************************************
+     * Return a read-only snapshot of this table: the tuples inserted so far, unaffected
+     * by later inserts.  Every operator already reads a snapshot taken when it starts;
+     * use this to run several operators against the same version of the table.
+     *
+     * #usage Table asOf = movie.snapshot ()
+     *
+     * @return  a snapshot sharing this table's storage and index
+     */
+    public Table snapshot ()
+    {
+        return new Table (this, (limit < 0) ? tuples.size () : limit);
+    } // snapshot
+
+    /************************************************************************************
+     * Discard this table's tuples, releasing the memory of OFF_HEAP storage now rather
+     * than when the table is garbage collected.  Meant for temporary (result) tables:
+     * the table, and any snapshot of it, must not be used afterwards.  The memory is
+     * freed once the reads in progress (e.g., by an operator running in another thread)
+     * have finished; that operator then fails with IllegalStateException on its next
+     * read (see OffHeapStore.close).  The table's latch is not held while waiting, and
+     * inserts that start later fail the same way.  Closing a snapshot, or a table with
+     * other storage, does nothing.
+     *
+     * #usage try (Table t = movie.select (Condition.eq ("year", 1977))) { t.print (); }
+     */
+    public void close ()
+    {
+        if (limit >= 0 || ! (tuples instanceof OffHeapStore)) return;
+        ((OffHeapStore) tuples).close ();
+    } // close
+
+    /************************************************************************************
+     * Copy the tuples of a select or project result, which is a view over its input's
+     * tuples (see TupleView), into its own storage and build its index.  This happens
+     * anyway when the result is inserted into; materializing also releases the input's
+     * tuples.  Other tables are unaffected.
+     *
+     * #usage Table recent = movie.select (t -> (Integer) t [1] > 1990).materialize ()
+     *
+     * @return  this table
+     */
+    public Table materialize ()
+    {
+        if (tuples instanceof TupleView) ((TupleView) tuples).materialize ();
+        buildIndex ();
+        return this;
+    } // materialize
+
+    /************************************************************************************
+     * Set the level of parallelism used by select (Predicate), project and the probe
+     * phase of join.  Tuples are split into chunks processed on a ForkJoinPool, and the
+     * chunk results are merged in order, so results are the same as sequential ones.
+     * Predicates passed to select must then be safe to call from several threads.
+     *
+     * @param parallelism  the number of worker threads (1 => sequential execution)
+     */
+    public static synchronized void setParallelism (int parallelism)
+    {
+        if (parallelism < 1) throw new IllegalArgumentException ("setParallelism: must be at least 1");
+        ForkJoinPool old = pool;
+        pool = (parallelism == 1) ? null : new ForkJoinPool (parallelism);
+        if (old != null) old.shutdown ();
+    } // setParallelism
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return  a column position
+     */
+    public int col (String attr)
+    {
+        for (int i = 0; i < attribute.length; i++) {
+           if (attr.equals (attribute [i])) return i;
+        } // for
+
+        return -1;  // not found
+    } // col
+
+    /************************************************************************************
+     * Create a secondary index on the given (non-key) attributes, which need not be
+     * unique.  The index covers the tuples already in the table and is maintained by
+     * insert; select (Condition) uses it.  Secondary indexes are not saved with the
+     * table, so they are created again after load.
+     *
+     * #usage movie.createIndex ("studioName")
+     *
+     * @param attributes  the attributes to index
+     * @return  whether the index was created (false if it exists or an attribute is unknown)
+     */
+    public boolean createIndex (String attributes)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("DDL> create index on " + name + " (" + attributes + ")");
+        String [] attrs = attributes.split (" ");
+        int []    cols  = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) {
+            cols [j] = col (attrs [j]);
+            if (cols [j] < 0) {
+                out.println ("createIndex ERROR: " + attrs [j] + " is not an attribute of " + name);
+                return false;
+            } // if
+        } // for
+        String ixName = String.join (" ", attrs);
+
+        latch.writeLock ().lock ();
+        try {
+            if (secondary.containsKey (ixName)) return false;
+            SecondaryIndex s = new SecondaryIndex (attrs, cols);
+            int n = tuples.size ();
+            for (int i = 0; i < n; i++) s.add (tuples.get (i), i);
+            secondary.put (ixName, s);
+        } finally {
+            latch.writeLock ().unlock ();
+        } // try
+        return true;
+    } // createIndex
+
+    /************************************************************************************
+     * Dictionary encode the given String attributes of a table with COLUMN storage, so
+     * that each tuple stores a small int code and equality selects and joins on them
+     * compare codes (see ColumnStore).  Columns with few distinct values are encoded
+     * automatically; encoded columns are saved with their dictionaries.
+     *
+     * #usage movie.encodeDictionary ("studioName")
+     *
+     * @param attributes  the attributes to encode
+     * @return  whether all of them are now encoded (false if the table does not have
+     *          COLUMN storage, an attribute is not a String attribute of it, or a column
+     *          has too many distinct values)
+     */
+    public boolean encodeDictionary (String attributes)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("DDL> encode dictionary on " + name + " (" + attributes + ")");
+        if (! (tuples instanceof ColumnStore) || ! writable ()) return false;
+        boolean all = true;
+        latch.writeLock ().lock ();
+        try {
+            for (String a : attributes.split (" ")) {
+                int j = col (a);
+                if (j < 0) {
+                    out.println ("encodeDictionary ERROR: " + a + " is not an attribute of " + name);
+                    all = false;
+                } else {
+                    all &= ((ColumnStore) tuples).encode (j);
+                } // if
+            } // for
+        } finally {
+            latch.writeLock ().unlock ();
+        } // try
+        return all;
+    } // encodeDictionary
+
+    /************************************************************************************
+     * Insert a tuple to the table.  The tuple is appended as a new version, so readers
+     * already running do not see it; only index probes wait while it is indexed.
+     *
+     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     *
+     * @param tup  the array of attribute values forming the tuple
+     * @return  whether insertion was successful
+     */
+    public boolean insert (Comparable [] tup)
+    {
+        if (Monitor.tracing ()) Monitor.trace ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+        if (! writable ()) return false;
+        Monitor.Probe probe = Monitor.start (name, "insert", 1);
+
+        if (typeCheck (tup)) {
+            WriteAheadLog log = wal;
+            long          lsn = 0;
+            latch.writeLock ().lock ();
+            try {
+                if (log != null) lsn = log.append (tup);
+                buildIndex ();
+                int id = tuples.size ();
+                tuples.add (tup);
+                if (index != null) index.put (keyOf (tup), tup);
+                for (SecondaryIndex s : secondary.values ()) s.add (tup, id);
+                version++;
+            } finally {
+                latch.writeLock ().unlock ();
+            } // try
+            boolean durable = commit (log, lsn);
+            Monitor.end (probe, 1);
+            return durable;
+        } else {
+            Monitor.end (probe, 0);
+            return false;
+        } // if
+    } // insert
+
+    /************************************************************************************
+     * Insert a batch of tuples into the table (bulk load).  The key column positions and
+     * domains are resolved once for the whole batch and the tuples are validated before
+     * any is added (invalid ones are reported and skipped).  An empty ordered index is
+     * built bottom-up from the sorted keys instead of by one tree insertion per tuple.
+     * The batch becomes visible to readers all at once, and is logged with one commit.
+     *
+     * #usage movie.insertAll (Arrays.asList (film0, film1, film2))
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted (0 if they could not be logged, as insert
+     *          returns false)
+     */
+    public int insertAll (Iterable <Comparable []> tups)
+    {
+        return insertAll (tups, true);
+    } // insertAll
+
+    /************************************************************************************
+     * Fill a table with tuples, as insertAll does but without tracing or measuring the
+     * insert.  Operators use it to materialize their results, whose cost is part of the
+     * operator's own probe.
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted
+     */
+    int fill (Iterable <Comparable []> tups)
+    {
+        return insertAll (tups, false);
+    } // fill
+
+    /************************************************************************************
+     * Insert a batch of tuples into the table (see insertAll).
+     *
+     * @param tups     the tuples to insert
+     * @param measure  whether to trace the insert and measure it with a Monitor probe
+     * @return  the number of tuples inserted
+     */
+    private int insertAll (Iterable <Comparable []> tups, boolean measure)
+    {
+        if (! writable ()) return 0;
+        List <Comparable []> batch = (tups instanceof Collection)
+                                   ? new ArrayList <> (((Collection <?>) tups).size ()) : new ArrayList <> ();
+        Class [] dom = domain;
+        int      offered = 0;
+        for (Comparable [] tup : tups) {
+            if (conforms (tup, dom) || typeCheck (tup)) batch.add (tup);
+            offered++;
+        } // for
+        Monitor.Probe probe = null;
+        if (measure) {
+            if (Monitor.tracing ()) Monitor.trace ("DML> insert into " + name + " values ( " + batch.size () + " tuples )");
+            probe = Monitor.start (name, "insert", offered);
+        } // if
+
+        WriteAheadLog log = wal;
+        long          lsn = 0;
+        latch.writeLock ().lock ();
+        try {
+            if (log != null) for (Comparable [] tup : batch) lsn = log.append (tup);
+            buildIndex ();
+            int id = tuples.size ();
+            tuples.addAll (batch);
+            if (index != null) indexAll (batch);
+            for (SecondaryIndex s : secondary.values ()) {
+                for (int i = 0; i < batch.size (); i++) s.add (batch.get (i), id + i);
+            } // for
+            if (! batch.isEmpty ()) version++;
+        } finally {
+            latch.writeLock ().unlock ();
+        } // try
+        boolean durable = commit (log, lsn);
+        Monitor.end (probe, batch.size ());
+        return durable ? batch.size () : 0;
+    } // insertAll
+
+    /************************************************************************************
+     * Import the rows of a delimited text file into the table (bulk load, see BulkImport).
+     * Files ending in ".tsv" are tab separated, others comma separated, and the first
+     * line names the fields.
+     *
+     * #usage ImportReport r = movie.importFile ("movies.csv")
+     *
+     * @param file  the path of the file
+     * @return  the report of the rows inserted and rejected (null if the file cannot be read)
+     */
+    public ImportReport importFile (String file)
+    {
+        return importFile (file, file.endsWith (".tsv") ? '\t' : ',', true);
+    } // importFile
+
+    /************************************************************************************
+     * Import the rows of a delimited text file into the table (bulk load).  Chunks of the
+     * file are parsed in parallel (on the pool set by setParallelism, or the common pool)
+     * and inserted in file order with insertAll.  Rows that do not parse are skipped and
+     * listed in the report.  With a header, the fields are matched to the attributes by
+     * name; otherwise they are the attributes in order.
+     *
+     * #usage ImportReport r = starsIn.importFile ("starsIn.txt", '|', false)
+     *
+     * @param file       the path of the file
+     * @param delimiter  the field delimiter (fields may be quoted unless it is a tab)
+     * @param header     whether the first line names the fields
+     * @return  the report of the rows inserted and rejected (null if the file cannot be read)
+     */
+    public ImportReport importFile (String file, char delimiter, boolean header)
+    {
+        if (! writable ()) return null;
+        ForkJoinPool p = pool;
+        try {
+            return BulkImport.run (this, attribute, domain, file, delimiter, header,
+                                   (p != null) ? p : ForkJoinPool.commonPool ());
+        } catch (IOException ex) {
+            out.println ("importFile: IO Exception");
+            ex.printStackTrace ();
+            return null;
+        } // try
+    } // importFile
+
+    /************************************************************************************
+     * Return the modification counter of the table, which each insert adding tuples
+     * increases (used by ResultCache to tell whether a cached result is still valid).
+     *
+     * @return  the version of the table's contents
+     */
+    public long getVersion ()
+    {
+        return version;
+    } // getVersion
+
+    /************************************************************************************
+     * Return the number of tuples (visible in a snapshot).
+     *
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return (limit < 0) ? tuples.size () : limit;
+    } // size
+
+    /************************************************************************************
+     * Return the statistics of the table (see TableStats), computing them if the table
+     * has changed since they were last computed.
+     *
+     * #usage movie.stats ().column ("year").distinct ()
+     *
+     * @return  the table's statistics
+     */
+    public TableStats stats ()
+    {
+        TableStats s = stats;
+        List <Comparable []> tups = view ();
+        if (s == null || s.rows () != tups.size ()) {
+            s = new TableStats (attribute, tups);
+            stats = s;
+        } // if
+        return s;
+    } // stats
+
+    /************************************************************************************
+     * Return the attribute names (not to be modified).
+     */
+    String [] attributes ()
+    {
+        return attribute;
+    } // attributes
+
+    /************************************************************************************
+     * Get the name of the table.
+     *
+     * @return  the table's name
+     */
+    public String getName ()
+    {
+        return name;
+    } // getName
+
+    /************************************************************************************
+     * Print this table.
+     */
+    public void print ()
+    {
+        out.println ("\n Table " + name);
+        out.print ("|-");
+        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
+        out.println ("-|");
+        out.print ("| ");
+        for (String a : attribute) out.printf ("%15s", a);
+        out.println (" |");
+        out.print ("|-");
+        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
+        out.println ("-|");
+        for (Comparable [] tup : view ()) {
+            out.print ("| ");
+            for (Comparable attr : tup) out.printf ("%15s", attr);
+            out.println (" |");
+        } // for
+        out.print ("|-");
+        for (int i = 0; i < attribute.length; i++) out.print ("---------------");
+        out.println ("-|");
+    } // print
+
+    /************************************************************************************
+     * Print this table's index (Map).
+     */
+    public void printIndex ()
+    {
+        out.println ("\n Index for " + name);
+        out.println ("-------------------");
+        if (index == null) out.println ("(no index: " + mType + ")");
+        else {
+            buildIndex ();
+            latch.readLock ().lock ();
+            try {
+                for (Map.Entry <KeyType, Comparable []> e : index.entrySet ()) {
+                    out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
+                } // for
+            } finally {
+                latch.readLock ().unlock ();
+            } // try
+        } // if
+        out.println ("-------------------");
+    } // printIndex
+
+    /************************************************************************************
+     * Load the table with the given name into memory.  Paged files (see PageFile) are
+     * memory mapped; files in the original Java serialization format are deserialized.
+     * The Bloom filters saved with the table (store/<name>.blm) are reused, unless that
+     * file is damaged; the table loads (and its log replays) without them.
+     * If the table has a write-ahead log, the inserts logged since the last checkpoint
+     * are replayed and logging resumes.
+     *
+     * @param name  the name of the table to load
+     */
+    public static Table load (String name)
+    {
+        String file = DIR + name + EXT;
+        Table tab = null;
+        try {
+            if (! PageFile.isLegacy (file)) {
+                tab = PageFile.read (file);
+            } else {
+                ObjectInputStream ois = new ObjectInputStream (new FileInputStream (file));
+                tab = (Table) ois.readObject ();
+                ois.close ();
+            } // if
+            try {
+                tab.blooms.putAll (BloomFilter.load (DIR + name + BloomFilter.EXT, tab.tuples.size ()));
+            } catch (IOException | RuntimeException ex) {               // a cache: rebuilt on demand
+                if (Monitor.tracing ()) Monitor.trace ("DDL> discard the Bloom filters of " + name + ": " + ex);
+            } // try
+            tab.recover ();
+        } catch (IOException ex) {
+            out.println ("load: IO Exception");
+            ex.printStackTrace ();
         } catch (ClassNotFoundException ex) {
             out.println ("load: Class Not Found Exception");
             ex.printStackTrace ();
@@ -497,24 +1584,630 @@ public class Table implements Serializable
     } // load
 
     /************************************************************************************
-     * Save this table in a file.
+     * Save this table in a file, in the paged binary format (see PageFile), along with
+     * the Bloom filters built for its joins (see bloomFilter).
      */
     public void save ()
     {
         try {
-            ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
-            oos.writeObject (this);
-            oos.close ();
+            writeFile (view ());
         } catch (IOException ex) {
             out.println ("save: IO Exception");
             ex.printStackTrace ();
         } // try
     } // save
 
+    /************************************************************************************
+     * Start logging the inserts into this table to a write-ahead log (store/<name>.wal).
+     * The table is saved first; from then on each insert is appended to the log, which is
+     * written and synced according to the policy before insert returns, instead of the
+     * whole table being rewritten.  When the log grows past the checkpoint size the
+     * table file is rewritten and the log restarted (see checkpoint).
+     *
+     * #usage movie.enableLog (Table.SyncPolicy.ALWAYS)
+     *
+     * @param policy  when logged inserts are forced to disk
+     */
+    public void enableLog (SyncPolicy policy)
+    {
+        if (! writable ()) return;
+        latch.writeLock ().lock ();
+        try {
+            if (wal != null) wal.close ();
+            List <Comparable []> tups = view ();
+            writeFile (tups);
+            wal = WriteAheadLog.create (DIR + name + WriteAheadLog.EXT, domain, policy, tups.size ());
+        } catch (IOException ex) {
+            out.println ("enableLog: IO Exception");
+            ex.printStackTrace ();
+        } finally {
+            latch.writeLock ().unlock ();
+        } // try
+    } // enableLog
+
+    /************************************************************************************
+     * Fold the write-ahead log into the table file: save the tuples inserted so far,
+     * then drop their records from the log.  Inserts continue while the file is written.
+     * Without a log this is the same as save.
+     */
+    public synchronized void checkpoint ()
+    {
+        WriteAheadLog log = wal;
+        if (log == null) {
+            save ();
+            return;
+        } // if
+        try {
+            List <Comparable []> tups = view ();             // every tuple in it is in the log
+            writeFile (tups);
+            log.truncate (tups.size ());
+            if (Monitor.tracing ()) Monitor.trace ("WAL> checkpoint " + name + " at " + tups.size () + " tuples");
+        } catch (IOException ex) {
+            out.println ("checkpoint: IO Exception");
+            ex.printStackTrace ();
+        } // try
+    } // checkpoint
+
+    /************************************************************************************
+     * Stop logging inserts: sync and close the write-ahead log.  The log file is kept,
+     * so the next load still replays it.
+     */
+    public void closeLog ()
+    {
+        latch.writeLock ().lock ();
+        try {
+            if (wal != null) wal.close ();
+        } catch (IOException ex) {
+            out.println ("closeLog: IO Exception");
+            ex.printStackTrace ();
+        } finally {
+            wal = null;
+            latch.writeLock ().unlock ();
+        } // try
+    } // closeLog
+
+    /************************************************************************************
+     * Set the size a write-ahead log may reach before an insert checkpoints its table.
+     *
+     * @param bytes  the log size triggering a checkpoint
+     */
+    public static void setCheckpointSize (long bytes)
+    {
+        if (bytes < 1) throw new IllegalArgumentException ("setCheckpointSize: size must be positive");
+        checkpointSize = bytes;
+    } // setCheckpointSize
+
+    /************************************************************************************
+     * Set whether save writes tables compressed column by column (the default) or in
+     * uncompressed row pages.  Tables with PAGED storage are always saved uncompressed.
+     *
+     * @param on  whether to compress saved tables
+     */
+    public static void setCompression (boolean on)
+    {
+        compress = on;
+    } // setCompression
+
     //----------------------------------------------------------------------------------
     // Private Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Join the tuples of this table and table2 by comparing every pair of tuples.  Only
+     * used for tiny inputs, where building a hash table costs more than it saves.
+     *
+     * @param tups      the tuples of this table
+     * @param newattr1  the column positions of the join attributes in this table
+     * @param tups2     the tuples of table2
+     * @param newattr2  the column positions of the join attributes in table2
+     * @return  the list of joined tuples
+     */
+    private static List <Comparable []> nestedLoopJoin (List <Comparable []> tups, int [] newattr1,
+                                                        List <Comparable []> tups2, int [] newattr2)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        for (Comparable [] tup1 : tups) {
+            for (Comparable [] tup2 : tups2) {
+                boolean match = true;
+                for (int i = 0; i < newattr1.length; i++) {
+                    if (! tup1 [newattr1 [i]].equals (tup2 [newattr2 [i]])) {
+                        match = false;
+                        break;
+                    } // if
+                } // for
+                if (match) rows.add (ArrayUtil.concat (tup1, tup2));
+            } // for
+        } // for
+        return rows;
+    } // nestedLoopJoin
+
+    /************************************************************************************
+     * Commit logged inserts (up to lsn) and checkpoint the table when its log has grown
+     * past the checkpoint size.
+     *
+     * @param log  the log the inserts were appended to (null if not logged)
+     * @param lsn  the log sequence number of the last insert
+     * @return  whether the inserts are durable (according to the log's sync policy)
+     */
+    private boolean commit (WriteAheadLog log, long lsn)
+    {
+        if (log == null || lsn == 0) return true;
+        try {
+            log.commit (lsn);
+        } catch (IOException ex) {
+            out.println ("insert: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
+        if (log.size () > checkpointSize && log.claimCheckpoint ()) {
+            try {
+                checkpoint ();
+            } finally {
+                log.releaseCheckpoint ();
+            } // try
+        } // if
+        return true;
+    } // commit
+
+    /************************************************************************************
+     * Replay the write-ahead log of a table just loaded, if it has one, and resume
+     * logging to it.
+     *
+     * @throws IOException  if the log cannot be read
+     */
+    private void recover ()
+            throws IOException
+    {
+        String file = DIR + name + WriteAheadLog.EXT;
+        if (! new File (file).exists ()) return;
+        List <Comparable []> redo = new ArrayList <> ();
+        WriteAheadLog log = WriteAheadLog.open (file, domain, tuples.size (), redo);
+        fill (redo);
+        wal = log;
+        if (Monitor.tracing ()) Monitor.trace ("WAL> replayed " + redo.size () + " inserts into " + name);
+    } // recover
+
+    /************************************************************************************
+     * Rebuild a deserialized table (e.g., one read from a file in the original format)
+     * as a live table, so that its tuples are kept in append-only storage and it has a
+     * latch.
+     *
+     * @return  the rebuilt table
+     */
+    private Object readResolve ()
+    {
+        Table t = new Table (name, attribute, domain, key, makeStore (domain), mType);
+        t.fill (tuples);
+        return t;
+    } // readResolve
+
+    /************************************************************************************
+     * Write the given tuples to this table's file.  A table whose PagedStore was opened
+     * from that file is saved in place: its new pages are written back and the header
+     * rewritten, instead of the file being copied.
+     *
+     * @param tups  the tuples to write (a prefix of the tuples)
+     * @throws IOException  if the file cannot be written
+     */
+    private void writeFile (List <Comparable []> tups)
+            throws IOException
+    {
+        String file = DIR + name + EXT;
+        if (tuples instanceof PagedStore && ((PagedStore) tuples).backs (file)) {
+            ((PagedStore) tuples).sync (tups.size ());
+        } else {
+            PageFile.write (file, name, attribute, domain, key, mType, sType, tups,
+                            (tuples instanceof ColumnStore) ? ((ColumnStore) tuples).dictionaries () : null, compress);
+        } // if
+        BloomFilter.save (DIR + name + BloomFilter.EXT, blooms, tups.size ());
+    } // writeFile
+
+    /************************************************************************************
+     * Return the tuples visible to an operator starting now: the snapshot's tuples, or
+     * for the live table those published so far.
+     *
+     * @return  a read-only view of the visible tuples
+     */
+    private List <Comparable []> view ()
+    {
+        return TupleLog.prefix (tuples, (limit < 0) ? tuples.size () : limit);
+    } // view
+
+    /************************************************************************************
+     * Check that this is the live table rather than a read-only snapshot.
+     *
+     * @return  whether tuples may be inserted
+     */
+    private boolean writable ()
+    {
+        if (limit < 0) return true;
+        out.println ("insert ERROR: " + name + " is a read-only snapshot");
+        return false;
+    } // writable
+
+    /************************************************************************************
+     * Probe the index and return the hits visible in the snapshot tups.  The probe runs
+     * under the shared latch, where the index covers exactly the first m tuples.  Hits
+     * among the tuples published after the snapshot (positions n to m) are replaced by
+     * the latest version of the same key within the snapshot, if there is one.
+     *
+     * @param tups   the snapshot being read
+     * @param probe  the index lookup, returning the matching tuples
+     * @return  the matching tuples visible in the snapshot
+     */
+    private List <Comparable []> indexed (List <Comparable []> tups,
+                                          Function <Map <KeyType, Comparable []>, Collection <Comparable []>> probe)
+    {
+        List <Comparable []> hits;
+        int m;
+        buildIndex ();
+        latch.readLock ().lock ();
+        try {
+            hits = new ArrayList <> (probe.apply (index));
+            m    = tuples.size ();
+        } finally {
+            latch.readLock ().unlock ();
+        } // try
+
+        int n = tups.size ();
+        if (m == n) return hits;
+
+        Set <List <Comparable>> newer = new HashSet <> ();
+        for (int i = n; i < m; i++) newer.add (SetOps.content (tuples.get (i)));
+        List <Comparable []> rows  = new ArrayList <> (hits.size ());
+        Set <KeyType>        stale = new HashSet <> ();
+        for (Comparable [] tup : hits) {
+            if (newer.contains (SetOps.content (tup))) stale.add (keyOf (tup));
+            else rows.add (tup);
+        } // for
+        if (stale.isEmpty ()) return rows;
+
+        for (int i = n - 1; i >= 0 && ! stale.isEmpty (); i--) {
+            Comparable [] tup = tups.get (i);
+            if (stale.remove (keyOf (tup))) rows.add (tup);
+        } // for
+        if (index instanceof SortedMap) rows.sort ((a, b) -> keyOf (a).compareTo (keyOf (b)));
+        return rows;
+    } // indexed
+
+    /************************************************************************************
+     * Generate a name for a temporary (result) table.
+     *
+     * @param base  the name of the table the result is derived from
+     * @return  a new table name
+     */
+    static String tempName (String base)
+    {
+        return base + count.getAndIncrement ();
+    } // tempName
+
+    /************************************************************************************
+     * Make an empty tuple store for a result table, using this table's storage type.
+     *
+     * @param dom  the domains of the result table
+     * @return  an empty list of tuples
+     */
+    private List <Comparable []> makeStore (Class [] dom)
+    {
+        return makeStore (sType, dom);
+    } // makeStore
+
+    /************************************************************************************
+     * Make an empty tuple store of the given storage type.
+     *
+     * @param sType  the storage type
+     * @param dom    the domains of the tuples
+     * @return  an empty list of tuples
+     */
+    private static List <Comparable []> makeStore (StorageType sType, Class [] dom)
+    {
+        if (sType == StorageType.COLUMN) return new ColumnStore (dom);
+        if (sType == StorageType.PAGED)  return PagedStore.create (dom);
+        if (sType == StorageType.OFF_HEAP) return new OffHeapStore (dom);
+        return new TupleLog ();
+    } // makeStore
+
+    /************************************************************************************
+     * Return the tuples of the snapshot in ascending order of the given columns: as they
+     * are if known (see inOrder) or found to be in order, from the index if the columns are the key and the index
+     * is ordered and holds every tuple, and otherwise sorted (see ExternalSort).
+     *
+     * @param tups  the snapshot's tuples
+     * @param cols  the column positions to sort on
+     * @return  an iterator over the tuples in order
+     */
+    private Iterator <Comparable []> sorted (List <Comparable []> tups, int [] cols)
+    {
+        Comparator <Comparable []> cmp = ExternalSort.comparator (cols, true);
+        if (inOrder (tups, cols) || ExternalSort.isSorted (tups, cmp)) return tups.iterator ();
+
+        if (index instanceof SortedMap && Arrays.equals (cols, keyCols ())) {
+            boolean [] whole = { false };
+            List <Comparable []> rows = indexed (tups, idx -> {
+                whole [0] = idx.size () == tuples.size ();
+                return whole [0] ? idx.values () : Collections.emptyList ();
+            });
+            if (whole [0]) return rows.iterator ();
+        } // if
+        return ExternalSort.sort (tups, cmp, sortMemory);
+    } // sorted
+
+    /************************************************************************************
+     * Return whether the tuples of the snapshot are known to be in ascending order of
+     * the given columns, i.e., the columns lead the order recorded by orderBy and the
+     * snapshot holds no tuple appended since.  No tuple is compared.
+     *
+     * @param tups  the snapshot's tuples
+     * @param cols  the column positions
+     * @return  whether the tuples are in order
+     */
+    boolean inOrder (List <Comparable []> tups, int [] cols)
+    {
+        int [] on = sortedOn;
+        if (on == null || cols.length > on.length || tups.size () > sortedRows) return false;
+        for (int j = 0; j < cols.length; j++) if (cols [j] != on [j]) return false;
+        return true;
+    } // inOrder
+
+    /************************************************************************************
+     * Return whether the tuples are known to be in ascending order of the given
+     * attributes (see inOrder), for the optimizer.
+     *
+     * @param attrs  the attributes
+     * @return  whether the tuples are in order
+     */
+    boolean inOrder (String [] attrs)
+    {
+        return inOrder (view (), match (attrs));
+    } // inOrder
+
+    /************************************************************************************
+     * Record that this projection of the snapshot of table src keeps the order of the
+     * snapshot on the leading sort columns that it keeps (see orderBy).
+     *
+     * @param src   the projected table
+     * @param n     the number of tuples in the snapshot
+     * @param cols  the columns of src kept, in the order of this table's columns
+     */
+    private void keepOrder (Table src, int n, int [] cols)
+    {
+        int [] on = src.sortedOn;
+        if (on == null || n > src.sortedRows) return;
+        int [] kept = new int [on.length];
+        int    m    = 0;
+        for ( ; m < on.length; m++) {
+            int j = 0;
+            while (j < cols.length && cols [j] != on [m]) j++;
+            if (j == cols.length) break;
+            kept [m] = j;
+        } // for
+        if (m == 0) return;
+        sortedOn   = Arrays.copyOf (kept, m);
+        sortedRows = tuples.size ();
+    } // keepOrder
+
+    /************************************************************************************
+     * Join on one dictionary encoded column of each table by comparing codes (see
+     * HashJoin.joinCodes).
+     *
+     * @return  the joined tuples, or null if the join columns are not both encoded
+     */
+    private List <Comparable []> joinCodes (List <Comparable []> tups, int [] cols1, Table table2,
+                                            List <Comparable []> tups2, int [] cols2)
+    {
+        if (cols1.length != 1 || ! (tuples instanceof ColumnStore) || ! (table2.tuples instanceof ColumnStore)) return null;
+        ColumnStore.DictColumn c1 = ((ColumnStore) tuples).encoded (cols1 [0]);
+        ColumnStore.DictColumn c2 = ((ColumnStore) table2.tuples).encoded (cols2 [0]);
+        return (c1 == null || c2 == null) ? null : HashJoin.joinCodes (tups, c1, tups2, c2);
+    } // joinCodes
+
+    /************************************************************************************
+     * Determine whether the join columns of this table and table2 have the same domains
+     * (so that their values can be compared).
+     */
+    private boolean sameDomains (int [] cols1, Table table2, int [] cols2)
+    {
+        for (int k = 0; k < cols1.length; k++) if (domain [cols1 [k]] != table2.domain [cols2 [k]]) return false;
+        return true;
+    } // sameDomains
+
+    /************************************************************************************
+     * Make the result of a select on a ROW table: a view over the tuples of the snapshot
+     * at the given positions (see TupleView), with its index built when first used.
+     *
+     * @param tups  the snapshot being read
+     * @param ids   the positions of the selected tuples, in order
+     * @return  the result table
+     */
+    private Table selection (List <Comparable []> tups, int [] ids)
+    {
+        return new Table (tempName (name), attribute, domain, key, TupleView.of (tuples, tups, ids, null), mType);
+    } // selection
+
+    /************************************************************************************
+     * Make the result of selecting the tuples of the snapshot satisfying the predicate:
+     * for a ROW table a view (see selection), otherwise a table of its own.
+     *
+     * @param tups       the snapshot being read
+     * @param predicate  the check condition for tuples
+     * @return  the result table
+     */
+    private Table where (List <Comparable []> tups, Predicate <Comparable []> predicate)
+    {
+        if (sType == StorageType.ROW) return selection (tups, ParallelExec.positions (pool, tups, predicate));
+
+        List <Comparable []> rows = ParallelExec.flatMap (pool, tups, (tup, res) -> {
+            if (predicate.test (tup)) res.add (tup);
+        });
+
+        //return a new table with the selected rows and updated index
+        //Worth noting that if the list of rows is empty, the new table will still be returned, but with no rows
+        Table t = new Table (tempName (name), attribute, domain, key, makeStore (domain), mType);
+        t.fill (rows);
+        return t;
+    } // where
+
+    /************************************************************************************
+     * Return a Bloom filter over the values of the given columns, covering the snapshot's
+     * tuples, or null if there are too few tuples for one to pay off.  The filter is kept
+     * (by the columns' attributes) and extended as the table grows; it is rebuilt larger
+     * once the table outgrows it.  A filter covering later tuples as well is still valid
+     * for a snapshot, as it only ever answers "maybe" for more keys.
+     *
+     * @param cols  the key columns
+     * @param tups  the snapshot being read
+     * @return  the Bloom filter or null
+     */
+    BloomFilter bloomFilter (int [] cols, List <Comparable []> tups)
+    {
+        if (tups.size () < BloomFilter.MIN_ROWS) return null;
+        StringJoiner names = new StringJoiner (" ");
+        for (int c : cols) names.add (attribute [c]);
+
+        BloomFilter f = blooms.get (names.toString ());
+        if (f == null || tups.size () > f.capacity ()) {
+            f = new BloomFilter (2 * tups.size ());
+            blooms.put (names.toString (), f);
+        } // if
+        return f.cover (tups, cols);
+    } // bloomFilter
+
+    /************************************************************************************
+     * Hash the key values of the given tuples into a set.
+     *
+     * @param rows  the tuples
+     * @param cols  the key columns
+     * @return  the set of key values (see HashJoin.keyOf)
+     */
+    private static Set <Object> keySet (List <Comparable []> rows, int [] cols)
+    {
+        Set <Object> keys = new HashSet <> (Math.max (16, 2 * rows.size ()));
+        for (Comparable [] tup : rows) keys.add (HashJoin.keyOf (tup, cols));
+        return keys;
+    } // keySet
+
+    /************************************************************************************
+     * Collect the tuples at the given positions.
+     *
+     * @param ids  the tuple numbers
+     * @return  the list of tuples
+     */
+    private List <Comparable []> rowsAt (int [] ids)
+    {
+        List <Comparable []> rows = new ArrayList <> (ids.length);
+        for (int i : ids) rows.add (tuples.get (i));
+        return rows;
+    } // rowsAt
+
+    /************************************************************************************
+     * Make a map (index) of the given type.
+     *
+     * @param mType  the map type
+     * @return  the newly created map or null for NO_MAP
+     */
+    private static Map <KeyType, Comparable []> makeMap (MapType mType)
+    {
+        if (mType == null) return new TreeMap <> ();             // tables from the original format
+        switch (mType) {
+        case TREE_MAP:    return new TreeMap <> ();
+        case LINHASH_MAP: return new LinHashMap <> ();
+        case EXTHASH_MAP: return new ExtHashMap <> ();
+        case BPTREE_MAP:  return new BpTreeMap <> ();
+        default:          return null;
+        } // switch
+    } // makeMap
+
+    /************************************************************************************
+     * Extract the primary key of the given tuple.
+     *
+     * @param tup  the tuple
+     * @return  the tuple's primary key value
+     */
+    private KeyType keyOf (Comparable [] tup)
+    {
+        int [] cols = keyCols ();
+        if (cols.length == 1) return KeyType.of (tup [cols [0]]);
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
+        return new KeyType (keyVal);
+    } // keyOf
+
+    /************************************************************************************
+     * Return the column positions of the primary key, resolving them on first use.
+     *
+     * @return  the key column positions
+     */
+    private int [] keyCols ()
+    {
+        if (keyCols == null) keyCols = match (key);
+        return keyCols;
+    } // keyCols
+
+    /************************************************************************************
+     * Build the index of a select or project result from its view (see TupleView), which
+     * is deferred until the index is first used or the table is appended to.  Must not be
+     * called while holding the shared latch.
+     */
+    private void buildIndex ()
+    {
+        if (! pending.get ()) return;
+        latch.writeLock ().lock ();
+        try {
+            if (pending.get ()) {
+                indexAll (tuples);
+                pending.set (false);
+            } // if
+        } finally {
+            latch.writeLock ().unlock ();
+        } // try
+    } // buildIndex
+
+    /************************************************************************************
+     * Add a batch of tuples to the index.  When the index is empty and ordered, the keys
+     * are sorted (stably, so the last of any duplicates wins as with put) and handed to
+     * putAll as a SortedRun, letting TreeMap and BpTreeMap build themselves bottom-up.
+     *
+     * @param batch  the tuples just added to the table
+     */
+    private void indexAll (List <Comparable []> batch)
+    {
+        if (! index.isEmpty () || ! (index instanceof SortedMap)) {
+            for (Comparable [] tup : batch) index.put (keyOf (tup), tup);
+            return;
+        } // if
+
+        List <Map.Entry <KeyType, Comparable []>> entries = new ArrayList <> (batch.size ());
+        for (Comparable [] tup : batch) entries.add (new AbstractMap.SimpleImmutableEntry <> (keyOf (tup), tup));
+        entries.sort (Map.Entry.comparingByKey ());
+
+        KeyType []       keys = new KeyType [entries.size ()];
+        Comparable [] [] vals = new Comparable [entries.size ()] [];
+        int n = 0;
+        for (Map.Entry <KeyType, Comparable []> e : entries) {
+            if (n > 0 && keys [n - 1].compareTo (e.getKey ()) == 0) n--;       // keep the last duplicate
+            keys [n] = e.getKey ();
+            vals [n] = e.getValue ();
+            n++;
+        } // for
+        index.putAll (new SortedRun <> (keys, vals, n));
+    } // indexAll
+
+    /************************************************************************************
+     * Quickly check that a tuple conforms to the given domains (no error reporting).
+     *
+     * @param t    the tuple
+     * @param dom  the domains resolved for the batch
+     * @return  whether the tuple has the right size and value types
+     */
+    private static boolean conforms (Comparable [] t, Class [] dom)
+    {
+        if (t == null || t.length != dom.length) return false;
+        for (int j = 0; j < t.length; j++) {
+            if (t [j] == null || t [j].getClass () != dom [j]) return false;
+        } // for
+        return true;
+    } // conforms
+
     /************************************************************************************
      * Determine whether the two tables (this and table2) are compatible, i.e., have
      * the same number of attributes each with the same corresponding domain.
@@ -0,0 +1,231 @@
+/****************************************************************************************
+ * @file  TableStats.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The TableStats class holds the statistics the Optimizer uses to estimate cardinalities:
+ * the number of tuples and, per attribute, the number of distinct values, the minimum
+ * and maximum, and an equi-depth histogram (bucket boundaries chosen so that each bucket
+ * holds about the same number of tuples).  Statistics are computed from a sample of at
+ * most SAMPLE tuples, one drawn at random from each of SAMPLE equal runs of tuples; for
+ * larger tables the distinct count is estimated from the sample with the GEE estimator
+ * (Charikar et al.), sqrt (N/n) * f1 + (distinct values seen more than once), where f1
+ * is the number of values seen once.
+ *
+ * #usage TableStats s = movie.stats ();  s.rows ();  s.column ("year").distinct ()
+ */
+public class TableStats
+{
+    /** The maximum number of tuples sampled
+     */
+    static final int SAMPLE = 1 << 16;
+
+    /** The number of histogram buckets
+     */
+    static final int BUCKETS = 32;
+
+    /** The number of tuples
+     */
+    private final long rows;
+
+    /** The statistics of each attribute, by name
+     */
+    private final Map <String, Column> columns = new LinkedHashMap <> ();
+
+    /*************************************************************************************
+     * The Column class holds the statistics of one attribute.
+     */
+    public static class Column
+    {
+        private final long         rows;
+        private final long         distinct;
+        private final Comparable   min, max;
+        private final Comparable [] bound;          // bucket i covers bound [i] .. bound [i+1]
+
+        Column (long _rows, long _distinct, Comparable [] _bound)
+        {
+            rows     = _rows;
+            distinct = _distinct;
+            bound    = _bound;
+            min      = (bound.length == 0) ? null : bound [0];
+            max      = (bound.length == 0) ? null : bound [bound.length - 1];
+        } // constructor
+
+        /** Return the number of tuples. */
+        public long rows ()            { return rows; }
+
+        /** Return the (estimated) number of distinct values. */
+        public long distinct ()        { return distinct; }
+
+        /** Return the smallest value (null for an empty table). */
+        public Comparable min ()       { return min; }
+
+        /** Return the largest value (null for an empty table). */
+        public Comparable max ()       { return max; }
+
+        /********************************************************************************
+         * Estimate the fraction of tuples whose value equals v.  Values spanning whole
+         * buckets (frequent values) are estimated from the histogram, others as an even
+         * share of the distinct values.
+         *
+         * @param v  the value
+         * @return  the estimated selectivity
+         */
+        @SuppressWarnings ("unchecked")
+        public double eq (Comparable v)
+        {
+            if (rows == 0) return 0.0;
+            if (v == null || v.getClass () != min.getClass ()) return 1.0 / Math.max (1, distinct);
+            if (min.compareTo (v) > 0 || max.compareTo (v) < 0) return 0.0;
+            int whole = 0;
+            for (int i = 0; i + 1 < bound.length; i++) {
+                if (bound [i].compareTo (v) == 0 && bound [i + 1].compareTo (v) == 0) whole++;
+            } // for
+            return Math.max ((double) whole / (bound.length - 1), 1.0 / Math.max (1, distinct));
+        } // eq
+
+        /********************************************************************************
+         * Estimate the fraction of tuples whose value is in the range low to high
+         * (inclusive, with null meaning unbounded).  The part of a bucket covered by the
+         * range is interpolated for numbers and taken as a half for other domains.
+         *
+         * @param low   the lower bound
+         * @param high  the upper bound
+         * @return  the estimated selectivity
+         */
+        @SuppressWarnings ("unchecked")
+        public double range (Comparable low, Comparable high)
+        {
+            if (rows == 0) return 0.0;
+            if (low != null && low.getClass () != min.getClass () || high != null && high.getClass () != min.getClass ()) {
+                return 0.25;                                       // values not of the domain
+            } // if
+            if (low != null && high != null && low.compareTo (high) == 0) return eq (low);
+            int    b   = bound.length - 1;
+            if (b == 0) return ((low == null || low.compareTo (min) <= 0) && (high == null || high.compareTo (min) >= 0)) ? 1.0 : 0.0;
+            double sel = 0.0;
+            for (int i = 0; i < b; i++) {
+                Comparable lo = bound [i], hi = bound [i + 1];
+                if (low != null && low.compareTo (hi) > 0 || high != null && high.compareTo (lo) < 0) continue;
+                boolean all = (low == null || low.compareTo (lo) <= 0) && (high == null || high.compareTo (hi) >= 0);
+                sel += all ? 1.0 : part (lo, hi, low, high);
+            } // for
+            return Math.min (1.0, Math.max (sel / b, 1.0 / Math.max (1, rows)));
+        } // range
+
+        /********************************************************************************
+         * Estimate the part of the bucket lo .. hi covered by the range low .. high.
+         * Integral domains count the values at both ends of the bucket and range.
+         */
+        private static double part (Comparable lo, Comparable hi, Comparable low, Comparable high)
+        {
+            if (! (lo instanceof Number)) return 0.5;
+            double one = (lo instanceof Double || lo instanceof Float) ? 0.0 : 1.0;
+            double l = ((Number) lo).doubleValue (), h = ((Number) hi).doubleValue ();
+            if (h <= l) return 1.0;
+            double a = (low == null)  ? l : Math.max (l, ((Number) low).doubleValue ());
+            double z = (high == null) ? h : Math.min (h, ((Number) high).doubleValue ());
+            return Math.max (0.0, (z - a + one) / (h - l + one));
+        } // part
+
+        public String toString ()
+        {
+            return "distinct " + distinct + "  min " + min + "  max " + max;
+        } // toString
+    } // Column inner class
+
+    /************************************************************************************
+     * Compute the statistics of the tuples.
+     *
+     * @param attribute  the attribute names
+     * @param tups       the tuples (a snapshot)
+     */
+    TableStats (String [] attribute, List <Comparable []> tups)
+    {
+        rows = tups.size ();
+        int n = (int) Math.min (rows, SAMPLE);
+        int [] pick = new int [n];
+        if (n == rows) {
+            for (int i = 0; i < n; i++) pick [i] = i;
+        } else {
+            Random rnd = new Random (rows);
+            for (int i = 0; i < n; i++) pick [i] = (int) ((long) i * rows / n) + rnd.nextInt ((int) Math.max (1, rows / n));
+        } // if
+
+        List <Comparable []> sample = new ArrayList <> (n);
+        for (int i : pick) sample.add (tups.get (i));
+        for (int j = 0; j < attribute.length; j++) columns.put (attribute [j], column (sample, j));
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of tuples.
+     *
+     * @return  the number of tuples
+     */
+    public long rows ()
+    {
+        return rows;
+    } // rows
+
+    /************************************************************************************
+     * Return the statistics of the given attribute.
+     *
+     * @param attr  the attribute name
+     * @return  its statistics, or null if the table has no such attribute
+     */
+    public Column column (String attr)
+    {
+        return columns.get (attr);
+    } // column
+
+    /************************************************************************************
+     * Return the statistics as text, one attribute per line.
+     */
+    public String toString ()
+    {
+        StringBuilder sb = new StringBuilder ("rows " + rows);
+        for (Map.Entry <String, Column> e : columns.entrySet ()) sb.append ("\n  ").append (e.getKey ()).append (": ").append (e.getValue ());
+        return sb.toString ();
+    } // toString
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Compute the statistics of column j from the sample.
+     *
+     * @param sample  the sampled tuples
+     * @param j       the column position
+     * @return  the column's statistics
+     */
+    @SuppressWarnings ("unchecked")
+    private Column column (List <Comparable []> sample, int j)
+    {
+        int n = sample.size ();
+        Comparable [] vals = new Comparable [n];
+        for (int i = 0; i < n; i++) vals [i] = sample.get (i) [j];
+        Arrays.sort (vals);
+
+        long seen = 0, once = 0;
+        for (int i = 0; i < n; ) {
+            int k = i + 1;
+            while (k < n && vals [k].compareTo (vals [i]) == 0) k++;
+            seen++;
+            if (k - i == 1) once++;
+            i = k;
+        } // for
+        long distinct = (n == rows) ? seen
+                      : Math.min (rows, Math.round (Math.sqrt ((double) rows / n) * once + (seen - once)));
+
+        int b = Math.min (BUCKETS, Math.max (n - 1, 0));
+        Comparable [] bound = new Comparable [(n == 0) ? 0 : b + 1];
+        for (int i = 0; i < bound.length; i++) bound [i] = vals [(b == 0) ? 0 : (int) ((long) i * (n - 1) / b)];
+        return new Column (rows, distinct, bound);
+    } // column
+
+} // TableStats class
@@ -0,0 +1,192 @@
+/****************************************************************************************
+ * @file  TupleLog.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/****************************************************************************************
+ * The TupleLog class provides append-only row storage for the tuples of a table that
+ * may be read while it is being appended to.  Tuples are kept in chunks of CHUNK tuples
+ * that never move once allocated, and the number of tuples is published through a
+ * volatile field after they are written, so a reader that reads size () sees every tuple
+ * below it.  So that small results stay small, the first chunk starts with room for the
+ * initial tuples (or FIRST) and doubles up to CHUNK; each larger copy is published, in a
+ * new directory, before the size.
+ * A table's versions are the prefixes of its log: prefix (list, n) is the snapshot
+ * holding the first n tuples, unaffected by later appends.  Only one thread may append
+ * at a time (Table serializes its writers).
+ */
+public class TupleLog
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of tuples per chunk is 2^SHIFT
+     */
+    private static final int SHIFT = 12;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK  = CHUNK - 1;
+
+    /** The initial capacity of the first chunk when it is not sized by a batch
+     */
+    private static final int FIRST = 16;
+
+    /** The chunks of tuples (the directory is replaced, never modified, when it grows)
+     */
+    private volatile Comparable [] [] [] chunks = new Comparable [4] [] [];
+
+    /** The number of tuples visible to readers
+     */
+    private volatile int size = 0;
+
+    /************************************************************************************
+     * Construct an empty log.
+     */
+    public TupleLog ()
+    {
+    } // constructor
+
+    /************************************************************************************
+     * Construct a log holding the given tuples.
+     *
+     * @param tups  the initial tuples
+     */
+    public TupleLog (Collection <Comparable []> tups)
+    {
+        addAll (tups);
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of tuples published.
+     *
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Return the i-th tuple.
+     *
+     * @param i  the tuple number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("TupleLog.get: " + i);
+        return chunks [i >>> SHIFT] [i & MASK];
+    } // get
+
+    /************************************************************************************
+     * Append a tuple and publish it.
+     *
+     * @param tup  the tuple
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        int n = size;
+        put (n, tup);
+        size = n + 1;
+        return true;
+    } // add
+
+    /************************************************************************************
+     * Append the tuples, publishing them all at once, so that readers see either none or
+     * all of the batch.
+     *
+     * @param tups  the tuples
+     * @return  whether any tuple was added
+     */
+    public boolean addAll (Collection <? extends Comparable []> tups)
+    {
+        int n = size;
+        if (chunks [0] == null && ! tups.isEmpty ()) chunks [0] = new Comparable [Math.min (CHUNK, tups.size ())] [];
+        for (Comparable [] tup : tups) put (n++, tup);
+        boolean changed = n != size;
+        size = n;
+        return changed;
+    } // addAll
+
+    /************************************************************************************
+     * Return the snapshot of the given list holding its first n tuples.  The list must
+     * only ever be appended to (as TupleLog and ColumnStore are) and n must not exceed
+     * its size.
+     *
+     * @param list  the list of tuples
+     * @param n     the number of tuples in the snapshot
+     * @return  a read-only view of the first n tuples
+     */
+    public static List <Comparable []> prefix (List <Comparable []> list, int n)
+    {
+        return new Prefix (list, n);
+    } // prefix
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Store the tuple at position i (not yet published), allocating a chunk if needed.
+     * A full first chunk smaller than CHUNK is replaced by a copy twice its size.
+     *
+     * @param i    the position (the current end of the log)
+     * @param tup  the tuple
+     */
+    private void put (int i, Comparable [] tup)
+    {
+        Comparable [] [] [] c = chunks;
+        int k = i >>> SHIFT;
+        if (k == c.length) {
+            c = Arrays.copyOf (c, 2 * k);
+            chunks = c;
+        } // if
+        if (c [k] == null) {
+            c [k] = new Comparable [(k == 0) ? FIRST : CHUNK] [];
+        } else if (i == c [k].length) {                                   // only the first chunk
+            c = c.clone ();
+            c [0] = Arrays.copyOf (c [0], Math.min (CHUNK, 2 * i));
+            chunks = c;
+        } // if
+        c [k] [i & MASK] = tup;
+    } // put
+
+    /************************************************************************************
+     * The Prefix class is a read-only view of the first n tuples of an append-only list.
+     * It does not track the list's modifications, since appends never change it.
+     */
+    private static class Prefix
+            extends AbstractList <Comparable []>
+            implements RandomAccess, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List <Comparable []> list;
+        private final int n;
+
+        Prefix (List <Comparable []> _list, int _n)
+        {
+            list = _list;
+            n    = _n;
+        } // constructor
+
+        public int size ()
+        {
+            return n;
+        } // size
+
+        public Comparable [] get (int i)
+        {
+            if (i < 0 || i >= n) throw new IndexOutOfBoundsException ("TupleLog.prefix: " + i);
+            return list.get (i);
+        } // get
+    } // Prefix inner class
+
+} // TupleLog class
@@ -0,0 +1,183 @@
+/****************************************************************************************
+ * @file  TupleView.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/****************************************************************************************
+ * The TupleView class provides the tuples of a select or project result without copying
+ * them: a view over a snapshot of the parent table's tuples, through a selection vector
+ * (the positions of the selected tuples) and a column map (the positions of the projected
+ * columns).  A view of a view is composed into one view over the original tuples.
+ * Projected tuples are built when read; selected tuples are the parent's own arrays.
+ *
+ * The view is copied into a TupleLog (materialized) when it is first appended to, or on
+ * request (see Table.materialize); from then on it reads and appends to the copy, and no
+ * longer keeps the parent's tuples reachable.  Like TupleLog, it may be read while being
+ * appended to by one writer.
+ */
+class TupleView
+      extends AbstractList <Comparable []>
+      implements RandomAccess, Serializable
+{
+    /** The serialization version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The parent's tuples (a snapshot, which never changes), null once materialized
+     */
+    private transient volatile List <Comparable []> base;
+
+    /** The positions in base of the tuples in the view (null: the first length tuples)
+     */
+    private final transient int [] ids;
+
+    /** The positions in a base tuple of the columns in the view (null: all columns)
+     */
+    private final transient int [] cols;
+
+    /** The number of tuples in the view
+     */
+    private final transient int length;
+
+    /** The copy of the tuples once materialized (null until then)
+     */
+    private transient volatile TupleLog copy;
+
+    /************************************************************************************
+     * Construct a view over base.
+     */
+    private TupleView (List <Comparable []> _base, int [] _ids, int [] _cols, int _length)
+    {
+        base   = _base;
+        ids    = _ids;
+        cols   = _cols;
+        length = _length;
+    } // constructor
+
+    /************************************************************************************
+     * Make a view of the tuples of a snapshot at the given positions, projected onto the
+     * given columns.  When the snapshot is itself (a prefix of) a view, the positions and
+     * columns are mapped through it, so the new view reads the original tuples directly.
+     *
+     * @param store  the parent table's tuple storage
+     * @param tups   the snapshot of store being read
+     * @param _ids   the positions of the selected tuples in tups (null: all of them)
+     * @param _cols  the positions of the projected columns (null: all of them)
+     * @return  the view
+     */
+    static TupleView of (List <Comparable []> store, List <Comparable []> tups, int [] _ids, int [] _cols)
+    {
+        int n = (_ids == null) ? tups.size () : _ids.length;
+        TupleView p = (store instanceof TupleView) ? (TupleView) store : null;
+        List <Comparable []> b = (p == null) ? null : p.base;
+        if (b == null || tups.size () > p.length) return new TupleView (tups, _ids, _cols, n);
+
+        int [] i2 = p.ids, c2 = p.cols;
+        if (_ids != null && p.ids != null) {
+            i2 = new int [n];
+            for (int i = 0; i < n; i++) i2 [i] = p.ids [_ids [i]];
+        } else if (_ids != null) {
+            i2 = _ids;
+        } // if
+        if (_cols != null && p.cols != null) {
+            c2 = new int [_cols.length];
+            for (int k = 0; k < c2.length; k++) c2 [k] = p.cols [_cols [k]];
+        } else if (_cols != null) {
+            c2 = _cols;
+        } // if
+        return new TupleView (b, i2, c2, n);
+    } // of
+
+    /************************************************************************************
+     * Return the number of tuples in the view (or its copy).
+     *
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        TupleLog c = copy;
+        return (c == null) ? length : c.size ();
+    } // size
+
+    /************************************************************************************
+     * Return the i-th tuple, projecting it if the view has a column map.
+     *
+     * @param i  the tuple number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        List <Comparable []> b = base;                                    // read before copy
+        TupleLog c = copy;
+        if (c != null) return c.get (i);
+        if (i < 0 || i >= length) throw new IndexOutOfBoundsException ("TupleView.get: " + i);
+        Comparable [] tup = b.get ((ids == null) ? i : ids [i]);
+        if (cols == null) return tup;
+        Comparable [] row = new Comparable [cols.length];
+        for (int k = 0; k < cols.length; k++) row [k] = tup [cols [k]];
+        return row;
+    } // get
+
+    /************************************************************************************
+     * Append a tuple, materializing the view first.
+     *
+     * @param tup  the tuple
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        return materialize ().add (tup);
+    } // add
+
+    /************************************************************************************
+     * Append the tuples, materializing the view first.
+     *
+     * @param tups  the tuples
+     * @return  whether any tuple was added
+     */
+    public boolean addAll (Collection <? extends Comparable []> tups)
+    {
+        return materialize ().addAll (tups);
+    } // addAll
+
+    /************************************************************************************
+     * Determine whether the view has been copied.
+     *
+     * @return  whether the tuples are read from the copy
+     */
+    boolean isMaterialized ()
+    {
+        return copy != null;
+    } // isMaterialized
+
+    /************************************************************************************
+     * Copy the tuples of the view into a TupleLog (once), releasing the parent's tuples.
+     *
+     * @return  the copy
+     */
+    synchronized TupleLog materialize ()
+    {
+        TupleLog c = copy;
+        if (c == null) {
+            c = new TupleLog (this);
+            copy = c;
+            base = null;
+        } // if
+        return c;
+    } // materialize
+
+    /************************************************************************************
+     * Serialize a copy of the tuples (the parent's tuples are not part of the table).
+     *
+     * @return  a row store holding the tuples
+     */
+    private Object writeReplace ()
+    {
+        return new TupleLog (this);
+    } // writeReplace
+
+} // TupleView class
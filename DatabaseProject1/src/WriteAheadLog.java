@@ -0,0 +1,546 @@
+/****************************************************************************************
+ * @file  WriteAheadLog.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The WriteAheadLog class is an append-only log of the tuples inserted into a table
+ * since its last checkpoint, kept next to the table file as store/<name>.wal:
+ *
+ *   header:   magic, version, sync policy, base (the number of the first logged tuple)
+ *   records:  int length, int CRC-32, then the tuple in the row encoding of PageFile
+ *
+ * Records are numbered by the position of their tuple in the table, so after a crash
+ * between writing the table file and truncating the log, replay skips the tuples the
+ * file already holds.  Appends go to an in-memory buffer; commit writes the buffer to
+ * the file and, for SyncPolicy.ALWAYS, forces it to disk.  Committers that arrive while
+ * another one is writing wait for it and are then served by a single write and sync of
+ * everything appended in the meantime (group commit).  A torn or corrupt record ends the
+ * log on recovery.
+ */
+class WriteAheadLog
+{
+    /** The extension of log files
+     */
+    static final String EXT = ".wal";
+
+    /** Magic number identifying a log file ("DBFW")
+     */
+    static final int MAGIC = 0x44424657;
+
+    /** The current version of the log format
+     */
+    static final short VERSION = 1;
+
+    /** The size of the header: magic, version, policy, base
+     */
+    private static final int HEADER = 4 + 2 + 1 + 8;
+
+    /** The size of a record's fixed part: length and checksum
+     */
+    private static final int RECORD = 8;
+
+    /** Records longer than this are taken to be corrupt
+     */
+    private static final int MAX_RECORD = 1 << 26;
+
+    /** The interval between syncs for SyncPolicy.INTERVAL (milliseconds)
+     */
+    private static final long SYNC_MILLIS = 10;
+
+    /** The thread forcing logs with SyncPolicy.INTERVAL to disk
+     */
+    private static final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor (r -> {
+        Thread t = new Thread (r, "wal-sync");
+        t.setDaemon (true);
+        return t;
+    });
+
+    private final Path              path;
+    private final Class []          domain;
+    private final Table.SyncPolicy  policy;
+
+    /** The channel appending to the log file
+     */
+    private FileChannel ch;
+
+    /** The number (table position) of the first tuple in the log
+     */
+    private long base;
+
+    /** The numbers of tuples appended and written to the file (log sequence numbers)
+     */
+    private long appended, written;
+
+    /** The size of the log, including the buffered records
+     */
+    private long bytes;
+
+    /** Records appended but not yet written, and a spare buffer to swap in
+     */
+    private ByteBuffer pending = ByteBuffer.allocate (1 << 16);
+    private ByteBuffer spare   = ByteBuffer.allocate (1 << 16);
+
+    /** Whether a committer is writing to the file (the others wait for it)
+     */
+    private boolean flushing = false;
+
+    /** Whether the file has been written since the last sync
+     */
+    private volatile boolean dirty = false;
+
+    /** The error of a failed write, after which the file may hold a torn record and lack
+     *  the records of the lost buffer (null while the log is sound)
+     */
+    private IOException failure;
+
+    /** Whether a checkpoint of the table is in progress
+     */
+    private final AtomicBoolean checkpointing = new AtomicBoolean ();
+
+    /** Scratch space for encoding a tuple
+     */
+    private ByteBuffer row = ByteBuffer.allocate (PageFile.PAGE_SIZE);
+
+    private final CRC32 crc = new CRC32 ();
+
+    private ScheduledFuture <?> syncTask;
+
+    /************************************************************************************
+     * Construct a log on an open channel positioned at the end of the log.
+     */
+    private WriteAheadLog (Path _path, Class [] _domain, Table.SyncPolicy _policy, FileChannel _ch,
+                           long _base, long records)
+           throws IOException
+    {
+        path     = _path;
+        domain   = _domain;
+        policy   = _policy;
+        ch       = _ch;
+        base     = _base;
+        appended = written = _base + records;
+        bytes    = ch.size ();
+        if (policy == Table.SyncPolicy.INTERVAL) {
+            syncTask = syncer.scheduleWithFixedDelay (this::sync, SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+        } // if
+    } // constructor
+
+    /************************************************************************************
+     * Create an empty log, replacing any existing one.
+     *
+     * @param file    the path of the log file
+     * @param dom     the domains of the table's tuples
+     * @param policy  when to force the log to disk
+     * @param base    the number of tuples in the table (the position of the next one)
+     * @return  the new log
+     * @throws IOException  if the file cannot be written
+     */
+    static WriteAheadLog create (String file, Class [] dom, Table.SyncPolicy policy, long base)
+           throws IOException
+    {
+        Path path = Paths.get (file);
+        Path tmp  = Paths.get (file + ".tmp");
+        try (FileChannel out = FileChannel.open (tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader (out, policy, base);
+            out.force (true);
+        } // try
+        Files.move (tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel ch = FileChannel.open (path, StandardOpenOption.WRITE);
+        ch.position (ch.size ());
+        return new WriteAheadLog (path, dom, policy, ch, base, 0);
+    } // create
+
+    /************************************************************************************
+     * Open an existing log after loading its table, collecting the tuples the table file
+     * does not hold.  The log is cut after its last intact record.
+     *
+     * @param file  the path of the log file
+     * @param dom   the domains of the table's tuples
+     * @param rows  the number of tuples loaded from the table file
+     * @param redo  the list collecting the tuples to insert again
+     * @return  the log, open for appending
+     * @throws IOException  if the log cannot be read or does not follow the table file
+     */
+    static WriteAheadLog open (String file, Class [] dom, long rows, List <Comparable []> redo)
+           throws IOException
+    {
+        Path path = Paths.get (file);
+        Table.SyncPolicy policy;
+        long base, records = 0, end = HEADER;
+
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (Files.newInputStream (path)))) {
+            if (in.readInt () != MAGIC) throw new IOException ("WriteAheadLog: " + file + " is not a log file");
+            short version = in.readShort ();
+            if (version > VERSION) throw new IOException ("WriteAheadLog: " + file + " has unsupported version " + version);
+            byte p = in.readByte ();
+            if (p < 0 || p >= Table.SyncPolicy.values ().length) {
+                throw new IOException ("WriteAheadLog: " + file + " has an unknown sync policy " + p);
+            } // if
+            policy = Table.SyncPolicy.values () [p];
+            base   = in.readLong ();
+            if (base > rows) throw new IOException ("WriteAheadLog: " + file + " starts after the end of the table");
+
+            CRC32 check = new CRC32 ();
+            try {
+                while (true) {
+                    int len = in.readInt (), sum = in.readInt ();
+                    if (len < 0 || len > MAX_RECORD) break;
+                    byte [] b = new byte [len];
+                    in.readFully (b);
+                    check.reset ();
+                    check.update (b);
+                    if ((int) check.getValue () != sum) break;
+                    if (base + records >= rows) redo.add (PageFile.decodeRow (ByteBuffer.wrap (b), dom));
+                    records++;
+                    end += RECORD + len;
+                } // while
+            } catch (EOFException ex) {
+                // a torn record at the end: the insert never committed
+            } // try
+        } catch (EOFException ex) {
+            throw new IOException ("WriteAheadLog: " + file + " has a truncated header");
+        } // try
+
+        FileChannel ch = FileChannel.open (path, StandardOpenOption.WRITE);
+        if (ch.size () > end) {
+            ch.truncate (end);
+            ch.force (true);
+        } // if
+        ch.position (end);
+        return new WriteAheadLog (path, dom, policy, ch, base, records);
+    } // open
+
+    /************************************************************************************
+     * Append a record for the tuple to the buffer.  Callers must append in the order
+     * the tuples are added to the table (Table holds its write latch).
+     *
+     * @param tup  the inserted tuple
+     * @return  the log sequence number to commit
+     */
+    synchronized long append (Comparable [] tup)
+    {
+        while (true) {
+            try {
+                row.clear ();
+                PageFile.encodeRow (row, tup, domain);
+                break;
+            } catch (BufferOverflowException ex) {
+                row = ByteBuffer.allocate (2 * row.capacity ());
+            } // try
+        } // while
+        row.flip ();
+        int len = row.remaining ();
+        crc.reset ();
+        crc.update (row.duplicate ());
+
+        if (pending.remaining () < RECORD + len) {
+            ByteBuffer b = ByteBuffer.allocate (Math.max (2 * pending.capacity (), pending.position () + RECORD + len));
+            pending.flip ();
+            pending = b.put (pending);
+        } // if
+        pending.putInt (len).putInt ((int) crc.getValue ()).put (row);
+        bytes += RECORD + len;
+        return ++appended;
+    } // append
+
+    /************************************************************************************
+     * Make the records up to lsn durable according to the sync policy: written to the
+     * file, and for ALWAYS also forced to disk.  If another thread is writing, wait for
+     * it; the records appended meanwhile are then written (and synced) together.
+     * Once a write has failed, the records after it could not be replayed in their
+     * places, so every later commit fails until a checkpoint restarts the log.
+     *
+     * @param lsn  the log sequence number returned by append
+     * @throws IOException  if the log cannot be written, or a write has failed before
+     */
+    void commit (long lsn)
+         throws IOException
+    {
+        ByteBuffer  buf;
+        FileChannel out;
+        long        upto;
+        synchronized (this) {
+            while (flushing && written < lsn) await ();
+            if (written >= lsn) return;
+            if (failure != null) throw new IOException ("WriteAheadLog: " + path + " failed to write", failure);
+            flushing = true;
+            buf      = pending;
+            pending  = spare;
+            upto     = appended;
+            out      = ch;
+        } // synchronized
+
+        boolean ok = false;
+        try {
+            buf.flip ();
+            while (buf.hasRemaining ()) out.write (buf);
+            if (policy == Table.SyncPolicy.ALWAYS) out.force (false);
+            else dirty = true;
+            ok = true;
+        } catch (IOException | RuntimeException ex) {
+            synchronized (this) { fail (ex); }
+            throw ex;
+        } finally {
+            synchronized (this) {
+                if (ok) written = upto;
+                buf.clear ();
+                spare    = buf;
+                flushing = false;
+                notifyAll ();
+            } // synchronized
+        } // try
+    } // commit
+
+    /************************************************************************************
+     * Write every appended record and force the log to disk.
+     *
+     * @throws IOException  if the log cannot be written
+     */
+    void flush ()
+         throws IOException
+    {
+        long lsn;
+        synchronized (this) { lsn = appended; }
+        commit (lsn);
+        synchronized (this) { ch.force (false); }
+    } // flush
+
+    /************************************************************************************
+     * Return the size of the log in bytes (including buffered records).
+     */
+    synchronized long size ()
+    {
+        return bytes;
+    } // size
+
+    /************************************************************************************
+     * Claim the right to checkpoint the table (so that only one insert triggers it).
+     *
+     * @return  whether the claim succeeded
+     */
+    boolean claimCheckpoint ()
+    {
+        return checkpointing.compareAndSet (false, true);
+    } // claimCheckpoint
+
+    /************************************************************************************
+     * Release the claim to checkpoint the table.
+     */
+    void releaseCheckpoint ()
+    {
+        checkpointing.set (false);
+    } // releaseCheckpoint
+
+    /************************************************************************************
+     * Drop the records of the tuples now held by the table file (those numbered below
+     * rows), by copying the remaining records to a new log that replaces this one.
+     * After a failed write, the log restarts empty if the file holds every tuple.
+     *
+     * @param rows  the number of tuples written to the table file
+     * @throws IOException  if the log cannot be rewritten, or has failed and the table
+     *                      file lacks some of its tuples
+     */
+    synchronized void truncate (long rows)
+                 throws IOException
+    {
+        while (flushing) await ();
+        if (failure != null && rows < appended) {
+            throw new IOException ("WriteAheadLog: " + path + " failed to write and the table file lacks its tuples", failure);
+        } // if
+        if (failure == null && rows <= base) return;
+        try {
+            pending.flip ();
+            while (failure == null && pending.hasRemaining ()) ch.write (pending);
+        } catch (IOException | RuntimeException ex) {
+            fail (ex);
+            throw ex;
+        } finally {
+            pending.clear ();
+        } // try
+        written = appended;
+
+        Path tmp = Paths.get (path + ".tmp");
+        try (FileChannel in  = FileChannel.open (path, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open (tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer len = ByteBuffer.allocate (4);
+            long pos = HEADER;
+            if (failure != null) pos = in.size ();                         // after a failure: keep none
+            for (long r = base; r < rows && failure == null; r++) {
+                len.clear ();
+                in.read (len, pos);
+                pos += RECORD + len.getInt (0);
+            } // for
+            writeHeader (out, policy, rows);
+            for (long p = pos, end = in.size (); p < end; ) p += in.transferTo (p, end - p, out);
+            out.force (true);
+        } // try
+        ch.close ();
+        Files.move (tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ch = FileChannel.open (path, StandardOpenOption.WRITE);
+        ch.position (ch.size ());
+        bytes   = ch.size ();
+        base    = rows;
+        dirty   = false;
+        failure = null;
+    } // truncate
+
+    /************************************************************************************
+     * Write and force every record, then close the log (even if that fails).
+     *
+     * @throws IOException  if the log cannot be written
+     */
+    void close ()
+         throws IOException
+    {
+        try {
+            flush ();
+        } finally {
+            if (syncTask != null) syncTask.cancel (false);
+            synchronized (this) { ch.close (); }
+        } // try
+    } // close
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Force the log to disk if it has been written since the last sync (run periodically
+     * for SyncPolicy.INTERVAL).
+     */
+    private void sync ()
+    {
+        if (! dirty) return;
+        dirty = false;
+        FileChannel out;
+        synchronized (this) { out = ch; }
+        try {
+            out.force (false);
+        } catch (IOException ex) {
+            dirty = true;                        // closed by truncate (already forced) or failing
+        } // try
+    } // sync
+
+    /************************************************************************************
+     * Record that a write failed (called holding the log's lock).
+     *
+     * @param ex  the error of the write
+     */
+    private void fail (Exception ex)
+    {
+        failure = (ex instanceof IOException) ? (IOException) ex : new IOException (ex);
+    } // fail
+
+    /************************************************************************************
+     * Wait to be notified by a committer that has finished writing.
+     *
+     * @throws InterruptedIOException  if the thread is interrupted
+     */
+    private void await ()
+            throws InterruptedIOException
+    {
+        try {
+            wait ();
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new InterruptedIOException ("WriteAheadLog: interrupted waiting for commit");
+        } // try
+    } // await
+
+    /************************************************************************************
+     * Write the log header at the start of the channel.
+     *
+     * @param out     the channel of the new log file
+     * @param policy  the sync policy
+     * @param base    the number of the first tuple in the log
+     */
+    private static void writeHeader (FileChannel out, Table.SyncPolicy policy, long base)
+            throws IOException
+    {
+        ByteBuffer h = ByteBuffer.allocate (HEADER);
+        h.putInt (MAGIC).putShort (VERSION).put ((byte) policy.ordinal ()).putLong (base);
+        h.flip ();
+        out.position (0);
+        while (h.hasRemaining ()) out.write (h);
+    } // writeHeader
+
+    /************************************************************************************
+     * The main method used for testing: write a log, cut it in the middle of its last
+     * record (as a crash during a write would), and check that replay recovers every
+     * record before it, both directly and through Table.load.
+     *
+     * @param args  the command-line arguments (args [0] gives the number of tuples to log)
+     */
+    public static void main (String [] args)
+           throws IOException
+    {
+        int    n      = (args.length == 1) ? Integer.valueOf (args [0]) : 1000;
+        Class [] dom  = { Integer.class, String.class };
+        Path   file   = Files.createTempFile ("wal", EXT);
+
+        WriteAheadLog log = create (file.toString (), dom, Table.SyncPolicy.NEVER, 0);
+        for (int i = 0; i < n; i++) log.commit (log.append (new Comparable [] { i, "v" + i }));
+        log.close ();
+        cut (file);
+
+        List <Comparable []> redo = new ArrayList <> ();
+        open (file.toString (), dom, 0, redo).close ();
+        boolean same = true;
+        for (int i = 0; i < redo.size (); i++) same &= redo.get (i) [0].equals (i) && redo.get (i) [1].equals ("v" + i);
+        out.println ("replayed rows agree:   " + (redo.size () == n - 1));
+        out.println ("replayed tuples agree: " + same);
+
+        redo.clear ();
+        open (file.toString (), dom, n / 2, redo).close ();
+        out.println ("saved rows skipped:    " + (redo.size () == n - 1 - n / 2));
+
+        log = open (file.toString (), dom, n - 1, redo);
+        log.truncate (n - 1);
+        log.commit (log.append (new Comparable [] { n, "v" + n }));
+        log.close ();
+        redo.clear ();
+        open (file.toString (), dom, n - 1, redo).close ();
+        out.println ("checkpoint agrees:     " + (redo.size () == 1 && redo.get (0) [0].equals (n)));
+        Files.delete (file);
+
+        new File (Table.DIR).mkdirs ();
+        String name = "walSelfTest";
+        Table tab = new Table (name, "id v", "Integer String", "id");
+        tab.enableLog (Table.SyncPolicy.NEVER);
+        for (int i = 0; i < n; i++) tab.insert (new Comparable [] { i, "v" + i });
+        tab.closeLog ();
+        cut (Paths.get (Table.DIR + name + EXT));
+        Table loaded = Table.load (name);
+        loaded.closeLog ();
+        out.println ("loaded rows agree:     " + (loaded.size () == n - 1));
+        for (String ext : new String [] { Table.EXT, EXT, BloomFilter.EXT }) new File (Table.DIR + name + ext).delete ();
+    } // main
+
+    /************************************************************************************
+     * Cut a log file in the middle of its last record.
+     *
+     * @param file  the path of the log file
+     */
+    private static void cut (Path file)
+            throws IOException
+    {
+        try (FileChannel ch = FileChannel.open (file, StandardOpenOption.WRITE)) {
+            ch.truncate (ch.size () - 3);
+        } // try
+    } // cut
+
+} // WriteAheadLog class